@@ -21,6 +21,8 @@ import net.skinsrestorer.api.exception.DataRequestException;
 import net.skinsrestorer.api.property.SkinIdentifier;
 import net.skinsrestorer.api.property.SkinProperty;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -46,6 +48,22 @@ public interface PlayerStorage {
      */
     void setSkinIdOfPlayer(UUID uuid, SkinIdentifier identifier);
 
+    /**
+     * Get the linked skin identifiers of multiple players with as few storage calls as possible.
+     *
+     * @param uuids Players UUIDs
+     * @return The skin identifiers by player UUID, players without a linked skin are not included
+     */
+    Map<UUID, SkinIdentifier> getSkinIdsOfPlayers(Collection<UUID> uuids);
+
+    /**
+     * Links multiple players to the same skin identifier with as few storage calls as possible.
+     *
+     * @param uuids      Players UUIDs
+     * @param identifier Skin identifier to link
+     */
+    void setSkinIdOfPlayers(Collection<UUID> uuids, SkinIdentifier identifier);
+
     /**
      * Removes the link between the player and a skin identifier.
      *
@@ -163,10 +163,13 @@ public class SRBukkitAdapter implements SRServerAdapter<JavaPlugin, CommandSende
 
     @Override
     public void openServerGUI(SRPlayer player, int page) {
-        Inventory inventory = injector.getSingleton(SharedGUI.class)
-                .createGUI(injector.getSingleton(SkinsGUI.class), injector.getSingleton(SharedGUI.ServerGUIActions.class), player, page);
-
-        runSyncToPlayer(player, () -> player.getAs(Player.class).openInventory(inventory));
+        injector.getSingleton(SharedGUI.class)
+                .createGUI(injector.getSingleton(SkinsGUI.class), injector.getSingleton(SharedGUI.ServerGUIActions.class), player, page)
+                .thenAccept(inventory -> runSyncToPlayer(player, () -> player.getAs(Player.class).openInventory(inventory)))
+                .exceptionally(throwable -> {
+                    logger.warning("Failed to load GUI skins for " + player.getName(), throwable);
+                    return null;
+                });
     }
 
     @Override
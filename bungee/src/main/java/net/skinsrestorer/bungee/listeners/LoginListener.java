@@ -31,6 +31,8 @@ import net.skinsrestorer.shared.listeners.event.SRLoginProfileEvent;
 
 import javax.inject.Inject;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class LoginListener implements Listener {
@@ -81,6 +83,23 @@ public class LoginListener implements Listener {
                 });
                 return null;
             }
+
+            @Override
+            public Void runAsyncFuture(Supplier<CompletableFuture<?>> task) {
+                event.registerIntent(plugin.getPluginInstance());
+
+                CompletableFuture<?> future;
+                try {
+                    future = task.get();
+                } catch (RuntimeException e) {
+                    // The login would otherwise wait on the intent forever
+                    event.completeIntent(plugin.getPluginInstance());
+                    throw e;
+                }
+
+                future.whenComplete((result, throwable) -> event.completeIntent(plugin.getPluginInstance()));
+                return null;
+            }
         };
     }
 }
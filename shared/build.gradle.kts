@@ -6,6 +6,8 @@ dependencies {
     implementation("org.mariadb.jdbc:mariadb-java-client:3.3.2") {
         exclude("com.github.waffle", "waffle-jna")
     }
+    // Provided by the server, shading it would clash with the copy Spigot and Paper bundle
+    compileOnly("org.xerial:sqlite-jdbc:3.45.1.0")
 
     implementation("net.kyori:adventure-api:4.15.0")
     implementation("net.kyori:adventure-text-serializer-gson:4.15.0")
@@ -26,6 +28,7 @@ dependencies {
     implementation(libs.brigadier)
 
     testImplementation("org.bstats:bstats-base:3.0.2")
+    testImplementation("org.xerial:sqlite-jdbc:3.45.1.0")
 
     testImplementation("org.testcontainers:testcontainers:1.19.5")
     testImplementation("org.testcontainers:mariadb:1.19.5")
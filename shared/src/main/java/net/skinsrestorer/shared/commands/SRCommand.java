@@ -30,6 +30,7 @@ import net.skinsrestorer.api.exception.MineSkinException;
 import net.skinsrestorer.api.model.MojangProfileResponse;
 import net.skinsrestorer.api.property.InputDataResult;
 import net.skinsrestorer.api.property.SkinApplier;
+import net.skinsrestorer.api.property.SkinIdentifier;
 import net.skinsrestorer.api.property.SkinProperty;
 import net.skinsrestorer.api.property.SkinVariant;
 import net.skinsrestorer.api.storage.CacheStorage;
@@ -45,6 +46,7 @@ import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.plugin.SRPlatformAdapter;
 import net.skinsrestorer.shared.plugin.SRPlugin;
 import net.skinsrestorer.shared.plugin.SRServerPlugin;
+import net.skinsrestorer.shared.storage.SkinGarbageCollector;
 import net.skinsrestorer.shared.storage.SkinStorageImpl;
 import net.skinsrestorer.shared.subjects.SRCommandSender;
 import net.skinsrestorer.shared.subjects.SRPlayer;
@@ -57,10 +59,7 @@ import net.skinsrestorer.shared.utils.ValidationUtil;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 @SuppressWarnings("unused")
 @CommandNames({"sr", "skinsrestorer"})
@@ -75,6 +74,7 @@ public final class SRCommand {
     private final PlayerStorage playerStorage;
     private final CacheStorage cacheStorage;
     private final SkinStorageImpl skinStorage;
+    private final SkinGarbageCollector garbageCollector;
     private final SettingsManager settings;
     private final SRLogger logger;
     private final DumpService dumpService;
@@ -134,6 +134,10 @@ public final class SRCommand {
             }
         }
 
+        for (String circuitBreaker : response.getCircuitBreakers()) {
+            sender.sendMessage(ComponentHelper.parseMiniMessageToJsonString(circuitBreaker));
+        }
+
         sender.sendMessage(Message.ADMINCOMMAND_STATUS_WORKING_COUNT, Placeholder.unparsed("count", String.valueOf(workingUUIDCount)));
         sender.sendMessage(Message.ADMINCOMMAND_STATUS_WORKING_COUNT, Placeholder.unparsed("count", String.valueOf(workingProfileCount)));
 
@@ -268,8 +272,9 @@ public final class SRCommand {
             return;
         }
 
-        for (SRPlayer player : adapter.getOnlinePlayers()) {
-            playerStorage.setSkinIdOfPlayer(player.getUniqueId(), optional.get().getIdentifier());
+        Collection<SRPlayer> players = adapter.getOnlinePlayers();
+        playerStorage.setSkinIdOfPlayers(players.stream().map(SRPlayer::getUniqueId).toList(), optional.get().getIdentifier());
+        for (SRPlayer player : players) {
             skinApplier.applySkin(player.getAs(Object.class), optional.get().getProperty());
         }
 
@@ -281,9 +286,23 @@ public final class SRCommand {
     @Description(Message.HELP_SR_APPLY_SKIN_ALL)
     @CommandConditions("console-only")
     private void onApplySkinAll(SRCommandSender sender) {
-        for (SRPlayer player : adapter.getOnlinePlayers()) {
+        Collection<SRPlayer> players = adapter.getOnlinePlayers();
+        Map<UUID, SkinIdentifier> skinIds = playerStorage.getSkinIdsOfPlayers(players.stream().map(SRPlayer::getUniqueId).toList());
+
+        // Many players share the same skin, so every identifier is only resolved once
+        Map<SkinIdentifier, Optional<SkinProperty>> resolvedSkins = new HashMap<>();
+        for (SRPlayer player : players) {
             try {
-                skinApplier.applySkin(player.getAs(Object.class));
+                SkinIdentifier identifier = skinIds.get(player.getUniqueId());
+                Optional<SkinProperty> property = identifier == null ? Optional.empty()
+                        : resolvedSkins.computeIfAbsent(identifier, skinStorage::getSkinDataByIdentifier);
+
+                if (property.isPresent()) {
+                    skinApplier.applySkin(player.getAs(Object.class), property.get());
+                } else {
+                    // No linked skin, so this player needs the full lookup
+                    skinApplier.applySkin(player.getAs(Object.class));
+                }
             } catch (DataRequestException ignored) {
                 sender.sendMessage(Message.ADMINCOMMAND_APPLYSKINALL_PLAYER_ERROR, Placeholder.unparsed("player", player.getName()));
             }
@@ -296,11 +315,46 @@ public final class SRCommand {
     @Description(Message.HELP_SR_PURGE_OLD_DATA)
     @CommandConditions("console-only")
     private void onPurgeOldData(SRCommandSender sender, int days) {
-        if (skinStorage.purgeOldSkins(days)) {
-            sender.sendMessage(Message.ADMINCOMMAND_PURGEOLDDATA_SUCCESS);
-        } else {
-            sender.sendMessage(Message.ADMINCOMMAND_PURGEOLDDATA_ERROR);
+        sender.sendMessage(Message.ADMINCOMMAND_PURGEOLDDATA_STARTED);
+        skinStorage.purgeOldSkins(days, removed -> sender.sendMessage(Message.ADMINCOMMAND_PURGEOLDDATA_PROGRESS,
+                        Placeholder.unparsed("count", String.valueOf(removed))))
+                .whenComplete((removed, throwable) -> {
+                    if (throwable != null) {
+                        logger.warning("Failed to purge old skins", throwable);
+                        sender.sendMessage(Message.ADMINCOMMAND_PURGEOLDDATA_ERROR);
+                    } else {
+                        sender.sendMessage(Message.ADMINCOMMAND_PURGEOLDDATA_SUCCESS, Placeholder.unparsed("count", String.valueOf(removed)));
+                    }
+                });
+    }
+
+    @Subcommand("collectgarbage")
+    @CommandPermission(PermissionRegistry.SR_COLLECT_GARBAGE)
+    @Description(Message.HELP_SR_COLLECT_GARBAGE)
+    @CommandConditions("console-only")
+    private void onCollectGarbage(SRCommandSender sender, GarbageCollectionMode mode) {
+        if (garbageCollector.isRunning()) {
+            sender.sendMessage(Message.ADMINCOMMAND_COLLECTGARBAGE_RUNNING);
+            return;
         }
+
+        boolean dryRun = mode == GarbageCollectionMode.DRYRUN;
+        sender.sendMessage(Message.ADMINCOMMAND_COLLECTGARBAGE_STARTED);
+        garbageCollector.collect(dryRun, deleted -> sender.sendMessage(Message.ADMINCOMMAND_COLLECTGARBAGE_PROGRESS,
+                        Placeholder.unparsed("count", String.valueOf(deleted))))
+                .whenComplete((report, throwable) -> {
+                    if (throwable != null) {
+                        logger.warning("Failed to delete unused skins", throwable);
+                        sender.sendMessage(Message.ADMINCOMMAND_COLLECTGARBAGE_ERROR);
+                    } else {
+                        sender.sendMessage(report.dryRun() ? Message.ADMINCOMMAND_COLLECTGARBAGE_DRYRUN : Message.ADMINCOMMAND_COLLECTGARBAGE_SUCCESS,
+                                Placeholder.unparsed("count", String.valueOf(report.total())),
+                                Placeholder.unparsed("player_skins", String.valueOf(report.playerSkins())),
+                                Placeholder.unparsed("url_skins", String.valueOf(report.urlSkins())),
+                                Placeholder.unparsed("url_indexes", String.valueOf(report.urlIndexes())),
+                                Placeholder.unparsed("legacy_skins", String.valueOf(report.legacySkins())));
+                    }
+                });
     }
 
     @Subcommand("dump")
@@ -325,4 +379,9 @@ public final class SRCommand {
         PLAYER,
         SKIN,
     }
+
+    public enum GarbageCollectionMode {
+        DELETE,
+        DRYRUN,
+    }
 }
@@ -26,7 +26,6 @@ import net.skinsrestorer.api.connections.model.MineSkinResponse;
 import net.skinsrestorer.api.exception.DataRequestException;
 import net.skinsrestorer.api.exception.MineSkinException;
 import net.skinsrestorer.api.property.*;
-import net.skinsrestorer.api.storage.PlayerStorage;
 import net.skinsrestorer.api.storage.SkinStorage;
 import net.skinsrestorer.shared.api.SharedSkinApplier;
 import net.skinsrestorer.shared.commands.library.CommandManager;
@@ -37,6 +36,7 @@ import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.plugin.SRPlatformAdapter;
 import net.skinsrestorer.shared.plugin.SRPlugin;
 import net.skinsrestorer.shared.storage.CooldownStorage;
+import net.skinsrestorer.shared.storage.PlayerStorageImpl;
 import net.skinsrestorer.shared.subjects.SRCommandSender;
 import net.skinsrestorer.shared.subjects.SRPlayer;
 import net.skinsrestorer.shared.subjects.messages.Message;
@@ -49,6 +49,7 @@ import net.skinsrestorer.shared.utils.ValidationUtil;
 import javax.inject.Inject;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("unused")
@@ -63,7 +64,7 @@ public final class SkinCommand {
     private final SettingsManager settings;
     private final CooldownStorage cooldownStorage;
     private final SkinStorage skinStorage;
-    private final PlayerStorage playerStorage;
+    private final PlayerStorageImpl playerStorage;
     private final SkinsRestorerLocale locale;
     private final SRLogger logger;
     private final SharedSkinApplier<Object> skinApplier;
@@ -247,7 +248,8 @@ public final class SkinCommand {
     }
 
     private boolean setSkin(SRCommandSender sender, SRPlayer target, String skinInput, SkinVariant skinVariant) {
-        Optional<SkinIdentifier> oldSkinId = playerStorage.getSkinIdOfPlayer(target.getUniqueId());
+        // Loaded while the skin is looked up, it is only needed once the new skin is known
+        CompletableFuture<Optional<SkinIdentifier>> oldSkinId = playerStorage.getSkinIdOfPlayerAsync(target.getUniqueId());
         if (ValidationUtil.validSkinUrl(skinInput)) {
             if (!allowedSkinUrl(skinInput)) {
                 sender.sendMessage(Message.ERROR_SKINURL_DISALLOWED);
@@ -259,6 +261,7 @@ public final class SkinCommand {
 
                 MineSkinResponse response = mineSkinAPI.genSkin(skinInput, skinVariant);
                 skinStorage.setURLSkinByResponse(skinInput, response); // "generate" and save skin forever
+                oldSkinId.join();
                 playerStorage.setSkinIdOfPlayer(target.getUniqueId(), SkinIdentifier.ofURL(skinInput, response.getGeneratedVariant()));
                 skinApplier.applySkin(target.getAs(Object.class), response.getProperty());
 
@@ -281,6 +284,7 @@ public final class SkinCommand {
                     return false;
                 }
 
+                oldSkinId.join();
                 playerStorage.setSkinIdOfPlayer(target.getUniqueId(), optional.get().getIdentifier());
 
                 skinApplier.applySkin(target.getAs(Object.class), optional.get().getProperty());
@@ -293,7 +297,7 @@ public final class SkinCommand {
             }
         }
 
-        playerStorage.setSkinIdOfPlayer(target.getUniqueId(), oldSkinId.orElse(null)); // TODO: Rethink this logic
+        playerStorage.setSkinIdOfPlayer(target.getUniqueId(), oldSkinId.join().orElse(null)); // TODO: Rethink this logic
 
         return false;
     }
@@ -21,7 +21,11 @@ import ch.jalu.configme.Comment;
 import ch.jalu.configme.SettingsHolder;
 import ch.jalu.configme.properties.Property;
 
+import java.util.List;
+
+import static ch.jalu.configme.properties.PropertyInitializer.newListProperty;
 import static ch.jalu.configme.properties.PropertyInitializer.newProperty;
+import static net.skinsrestorer.shared.utils.FluentList.of;
 
 public class APIConfig implements SettingsHolder {
     @Comment({
@@ -30,4 +34,27 @@ public class APIConfig implements SettingsHolder {
             "[?] A key is not required, but recommended."
     })
     public static final Property<String> MINESKIN_API_KEY = newProperty("api.mineskinAPIKey", "key");
+    @Comment({
+            "After this many failed requests in a row, Ashcon, Mojang or MineTools is skipped",
+            "and lookups go straight to the other providers. Set to 0 to always try every provider."
+    })
+    public static final Property<Integer> CIRCUIT_BREAKER_FAILURE_THRESHOLD = newProperty("api.circuitBreaker.failureThreshold", 5);
+    @Comment({
+            "How many seconds a skipped provider rests before a single request probes whether it works again.",
+            "A successful probe brings the provider back, a failed one rests it again."
+    })
+    public static final Property<Integer> CIRCUIT_BREAKER_PROBE_INTERVAL = newProperty("api.circuitBreaker.probeInterval", 30);
+    @Comment({
+            "Paces requests to the skin APIs, as host=requests/seconds.",
+            "For example api.mojang.com=600/600 allows 600 requests per 10 minutes, with bursts of up to 600.",
+            "When a host is busy, requests wait for their turn: player logins first, then commands, then background work.",
+            "Hosts that answer with a Retry-After are held back for as long as they ask, whether listed here or not."
+    })
+    public static final Property<List<String>> RATE_LIMIT_BUCKETS = newListProperty("api.rateLimit.buckets", of(
+            "api.mojang.com=600/600",
+            "sessionserver.mojang.com=200/60",
+            "api.ashcon.app=300/60",
+            "api.minetools.eu=100/60",
+            "api.mineskin.org=20/60"
+    ));
 }
@@ -17,6 +17,7 @@
  */
 package net.skinsrestorer.shared.config;
 
+import ch.jalu.configme.Comment;
 import ch.jalu.configme.SettingsHolder;
 import ch.jalu.configme.configurationdata.CommentsConfiguration;
 import ch.jalu.configme.properties.Property;
@@ -32,7 +33,19 @@ public class DatabaseConfig implements SettingsHolder {
     public static final Property<String> MYSQL_PASSWORD = newProperty("database.password", "pass");
     public static final Property<Integer> MYSQL_MAX_POOL_SIZE = newProperty("database.maxPoolSize", 10);
     public static final Property<String> MYSQL_TABLE_PREFIX = newProperty("database.tablePrefix", "sr_");
+    @Comment("Prepare statements once on the server and reuse them per connection.")
+    public static final Property<Boolean> MYSQL_SERVER_PREPARED_STATEMENTS = newProperty("database.serverPreparedStatements", true);
     public static final Property<String> MYSQL_CONNECTION_OPTIONS = newProperty("database.connectionOptions", "sslMode=trust&serverTimezone=UTC");
+    @Comment({
+            "Queue player and UUID cache writes and send them to the database in batches.",
+            "Writes for the same key are merged, so only the latest value is written.",
+            "[?] Recommended for large networks with many joins at once."
+    })
+    public static final Property<Boolean> MYSQL_WRITE_BEHIND_ENABLED = newProperty("database.writeBehind.enabled", false);
+    @Comment("How often queued writes are sent to the database (in milliseconds).")
+    public static final Property<Integer> MYSQL_WRITE_BEHIND_FLUSH_INTERVAL = newProperty("database.writeBehind.flushInterval", 250);
+    @Comment("Send queued writes right away once this many are waiting.")
+    public static final Property<Integer> MYSQL_WRITE_BEHIND_MAX_BATCH_SIZE = newProperty("database.writeBehind.maxBatchSize", 500);
 
     @Override
     public void registerComments(CommentsConfiguration conf) {
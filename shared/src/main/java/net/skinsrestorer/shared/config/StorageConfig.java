@@ -24,6 +24,8 @@ import ch.jalu.configme.properties.ListProperty;
 import ch.jalu.configme.properties.Property;
 import ch.jalu.configme.properties.convertresult.ConvertErrorRecorder;
 import ch.jalu.configme.properties.types.PropertyType;
+import net.skinsrestorer.shared.storage.adapter.LocalStorageType;
+import net.skinsrestorer.shared.storage.adapter.log.LogFsyncPolicy;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -59,6 +61,69 @@ public class StorageConfig implements SettingsHolder {
     public static final Property<Integer> SKIN_EXPIRES_AFTER = newProperty("storage.skinExpiresAfter", 15);
     @Comment("How long we should cache the UUIDs of players (in minutes).")
     public static final Property<Integer> UUID_EXPIRES_AFTER = newProperty("storage.uuidExpiresAfter", 60);
+    @Comment({
+            "Keep recently used players, skins and cached UUIDs in memory,",
+            "so repeated logins and /skin lookups do not hit the database or disk."
+    })
+    public static final Property<Boolean> CACHE_ENABLED = newProperty("storage.cache.enabled", true);
+    @Comment("Maximum amount of entries per data type kept in memory.")
+    public static final Property<Integer> CACHE_MAX_SIZE = newProperty("storage.cache.maxSize", 5000);
+    @Comment({
+            "How long an entry stays in memory before it is read from storage again (in seconds).",
+            "[!] Keep this low if multiple proxies share one MySQL database."
+    })
+    public static final Property<Integer> CACHE_EXPIRES_AFTER = newProperty("storage.cache.expiresAfter", 300);
+    @Comment({
+            "Regularly delete stored player, URL and legacy skins that no player uses any more, so the storage only grows with the active players.",
+            "Custom skins and the default skins are always kept.",
+            "[?] Run \"/sr collectgarbage DRYRUN\" to see how many skins would be deleted first."
+    })
+    public static final Property<Boolean> GARBAGE_COLLECTION_ENABLED = newProperty("storage.garbageCollection.enabled", false);
+    @Comment("How often unused skins are deleted (in hours).")
+    public static final Property<Integer> GARBAGE_COLLECTION_INTERVAL = newProperty("storage.garbageCollection.interval", 24);
+    @Comment({
+            "Unused player skins are only deleted once they were not fetched for this long (in days).",
+            "[?] Players without a set skin use their own player skin, which is fetched again on their next login anyway."
+    })
+    public static final Property<Integer> GARBAGE_COLLECTION_PLAYER_SKIN_MIN_AGE = newProperty("storage.garbageCollection.playerSkinMinAge", 30);
+    @Comment({
+            "Amount of skins deleted at once, and the pause between two batches (in milliseconds).",
+            "[?] Keeps the cleanup from competing with logins for the storage."
+    })
+    public static final Property<Integer> GARBAGE_COLLECTION_BATCH_SIZE = newProperty("storage.garbageCollection.batchSize", 500);
+    public static final Property<Integer> GARBAGE_COLLECTION_BATCH_DELAY = newProperty("storage.garbageCollection.batchDelay", 1000);
+    @Comment({
+            "Delete stored player skins no player has used for this long (in days), they are fetched from Mojang again when needed.",
+            "[?] Unlike /sr purgeolddata this keeps skins of active players, no matter when they were fetched.",
+            "[?] A value of 0 disables it."
+    })
+    public static final Property<Integer> RETENTION_UNUSED_PLAYER_SKIN_DAYS = newProperty("storage.retention.unusedPlayerSkinDays", 0);
+    @Comment("How often the last use of player skins is written to the storage (in seconds).")
+    public static final Property<Integer> RETENTION_ACCESS_FLUSH_INTERVAL = newProperty("storage.retention.accessFlushInterval", 300);
+    @Comment({
+            "How data is stored when MySQL is disabled.",
+            "FILE: One file per player, skin and cached UUID.",
+            "LOG: A few large append-only files with an index in memory, faster for big single servers.",
+            "SQLITE: A single embedded database file with the same tables as MySQL, for big single servers with little memory to spare.",
+            "[!] SQLITE uses the SQLite driver of the server (bundled with Spigot and Paper), FILE is used where there is none.",
+            "[?] Switching from FILE to LOG or SQLITE copies the existing files over on the first start, the files are kept as a backup."
+    })
+    public static final Property<LocalStorageType> LOCAL_STORAGE_TYPE = newProperty(LocalStorageType.class, "storage.local.type", LocalStorageType.FILE);
+    @Comment({
+            "When LOG storage forces writes to disk.",
+            "ALWAYS: After every write, safest but slowest.",
+            "INTERVAL: In the background every fsyncInterval milliseconds, a power failure loses at most that much.",
+            "NEVER: Leave it to the operating system."
+    })
+    public static final Property<LogFsyncPolicy> LOG_FSYNC = newProperty(LogFsyncPolicy.class, "storage.local.log.fsync", LogFsyncPolicy.INTERVAL);
+    public static final Property<Integer> LOG_FSYNC_INTERVAL = newProperty("storage.local.log.fsyncInterval", 1000);
+    @Comment("Size of a single LOG storage file (in megabytes), full files are compacted in the background.")
+    public static final Property<Integer> LOG_SEGMENT_SIZE = newProperty("storage.local.log.segmentSize", 64);
+    @Comment({
+            "Amount of connections SQLITE storage reads with in parallel.",
+            "[?] Writes always go through a single connection, SQLite only allows one writer at a time."
+    })
+    public static final Property<Integer> SQLITE_READER_POOL_SIZE = newProperty("storage.local.sqlite.readerPoolSize", 4);
 
     @Override
     public void registerComments(CommentsConfiguration conf) {
@@ -37,12 +37,19 @@ import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.plugin.SRPlatformAdapter;
 import net.skinsrestorer.shared.plugin.SRPlugin;
 import net.skinsrestorer.shared.plugin.SRServerPlugin;
+import net.skinsrestorer.shared.storage.CacheStorageImpl;
+import net.skinsrestorer.shared.storage.SkinStorageImpl;
+import net.skinsrestorer.shared.storage.adapter.AdapterReference;
+import net.skinsrestorer.shared.storage.adapter.CachedStorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLWriteQueue;
+import net.skinsrestorer.shared.utils.MetricsCounter;
 
 import javax.inject.Inject;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 
@@ -75,6 +82,7 @@ public class DumpService {
     private final Injector injector;
     private final HttpClient httpClient;
     private final SettingsManager settingsManager;
+    private final AdapterReference adapterReference;
     private final Gson gson = new GsonBuilder()
             .serializeNulls()
             .create();
@@ -113,7 +121,7 @@ public class DumpService {
             jsonObject.add(keyName, gson.toJsonTree(configurationData.getValue(key)));
         }
 
-        DumpInfo.PluginInfo pluginInfo = new DumpInfo.PluginInfo(proxyMode, configMap);
+        DumpInfo.PluginInfo pluginInfo = new DumpInfo.PluginInfo(proxyMode, configMap, collectStatistics());
 
         EnvironmentInfo environmentInfo = EnvironmentInfo.determineEnvironment(adapter);
         PlatformInfo platformInfo = new PlatformInfo(
@@ -152,4 +160,50 @@ public class DumpService {
 
         return Optional.of(responseObject.getKey());
     }
+
+    private JsonObject collectStatistics() {
+        JsonObject statistics = new JsonObject();
+
+        if (adapterReference.get() instanceof CachedStorageAdapter cachedAdapter) {
+            JsonObject cacheStats = new JsonObject();
+            for (CachedStorageAdapter.CacheStats stats : cachedAdapter.getStats()) {
+                cacheStats.add(stats.region(), gson.toJsonTree(stats));
+            }
+
+            statistics.add("storageCache", cacheStats);
+        }
+
+        CacheStorageImpl cacheStorage = injector.getIfAvailable(CacheStorageImpl.class);
+        SkinStorageImpl skinStorage = injector.getIfAvailable(SkinStorageImpl.class);
+        if (cacheStorage != null && skinStorage != null) {
+            JsonObject collapsed = new JsonObject();
+            collapsed.addProperty("uuidLookups", cacheStorage.getUuidLookups().getCollapsed());
+            collapsed.addProperty("skinLookups", skinStorage.getSkinLookups().getCollapsed());
+            collapsed.addProperty("profileLookups", skinStorage.getProfileLookups().getCollapsed());
+            statistics.add("collapsedMojangRequests", collapsed);
+        }
+
+        ProviderCircuitBreakers circuitBreakers = injector.getIfAvailable(ProviderCircuitBreakers.class);
+        ProviderStats providerStats = injector.getIfAvailable(ProviderStats.class);
+        if (circuitBreakers != null && providerStats != null) {
+            JsonObject providers = new JsonObject();
+            for (MetricsCounter.Service service : List.of(MetricsCounter.Service.ASHCON, MetricsCounter.Service.MOJANG, MetricsCounter.Service.MINE_TOOLS)) {
+                JsonObject provider = new JsonObject();
+                provider.addProperty("circuitBreaker", circuitBreakers.getState(service).name());
+                provider.addProperty("consecutiveFailures", circuitBreakers.getConsecutiveFailures(service));
+                provider.addProperty("p95Millis", providerStats.getP95(service));
+                provider.addProperty("errorRate", providerStats.getErrorRate(service));
+                providers.add(service.name(), provider);
+            }
+
+            statistics.add("mojangProviders", providers);
+        }
+
+        MySQLWriteQueue writeQueue = injector.getIfAvailable(MySQLWriteQueue.class);
+        if (writeQueue != null && writeQueue.isEnabled()) {
+            statistics.add("mysqlWriteQueue", gson.toJsonTree(writeQueue.getStats()));
+        }
+
+        return statistics;
+    }
 }
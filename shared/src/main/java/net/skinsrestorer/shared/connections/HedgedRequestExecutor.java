@@ -0,0 +1,139 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.connections;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.api.exception.DataRequestException;
+import net.skinsrestorer.shared.connections.http.RequestPriority;
+import net.skinsrestorer.shared.exception.DataRequestExceptionShared;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.utils.MetricsCounter;
+
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Asks the best-ranked provider first and, if it has not answered within its recent p95 latency,
+ * asks the next one as well. The first successful answer wins; a failure moves on to the next provider right away.
+ * Requests that lose the race still finish in the background and feed the {@link ProviderStats}.
+ * Providers whose {@link ProviderCircuitBreakers circuit breaker} is open are not asked at all.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class HedgedRequestExecutor {
+    private static final long MIN_HEDGE_DELAY_MILLIS = 100;
+    private static final long MAX_HEDGE_DELAY_MILLIS = 3_000;
+    private final ExecutorService executorService = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r);
+        t.setName("SkinsRestorer-ProviderRequest");
+        t.setDaemon(true);
+        return t;
+    });
+    private final SRLogger logger;
+    @Getter
+    private final ProviderStats stats;
+    private final ProviderCircuitBreakers circuitBreakers;
+
+    /**
+     * @param calls Request per provider, in the order to use while providers rank the same
+     */
+    public <T> T execute(Map<MetricsCounter.Service, ProviderCall<T>> calls) throws DataRequestException {
+        // Providers with an open circuit breaker would only fail right away
+        Deque<MetricsCounter.Service> remaining = new ArrayDeque<>(stats.rank(calls.keySet()));
+        remaining.removeIf(service -> !circuitBreakers.isCallPermitted(service));
+        if (remaining.isEmpty()) {
+            throw new DataRequestExceptionShared("All providers are skipped, their circuit breakers are open");
+        }
+
+        BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+        int inFlight = 0;
+        DataRequestException lastError = null;
+
+        MetricsCounter.Service newest = remaining.poll();
+        launch(newest, calls.get(newest), outcomes);
+        inFlight++;
+        try {
+            while (true) {
+                Outcome<T> outcome;
+                if (remaining.isEmpty()) {
+                    outcome = outcomes.take();
+                } else {
+                    outcome = outcomes.poll(getHedgeDelay(newest), TimeUnit.MILLISECONDS);
+                    if (outcome == null) {
+                        newest = remaining.poll();
+                        launch(newest, calls.get(newest), outcomes);
+                        inFlight++;
+                        continue;
+                    }
+                }
+
+                inFlight--;
+                if (outcome.error() == null) {
+                    return outcome.result();
+                }
+
+                lastError = outcome.error();
+                if (!remaining.isEmpty()) {
+                    newest = remaining.poll();
+                    launch(newest, calls.get(newest), outcomes);
+                    inFlight++;
+                } else if (inFlight == 0) {
+                    throw lastError;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataRequestExceptionShared(e);
+        }
+    }
+
+    private long getHedgeDelay(MetricsCounter.Service service) {
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, Math.min(MAX_HEDGE_DELAY_MILLIS, stats.getP95(service)));
+    }
+
+    private <T> void launch(MetricsCounter.Service service, ProviderCall<T> call, BlockingQueue<Outcome<T>> outcomes) {
+        RequestPriority priority = RequestPriority.current();
+        executorService.execute(() -> {
+            long start = System.currentTimeMillis();
+            try (RequestPriority.Scope ignored = priority.enter()) {
+                T result = call.call();
+                stats.record(service, System.currentTimeMillis() - start, true);
+                outcomes.add(new Outcome<>(result, null));
+            } catch (DataRequestException e) {
+                fail(service, start, e, outcomes);
+            } catch (RuntimeException e) {
+                fail(service, start, new DataRequestExceptionShared(e), outcomes);
+            }
+        });
+    }
+
+    private <T> void fail(MetricsCounter.Service service, long start, DataRequestException e, BlockingQueue<Outcome<T>> outcomes) {
+        stats.record(service, System.currentTimeMillis() - start, false);
+        logger.debug("Request to %s failed".formatted(service), e);
+        outcomes.add(new Outcome<>(null, e));
+    }
+
+    @FunctionalInterface
+    public interface ProviderCall<T> {
+        T call() throws DataRequestException;
+    }
+
+    private record Outcome<T>(T result, DataRequestException error) {
+    }
+}
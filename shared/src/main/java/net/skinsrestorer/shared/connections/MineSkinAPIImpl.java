@@ -27,8 +27,10 @@ import net.skinsrestorer.api.exception.MineSkinException;
 import net.skinsrestorer.api.property.SkinProperty;
 import net.skinsrestorer.api.property.SkinVariant;
 import net.skinsrestorer.shared.config.APIConfig;
+import net.skinsrestorer.shared.connections.http.HostRateLimiter;
 import net.skinsrestorer.shared.connections.http.HttpClient;
 import net.skinsrestorer.shared.connections.http.HttpResponse;
+import net.skinsrestorer.shared.connections.http.RequestPriority;
 import net.skinsrestorer.shared.connections.responses.mineskin.MineSkinErrorDelayResponse;
 import net.skinsrestorer.shared.connections.responses.mineskin.MineSkinErrorResponse;
 import net.skinsrestorer.shared.connections.responses.mineskin.MineSkinUrlResponse;
@@ -70,16 +72,18 @@ public class MineSkinAPIImpl implements MineSkinAPI {
     private final SettingsManager settings;
     private final SkinsRestorerLocale locale;
     private final HttpClient httpClient;
+    private final HostRateLimiter rateLimiter;
 
     @Override
     public MineSkinResponse genSkin(String imageUrl, @Nullable SkinVariant skinVariant) throws DataRequestException, MineSkinException {
         String resultUrl = imageUrl.startsWith(NAMEMC_SKIN_URL) ? NAMEMC_IMG_URL.replace("%s", imageUrl.substring(24)) : imageUrl; // Fix NameMC skins
         AtomicInteger retryAttempts = new AtomicInteger(0);
+        RequestPriority priority = RequestPriority.current();
 
         do {
             try {
                 Optional<MineSkinResponse> optional = CompletableFuture.supplyAsync(() -> {
-                    try {
+                    try (RequestPriority.Scope ignored = priority.enter()) {
                         return genSkinInternal(resultUrl, skinVariant);
                     } catch (DataRequestException | MineSkinException e) {
                         throw new CompletionException(e);
@@ -164,18 +168,18 @@ public class MineSkinAPIImpl implements MineSkinAPI {
             }
             case 429 -> {
                 MineSkinErrorDelayResponse errorDelayResponse = response.getBodyAs(MineSkinErrorDelayResponse.class);
-                // If "Too many requests"
+                // If "Too many requests", hold back every MineSkin request, the retry waits in the rate limiter
                 if (errorDelayResponse.getDelay() != null) {
-                    TimeUnit.SECONDS.sleep(errorDelayResponse.getDelay());
+                    rateLimiter.delay(MINESKIN_ENDPOINT, Duration.ofSeconds(errorDelayResponse.getDelay()));
                 } else if (errorDelayResponse.getNextRequest() != null) {
                     Instant nextRequestInstant = Instant.ofEpochSecond(errorDelayResponse.getNextRequest());
-                    int delay = (int) Duration.between(Instant.now(), nextRequestInstant).getSeconds();
+                    Duration delay = Duration.between(Instant.now(), nextRequestInstant);
 
-                    if (delay > 0) {
-                        TimeUnit.SECONDS.sleep(delay);
+                    if (!delay.isNegative()) {
+                        rateLimiter.delay(MINESKIN_ENDPOINT, delay);
                     }
                 } else { // Should normally not happen
-                    TimeUnit.SECONDS.sleep(2);
+                    rateLimiter.delay(MINESKIN_ENDPOINT, Duration.ofSeconds(2));
                 }
 
                 return Optional.empty(); // try again after nextRequest
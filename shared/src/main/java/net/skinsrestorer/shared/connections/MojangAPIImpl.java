@@ -17,6 +17,7 @@
  */
 package net.skinsrestorer.shared.connections;
 
+import com.google.gson.Gson;
 import lombok.RequiredArgsConstructor;
 import net.skinsrestorer.api.connections.MojangAPI;
 import net.skinsrestorer.api.exception.DataRequestException;
@@ -40,15 +41,18 @@ import net.skinsrestorer.shared.utils.ValidationUtil;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.net.URI;
-import java.util.Collections;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class MojangAPIImpl implements MojangAPI {
     private static final String ASHCON = "https://api.ashcon.app/mojang/v2/user/%uuidOrName%";
     private static final String UUID_MOJANG = "https://api.mojang.com/users/profiles/minecraft/%playerName%";
     private static final String UUID_MINETOOLS = "https://api.minetools.eu/uuid/%playerName%";
+    private static final String UUIDS_MOJANG = "https://api.mojang.com/profiles/minecraft";
+    /**
+     * Maximum amount of names the bulk UUID endpoint accepts per request.
+     */
+    public static final int MAX_BULK_UUID_NAMES = 10;
     private static final String PROFILE_MOJANG = "https://sessionserver.mojang.com/session/minecraft/profile/%uuid%?unsigned=false";
     private static final String PROFILE_MINETOOLS = "https://api.minetools.eu/profile/%uuid%";
 
@@ -56,6 +60,9 @@ public class MojangAPIImpl implements MojangAPI {
     private final SRLogger logger;
     private final SRPlugin plugin;
     private final HttpClient httpClient;
+    private final HedgedRequestExecutor hedgedRequestExecutor;
+    private final ProviderCircuitBreakers circuitBreakers;
+    private final Gson gson = new Gson();
 
     @Override
     public Optional<MojangSkinDataResult> getSkin(String playerName) throws DataRequestException {
@@ -63,18 +70,19 @@ public class MojangAPIImpl implements MojangAPI {
             return Optional.empty();
         }
 
-        try {
-            return getDataAshcon(playerName);
-        } catch (DataRequestException e) {
-            logger.debug(e);
-            Optional<UUID> uuidResult = getUUIDStartMojang(playerName);
-            if (uuidResult.isEmpty()) {
-                return Optional.empty();
-            }
+        return requestHedged(
+                () -> getDataAshcon(playerName),
+                () -> getSkinData(getUUIDMojang(playerName), this::getProfileMojang),
+                () -> getSkinData(getUUIDMineTools(playerName), this::getProfileMineTools)
+        );
+    }
 
-            return getProfileStartMojang(uuidResult.get()).flatMap(propertyResponse ->
-                    Optional.of(MojangSkinDataResult.of(uuidResult.get(), propertyResponse)));
+    private Optional<MojangSkinDataResult> getSkinData(Optional<UUID> uuid, HedgedRequestExecutor.ProviderCall<Optional<SkinProperty>> profileCall) throws DataRequestException {
+        if (uuid.isEmpty()) {
+            return Optional.empty();
         }
+
+        return profileCall.call().map(property -> MojangSkinDataResult.of(uuid.get(), property));
     }
 
     /**
@@ -88,21 +96,11 @@ public class MojangAPIImpl implements MojangAPI {
             return Optional.empty();
         }
 
-        try {
-            return getDataAshcon(playerName).map(MojangSkinDataResult::getUniqueId);
-        } catch (DataRequestException e) {
-            logger.debug(e);
-            return getUUIDStartMojang(playerName);
-        }
-    }
-
-    private Optional<UUID> getUUIDStartMojang(String playerName) throws DataRequestException {
-        try {
-            return getUUIDMojang(playerName);
-        } catch (DataRequestException e) {
-            logger.debug(e);
-            return getUUIDMineTools(playerName);
-        }
+        return requestHedged(
+                () -> getDataAshcon(playerName).map(MojangSkinDataResult::getUniqueId),
+                () -> getUUIDMojang(playerName),
+                () -> getUUIDMineTools(playerName)
+        );
     }
 
     protected Optional<MojangSkinDataResult> getDataAshcon(String uuidOrName) throws DataRequestException {
@@ -160,6 +158,37 @@ public class MojangAPIImpl implements MojangAPI {
                 .map(UUIDUtils::convertToDashed);
     }
 
+    /**
+     * Resolves up to {@link #MAX_BULK_UUID_NAMES} names with a single request.
+     *
+     * @return UUIDs by lowercased name, names without a Mojang account are left out
+     */
+    public Map<String, UUID> getUUIDsMojang(Collection<String> playerNames) throws DataRequestException {
+        if (playerNames.size() > MAX_BULK_UUID_NAMES) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_UUID_NAMES + " names can be resolved at once");
+        }
+
+        HttpResponse httpResponse = readURL(URI.create(UUIDS_MOJANG), MetricsCounter.Service.MOJANG,
+                new HttpClient.RequestBody(gson.toJson(playerNames), HttpClient.HttpType.JSON), 5_000);
+        if (httpResponse.statusCode() != 200) {
+            throw new DataRequestExceptionShared("Mojang bulk UUID error code: " + httpResponse.statusCode());
+        }
+
+        MojangUUIDResponse[] responses = httpResponse.getBodyAs(MojangUUIDResponse[].class);
+        if (responses == null) {
+            throw new DataRequestExceptionShared("Mojang bulk UUID response is empty");
+        }
+
+        Map<String, UUID> result = new HashMap<>();
+        for (MojangUUIDResponse response : responses) {
+            if (response.getName() != null && response.getId() != null) {
+                result.put(response.getName().toLowerCase(Locale.ROOT), UUIDUtils.convertToDashed(response.getId()));
+            }
+        }
+
+        return result;
+    }
+
     protected Optional<UUID> getUUIDMineTools(String playerName) throws DataRequestException {
         HttpResponse httpResponse = readURL(URI.create(UUID_MINETOOLS.replace("%playerName%", playerName)), MetricsCounter.Service.MINE_TOOLS, 10_000);
         MineToolsUUIDResponse response = httpResponse.getBodyAs(MineToolsUUIDResponse.class);
@@ -173,21 +202,11 @@ public class MojangAPIImpl implements MojangAPI {
     }
 
     public Optional<SkinProperty> getProfile(UUID uuid) throws DataRequestException {
-        try {
-            return getDataAshcon(uuid.toString().replace("-", "")).map(MojangSkinDataResult::getSkinProperty);
-        } catch (DataRequestException e) {
-            logger.debug(e);
-            return getProfileStartMojang(uuid);
-        }
-    }
-
-    private Optional<SkinProperty> getProfileStartMojang(UUID uuid) throws DataRequestException {
-        try {
-            return getProfileMojang(uuid);
-        } catch (DataRequestException e) {
-            logger.debug(e);
-            return getProfileMineTools(uuid);
-        }
+        return requestHedged(
+                () -> getDataAshcon(uuid.toString().replace("-", "")).map(MojangSkinDataResult::getSkinProperty),
+                () -> getProfileMojang(uuid),
+                () -> getProfileMineTools(uuid)
+        );
     }
 
     public Optional<SkinProperty> getProfileMojang(UUID uuid) throws DataRequestException {
@@ -225,26 +244,56 @@ public class MojangAPIImpl implements MojangAPI {
         return Optional.of(SkinProperty.of(property.getValue(), property.getSignature()));
     }
 
+    private <T> T requestHedged(HedgedRequestExecutor.ProviderCall<T> ashcon,
+                                HedgedRequestExecutor.ProviderCall<T> mojang,
+                                HedgedRequestExecutor.ProviderCall<T> mineTools) throws DataRequestException {
+        Map<MetricsCounter.Service, HedgedRequestExecutor.ProviderCall<T>> calls = new LinkedHashMap<>();
+        calls.put(MetricsCounter.Service.ASHCON, ashcon);
+        calls.put(MetricsCounter.Service.MOJANG, mojang);
+        calls.put(MetricsCounter.Service.MINE_TOOLS, mineTools);
+
+        return hedgedRequestExecutor.execute(calls);
+    }
+
     private HttpResponse readURL(URI uri, MetricsCounter.Service service) throws DataRequestException {
         return readURL(uri, service, 5_000);
     }
 
     private HttpResponse readURL(URI uri, MetricsCounter.Service service, int timeout) throws DataRequestException {
+        return readURL(uri, service, null, timeout);
+    }
+
+    private HttpResponse readURL(URI uri, MetricsCounter.Service service, HttpClient.RequestBody requestBody, int timeout) throws DataRequestException {
+        if (!circuitBreakers.tryAcquire(service)) {
+            throw new DataRequestExceptionShared("Skipped " + service + ", its circuit breaker is open");
+        }
+
         metricsCounter.increment(service);
 
+        boolean success = false;
         try {
-            return httpClient.execute(
+            HttpResponse response = httpClient.execute(
                     uri,
-                    null,
+                    requestBody,
                     HttpClient.HttpType.JSON,
                     plugin.getUserAgent(),
-                    HttpClient.HttpMethod.GET,
+                    requestBody == null ? HttpClient.HttpMethod.GET : HttpClient.HttpMethod.POST,
                     Collections.emptyMap(),
                     timeout
             );
+
+            // Rate limits and server errors count against the provider, other answers show it is up
+            success = response.statusCode() != 429 && response.statusCode() < 500;
+            return response;
         } catch (IOException e) {
             logger.debug("Error while reading URL: " + uri, e);
             throw new DataRequestExceptionShared(e);
+        } finally {
+            if (success) {
+                circuitBreakers.recordSuccess(service);
+            } else {
+                circuitBreakers.recordFailure(service);
+            }
         }
     }
 }
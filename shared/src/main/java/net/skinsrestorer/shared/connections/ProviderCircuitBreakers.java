@@ -0,0 +1,151 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.connections;
+
+import ch.jalu.configme.SettingsManager;
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.shared.config.APIConfig;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.utils.MetricsCounter;
+
+import javax.inject.Inject;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One circuit breaker per provider. A provider that keeps failing is opened and skipped,
+ * until the probe interval passed and a single request is let through to test it.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class ProviderCircuitBreakers {
+    private final SettingsManager settings;
+    private final SRLogger logger;
+    private final Map<MetricsCounter.Service, Breaker> breakers = new EnumMap<>(MetricsCounter.Service.class);
+
+    /**
+     * Called before each request. Moves an open breaker to half-open when it is time for a probe.
+     *
+     * @return Whether the request may be sent
+     */
+    public boolean tryAcquire(MetricsCounter.Service service) {
+        if (isDisabled()) {
+            return true;
+        }
+
+        Breaker breaker = getBreaker(service);
+        synchronized (breaker) {
+            if (breaker.state == State.CLOSED) {
+                return true;
+            }
+
+            if (!isProbeDue(breaker)) {
+                return false;
+            }
+
+            breaker.state = State.HALF_OPEN;
+            breaker.changedAt = System.currentTimeMillis();
+            logger.debug("Probing %s after its circuit breaker opened".formatted(service));
+            return true;
+        }
+    }
+
+    /**
+     * Same as {@link #tryAcquire(MetricsCounter.Service)}, but without changing the breaker.
+     */
+    public boolean isCallPermitted(MetricsCounter.Service service) {
+        if (isDisabled()) {
+            return true;
+        }
+
+        Breaker breaker = getBreaker(service);
+        synchronized (breaker) {
+            return breaker.state == State.CLOSED || isProbeDue(breaker);
+        }
+    }
+
+    public void recordSuccess(MetricsCounter.Service service) {
+        Breaker breaker = getBreaker(service);
+        synchronized (breaker) {
+            breaker.consecutiveFailures = 0;
+            if (breaker.state != State.CLOSED) {
+                breaker.state = State.CLOSED;
+                breaker.changedAt = System.currentTimeMillis();
+                logger.info("%s is reachable again, closed its circuit breaker".formatted(service));
+            }
+        }
+    }
+
+    public void recordFailure(MetricsCounter.Service service) {
+        int threshold = settings.getProperty(APIConfig.CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+        Breaker breaker = getBreaker(service);
+        synchronized (breaker) {
+            breaker.consecutiveFailures++;
+            if (breaker.state == State.HALF_OPEN
+                    || (breaker.state == State.CLOSED && threshold > 0 && breaker.consecutiveFailures >= threshold)) {
+                if (breaker.state == State.CLOSED) {
+                    logger.warning("%s failed %d times in a row, skipping it for %d seconds".formatted(
+                            service, breaker.consecutiveFailures, settings.getProperty(APIConfig.CIRCUIT_BREAKER_PROBE_INTERVAL)));
+                }
+
+                breaker.state = State.OPEN;
+                breaker.changedAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    public State getState(MetricsCounter.Service service) {
+        Breaker breaker = getBreaker(service);
+        synchronized (breaker) {
+            return breaker.state;
+        }
+    }
+
+    public int getConsecutiveFailures(MetricsCounter.Service service) {
+        Breaker breaker = getBreaker(service);
+        synchronized (breaker) {
+            return breaker.consecutiveFailures;
+        }
+    }
+
+    private boolean isDisabled() {
+        return settings.getProperty(APIConfig.CIRCUIT_BREAKER_FAILURE_THRESHOLD) <= 0;
+    }
+
+    private boolean isProbeDue(Breaker breaker) {
+        // Also lets a new probe through if the previous one never reported back
+        long probeInterval = TimeUnit.SECONDS.toMillis(settings.getProperty(APIConfig.CIRCUIT_BREAKER_PROBE_INTERVAL));
+        return System.currentTimeMillis() - breaker.changedAt >= probeInterval;
+    }
+
+    private synchronized Breaker getBreaker(MetricsCounter.Service service) {
+        return breakers.computeIfAbsent(service, k -> new Breaker());
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static class Breaker {
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long changedAt;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.connections;
+
+import lombok.NoArgsConstructor;
+import net.skinsrestorer.shared.utils.MetricsCounter;
+
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling window of request latency and outcome per provider.
+ * Only the last {@value #WINDOW_SIZE} requests of the last ten minutes count,
+ * so a provider that recovers climbs back up the ranking.
+ */
+@NoArgsConstructor(onConstructor_ = @Inject)
+public class ProviderStats {
+    private static final int WINDOW_SIZE = 50;
+    private static final long WINDOW_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // Assumed for providers without recent requests, so they still get picked now and then
+    private static final long UNKNOWN_LATENCY_MILLIS = 1_000;
+    private static final double ERROR_PENALTY = 4;
+    private final Map<MetricsCounter.Service, Window> windows = new EnumMap<>(MetricsCounter.Service.class);
+
+    public void record(MetricsCounter.Service service, long latencyMillis, boolean success) {
+        getWindow(service).add(System.currentTimeMillis(), latencyMillis, success);
+    }
+
+    /**
+     * @return 95th percentile latency of recent requests, or an assumed latency if there were none
+     */
+    public long getP95(MetricsCounter.Service service) {
+        return getWindow(service).snapshot(System.currentTimeMillis()).p95();
+    }
+
+    public double getErrorRate(MetricsCounter.Service service) {
+        return getWindow(service).snapshot(System.currentTimeMillis()).errorRate();
+    }
+
+    /**
+     * Sorts providers by expected latency, where failing providers count as slower.
+     * Providers with the same score keep their given order.
+     */
+    public List<MetricsCounter.Service> rank(Collection<MetricsCounter.Service> services) {
+        long now = System.currentTimeMillis();
+        Map<MetricsCounter.Service, Double> scores = new EnumMap<>(MetricsCounter.Service.class);
+        for (MetricsCounter.Service service : services) {
+            Snapshot snapshot = getWindow(service).snapshot(now);
+            scores.put(service, snapshot.p95() * (1 + ERROR_PENALTY * snapshot.errorRate()));
+        }
+
+        List<MetricsCounter.Service> ranked = new ArrayList<>(services);
+        ranked.sort(Comparator.comparingDouble(scores::get));
+        return ranked;
+    }
+
+    private synchronized Window getWindow(MetricsCounter.Service service) {
+        return windows.computeIfAbsent(service, k -> new Window());
+    }
+
+    private record Snapshot(long p95, double errorRate) {
+    }
+
+    private static class Window {
+        private final long[] times = new long[WINDOW_SIZE];
+        private final long[] latencies = new long[WINDOW_SIZE];
+        private final boolean[] successes = new boolean[WINDOW_SIZE];
+        private int next;
+        private int size;
+
+        private synchronized void add(long time, long latencyMillis, boolean success) {
+            times[next] = time;
+            latencies[next] = latencyMillis;
+            successes[next] = success;
+            next = (next + 1) % WINDOW_SIZE;
+            size = Math.min(size + 1, WINDOW_SIZE);
+        }
+
+        private synchronized Snapshot snapshot(long now) {
+            long[] recent = new long[size];
+            int count = 0;
+            int errors = 0;
+            for (int i = 0; i < size; i++) {
+                if (now - times[i] > WINDOW_AGE_MILLIS) {
+                    continue;
+                }
+
+                recent[count++] = latencies[i];
+                if (!successes[i]) {
+                    errors++;
+                }
+            }
+
+            if (count == 0) {
+                return new Snapshot(UNKNOWN_LATENCY_MILLIS, 0);
+            }
+
+            Arrays.sort(recent, 0, count);
+            return new Snapshot(recent[(int) Math.ceil(count * 0.95) - 1], (double) errors / count);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import lombok.RequiredArgsConstructor;
 import net.skinsrestorer.api.exception.DataRequestException;
 import net.skinsrestorer.api.property.MojangSkinDataResult;
 import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.shared.utils.MetricsCounter;
 import net.skinsrestorer.shared.utils.SRHelpers;
 
 import javax.inject.Inject;
@@ -39,7 +40,16 @@ public class ServiceCheckerService {
     private static final String MESSAGE_ERROR_EXCEPTION = "%s <red>✘ Error getting %s: %s";
     private static final String UUID_MESSAGE = "%s <green>✔ %s UUID: <aqua>%s";
     private static final String PROFILE_MESSAGE = "%s <green>✔ %s Profile: <aqua>%s";
+    private static final String BREAKER_CLOSED_MESSAGE = "%s <green>✔ Circuit breaker closed";
+    private static final String BREAKER_OPEN_MESSAGE = "%s <red>✘ Circuit breaker open, skipped after %d failures";
+    private static final String BREAKER_HALF_OPEN_MESSAGE = "%s <yellow>⚠ Circuit breaker half-open, probing";
+    private static final Map<MetricsCounter.Service, String> BREAKER_SERVICES = Map.of(
+            MetricsCounter.Service.ASHCON, "Ashcon",
+            MetricsCounter.Service.MOJANG, "Mojang",
+            MetricsCounter.Service.MINE_TOOLS, "MineTools"
+    );
     private final MojangAPIImpl mojangAPI;
+    private final ProviderCircuitBreakers circuitBreakers;
 
     public ServiceCheckResponse checkServices() {
         ServiceCheckResponse response = new ServiceCheckResponse();
@@ -112,12 +122,24 @@ public class ServiceCheckerService {
         } catch (DataRequestException e) {
             response.addResult(String.format(MESSAGE_ERROR_EXCEPTION, "MineTools", "Profile", e.getMessage()));
         }
+
+        // ##### Circuit breakers, after the requests above updated them #####
+        for (MetricsCounter.Service service : List.of(MetricsCounter.Service.ASHCON, MetricsCounter.Service.MOJANG, MetricsCounter.Service.MINE_TOOLS)) {
+            String name = BREAKER_SERVICES.get(service);
+            response.addCircuitBreaker(switch (circuitBreakers.getState(service)) {
+                case CLOSED -> String.format(BREAKER_CLOSED_MESSAGE, name);
+                case OPEN -> String.format(BREAKER_OPEN_MESSAGE, name, circuitBreakers.getConsecutiveFailures(service));
+                case HALF_OPEN -> String.format(BREAKER_HALF_OPEN_MESSAGE, name);
+            });
+        }
+
         return response;
     }
 
     @Getter
     public static class ServiceCheckResponse {
         private final List<String> results = new LinkedList<>();
+        private final List<String> circuitBreakers = new LinkedList<>();
         private int workingUUID = 0;
         private int workingProfile = 0;
 
@@ -125,6 +147,10 @@ public class ServiceCheckerService {
             results.add(result);
         }
 
+        private void addCircuitBreaker(String circuitBreaker) {
+            circuitBreakers.add(circuitBreaker);
+        }
+
         private void incrementWorkingUUID() {
             workingUUID++;
         }
@@ -0,0 +1,236 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.connections.http;
+
+import ch.jalu.configme.SettingsManager;
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.shared.config.APIConfig;
+import net.skinsrestorer.shared.log.SRLogger;
+
+import javax.inject.Inject;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token bucket per host, sized by {@link APIConfig#RATE_LIMIT_BUCKETS}.
+ * Requests wait for a token instead of failing, and waiting requests are served by {@link RequestPriority} first.
+ * A 429 or 503 response blocks the host for as long as its Retry-After header asks.
+ * Hosts without a configured bucket are not paced, but still honor Retry-After.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class HostRateLimiter {
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+    private final SettingsManager settings;
+    private final SRLogger logger;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private List<String> parsedConfig;
+    private Map<String, Limit> limits = Map.of();
+
+    /**
+     * Blocks until the host of the uri has a token for the current thread's priority.
+     */
+    public void acquire(URI uri) throws InterruptedIOException {
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        Limit limit = getLimits().get(host);
+        Bucket bucket = buckets.computeIfAbsent(host, k -> new Bucket());
+        RequestPriority priority = RequestPriority.current();
+
+        synchronized (bucket) {
+            Waiter waiter = new Waiter(priority, bucket.nextSequence++);
+            bucket.waiters.add(waiter);
+            long start = System.currentTimeMillis();
+            boolean waited = false;
+            try {
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    bucket.refill(limit, now);
+
+                    long waitMillis;
+                    if (bucket.waiters.peek() != waiter) {
+                        waitMillis = 0; // Until the waiter in front took its token
+                    } else if (now < bucket.blockedUntil) {
+                        waitMillis = bucket.blockedUntil - now;
+                    } else if (limit == null || bucket.tokens >= 1) {
+                        if (limit != null) {
+                            bucket.tokens--;
+                        }
+
+                        bucket.waiters.poll();
+                        bucket.notifyAll();
+                        if (waited) {
+                            logger.debug("Waited %dms for a %s request to %s".formatted(now - start, priority, host));
+                        }
+
+                        return;
+                    } else {
+                        waitMillis = Math.max(1, (long) Math.ceil((1 - bucket.tokens) / limit.tokensPerMilli()));
+                    }
+
+                    bucket.wait(waitMillis);
+                    waited = true;
+                }
+            } catch (InterruptedException e) {
+                bucket.waiters.remove(waiter);
+                bucket.notifyAll();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request to " + host);
+            }
+        }
+    }
+
+    /**
+     * Feeds a response back into the bucket of its host.
+     */
+    public void onResponse(URI uri, HttpResponse response) {
+        if (response.statusCode() != 429 && response.statusCode() != 503) {
+            return;
+        }
+
+        Optional<Duration> retryAfter = getRetryAfter(response.headers());
+        if (retryAfter.isEmpty() && response.statusCode() != 429) {
+            return;
+        }
+
+        delay(uri, retryAfter.orElse(DEFAULT_RETRY_AFTER));
+    }
+
+    /**
+     * Holds back all requests to the host of the uri, for example when a response body asks for a delay.
+     */
+    public void delay(URI uri, Duration delay) {
+        Bucket bucket = buckets.computeIfAbsent(uri.getHost().toLowerCase(Locale.ROOT), k -> new Bucket());
+        synchronized (bucket) {
+            long now = System.currentTimeMillis();
+            bucket.blockedUntil = Math.max(bucket.blockedUntil, now + delay.toMillis());
+            // Start refilling from empty once the block is over
+            bucket.tokens = 0;
+            bucket.lastRefill = bucket.blockedUntil;
+            bucket.notifyAll();
+        }
+
+        logger.debug("Rate limited by %s, holding back requests for %dms".formatted(uri.getHost(), delay.toMillis()));
+    }
+
+    private static Optional<Duration> getRetryAfter(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!"Retry-After".equalsIgnoreCase(header.getKey()) || header.getValue().isEmpty()) {
+                continue;
+            }
+
+            String value = header.getValue().get(0).trim();
+            try {
+                return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value))));
+            } catch (NumberFormatException ignored) {
+                // Not seconds, so it has to be a date
+            }
+
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+                return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+            } catch (DateTimeParseException e) {
+                return Optional.empty();
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private synchronized Map<String, Limit> getLimits() {
+        List<String> config = settings.getProperty(APIConfig.RATE_LIMIT_BUCKETS);
+        if (config.equals(parsedConfig)) {
+            return limits;
+        }
+
+        Map<String, Limit> parsed = new HashMap<>();
+        for (String entry : config) {
+            Optional<Map.Entry<String, Limit>> limit = parseLimit(entry);
+            if (limit.isPresent()) {
+                parsed.put(limit.get().getKey(), limit.get().getValue());
+            } else {
+                logger.warning("Invalid rate limit '%s', expected host=requests/seconds".formatted(entry));
+            }
+        }
+
+        parsedConfig = List.copyOf(config);
+        limits = parsed;
+        return limits;
+    }
+
+    private static Optional<Map.Entry<String, Limit>> parseLimit(String entry) {
+        String[] hostAndRate = entry.split("=", 2);
+        if (hostAndRate.length != 2) {
+            return Optional.empty();
+        }
+
+        String[] rate = hostAndRate[1].split("/", 2);
+        if (rate.length != 2) {
+            return Optional.empty();
+        }
+
+        try {
+            int requests = Integer.parseInt(rate[0].trim());
+            int seconds = Integer.parseInt(rate[1].trim());
+            if (requests <= 0 || seconds <= 0) {
+                return Optional.empty();
+            }
+
+            return Optional.of(Map.entry(hostAndRate[0].trim().toLowerCase(Locale.ROOT), new Limit(requests, seconds)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private record Limit(int requests, int seconds) {
+        private double tokensPerMilli() {
+            return (double) requests / (seconds * 1000L);
+        }
+    }
+
+    private record Waiter(RequestPriority priority, long sequence) {
+    }
+
+    private static class Bucket {
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+                Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+        private long nextSequence;
+        private double tokens = -1;
+        private long lastRefill;
+        private long blockedUntil;
+
+        private void refill(Limit limit, long now) {
+            if (limit == null) {
+                return;
+            }
+
+            if (tokens < 0) {
+                tokens = limit.requests();
+            } else {
+                tokens = Math.min(limit.requests(), tokens + Math.max(0, now - lastRefill) * limit.tokensPerMilli());
+            }
+
+            lastRefill = Math.max(lastRefill, now);
+        }
+    }
+}
@@ -38,6 +38,7 @@ import java.util.Map;
 public class HttpClient {
     private final SRLogger logger;
     private final SettingsManager settings;
+    private final HostRateLimiter rateLimiter;
 
     public HttpResponse execute(URI uri, RequestBody requestBody, HttpType accepts,
                                 String userAgent, HttpMethod method,
@@ -46,7 +47,6 @@ public class HttpClient {
             throw new IOException("Connections are disabled.");
         }
 
-        long start = System.currentTimeMillis();
         URL url = uri.toURL();
 
         // Ensure we're never sending a request to a non-HTTPS URL.
@@ -54,6 +54,10 @@ public class HttpClient {
             throw new IOException("Only HTTPS is supported.");
         }
 
+        // Waiting for a token is not part of the request time
+        rateLimiter.acquire(uri);
+        long start = System.currentTimeMillis();
+
         HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
         connection.setRequestMethod(method.name());
         connection.setConnectTimeout(timeout);
@@ -106,6 +110,8 @@ public class HttpClient {
                 connection.getHeaderFields()
         );
 
+        rateLimiter.onResponse(uri, response);
+
         logger.debug("Response body: " + response.body()
                 .replace("\n", "")
                 .replace("\r", ""));
@@ -0,0 +1,54 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.connections.http;
+
+/**
+ * Priority of the outbound requests made by the current thread, used by {@link HostRateLimiter}
+ * to decide who gets the next token of a busy host. Declared from highest to lowest priority.
+ * Threads that never entered a priority count as {@link #COMMAND}.
+ */
+public enum RequestPriority {
+    LOGIN,
+    COMMAND,
+    BACKGROUND;
+
+    private static final ThreadLocal<RequestPriority> CURRENT = ThreadLocal.withInitial(() -> COMMAND);
+
+    public static RequestPriority current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this the priority of the current thread until the returned scope is closed.
+     * Work handed to other threads has to carry the priority over itself.
+     */
+    public Scope enter() {
+        RequestPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> CURRENT.set(previous);
+    }
+
+    public boolean isHigherThan(RequestPriority other) {
+        return ordinal() < other.ordinal();
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -53,6 +53,7 @@ public class DumpInfo {
     public static class PluginInfo {
         private final Boolean proxyMode;
         private final JsonObject configData;
+        private final JsonObject statistics;
     }
 
     // Helps to figure out OS-specific issues
@@ -21,6 +21,7 @@ import lombok.RequiredArgsConstructor;
 import net.skinsrestorer.api.exception.DataRequestException;
 import net.skinsrestorer.api.property.SkinProperty;
 import net.skinsrestorer.api.storage.PlayerStorage;
+import net.skinsrestorer.shared.connections.http.RequestPriority;
 import net.skinsrestorer.shared.log.SRLogger;
 import org.geysermc.floodgate.api.event.skin.SkinApplyEvent;
 import org.geysermc.floodgate.api.player.FloodgatePlayer;
@@ -38,7 +39,7 @@ public class FloodgateListener implements Consumer<SkinApplyEvent> {
     public void accept(SkinApplyEvent event) {
         FloodgatePlayer floodgatePlayer = event.player();
         logger.debug("Handling Floodgate skin apply for " + floodgatePlayer.getCorrectUsername() + " (" + floodgatePlayer.getCorrectUniqueId() + ")");
-        try {
+        try (RequestPriority.Scope ignored = RequestPriority.LOGIN.enter()) {
             Optional<SkinProperty> optional =
                     playerStorage.getSkinForPlayer(floodgatePlayer.getCorrectUniqueId(), floodgatePlayer.getCorrectUsername(), true);
 
@@ -0,0 +1,50 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.gui;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Remembers where each GUI page of a viewer ended, so the following page can be loaded by key
+ * instead of making the storage skip over every previous page.
+ */
+public class GUIPageCursors {
+    private static final int MAX_VIEWERS = 1000;
+    private final Map<UUID, Map<Integer, GUISkinCursor>> cursors = new LinkedHashMap<>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Map<Integer, GUISkinCursor>> eldest) {
+            return size() > MAX_VIEWERS;
+        }
+    };
+
+    public synchronized Optional<GUISkinCursor> getPageStart(UUID viewer, int page) {
+        Map<Integer, GUISkinCursor> pages = cursors.get(viewer);
+        return pages == null ? Optional.empty() : Optional.ofNullable(pages.get(page));
+    }
+
+    /**
+     * Stores the cursor the page after {@code page} starts at.
+     */
+    public synchronized void setNextPageStart(UUID viewer, int page, GUISkinCursor cursor) {
+        cursors.computeIfAbsent(viewer, k -> new HashMap<>()).put(page + 1, cursor);
+    }
+}
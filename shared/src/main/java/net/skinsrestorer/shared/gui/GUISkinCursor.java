@@ -0,0 +1,35 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.gui;
+
+import net.skinsrestorer.api.property.SkinType;
+
+import java.util.Locale;
+
+/**
+ * Sort key of the last skin shown on a GUI page.
+ * GUI skins are ordered by name, then by type and then by their key, as several players can share a last known name.
+ * The next page starts right after this key.
+ *
+ * @param key Unique key of the skin within its type, the player's UUID for player skins and the skin name for custom skins
+ */
+public record GUISkinCursor(String name, SkinType type, String key) {
+    public String typeName() {
+        return type.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -23,25 +23,35 @@ import net.skinsrestorer.shared.listeners.event.ClickEventInfo;
 import net.skinsrestorer.shared.plugin.SRServerAdapter;
 import net.skinsrestorer.shared.storage.SkinStorageImpl;
 import net.skinsrestorer.shared.subjects.SRCommandSender;
-import net.skinsrestorer.shared.subjects.SRForeign;
+import net.skinsrestorer.shared.subjects.SRPlayer;
 import net.skinsrestorer.shared.subjects.SRServerPlayer;
 
 import javax.inject.Inject;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class SharedGUI {
     public static final int HEAD_COUNT_PER_PAGE = 36;
     private final SkinStorageImpl skinStorage;
+    private final GUIPageCursors pageCursors;
 
-    public <T> T createGUI(GUIManager<T> manager, Consumer<ClickEventInfo> callback, SRForeign player, int page) {
+    public <T> CompletableFuture<T> createGUI(GUIManager<T> manager, Consumer<ClickEventInfo> callback, SRPlayer player, int page) {
         if (page > 999) {
             page = 999;
         }
 
         int skinNumber = HEAD_COUNT_PER_PAGE * page;
+        GUISkinCursor cursor = page == 0 ? null : pageCursors.getPageStart(player.getUniqueId(), page).orElse(null);
 
-        return manager.createGUI(callback, player, page, skinStorage.getGUISkins(skinNumber));
+        int finalPage = page;
+        return skinStorage.getGUISkinsAsync(skinNumber, cursor).thenApply(skinPage -> {
+            if (skinPage.next() != null) {
+                pageCursors.setNextPageStart(player.getUniqueId(), finalPage, skinPage.next());
+            }
+
+            return manager.createGUI(callback, player, finalPage, skinPage.skins());
+        });
     }
 
     @RequiredArgsConstructor(onConstructor_ = @Inject)
@@ -19,23 +19,22 @@ package net.skinsrestorer.shared.listeners;
 
 import ch.jalu.configme.SettingsManager;
 import lombok.RequiredArgsConstructor;
-import net.skinsrestorer.api.exception.DataRequestException;
 import net.skinsrestorer.api.property.SkinProperty;
-import net.skinsrestorer.api.storage.PlayerStorage;
 import net.skinsrestorer.shared.config.AdvancedConfig;
 import net.skinsrestorer.shared.config.LoginConfig;
 import net.skinsrestorer.shared.listeners.event.SRLoginProfileEvent;
 import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.storage.PlayerStorageImpl;
 import net.skinsrestorer.shared.storage.adapter.AdapterReference;
-import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 
 import javax.inject.Inject;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public final class LoginProfileListenerAdapter<R> {
     private final SettingsManager settings;
-    private final PlayerStorage playerStorage;
+    private final PlayerStorageImpl playerStorage;
     private final SRLogger logger;
     private final AdapterReference adapterReference;
 
@@ -45,27 +44,25 @@ public final class LoginProfileListenerAdapter<R> {
             return null;
         }
 
-        return event.runAsync(() -> {
-            try {
-                handleAsync(event).ifPresent(event::setResultProperty);
-            } catch (DataRequestException e) {
-                logger.debug(e);
-            }
-        });
+        return event.runAsyncFuture(() -> handleAsync(event)
+                .thenAccept(property -> property.ifPresent(event::setResultProperty))
+                .exceptionally(throwable -> {
+                    logger.debug(throwable);
+                    return null;
+                }));
     }
 
     private boolean handleSync(SRLoginProfileEvent<R> event) {
         return settings.getProperty(AdvancedConfig.DISABLE_ON_JOIN_SKINS) || (settings.getProperty(LoginConfig.NO_SKIN_IF_LOGIN_CANCELED) && event.isCancelled());
     }
 
-    private Optional<SkinProperty> handleAsync(SRLoginProfileEvent<R> event) throws DataRequestException {
-        try {
-            adapterReference.get().migrateLegacyPlayer(event.getPlayerName(), event.getPlayerUniqueId());
-        } catch (StorageAdapter.StorageException e) {
-            logger.severe("There was a bug while migrating a legacy player to the new format, " +
-                    "contact us on discord and provide this error message:", e);
-        }
-
-        return playerStorage.getSkinForPlayer(event.getPlayerUniqueId(), event.getPlayerName(), event.hasOnlineProperties());
+    private CompletableFuture<Optional<SkinProperty>> handleAsync(SRLoginProfileEvent<R> event) {
+        return adapterReference.getAsyncAdapter().migrateLegacyPlayer(event.getPlayerName(), event.getPlayerUniqueId())
+                .exceptionally(throwable -> {
+                    logger.severe("There was a bug while migrating a legacy player to the new format, " +
+                            "contact us on discord and provide this error message:", throwable);
+                    return null;
+                })
+                .thenCompose(ignored -> playerStorage.getSkinForPlayerAsync(event.getPlayerUniqueId(), event.getPlayerName(), event.hasOnlineProperties()));
     }
 }
@@ -20,6 +20,8 @@ package net.skinsrestorer.shared.listeners.event;
 import net.skinsrestorer.api.property.SkinProperty;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public interface SRLoginProfileEvent<R> {
     boolean hasOnlineProperties();
@@ -33,4 +35,12 @@ public interface SRLoginProfileEvent<R> {
     void setResultProperty(SkinProperty property);
 
     R runAsync(Runnable runnable);
+
+    /**
+     * Holds the login until the future of the task completes.
+     * Platforms that can suspend an event on a future should override this, so no thread waits for the result.
+     */
+    default R runAsyncFuture(Supplier<CompletableFuture<?>> task) {
+        return runAsync(() -> task.get().join());
+    }
 }
@@ -52,11 +52,21 @@ import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.storage.CacheStorageImpl;
 import net.skinsrestorer.shared.storage.CooldownStorage;
 import net.skinsrestorer.shared.storage.PlayerStorageImpl;
+import net.skinsrestorer.shared.storage.SkinAccessTracker;
+import net.skinsrestorer.shared.storage.SkinGarbageCollector;
 import net.skinsrestorer.shared.storage.SkinStorageImpl;
 import net.skinsrestorer.shared.storage.adapter.AdapterReference;
+import net.skinsrestorer.shared.storage.adapter.AsyncStorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.CachedStorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.ExecutorStorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.LocalStorageType;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 import net.skinsrestorer.shared.storage.adapter.file.FileAdapter;
+import net.skinsrestorer.shared.storage.adapter.log.LogAdapter;
 import net.skinsrestorer.shared.storage.adapter.mysql.MySQLAdapter;
 import net.skinsrestorer.shared.storage.adapter.mysql.MySQLProvider;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLWriteQueue;
+import net.skinsrestorer.shared.storage.adapter.sqlite.SQLiteAdapter;
 import net.skinsrestorer.shared.subjects.SRPlayer;
 import net.skinsrestorer.shared.subjects.SRProxyPlayer;
 import net.skinsrestorer.shared.subjects.messages.Message;
@@ -117,6 +127,8 @@ public class SRPlugin {
         registerConditions(manager);
 
         adapter.runRepeatAsync(injector.getSingleton(CooldownStorage.class)::cleanup, 60, 60, TimeUnit.SECONDS);
+        adapter.runRepeatAsync(injector.getSingleton(SkinGarbageCollector.class)::runScheduled, 1, 1, TimeUnit.HOURS);
+        adapter.runRepeatAsync(injector.getSingleton(SkinAccessTracker.class)::runScheduled, 30, 30, TimeUnit.SECONDS);
 
         manager.registerCommand(injector.newInstance(SRCommand.class));
 
@@ -288,7 +300,13 @@ public class SRPlugin {
         // Initialise SkinStorage
         SkinStorageImpl skinStorage = injector.getSingleton(SkinStorageImpl.class);
         SettingsManager settings = injector.getSingleton(SettingsManager.class);
+
+        // Write out anything queued by the previous storage before replacing it
+        drainWriteQueue();
+
         try {
+            StorageAdapter storageAdapter;
+            int storageThreads;
             if (settings.getProperty(DatabaseConfig.MYSQL_ENABLED)) {
                 MySQLProvider mySQLProvider = injector.getSingleton(MySQLProvider.class);
 
@@ -300,9 +318,39 @@ public class SRPlugin {
 
                 logger.info("Connected to MySQL!");
 
-                injector.getSingleton(AdapterReference.class).setAdapter(adapter);
+                storageAdapter = adapter;
+                // More threads than connections would only wait for the pool
+                storageThreads = settings.getProperty(DatabaseConfig.MYSQL_MAX_POOL_SIZE);
+            } else if (settings.getProperty(StorageConfig.LOCAL_STORAGE_TYPE) == LocalStorageType.LOG) {
+                LogAdapter adapter = injector.getSingleton(LogAdapter.class);
+
+                adapter.init();
+
+                storageAdapter = adapter;
+                storageThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            } else if (settings.getProperty(StorageConfig.LOCAL_STORAGE_TYPE) == LocalStorageType.SQLITE && sqliteDriverPresent()) {
+                SQLiteAdapter adapter = injector.getSingleton(SQLiteAdapter.class);
+
+                adapter.init();
+
+                storageAdapter = adapter;
+                // One more than the readers, so a write does not hold up all reads
+                storageThreads = Math.max(1, settings.getProperty(StorageConfig.SQLITE_READER_POOL_SIZE)) + 1;
             } else {
-                injector.getSingleton(AdapterReference.class).setAdapter(injector.getSingleton(FileAdapter.class));
+                storageAdapter = injector.getSingleton(FileAdapter.class);
+                storageThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            }
+
+            if (settings.getProperty(StorageConfig.CACHE_ENABLED)) {
+                storageAdapter = new CachedStorageAdapter(storageAdapter, settings);
+            }
+
+            AdapterReference adapterReference = injector.getSingleton(AdapterReference.class);
+            AsyncStorageAdapter previousAsyncAdapter = adapterReference.getAsyncAdapter();
+            adapterReference.setAdapter(storageAdapter);
+            adapterReference.setAsyncAdapter(new ExecutorStorageAdapter(storageAdapter, storageThreads));
+            if (previousAsyncAdapter != null) {
+                previousAsyncAdapter.shutdown();
             }
 
             // Preload default skins
@@ -313,6 +361,18 @@ public class SRPlugin {
         }
     }
 
+    /**
+     * The SQLite driver is not shaded, it comes with the server. Spigot and Paper bundle one, proxies do not.
+     */
+    private boolean sqliteDriverPresent() {
+        if (ReflectionUtil.classExists("org.sqlite.JDBC")) {
+            return true;
+        }
+
+        logger.warning("SQLITE storage needs the SQLite driver of the server, which this platform does not provide. Falling back to FILE storage.");
+        return false;
+    }
+
     public void initUpdateCheck(UpdateCheckInit.InitCause cause) {
         if (updaterInitialized) {
             return;
@@ -474,7 +534,38 @@ public class SRPlugin {
         return String.format(USER_AGENT, BuildData.VERSION, adapter.getPlatform());
     }
 
+    private void drainWriteQueue() {
+        MySQLWriteQueue writeQueue = injector.getIfAvailable(MySQLWriteQueue.class);
+        if (writeQueue != null) {
+            writeQueue.shutdown();
+        }
+    }
+
+    private void closeLocalStorage() {
+        LogAdapter logAdapter = injector.getIfAvailable(LogAdapter.class);
+        if (logAdapter != null) {
+            logAdapter.close();
+        }
+
+        SQLiteAdapter sqliteAdapter = injector.getIfAvailable(SQLiteAdapter.class);
+        if (sqliteAdapter != null) {
+            sqliteAdapter.close();
+        }
+    }
+
     public void shutdown() {
+        AdapterReference adapterReference = injector.getIfAvailable(AdapterReference.class);
+        if (adapterReference != null && adapterReference.getAsyncAdapter() != null) {
+            adapterReference.getAsyncAdapter().shutdown();
+        }
+
+        SkinAccessTracker accessTracker = injector.getIfAvailable(SkinAccessTracker.class);
+        if (accessTracker != null) {
+            accessTracker.flush();
+        }
+
+        drainWriteQueue();
+        closeLocalStorage();
         adapter.shutdownCleanup();
         shutdownHooks.forEach(Runnable::run);
     }
@@ -20,6 +20,9 @@ package net.skinsrestorer.shared.plugin;
 import lombok.RequiredArgsConstructor;
 import net.skinsrestorer.api.property.SkinProperty;
 import net.skinsrestorer.shared.exception.InitializeException;
+import net.skinsrestorer.shared.gui.GUIPageCursors;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.SharedGUI;
 import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.storage.SkinStorageImpl;
 import net.skinsrestorer.shared.subjects.SRProxyPlayer;
@@ -30,16 +33,32 @@ import javax.inject.Inject;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Map;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class SRProxyPlugin {
     private final SRLogger logger;
     private final SRPlugin plugin;
+    private final GUIPageCursors pageCursors;
 
     public void sendPage(int page, SRProxyPlayer player, SkinStorageImpl skinStorage) {
-        int skinNumber = 36 * page;
+        int skinNumber = SharedGUI.HEAD_COUNT_PER_PAGE * page;
+        GUISkinCursor cursor = page == 0 ? null : pageCursors.getPageStart(player.getUniqueId(), page).orElse(null);
 
-        byte[] ba = MessageProtocolUtil.convertToByteArray(skinStorage.getGUISkins(skinNumber));
+        skinStorage.getGUISkinsAsync(skinNumber, cursor).thenAccept(skinPage -> {
+            if (skinPage.next() != null) {
+                pageCursors.setNextPageStart(player.getUniqueId(), page, skinPage.next());
+            }
+
+            sendPage(page, player, skinPage.skins());
+        }).exceptionally(throwable -> {
+            logger.warning("Failed to load GUI skins for " + player.getName(), throwable);
+            return null;
+        });
+    }
+
+    private void sendPage(int page, SRProxyPlayer player, Map<String, String> skins) {
+        byte[] ba = MessageProtocolUtil.convertToByteArray(skins);
 
         ByteArrayOutputStream b = new ByteArrayOutputStream();
         DataOutputStream out = new DataOutputStream(b);
@@ -67,8 +86,14 @@ public class SRProxyPlugin {
     }
 
     public void sendRandomSkins(int amount, SRProxyPlayer player, SkinStorageImpl skinStorage) {
+        skinStorage.getRandomSkinsAsync(amount).thenAccept(skins -> sendRandomSkins(player, skins)).exceptionally(throwable -> {
+            logger.warning("Failed to load random skins for " + player.getName(), throwable);
+            return null;
+        });
+    }
 
-        byte[] ba = MessageProtocolUtil.convertToByteArray(skinStorage.getRandomSkins(amount));
+    private void sendRandomSkins(SRProxyPlayer player, Map<String, String> skins) {
+        byte[] ba = MessageProtocolUtil.convertToByteArray(skins);
 
         ByteArrayOutputStream b = new ByteArrayOutputStream();
         DataOutputStream out = new DataOutputStream(b);
@@ -19,32 +19,38 @@ package net.skinsrestorer.shared.storage;
 
 import ch.jalu.configme.SettingsManager;
 import ch.jalu.injector.Injector;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import net.skinsrestorer.api.exception.DataRequestException;
 import net.skinsrestorer.api.property.MojangSkinDataResult;
 import net.skinsrestorer.api.storage.CacheStorage;
 import net.skinsrestorer.api.storage.SkinStorage;
 import net.skinsrestorer.shared.config.StorageConfig;
-import net.skinsrestorer.shared.connections.MojangAPIImpl;
 import net.skinsrestorer.shared.exception.DataRequestExceptionShared;
 import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.storage.adapter.AdapterReference;
 import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
 import net.skinsrestorer.shared.utils.SRHelpers;
+import net.skinsrestorer.shared.utils.SingleFlight;
 import net.skinsrestorer.shared.utils.ValidationUtil;
 
 import javax.inject.Inject;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class CacheStorageImpl implements CacheStorage {
     private final SRLogger logger;
-    private final MojangAPIImpl mojangAPI;
+    private final UUIDBatchResolver uuidResolver;
     private final SettingsManager settings;
     private final AdapterReference adapterReference;
     private final Injector injector;
+    // Keyed by the lowercased name, so a burst of lookups for one name sends one request and writes the cache once
+    @Getter
+    private final SingleFlight<String, Optional<UUID>> uuidLookups = new SingleFlight<>();
 
     @Override
     public Optional<MojangSkinDataResult> getSkin(String playerName, boolean allowExpired) throws DataRequestException {
@@ -64,12 +70,8 @@ public class CacheStorageImpl implements CacheStorage {
             }
 
             try {
-                Optional<UUID> uuid = mojangAPI.getUUID(playerName);
-
-                adapterReference.get().setCachedUUID(playerName,
-                        MojangCacheData.of(uuid.orElse(null), SRHelpers.getEpochSecond()));
-
-                return uuid;
+                // The resolver writes the cache for the whole batch
+                return uuidLookups.execute(playerName.toLowerCase(Locale.ROOT), () -> uuidResolver.resolve(playerName));
             } catch (DataRequestException e) {
                 logger.debug("Failed to get UUID from Mojang for " + playerName, e);
 
@@ -91,6 +93,11 @@ public class CacheStorageImpl implements CacheStorage {
         return Optional.empty();
     }
 
+    public CompletableFuture<Optional<MojangCacheData>> getCachedDataAsync(String playerName, boolean allowExpired) {
+        return adapterReference.getAsyncAdapter().getCachedUUID(playerName).thenApply(optional ->
+                optional.filter(data -> allowExpired || isValidUUIDTimestamp(data.getTimestamp())));
+    }
+
     private boolean isValidUUIDTimestamp(long epochSecond) {
         int expiresAfter = settings.getProperty(StorageConfig.UUID_EXPIRES_AFTER);
         return expiresAfter <= 0 || SRHelpers.getEpochSecond() - epochSecond <= expiresAfter;
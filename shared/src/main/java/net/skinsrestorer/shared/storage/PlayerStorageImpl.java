@@ -27,17 +27,18 @@ import net.skinsrestorer.api.property.SkinProperty;
 import net.skinsrestorer.api.storage.PlayerStorage;
 import net.skinsrestorer.shared.config.LoginConfig;
 import net.skinsrestorer.shared.config.StorageConfig;
+import net.skinsrestorer.shared.connections.http.RequestPriority;
 import net.skinsrestorer.shared.floodgate.FloodgateUtil;
 import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.plugin.SRPlatformAdapter;
 import net.skinsrestorer.shared.storage.adapter.AdapterReference;
 import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 import net.skinsrestorer.shared.storage.model.player.PlayerData;
 import net.skinsrestorer.shared.utils.SRHelpers;
 
 import javax.inject.Inject;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
@@ -47,6 +48,9 @@ public class PlayerStorageImpl implements PlayerStorage {
     private final CacheStorageImpl cacheStorage;
     private final SRLogger logger;
     private final AdapterReference adapterReference;
+    private final SRPlatformAdapter<?, ?> platformAdapter;
+    private final SkinGarbageCollector garbageCollector;
+    private final SkinAccessTracker accessTracker;
 
     @Override
     public Optional<SkinIdentifier> getSkinIdOfPlayer(UUID uuid) {
@@ -76,6 +80,56 @@ public class PlayerStorageImpl implements PlayerStorage {
             } else {
                 adapterReference.get().setPlayerData(uuid, PlayerData.of(uuid, identifier));
             }
+
+            garbageCollector.markInUse(identifier);
+        } catch (StorageAdapter.StorageException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public CompletableFuture<Optional<SkinIdentifier>> getSkinIdOfPlayerAsync(UUID uuid) {
+        return adapterReference.getAsyncAdapter().getPlayerData(uuid)
+                .thenApply(optional -> optional.map(PlayerData::getSkinIdentifier))
+                .exceptionally(throwable -> {
+                    throwable.printStackTrace();
+                    return Optional.empty();
+                });
+    }
+
+    @Override
+    public Map<UUID, SkinIdentifier> getSkinIdsOfPlayers(Collection<UUID> uuids) {
+        Map<UUID, SkinIdentifier> result = new HashMap<>();
+        try {
+            for (PlayerData playerData : adapterReference.get().getPlayerDataBatch(uuids).values()) {
+                if (playerData.getSkinIdentifier() != null) {
+                    result.put(playerData.getUniqueId(), playerData.getSkinIdentifier());
+                }
+            }
+        } catch (StorageAdapter.StorageException e) {
+            e.printStackTrace();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setSkinIdOfPlayers(Collection<UUID> uuids, SkinIdentifier identifier) {
+        try {
+            Map<UUID, PlayerData> existing = adapterReference.get().getPlayerDataBatch(uuids);
+
+            Map<UUID, PlayerData> updated = new HashMap<>();
+            for (UUID uuid : uuids) {
+                PlayerData playerData = existing.get(uuid);
+                if (playerData != null) {
+                    playerData.setSkinIdentifier(identifier);
+                    updated.put(uuid, playerData);
+                } else {
+                    updated.put(uuid, PlayerData.of(uuid, identifier));
+                }
+            }
+
+            adapterReference.get().setPlayerDataBatch(updated);
+            garbageCollector.markInUse(identifier);
         } catch (StorageAdapter.StorageException e) {
             e.printStackTrace();
         }
@@ -98,7 +152,69 @@ public class PlayerStorageImpl implements PlayerStorage {
 
     @Override
     public Optional<SkinProperty> getSkinOfPlayer(UUID uuid) {
-        return getSkinIdOfPlayer(uuid).flatMap(skinStorage::getSkinDataByIdentifier);
+        Optional<SkinIdentifier> identifier = getSkinIdOfPlayer(uuid);
+        identifier.ifPresent(accessTracker::recordAccess);
+        return identifier.flatMap(skinStorage::getSkinDataByIdentifier);
+    }
+
+    public CompletableFuture<Optional<SkinProperty>> getSkinOfPlayerAsync(UUID uuid) {
+        return getSkinIdOfPlayerAsync(uuid).thenCompose(identifier -> {
+            if (identifier.isEmpty()) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+
+            accessTracker.recordAccess(identifier.get());
+            return skinStorage.getSkinDataByIdentifierAsync(identifier.get());
+        });
+    }
+
+    /**
+     * Non-blocking variant of {@link #getSkinForPlayer(UUID, String, boolean)}.
+     * Storage lookups are chained on the storage executor, only Mojang and default skin requests use a platform async thread.
+     * Used on login, so those requests are sent with {@link RequestPriority#LOGIN}.
+     */
+    public CompletableFuture<Optional<SkinProperty>> getSkinForPlayerAsync(UUID uuid, String playerName, boolean isOnlineMode) {
+        return getSkinOfPlayerAsync(uuid).thenCompose(setSkin -> {
+            if (setSkin.isPresent()) {
+                return CompletableFuture.completedFuture(setSkin);
+            }
+
+            if (FloodgateUtil.isFloodgateBedrockPlayer(uuid)) {
+                logger.debug("Player " + playerName + " is a Floodgate player, not searching for java skin.");
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+
+            if (isOnlineMode && !settings.getProperty(LoginConfig.ALWAYS_APPLY_PREMIUM)) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+
+            boolean defaultSkinsEnabled = settings.getProperty(StorageConfig.DEFAULT_SKINS_ENABLED);
+            if (defaultSkinsEnabled && settings.getProperty(StorageConfig.DEFAULT_SKINS_PREMIUM)) {
+                return getDefaultSkinAsync();
+            }
+
+            return skinStorage.getPlayerSkinAsync(playerName, false, RequestPriority.LOGIN).thenCompose(premiumSkin -> {
+                if (premiumSkin.isPresent()) {
+                    accessTracker.recordAccess(premiumSkin.get().getUniqueId());
+                    return CompletableFuture.completedFuture(premiumSkin.map(MojangSkinDataResult::getSkinProperty));
+                }
+
+                if (defaultSkinsEnabled) {
+                    return getDefaultSkinAsync();
+                }
+
+                return CompletableFuture.completedFuture(Optional.empty());
+            });
+        });
+    }
+
+    private CompletableFuture<Optional<SkinProperty>> getDefaultSkinAsync() {
+        // Default skins may have to be requested from Mojang or MineSkin
+        return CompletableFuture.supplyAsync(() -> {
+            try (RequestPriority.Scope ignored = RequestPriority.LOGIN.enter()) {
+                return getDefaultSkin();
+            }
+        }, platformAdapter::runAsync);
     }
 
     @Override
@@ -126,6 +242,7 @@ public class PlayerStorageImpl implements PlayerStorage {
         Optional<MojangSkinDataResult> premiumSkin = skinStorage.getPlayerSkin(playerName, false);
 
         if (premiumSkin.isPresent()) {
+            accessTracker.recordAccess(premiumSkin.get().getUniqueId());
             return premiumSkin.map(MojangSkinDataResult::getSkinProperty);
         }
 
@@ -0,0 +1,121 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage;
+
+import ch.jalu.configme.SettingsManager;
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.shared.config.StorageConfig;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.storage.adapter.AdapterReference;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.utils.SRHelpers;
+
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks when player skins were last applied, and deletes the ones nobody used for the configured amount of days.
+ * Accesses are collected in memory and written in one batch per flush interval, so a login never waits for that write.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class SkinAccessTracker {
+    private static final long RETENTION_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private final SettingsManager settings;
+    private final AdapterReference adapterReference;
+    private final SRLogger logger;
+    // Latest access per skin since the last flush, a skin used many times in between is written once
+    private final Map<UUID, Long> pending = new ConcurrentHashMap<>();
+    private volatile long lastFlush = System.currentTimeMillis();
+    private volatile long lastRetentionRun = System.currentTimeMillis();
+
+    public void recordAccess(UUID playerSkin) {
+        pending.put(playerSkin, SRHelpers.getEpochSecond());
+    }
+
+    public void recordAccess(SkinIdentifier identifier) {
+        if (identifier.getSkinType() != SkinType.PLAYER) {
+            return;
+        }
+
+        try {
+            recordAccess(UUID.fromString(identifier.getIdentifier()));
+        } catch (IllegalArgumentException ignored) {
+            // Not a player skin the storage knows about
+        }
+    }
+
+    /**
+     * Writes the accesses collected since the last flush.
+     */
+    public synchronized void flush() {
+        lastFlush = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, Long> batch = new HashMap<>();
+        for (UUID uuid : pending.keySet()) {
+            Long lastAccess = pending.remove(uuid);
+            if (lastAccess != null) {
+                batch.put(uuid, lastAccess);
+            }
+        }
+
+        try {
+            adapterReference.get().touchPlayerSkins(batch);
+        } catch (StorageAdapter.StorageException e) {
+            logger.warning("Failed to save the last use of " + batch.size() + " player skins", e);
+        }
+    }
+
+    /**
+     * Called regularly, flushes the accesses and deletes unused player skins once their intervals have passed.
+     */
+    public void runScheduled() {
+        long now = System.currentTimeMillis();
+        if (now - lastFlush >= TimeUnit.SECONDS.toMillis(Math.max(1, settings.getProperty(StorageConfig.RETENTION_ACCESS_FLUSH_INTERVAL)))) {
+            flush();
+        }
+
+        int days = settings.getProperty(StorageConfig.RETENTION_UNUSED_PLAYER_SKIN_DAYS);
+        if (days <= 0 || now - lastRetentionRun < RETENTION_INTERVAL_MILLIS) {
+            return;
+        }
+
+        lastRetentionRun = now;
+        // Skins used since the last flush must not look unused
+        flush();
+
+        long targetLastAccess = SRHelpers.getEpochSecond() - TimeUnit.DAYS.toSeconds(days);
+        try {
+            int removed = adapterReference.get().purgeUnusedPlayerSkins(targetLastAccess, ignored -> {
+            });
+            if (removed > 0) {
+                logger.info(String.format("Deleted %d player skins that were not used for %d days", removed, days));
+            }
+        } catch (StorageAdapter.StorageException e) {
+            logger.warning("Failed to delete unused player skins", e);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage;
+
+import ch.jalu.configme.SettingsManager;
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.shared.config.StorageConfig;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.plugin.SRPlatformAdapter;
+import net.skinsrestorer.shared.storage.adapter.AdapterReference;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.skin.StoredSkinKey;
+import net.skinsrestorer.shared.subjects.SRPlayer;
+import net.skinsrestorer.shared.utils.SRHelpers;
+import net.skinsrestorer.shared.utils.ValidationUtil;
+
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Deletes stored skins that no player uses any more, so the storage grows with the active players instead of every skin ever looked up.
+ * A run marks every skin referenced by a player, then deletes the unreferenced player, URL and legacy skins in throttled batches.
+ * Custom skins are always kept.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class SkinGarbageCollector {
+    private static final long PROGRESS_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private final SettingsManager settings;
+    private final AdapterReference adapterReference;
+    private final SRPlatformAdapter<?, ?> platformAdapter;
+    private final SRLogger logger;
+    private final AtomicBoolean running = new AtomicBoolean();
+    // Set while a run is in progress, so skins assigned after the players were scanned are not deleted
+    private volatile References liveReferences;
+    private volatile long lastRun = System.currentTimeMillis();
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Has to be called after a skin is assigned to a player, while a run is in progress the scan may have already passed that player.
+     */
+    public void markInUse(SkinIdentifier identifier) {
+        References references = liveReferences;
+        if (references != null) {
+            references.add(identifier);
+        }
+    }
+
+    /**
+     * Runs the garbage collection in the background.
+     *
+     * @param dryRun   Only count the skins that would be deleted
+     * @param progress Receives the running amount of deleted skins, at most every few seconds
+     */
+    public CompletableFuture<Report> collect(boolean dryRun, IntConsumer progress) {
+        CompletableFuture<Report> future = new CompletableFuture<>();
+        if (!running.compareAndSet(false, true)) {
+            future.completeExceptionally(new IllegalStateException("Garbage collection is already running"));
+            return future;
+        }
+
+        platformAdapter.runAsync(() -> {
+            try {
+                future.complete(run(dryRun, progress));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                running.set(false);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Called regularly, runs the garbage collection once the configured interval has passed.
+     */
+    public void runScheduled() {
+        if (!settings.getProperty(StorageConfig.GARBAGE_COLLECTION_ENABLED) || running.get()) {
+            return;
+        }
+
+        long interval = TimeUnit.HOURS.toMillis(Math.max(1, settings.getProperty(StorageConfig.GARBAGE_COLLECTION_INTERVAL)));
+        if (System.currentTimeMillis() - lastRun < interval) {
+            return;
+        }
+
+        collect(false, deleted -> {
+        }).whenComplete((report, throwable) -> {
+            if (throwable != null) {
+                logger.warning("Failed to delete unused skins", throwable);
+            } else {
+                logger.info(String.format("Deleted %d unused skins (%d player skins, %d URL skins, %d URL indexes, %d legacy skins) in %d ms",
+                        report.total(), report.playerSkins(), report.urlSkins(), report.urlIndexes(), report.legacySkins(), report.durationMillis()));
+            }
+        });
+    }
+
+    private Report run(boolean dryRun, IntConsumer progress) throws StorageAdapter.StorageException, InterruptedException {
+        long start = System.currentTimeMillis();
+        lastRun = start;
+
+        StorageAdapter storage = adapterReference.get();
+        References references = new References();
+        // Published before the scan, a skin assigned from now on is either seen by the scan or marked directly
+        liveReferences = references;
+        try {
+            markPinnedSkins(storage, references);
+            storage.forEachSkinReference(references::add);
+
+            long minPlayerSkinTimestamp = SRHelpers.getEpochSecond()
+                    - TimeUnit.DAYS.toSeconds(Math.max(0, settings.getProperty(StorageConfig.GARBAGE_COLLECTION_PLAYER_SKIN_MIN_AGE)));
+            List<StoredSkinKey> garbage = new ArrayList<>();
+            storage.forEachCollectableSkin(key -> {
+                if (isGarbage(key, references, minPlayerSkinTimestamp)) {
+                    garbage.add(key);
+                }
+            });
+
+            int batchSize = Math.max(1, settings.getProperty(StorageConfig.GARBAGE_COLLECTION_BATCH_SIZE));
+            long batchDelay = Math.max(0, settings.getProperty(StorageConfig.GARBAGE_COLLECTION_BATCH_DELAY));
+            Map<StoredSkinKey.Type, Integer> deleted = new EnumMap<>(StoredSkinKey.Type.class);
+            int total = 0;
+            long lastReport = start;
+            for (int i = 0; i < garbage.size(); i += batchSize) {
+                if (i > 0 && !dryRun) {
+                    Thread.sleep(batchDelay);
+                }
+
+                for (StoredSkinKey key : garbage.subList(i, Math.min(garbage.size(), i + batchSize))) {
+                    // Assigned to a player since the scan
+                    if (references.contains(key)) {
+                        continue;
+                    }
+
+                    if (!dryRun) {
+                        delete(storage, key);
+                    }
+                    deleted.merge(key.getType(), 1, Integer::sum);
+                    total++;
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                    lastReport = now;
+                    progress.accept(total);
+                }
+            }
+
+            return new Report(dryRun,
+                    deleted.getOrDefault(StoredSkinKey.Type.PLAYER_SKIN, 0),
+                    deleted.getOrDefault(StoredSkinKey.Type.URL_SKIN, 0),
+                    deleted.getOrDefault(StoredSkinKey.Type.URL_INDEX, 0),
+                    deleted.getOrDefault(StoredSkinKey.Type.LEGACY_SKIN, 0),
+                    System.currentTimeMillis() - start);
+        } finally {
+            liveReferences = null;
+        }
+    }
+
+    /**
+     * Keeps the skins that are in use without being assigned to anyone, the default skins and the own skins of online players under both their UUID and their Mojang UUID.
+     */
+    private void markPinnedSkins(StorageAdapter storage, References references) throws StorageAdapter.StorageException {
+        for (String defaultSkin : settings.getProperty(StorageConfig.DEFAULT_SKINS)) {
+            if (ValidationUtil.validSkinUrl(defaultSkin)) {
+                references.urls.add(defaultSkin);
+            } else {
+                Optional<UUID> uuid = storage.getCachedUUID(defaultSkin).flatMap(MojangCacheData::getUniqueId);
+                uuid.ifPresent(value -> references.playerSkins.add(value.toString()));
+            }
+        }
+
+        List<String> onlineNames = new ArrayList<>();
+        for (SRPlayer player : platformAdapter.getOnlinePlayers()) {
+            references.playerSkins.add(player.getUniqueId().toString());
+            onlineNames.add(player.getName());
+        }
+
+        // Offline mode servers store the premium skin of a player under the Mojang UUID of their name
+        for (MojangCacheData cacheData : storage.getCachedUUIDBatch(onlineNames).values()) {
+            cacheData.getUniqueId().ifPresent(value -> references.playerSkins.add(value.toString()));
+        }
+    }
+
+    private static boolean isGarbage(StoredSkinKey key, References references, long minPlayerSkinTimestamp) {
+        if (references.contains(key)) {
+            return false;
+        }
+
+        if (key.getType() == StoredSkinKey.Type.PLAYER_SKIN) {
+            // 0 and -1 mark skins that are never updated, those were saved on purpose
+            return key.getTimestamp() > 0 && key.getTimestamp() < minPlayerSkinTimestamp;
+        }
+
+        return true;
+    }
+
+    private static void delete(StorageAdapter storage, StoredSkinKey key) {
+        switch (key.getType()) {
+            case PLAYER_SKIN -> storage.removePlayerSkinData(UUID.fromString(key.getName()));
+            case URL_SKIN -> storage.removeURLSkinData(key.getName(), key.getSkinVariant());
+            case URL_INDEX -> storage.removeURLSkinIndex(key.getName());
+            case LEGACY_SKIN -> storage.removeLegacySkinData(key.getName());
+        }
+    }
+
+    /**
+     * @param dryRun Whether the skins were only counted instead of deleted
+     */
+    public record Report(boolean dryRun, int playerSkins, int urlSkins, int urlIndexes, int legacySkins, long durationMillis) {
+        public int total() {
+            return playerSkins + urlSkins + urlIndexes + legacySkins;
+        }
+    }
+
+    private static class References {
+        private final Set<String> playerSkins = ConcurrentHashMap.newKeySet();
+        // All variants of a URL are kept, player data of older versions does not always store the variant
+        private final Set<String> urls = ConcurrentHashMap.newKeySet();
+        private final Set<String> legacySkins = ConcurrentHashMap.newKeySet();
+
+        private void add(SkinIdentifier identifier) {
+            switch (identifier.getSkinType()) {
+                case PLAYER -> playerSkins.add(identifier.getIdentifier().toLowerCase(Locale.ROOT));
+                case URL -> urls.add(identifier.getIdentifier());
+                // Legacy skin names were stored without regard to case
+                case LEGACY -> legacySkins.add(identifier.getIdentifier().toLowerCase(Locale.ROOT));
+                case CUSTOM -> {
+                    // Custom skins are never collected
+                }
+            }
+        }
+
+        private boolean contains(StoredSkinKey key) {
+            return switch (key.getType()) {
+                case PLAYER_SKIN -> playerSkins.contains(key.getName().toLowerCase(Locale.ROOT));
+                case URL_SKIN, URL_INDEX -> urls.contains(key.getName());
+                case LEGACY_SKIN -> legacySkins.contains(key.getName().toLowerCase(Locale.ROOT));
+            };
+        }
+    }
+}
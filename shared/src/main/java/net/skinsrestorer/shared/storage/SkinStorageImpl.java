@@ -30,28 +30,45 @@ import net.skinsrestorer.api.storage.SkinStorage;
 import net.skinsrestorer.shared.config.StorageConfig;
 import net.skinsrestorer.shared.connections.MineSkinAPIImpl;
 import net.skinsrestorer.shared.connections.MojangAPIImpl;
+import net.skinsrestorer.shared.connections.http.RequestPriority;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
 import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.plugin.SRPlatformAdapter;
 import net.skinsrestorer.shared.storage.adapter.AdapterReference;
+import net.skinsrestorer.shared.storage.adapter.AsyncStorageAdapter;
 import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
 import net.skinsrestorer.shared.storage.model.skin.*;
 import net.skinsrestorer.shared.utils.SRHelpers;
+import net.skinsrestorer.shared.utils.SingleFlight;
 import net.skinsrestorer.shared.utils.ValidationUtil;
+import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class SkinStorageImpl implements SkinStorage {
+    private static final long PURGE_PROGRESS_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
     private final SRLogger logger;
     private final CacheStorageImpl cacheStorage;
     private final MojangAPIImpl mojangAPI;
     private final MineSkinAPIImpl mineSkinAPI;
     private final SettingsManager settings;
     private final AdapterReference adapterReference;
+    private final SRPlatformAdapter<?, ?> platformAdapter;
+    // Concurrent misses for one name or UUID share a single Mojang request and storage write
+    @Getter
+    private final SingleFlight<String, Optional<MojangSkinDataResult>> skinLookups = new SingleFlight<>();
+    @Getter
+    private final SingleFlight<UUID, Optional<SkinProperty>> profileLookups = new SingleFlight<>();
 
     public void preloadDefaultSkins() {
         if (!settings.getProperty(StorageConfig.DEFAULT_SKINS_ENABLED)) {
@@ -61,7 +78,7 @@ public class SkinStorageImpl implements SkinStorage {
         List<String> toRemove = new ArrayList<>();
         List<String> defaultSkins = new ArrayList<>(settings.getProperty(StorageConfig.DEFAULT_SKINS));
         defaultSkins.forEach(skin -> {
-            try {
+            try (RequestPriority.Scope ignored = RequestPriority.BACKGROUND.enter()) {
                 findOrCreateSkinData(skin);
             } catch (DataRequestException | MineSkinException e) {
                 logger.debug(String.format("DefaultSkin '%s' could not be found or requested! Removing from list..", skin), e);
@@ -101,19 +118,22 @@ public class SkinStorageImpl implements SkinStorage {
                 }
             }
 
-            Optional<SkinProperty> skinProperty = profileGetter.getProfile(uuid);
-            if (skinProperty.isEmpty()) {
-                return currentSkin;
-            }
+            long currentTimestamp = timestamp;
+            return profileLookups.execute(uuid, () -> {
+                Optional<SkinProperty> skinProperty = profileGetter.getProfile(uuid);
+                if (skinProperty.isEmpty()) {
+                    return currentSkin;
+                }
 
-            MojangProfileResponse response = PropertyUtils.getSkinProfileData(skinProperty.get());
+                MojangProfileResponse response = PropertyUtils.getSkinProfileData(skinProperty.get());
 
-            if (response.getTimestamp() <= timestamp) {
-                return currentSkin; // API even returned older skin data
-            }
+                if (response.getTimestamp() <= currentTimestamp) {
+                    return currentSkin; // API even returned older skin data
+                }
 
-            setPlayerSkinData(uuid, response.getProfileName(), skinProperty.get(), SRHelpers.getEpochSecond());
-            return skinProperty;
+                setPlayerSkinData(uuid, response.getProfileName(), skinProperty.get(), SRHelpers.getEpochSecond());
+                return skinProperty;
+            });
         } catch (StorageAdapter.StorageException e) {
             e.printStackTrace();
             return Optional.empty();
@@ -145,25 +165,74 @@ public class SkinStorageImpl implements SkinStorage {
                         .map(skinProperty -> MojangSkinDataResult.of(uuid, skinProperty));
             }
 
-            Optional<MojangSkinDataResult> optional = mojangAPI.getSkin(playerName);
-            adapterReference.get().setCachedUUID(playerName,
-                    MojangCacheData.of(optional.map(MojangSkinDataResult::getUniqueId).orElse(null),
-                            SRHelpers.getEpochSecond()));
-
-            // Cache the skin data
-            if (optional.isPresent()) {
-                MojangSkinDataResult result = optional.get();
-                return updatePlayerSkinData(result.getUniqueId(), uuid -> Optional.of(result.getSkinProperty()), skipDbLookup, false)
-                        .map(skinProperty -> MojangSkinDataResult.of(result.getUniqueId(), skinProperty));
-            }
+            return skinLookups.execute(playerName.toLowerCase(Locale.ROOT), () -> {
+                Optional<MojangSkinDataResult> optional = mojangAPI.getSkin(playerName);
+                adapterReference.get().setCachedUUID(playerName,
+                        MojangCacheData.of(optional.map(MojangSkinDataResult::getUniqueId).orElse(null),
+                                SRHelpers.getEpochSecond()));
+
+                // Cache the skin data
+                if (optional.isPresent()) {
+                    MojangSkinDataResult result = optional.get();
+                    return updatePlayerSkinData(result.getUniqueId(), uuid -> Optional.of(result.getSkinProperty()), skipDbLookup, false)
+                            .map(skinProperty -> MojangSkinDataResult.of(result.getUniqueId(), skinProperty));
+                }
 
-            return optional;
+                return optional;
+            });
         } catch (StorageAdapter.StorageException e) {
             logger.warning("Failed to get skin from cache for " + playerName, e);
             return Optional.empty();
         }
     }
 
+    /**
+     * Non-blocking variant of {@link #getPlayerSkin(String, boolean)}.
+     * Fresh stored data is served straight from the storage, only a Mojang request falls back to a platform async thread.
+     *
+     * @param priority Priority of the Mojang request, as the calling thread's priority does not carry over to that thread
+     */
+    public CompletableFuture<Optional<MojangSkinDataResult>> getPlayerSkinAsync(String playerName, boolean allowExpired, RequestPriority priority) {
+        if (ValidationUtil.invalidMojangUsername(playerName)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return cacheStorage.getCachedDataAsync(playerName, allowExpired).thenCompose(cached -> {
+            if (cached.isEmpty()) {
+                return supplyRemote(priority, () -> getPlayerSkin(playerName, allowExpired));
+            }
+
+            Optional<UUID> optionalUUID = cached.get().getUniqueId();
+
+            // User does not exist
+            if (optionalUUID.isEmpty()) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+
+            UUID uuid = optionalUUID.get();
+            return adapterReference.getAsyncAdapter().getPlayerSkinData(uuid).thenCompose(skinData -> {
+                if (skinData.isPresent() && !isPlayerSkinExpired(skinData.get().getTimestamp())) {
+                    return CompletableFuture.completedFuture(Optional.of(MojangSkinDataResult.of(uuid, skinData.get().getProperty())));
+                }
+
+                return supplyRemote(priority, () -> getPlayerSkin(playerName, allowExpired));
+            });
+        });
+    }
+
+    private <T> CompletableFuture<T> supplyRemote(RequestPriority priority, RemoteCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        platformAdapter.runAsync(() -> {
+            try (RequestPriority.Scope ignored = priority.enter()) {
+                future.complete(call.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+
+        return future;
+    }
+
     @Override
     public void setPlayerSkinData(UUID uuid, String lastKnownName, SkinProperty textures, long timestamp) {
         adapterReference.get().setPlayerSkinData(uuid, PlayerSkinData.of(uuid, lastKnownName, textures, timestamp));
@@ -184,14 +253,18 @@ public class SkinStorageImpl implements SkinStorage {
         adapterReference.get().setCustomSkinData(skinName, CustomSkinData.of(skinName, textures));
     }
 
-    public Map<String, String> getGUISkins(int offset) {
-        return adapterReference.get().getStoredGUISkins(offset);
+    public CompletableFuture<GUISkinPage> getGUISkinsAsync(int offset, @Nullable GUISkinCursor cursor) {
+        return adapterReference.getAsyncAdapter().getStoredGUISkins(offset, cursor);
     }
 
     public Map<String, String> getRandomSkins(int limit) {
         return adapterReference.get().getStoredRandomSkins(limit);
     }
 
+    public CompletableFuture<Map<String, String>> getRandomSkinsAsync(int limit) {
+        return adapterReference.getAsyncAdapter().getStoredRandomSkins(limit);
+    }
+
     @Override
     public Optional<InputDataResult> findSkinData(String input) {
         try {
@@ -288,6 +361,26 @@ public class SkinStorageImpl implements SkinStorage {
         }
     }
 
+    public CompletableFuture<Optional<SkinProperty>> getSkinDataByIdentifierAsync(SkinIdentifier identifier) {
+        AsyncStorageAdapter asyncAdapter = adapterReference.getAsyncAdapter();
+        CompletableFuture<Optional<SkinProperty>> future = switch (identifier.getSkinType()) {
+            case PLAYER -> asyncAdapter.getPlayerSkinData(UUID.fromString(identifier.getIdentifier()))
+                    .thenApply(data -> data.map(PlayerSkinData::getProperty));
+            case URL -> asyncAdapter.getURLSkinData(identifier.getIdentifier(), identifier.getSkinVariant())
+                    .thenApply(data -> data.map(URLSkinData::getProperty));
+            case CUSTOM -> asyncAdapter.getCustomSkinData(identifier.getIdentifier())
+                    .thenApply(data -> data.map(CustomSkinData::getProperty)
+                            .or(() -> findCustomHardcodedSkin(identifier.getIdentifier()).map(InputDataResult::getProperty)));
+            case LEGACY -> asyncAdapter.getLegacySkinData(identifier.getIdentifier())
+                    .thenApply(data -> data.map(LegacySkinData::getProperty));
+        };
+
+        return future.exceptionally(throwable -> {
+            throwable.printStackTrace();
+            return Optional.empty();
+        });
+    }
+
     @Override
     public void removeSkinData(SkinIdentifier identifier) {
         switch (identifier.getSkinType()) {
@@ -317,16 +410,23 @@ public class SkinStorageImpl implements SkinStorage {
         return expiryDate <= now;
     }
 
-    public boolean purgeOldSkins(int days) {
+    /**
+     * Purges old player skins in the background.
+     *
+     * @param progress Receives the running amount of removed skins, at most every few seconds
+     * @return Amount of removed skins
+     */
+    public CompletableFuture<Integer> purgeOldSkins(int days, IntConsumer progress) {
         long targetPurgeTimestamp = Instant.now().minus(days, ChronoUnit.DAYS).getEpochSecond();
 
-        try {
-            adapterReference.get().purgeStoredOldSkins(targetPurgeTimestamp);
-            return true; // TODO: Do better than true/false return
-        } catch (StorageAdapter.StorageException e) {
-            e.printStackTrace();
-            return false;
-        }
+        AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+        return adapterReference.getAsyncAdapter().purgeStoredOldSkins(targetPurgeTimestamp, removed -> {
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (now - last >= PURGE_PROGRESS_INTERVAL_MILLIS && lastReport.compareAndSet(last, now)) {
+                progress.accept(removed);
+            }
+        });
     }
 
     private Optional<InputDataResult> findCustomHardcodedSkin(String input) {
@@ -359,4 +459,8 @@ public class SkinStorageImpl implements SkinStorage {
     private interface ProfileGetter {
         Optional<SkinProperty> getProfile(UUID uuid) throws DataRequestException;
     }
+
+    private interface RemoteCall<T> {
+        T call() throws DataRequestException;
+    }
 }
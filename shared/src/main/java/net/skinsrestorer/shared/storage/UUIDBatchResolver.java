@@ -0,0 +1,174 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage;
+
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.api.exception.DataRequestException;
+import net.skinsrestorer.shared.connections.MojangAPIImpl;
+import net.skinsrestorer.shared.connections.ProviderCircuitBreakers;
+import net.skinsrestorer.shared.connections.http.RequestPriority;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.storage.adapter.AdapterReference;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.utils.MetricsCounter;
+import net.skinsrestorer.shared.utils.SRHelpers;
+import net.skinsrestorer.shared.utils.SingleFlight;
+
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups UUID lookups of uncached names that arrive within a few milliseconds of each other
+ * and resolves them with one request to Mojang's bulk profile endpoint.
+ * The first caller of a batch leads it: it sends the request, writes all results to the cache at once
+ * and hands them to the other callers. The leader only waits for the window to pass or the batch to fill
+ * while another batch is being resolved, a lone lookup is sent right away.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class UUIDBatchResolver {
+    private static final long BATCH_WINDOW_MILLIS = 20;
+    private final MojangAPIImpl mojangAPI;
+    private final AdapterReference adapterReference;
+    private final ProviderCircuitBreakers circuitBreakers;
+    private final SRLogger logger;
+    private final Object lock = new Object();
+    private Batch openBatch;
+    private int resolvingBatches;
+
+    public Optional<UUID> resolve(String playerName) throws DataRequestException {
+        Batch batch;
+        boolean leader = false;
+        boolean waitForOthers = false;
+        CompletableFuture<Optional<UUID>> future;
+        synchronized (lock) {
+            if (openBatch == null) {
+                openBatch = new Batch();
+                leader = true;
+                // Lookups only pile up while others are on their way, otherwise waiting would just add latency
+                waitForOthers = resolvingBatches > 0;
+            }
+
+            batch = openBatch;
+            future = batch.names.computeIfAbsent(playerName.toLowerCase(Locale.ROOT), k -> new PendingName(playerName)).future;
+            // A login waiting in the batch must not be held back by the priority of the leader
+            if (RequestPriority.current().isHigherThan(batch.priority)) {
+                batch.priority = RequestPriority.current();
+            }
+
+            if (batch.names.size() >= MojangAPIImpl.MAX_BULK_UUID_NAMES) {
+                openBatch = null;
+                batch.full.countDown();
+            }
+        }
+
+        if (leader) {
+            if (waitForOthers) {
+                try {
+                    batch.full.await(BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            RequestPriority priority;
+            synchronized (lock) {
+                if (openBatch == batch) {
+                    openBatch = null;
+                }
+
+                priority = batch.priority;
+                resolvingBatches++;
+            }
+
+            try (RequestPriority.Scope ignored = priority.enter()) {
+                resolveBatch(batch);
+            } finally {
+                synchronized (lock) {
+                    resolvingBatches--;
+                }
+            }
+        }
+
+        return SingleFlight.await(future);
+    }
+
+    private void resolveBatch(Batch batch) {
+        Map<PendingName, Optional<UUID>> resolved = new HashMap<>();
+        Map<PendingName, DataRequestException> failed = new HashMap<>();
+        try {
+            // A single name gains nothing from the bulk endpoint, and while Mojang is failing only the other providers can answer
+            if (batch.names.size() > 1 && circuitBreakers.getState(MetricsCounter.Service.MOJANG) == ProviderCircuitBreakers.State.CLOSED) {
+                try {
+                    Map<String, UUID> uuids = mojangAPI.getUUIDsMojang(batch.names.keySet());
+                    batch.names.forEach((name, pending) -> resolved.put(pending, Optional.ofNullable(uuids.get(name))));
+                } catch (DataRequestException e) {
+                    logger.debug("Bulk UUID lookup failed, resolving %d names one by one".formatted(batch.names.size()), e);
+                    resolveIndividually(batch, resolved, failed);
+                }
+            } else {
+                resolveIndividually(batch, resolved, failed);
+            }
+
+            // Write before completing, so callers that come back to the cache right away find the results
+            Map<String, MojangCacheData> cacheData = new HashMap<>();
+            long timestamp = SRHelpers.getEpochSecond();
+            resolved.forEach((pending, uuid) -> cacheData.put(pending.playerName, MojangCacheData.of(uuid.orElse(null), timestamp)));
+            if (!cacheData.isEmpty()) {
+                adapterReference.get().setCachedUUIDBatch(cacheData);
+            }
+        } catch (RuntimeException e) {
+            logger.warning("Failed to resolve UUID batch", e);
+            batch.names.values().forEach(pending -> pending.future.completeExceptionally(e));
+            return;
+        }
+
+        resolved.forEach((pending, uuid) -> pending.future.complete(uuid));
+        failed.forEach((pending, e) -> pending.future.completeExceptionally(e));
+    }
+
+    /**
+     * Resolves every name with the hedged lookup, which races the other providers against Mojang.
+     */
+    private void resolveIndividually(Batch batch, Map<PendingName, Optional<UUID>> resolved, Map<PendingName, DataRequestException> failed) {
+        for (PendingName pending : batch.names.values()) {
+            try {
+                resolved.put(pending, mojangAPI.getUUID(pending.playerName));
+            } catch (DataRequestException e) {
+                failed.put(pending, e);
+            }
+        }
+    }
+
+    private static class Batch {
+        private final Map<String, PendingName> names = new LinkedHashMap<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+        private RequestPriority priority = RequestPriority.BACKGROUND;
+    }
+
+    private static class PendingName {
+        private final String playerName;
+        private final CompletableFuture<Optional<UUID>> future = new CompletableFuture<>();
+
+        private PendingName(String playerName) {
+            this.playerName = playerName;
+        }
+    }
+}
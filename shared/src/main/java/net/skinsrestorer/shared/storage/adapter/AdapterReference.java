@@ -17,6 +17,7 @@
  */
 package net.skinsrestorer.shared.storage.adapter;
 
+import lombok.Getter;
 import lombok.Setter;
 
 import javax.inject.Provider;
@@ -24,6 +25,8 @@ import javax.inject.Provider;
 @Setter
 public class AdapterReference implements Provider<StorageAdapter> {
     private StorageAdapter adapter;
+    @Getter
+    private AsyncStorageAdapter asyncAdapter;
 
     @Override
     public StorageAdapter get() {
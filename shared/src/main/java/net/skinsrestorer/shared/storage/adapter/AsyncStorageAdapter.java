@@ -0,0 +1,71 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter;
+
+import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+/**
+ * Non-blocking view of a {@link StorageAdapter} for the lookups done on logins, commands and GUIs.
+ * Futures complete exceptionally with a {@link StorageAdapter.StorageException} if the storage fails.
+ */
+public interface AsyncStorageAdapter {
+    CompletableFuture<Optional<PlayerData>> getPlayerData(UUID uuid);
+
+    CompletableFuture<Void> setPlayerData(UUID uuid, PlayerData data);
+
+    CompletableFuture<Optional<PlayerSkinData>> getPlayerSkinData(UUID uuid);
+
+    CompletableFuture<Void> setPlayerSkinData(UUID uuid, PlayerSkinData skinData);
+
+    CompletableFuture<Optional<URLSkinData>> getURLSkinData(String url, SkinVariant skinVariant);
+
+    CompletableFuture<Optional<URLIndexData>> getURLSkinIndex(String url);
+
+    CompletableFuture<Optional<CustomSkinData>> getCustomSkinData(String skinName);
+
+    CompletableFuture<Optional<LegacySkinData>> getLegacySkinData(String skinName);
+
+    CompletableFuture<Optional<MojangCacheData>> getCachedUUID(String playerName);
+
+    CompletableFuture<Void> setCachedUUID(String playerName, MojangCacheData mojangCacheData);
+
+    CompletableFuture<GUISkinPage> getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor);
+
+    CompletableFuture<Map<String, String>> getStoredRandomSkins(int amount);
+
+    CompletableFuture<Void> migrateLegacyPlayer(String playerName, UUID uuid);
+
+    CompletableFuture<Integer> purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress);
+
+    /**
+     * Stops accepting work and waits for already submitted calls to finish.
+     */
+    void shutdown();
+}
@@ -0,0 +1,446 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter;
+
+import ch.jalu.configme.SettingsManager;
+import lombok.Getter;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.config.StorageConfig;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.LegacyPlayerData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounded read-through cache in front of another {@link StorageAdapter}.
+ * Writes go to the backing adapter first and then update the cached entry.
+ */
+public class CachedStorageAdapter implements StorageAdapter {
+    @Getter
+    private final StorageAdapter delegate;
+    private final CacheRegion<UUID, PlayerData> players;
+    private final CacheRegion<UUID, PlayerSkinData> playerSkins;
+    private final CacheRegion<String, CustomSkinData> customSkins;
+    private final CacheRegion<URLSkinKey, URLSkinData> urlSkins;
+    private final CacheRegion<String, URLIndexData> urlIndexes;
+    private final CacheRegion<String, MojangCacheData> mojangCache;
+
+    public CachedStorageAdapter(StorageAdapter delegate, SettingsManager settings) {
+        this.delegate = delegate;
+
+        int maxSize = settings.getProperty(StorageConfig.CACHE_MAX_SIZE);
+        long expiresAfter = TimeUnit.SECONDS.toNanos(settings.getProperty(StorageConfig.CACHE_EXPIRES_AFTER));
+        this.players = new CacheRegion<>("players", maxSize, expiresAfter);
+        this.playerSkins = new CacheRegion<>("player_skins", maxSize, expiresAfter);
+        this.customSkins = new CacheRegion<>("custom_skins", maxSize, expiresAfter);
+        this.urlSkins = new CacheRegion<>("url_skins", maxSize, expiresAfter);
+        this.urlIndexes = new CacheRegion<>("url_index", maxSize, expiresAfter);
+        this.mojangCache = new CacheRegion<>("cache", maxSize, expiresAfter);
+    }
+
+    public List<CacheStats> getStats() {
+        return List.of(
+                players.stats(),
+                playerSkins.stats(),
+                customSkins.stats(),
+                urlSkins.stats(),
+                urlIndexes.stats(),
+                mojangCache.stats()
+        );
+    }
+
+    public void invalidateAll() {
+        players.clear();
+        playerSkins.clear();
+        customSkins.clear();
+        urlSkins.clear();
+        urlIndexes.clear();
+        mojangCache.clear();
+    }
+
+    @Override
+    public void init() {
+        delegate.init();
+        invalidateAll();
+    }
+
+    @Override
+    public Optional<PlayerData> getPlayerData(UUID uuid) throws StorageException {
+        // PlayerData is mutable, so callers always get their own copy
+        return players.get(uuid, delegate::getPlayerData).map(CachedStorageAdapter::copyPlayerData);
+    }
+
+    @Override
+    public Map<UUID, PlayerData> getPlayerDataBatch(Collection<UUID> uuids) throws StorageException {
+        Map<UUID, PlayerData> result = new HashMap<>();
+        players.getAll(uuids, delegate::getPlayerDataBatch)
+                .forEach((uuid, data) -> result.put(uuid, copyPlayerData(data)));
+        return result;
+    }
+
+    @Override
+    public void setPlayerData(UUID uuid, PlayerData data) {
+        delegate.setPlayerData(uuid, data);
+        players.put(uuid, copyPlayerData(data));
+    }
+
+    @Override
+    public void setPlayerDataBatch(Map<UUID, PlayerData> data) {
+        delegate.setPlayerDataBatch(data);
+        data.forEach((uuid, playerData) -> players.put(uuid, copyPlayerData(playerData)));
+    }
+
+    @Override
+    public Optional<PlayerSkinData> getPlayerSkinData(UUID uuid) throws StorageException {
+        return playerSkins.get(uuid, delegate::getPlayerSkinData);
+    }
+
+    @Override
+    public Map<UUID, PlayerSkinData> getPlayerSkinDataBatch(Collection<UUID> uuids) throws StorageException {
+        return playerSkins.getAll(uuids, delegate::getPlayerSkinDataBatch);
+    }
+
+    @Override
+    public void removePlayerSkinData(UUID uuid) {
+        delegate.removePlayerSkinData(uuid);
+        playerSkins.putEmpty(uuid);
+    }
+
+    @Override
+    public void setPlayerSkinData(UUID uuid, PlayerSkinData skinData) {
+        delegate.setPlayerSkinData(uuid, skinData);
+        playerSkins.put(uuid, skinData);
+    }
+
+    @Override
+    public Optional<URLSkinData> getURLSkinData(String url, SkinVariant skinVariant) throws StorageException {
+        return urlSkins.get(new URLSkinKey(url, skinVariant), key -> delegate.getURLSkinData(url, skinVariant));
+    }
+
+    @Override
+    public void removeURLSkinData(String url, SkinVariant skinVariant) {
+        delegate.removeURLSkinData(url, skinVariant);
+        urlSkins.putEmpty(new URLSkinKey(url, skinVariant));
+    }
+
+    @Override
+    public void setURLSkinData(String url, URLSkinData skinData) {
+        delegate.setURLSkinData(url, skinData);
+        urlSkins.put(new URLSkinKey(url, skinData.getSkinVariant()), skinData);
+    }
+
+    @Override
+    public Optional<URLIndexData> getURLSkinIndex(String url) throws StorageException {
+        return urlIndexes.get(url, delegate::getURLSkinIndex);
+    }
+
+    @Override
+    public void removeURLSkinIndex(String url) {
+        delegate.removeURLSkinIndex(url);
+        urlIndexes.putEmpty(url);
+    }
+
+    @Override
+    public void setURLSkinIndex(String url, URLIndexData skinData) {
+        delegate.setURLSkinIndex(url, skinData);
+        urlIndexes.put(url, skinData);
+    }
+
+    @Override
+    public Optional<CustomSkinData> getCustomSkinData(String skinName) throws StorageException {
+        return customSkins.get(CustomSkinData.sanitizeCustomSkinName(skinName), delegate::getCustomSkinData);
+    }
+
+    @Override
+    public void removeCustomSkinData(String skinName) {
+        delegate.removeCustomSkinData(skinName);
+        customSkins.putEmpty(CustomSkinData.sanitizeCustomSkinName(skinName));
+    }
+
+    @Override
+    public void setCustomSkinData(String skinName, CustomSkinData skinData) {
+        delegate.setCustomSkinData(skinName, skinData);
+        customSkins.put(CustomSkinData.sanitizeCustomSkinName(skinName), skinData);
+    }
+
+    @Override
+    public Optional<LegacySkinData> getLegacySkinData(String skinName) throws StorageException {
+        return delegate.getLegacySkinData(skinName);
+    }
+
+    @Override
+    public void removeLegacySkinData(String skinName) {
+        delegate.removeLegacySkinData(skinName);
+    }
+
+    @Override
+    public Optional<LegacyPlayerData> getLegacyPlayerData(String playerName) throws StorageException {
+        return delegate.getLegacyPlayerData(playerName);
+    }
+
+    @Override
+    public void removeLegacyPlayerData(String playerName) {
+        delegate.removeLegacyPlayerData(playerName);
+    }
+
+    @Override
+    public Map<String, String> getStoredRandomSkins(int amount) {
+        return delegate.getStoredRandomSkins(amount);
+    }
+
+    @Override
+    public GUISkinPage getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor) {
+        return delegate.getStoredGUISkins(offset, cursor);
+    }
+
+    @Override
+    public int purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress) throws StorageException {
+        try {
+            return delegate.purgeStoredOldSkins(targetPurgeTimestamp, progress);
+        } finally {
+            playerSkins.clear();
+        }
+    }
+
+    @Override
+    public void touchPlayerSkins(Map<UUID, Long> lastAccess) throws StorageException {
+        delegate.touchPlayerSkins(lastAccess);
+    }
+
+    @Override
+    public int purgeUnusedPlayerSkins(long targetLastAccess, IntConsumer progress) throws StorageException {
+        try {
+            return delegate.purgeUnusedPlayerSkins(targetLastAccess, progress);
+        } finally {
+            playerSkins.clear();
+        }
+    }
+
+    @Override
+    public void forEachSkinReference(Consumer<SkinIdentifier> consumer) throws StorageException {
+        delegate.forEachSkinReference(consumer);
+    }
+
+    @Override
+    public void forEachCollectableSkin(Consumer<StoredSkinKey> consumer) throws StorageException {
+        delegate.forEachCollectableSkin(consumer);
+    }
+
+    @Override
+    public Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException {
+        return mojangCache.get(playerName.toLowerCase(Locale.ROOT), key -> delegate.getCachedUUID(playerName));
+    }
+
+    @Override
+    public Map<String, MojangCacheData> getCachedUUIDBatch(Collection<String> playerNames) throws StorageException {
+        Set<String> keys = new HashSet<>();
+        for (String playerName : playerNames) {
+            keys.add(playerName.toLowerCase(Locale.ROOT));
+        }
+
+        Map<String, MojangCacheData> cached = mojangCache.getAll(keys, delegate::getCachedUUIDBatch);
+        Map<String, MojangCacheData> result = new HashMap<>();
+        for (String playerName : playerNames) {
+            MojangCacheData data = cached.get(playerName.toLowerCase(Locale.ROOT));
+            if (data != null) {
+                result.put(playerName, data);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setCachedUUID(String playerName, MojangCacheData mojangCacheData) {
+        delegate.setCachedUUID(playerName, mojangCacheData);
+        mojangCache.put(playerName.toLowerCase(Locale.ROOT), mojangCacheData);
+    }
+
+    @Override
+    public void setCachedUUIDBatch(Map<String, MojangCacheData> data) {
+        delegate.setCachedUUIDBatch(data);
+        data.forEach((playerName, mojangCacheData) -> mojangCache.put(playerName.toLowerCase(Locale.ROOT), mojangCacheData));
+    }
+
+    @Override
+    public void migrateLegacyPlayer(String playerName, UUID uuid) throws StorageException {
+        try {
+            delegate.migrateLegacyPlayer(playerName, uuid);
+        } finally {
+            // The delegate writes the migrated player data directly
+            players.invalidate(uuid);
+        }
+    }
+
+    private static PlayerData copyPlayerData(PlayerData data) {
+        return PlayerData.of(data.getUniqueId(), data.getSkinIdentifier());
+    }
+
+    private interface Loader<K, V> {
+        Optional<V> load(K key) throws StorageException;
+    }
+
+    private interface BatchLoader<K, V> {
+        Map<K, V> load(Collection<K> keys) throws StorageException;
+    }
+
+    private record URLSkinKey(String url, SkinVariant skinVariant) {
+    }
+
+    public record CacheStats(String region, long hits, long misses, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private static class CacheRegion<K, V> {
+        private final String name;
+        private final long expiresAfter;
+        private final Map<K, CacheEntry<V>> entries;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        // Bumped on every write, so a slow load can not overwrite a newer value
+        private final AtomicLong generation = new AtomicLong();
+
+        private CacheRegion(String name, int maxSize, long expiresAfter) {
+            this.name = name;
+            this.expiresAfter = expiresAfter;
+            this.entries = new LinkedHashMap<>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private Optional<V> get(K key, Loader<K, V> loader) throws StorageException {
+            long now = System.nanoTime();
+            synchronized (entries) {
+                CacheEntry<V> entry = entries.get(key);
+                if (entry != null) {
+                    if (now - entry.createdAt() < expiresAfter) {
+                        hits.increment();
+                        return entry.value();
+                    }
+
+                    entries.remove(key);
+                }
+            }
+
+            misses.increment();
+            long startGeneration = generation.get();
+            Optional<V> value = loader.load(key);
+            synchronized (entries) {
+                if (generation.get() == startGeneration) {
+                    entries.put(key, new CacheEntry<>(value, now));
+                }
+            }
+
+            return value;
+        }
+
+        private Map<K, V> getAll(Collection<K> keys, BatchLoader<K, V> loader) throws StorageException {
+            long now = System.nanoTime();
+            Map<K, V> result = new HashMap<>();
+            Set<K> missing = new HashSet<>();
+            synchronized (entries) {
+                for (K key : keys) {
+                    CacheEntry<V> entry = entries.get(key);
+                    if (entry != null && now - entry.createdAt() < expiresAfter) {
+                        hits.increment();
+                        entry.value().ifPresent(value -> result.put(key, value));
+                    } else {
+                        missing.add(key);
+                    }
+                }
+            }
+
+            if (missing.isEmpty()) {
+                return result;
+            }
+
+            misses.add(missing.size());
+            long startGeneration = generation.get();
+            Map<K, V> loaded = loader.load(missing);
+            synchronized (entries) {
+                if (generation.get() == startGeneration) {
+                    for (K key : missing) {
+                        // Keys the backing adapter did not return are cached as absent
+                        entries.put(key, new CacheEntry<>(Optional.ofNullable(loaded.get(key)), now));
+                    }
+                }
+            }
+
+            result.putAll(loaded);
+            return result;
+        }
+
+        private void put(K key, V value) {
+            store(key, Optional.of(value));
+        }
+
+        private void putEmpty(K key) {
+            store(key, Optional.empty());
+        }
+
+        private void store(K key, Optional<V> value) {
+            synchronized (entries) {
+                generation.incrementAndGet();
+                entries.put(key, new CacheEntry<>(value, System.nanoTime()));
+            }
+        }
+
+        private void invalidate(K key) {
+            synchronized (entries) {
+                generation.incrementAndGet();
+                entries.remove(key);
+            }
+        }
+
+        private void clear() {
+            synchronized (entries) {
+                generation.incrementAndGet();
+                entries.clear();
+            }
+        }
+
+        private CacheStats stats() {
+            int size;
+            synchronized (entries) {
+                size = entries.size();
+            }
+
+            return new CacheStats(name, hits.sum(), misses.sum(), size);
+        }
+    }
+
+    private record CacheEntry<V>(Optional<V> value, long createdAt) {
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter;
+
+import lombok.Getter;
+import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the calls of a blocking {@link StorageAdapter} on a dedicated storage executor.
+ * The pool is sized to what the backing storage can actually serve in parallel (e.g. the MySQL connection pool),
+ * so callers never park platform scheduler threads on storage round trips.
+ */
+public class ExecutorStorageAdapter implements AsyncStorageAdapter {
+    @Getter
+    private final StorageAdapter delegate;
+    private final ExecutorService executor;
+
+    public ExecutorStorageAdapter(StorageAdapter delegate, int threads) {
+        this.delegate = delegate;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "SkinsRestorer-Storage-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlayerData>> getPlayerData(UUID uuid) {
+        return supply(() -> delegate.getPlayerData(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerData(UUID uuid, PlayerData data) {
+        return run(() -> delegate.setPlayerData(uuid, data));
+    }
+
+    @Override
+    public CompletableFuture<Optional<PlayerSkinData>> getPlayerSkinData(UUID uuid) {
+        return supply(() -> delegate.getPlayerSkinData(uuid));
+    }
+
+    @Override
+    public CompletableFuture<Void> setPlayerSkinData(UUID uuid, PlayerSkinData skinData) {
+        return run(() -> delegate.setPlayerSkinData(uuid, skinData));
+    }
+
+    @Override
+    public CompletableFuture<Optional<URLSkinData>> getURLSkinData(String url, SkinVariant skinVariant) {
+        return supply(() -> delegate.getURLSkinData(url, skinVariant));
+    }
+
+    @Override
+    public CompletableFuture<Optional<URLIndexData>> getURLSkinIndex(String url) {
+        return supply(() -> delegate.getURLSkinIndex(url));
+    }
+
+    @Override
+    public CompletableFuture<Optional<CustomSkinData>> getCustomSkinData(String skinName) {
+        return supply(() -> delegate.getCustomSkinData(skinName));
+    }
+
+    @Override
+    public CompletableFuture<Optional<LegacySkinData>> getLegacySkinData(String skinName) {
+        return supply(() -> delegate.getLegacySkinData(skinName));
+    }
+
+    @Override
+    public CompletableFuture<Optional<MojangCacheData>> getCachedUUID(String playerName) {
+        return supply(() -> delegate.getCachedUUID(playerName));
+    }
+
+    @Override
+    public CompletableFuture<Void> setCachedUUID(String playerName, MojangCacheData mojangCacheData) {
+        return run(() -> delegate.setCachedUUID(playerName, mojangCacheData));
+    }
+
+    @Override
+    public CompletableFuture<GUISkinPage> getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor) {
+        return supply(() -> delegate.getStoredGUISkins(offset, cursor));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getStoredRandomSkins(int amount) {
+        return supply(() -> delegate.getStoredRandomSkins(amount));
+    }
+
+    @Override
+    public CompletableFuture<Void> migrateLegacyPlayer(String playerName, UUID uuid) {
+        return run(() -> delegate.migrateLegacyPlayer(playerName, uuid));
+    }
+
+    @Override
+    public CompletableFuture<Integer> purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress) {
+        return supply(() -> delegate.purgeStoredOldSkins(targetPurgeTimestamp, progress));
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(StorageCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private CompletableFuture<Void> run(StorageRunnable runnable) {
+        return supply(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    private interface StorageCall<T> {
+        T call() throws StorageAdapter.StorageException;
+    }
+
+    private interface StorageRunnable {
+        void run() throws StorageAdapter.StorageException;
+    }
+}
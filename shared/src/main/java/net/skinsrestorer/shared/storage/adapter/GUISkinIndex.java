@@ -0,0 +1,245 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter;
+
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
+import net.skinsrestorer.shared.gui.SharedGUI;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Sorted in-memory listing of the skins the GUI can show, for adapters that cannot query their records in order.
+ * The adapter keeps it in sync on every write and removal of a player or custom skin.
+ * Entries are ordered like the MySQL GUI query: by name ignoring case, then by type and then by file name.
+ */
+public class GUISkinIndex {
+    private static final String LAST_FILE_NAME = "\uffff"; // Sorts after every real file name
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::name, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(Entry::fileName);
+    private final NavigableSet<Entry> playerSkins = new ConcurrentSkipListSet<>(ORDER);
+    private final NavigableSet<Entry> customSkins = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<String, Entry> playerEntries = new ConcurrentHashMap<>();
+    private final Map<String, Entry> customEntries = new ConcurrentHashMap<>();
+
+    /**
+     * @param name Last known name of the player, skins without one are not shown in the GUI
+     */
+    public synchronized void putPlayerSkin(String fileName, @Nullable String name) {
+        removePlayerSkin(fileName);
+        if (name == null) {
+            return;
+        }
+
+        Entry entry = new Entry(name, fileName, SkinType.PLAYER);
+        playerSkins.add(entry);
+        playerEntries.put(fileName, entry);
+    }
+
+    public synchronized void removePlayerSkin(String fileName) {
+        Entry entry = playerEntries.remove(fileName);
+        if (entry != null) {
+            playerSkins.remove(entry);
+        }
+    }
+
+    public synchronized void putCustomSkin(String fileName) {
+        if (customEntries.containsKey(fileName)) {
+            return;
+        }
+
+        Entry entry = new Entry(fileName, fileName, SkinType.CUSTOM);
+        customSkins.add(entry);
+        customEntries.put(fileName, entry);
+    }
+
+    public synchronized void removeCustomSkin(String fileName) {
+        Entry entry = customEntries.remove(fileName);
+        if (entry != null) {
+            customSkins.remove(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        playerSkins.clear();
+        customSkins.clear();
+        playerEntries.clear();
+        customEntries.clear();
+    }
+
+    public int size() {
+        return playerEntries.size() + customEntries.size();
+    }
+
+    /**
+     * Iterates the index in GUI order.
+     *
+     * @param after Only return entries sorting after this cursor, or all entries if null
+     */
+    public Iterator<Entry> iterate(boolean players, boolean customs, @Nullable GUISkinCursor after) {
+        Iterator<Entry> playerIterator = players ? tail(playerSkins, SkinType.PLAYER, after) : Collections.emptyIterator();
+        Iterator<Entry> customIterator = customs ? tail(customSkins, SkinType.CUSTOM, after) : Collections.emptyIterator();
+
+        return new MergingIterator(playerIterator, customIterator);
+    }
+
+    /**
+     * Builds a GUI page, only loading the skins of the page itself.
+     *
+     * @param offset Entries to skip, only used without a cursor
+     * @param filter Entries not matching it are left out of the page and the offset
+     * @param loader Loads the texture value of an entry, or empty if it is gone
+     */
+    public GUISkinPage getPage(int offset, @Nullable GUISkinCursor cursor, boolean players, boolean customs,
+                               Predicate<Entry> filter, Function<Entry, Optional<String>> loader) {
+        Map<String, String> skins = new LinkedHashMap<>();
+        Iterator<Entry> entries = iterate(players, customs, cursor);
+        int skipped = 0;
+        int taken = 0;
+        Entry last = null;
+        while (entries.hasNext() && taken < SharedGUI.HEAD_COUNT_PER_PAGE) {
+            Entry entry = entries.next();
+            if (!filter.test(entry)) {
+                continue;
+            }
+
+            // The offset is only needed when the previous page is not known
+            if (cursor == null && skipped < offset) {
+                skipped++;
+                continue;
+            }
+
+            taken++;
+            last = entry;
+            loader.apply(entry).ifPresent(value -> skins.put(entry.name(), value));
+        }
+
+        GUISkinCursor next = taken == SharedGUI.HEAD_COUNT_PER_PAGE ? new GUISkinCursor(last.name(), last.skinType(), last.fileName()) : null;
+        return new GUISkinPage(skins, next);
+    }
+
+    /**
+     * Picks a uniform random sample of the index in a single pass (reservoir sampling).
+     *
+     * @param limit   Maximum number of entries to return
+     * @param customs Whether custom skins may be picked
+     */
+    public List<Entry> sample(int limit, boolean customs) {
+        List<Entry> reservoir = new ArrayList<>(Math.min(limit, size()));
+        if (limit <= 0) {
+            return reservoir;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Iterator<Entry> entries = iterate(true, customs, null);
+        long seen = 0;
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            seen++;
+
+            if (reservoir.size() < limit) {
+                reservoir.add(entry);
+            } else {
+                // Every entry ends up in the reservoir with a chance of limit / seen
+                long slot = random.nextLong(seen);
+                if (slot < limit) {
+                    reservoir.set((int) slot, entry);
+                }
+            }
+        }
+
+        return reservoir;
+    }
+
+    private static Iterator<Entry> tail(NavigableSet<Entry> skins, SkinType type, @Nullable GUISkinCursor after) {
+        if (after == null) {
+            return skins.iterator();
+        }
+
+        // Entries with the cursor's name follow it if their type sorts after the cursor's type,
+        // or if they are of the same type and their file name sorts after the cursor's key
+        int typeOrder = typeName(type).compareTo(after.typeName());
+        if (typeOrder > 0) {
+            return skins.tailSet(new Entry(after.name(), "", type), true).iterator();
+        } else if (typeOrder == 0) {
+            return skins.tailSet(new Entry(after.name(), after.key(), type), false).iterator();
+        } else {
+            return skins.tailSet(new Entry(after.name(), LAST_FILE_NAME, type), false).iterator();
+        }
+    }
+
+    private static String typeName(SkinType type) {
+        return type.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param name     Name shown in the GUI
+     * @param fileName File name without extension
+     */
+    public record Entry(String name, String fileName, SkinType skinType) {
+    }
+
+    private static class MergingIterator implements Iterator<Entry> {
+        private final Iterator<Entry> first;
+        private final Iterator<Entry> second;
+        private Entry nextFirst;
+        private Entry nextSecond;
+
+        private MergingIterator(Iterator<Entry> first, Iterator<Entry> second) {
+            this.first = first;
+            this.second = second;
+            this.nextFirst = first.hasNext() ? first.next() : null;
+            this.nextSecond = second.hasNext() ? second.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextFirst != null || nextSecond != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Entry result;
+            if (nextSecond == null || (nextFirst != null && compare(nextFirst, nextSecond) <= 0)) {
+                result = nextFirst;
+                nextFirst = first.hasNext() ? first.next() : null;
+            } else {
+                result = nextSecond;
+                nextSecond = second.hasNext() ? second.next() : null;
+            }
+
+            return result;
+        }
+
+        private static int compare(Entry a, Entry b) {
+            int byName = String.CASE_INSENSITIVE_ORDER.compare(a.name(), b.name());
+            return byName != 0 ? byName : typeName(a.skinType()).compareTo(typeName(b.skinType()));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter;
+
+/**
+ * How data is stored when MySQL is disabled.
+ */
+public enum LocalStorageType {
+    /**
+     * One JSON file per record.
+     */
+    FILE,
+    /**
+     * Append-only log files with an index in memory.
+     */
+    LOG,
+    /**
+     * An embedded SQLite database with the same tables as MySQL.
+     */
+    SQLITE
+}
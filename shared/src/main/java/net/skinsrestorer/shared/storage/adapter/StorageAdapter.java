@@ -20,14 +20,17 @@ package net.skinsrestorer.shared.storage.adapter;
 import net.skinsrestorer.api.property.SkinIdentifier;
 import net.skinsrestorer.api.property.SkinType;
 import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
 import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
 import net.skinsrestorer.shared.storage.model.player.LegacyPlayerData;
 import net.skinsrestorer.shared.storage.model.player.PlayerData;
 import net.skinsrestorer.shared.storage.model.skin.*;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public interface StorageAdapter {
     void init();
@@ -70,32 +73,176 @@ public interface StorageAdapter {
 
     Map<String, String> getStoredRandomSkins(int amount);
 
-    Map<String, String> getStoredGUISkins(int offset);
-
-    void purgeStoredOldSkins(long targetPurgeTimestamp) throws StorageException;
+    /**
+     * Loads one page of GUI skins.
+     *
+     * @param offset Amount of skins on the previous pages
+     * @param cursor Where the previous page ended, if known. Adapters that can seek by key should prefer it over the offset.
+     */
+    GUISkinPage getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor);
+
+    /**
+     * Removes player skins that were last updated before the given timestamp.
+     *
+     * @param progress Receives the running amount of removed skins while the purge is in progress
+     * @return Amount of removed skins
+     */
+    int purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress) throws StorageException;
+
+    /**
+     * Moves the last access of the given player skins forward, skins that are not stored are skipped.
+     * Until a skin is touched, its timestamp counts as its last access.
+     *
+     * @param lastAccess Epoch second of the latest access of each skin
+     */
+    void touchPlayerSkins(Map<UUID, Long> lastAccess) throws StorageException;
+
+    /**
+     * Removes player skins that were last used before the given timestamp, skins with a timestamp of 0 are kept.
+     *
+     * @param progress Receives the running amount of removed skins while the purge is in progress
+     * @return Amount of removed skins
+     */
+    int purgeUnusedPlayerSkins(long targetLastAccess, IntConsumer progress) throws StorageException;
+
+    /**
+     * Streams the skin identifiers of all stored players, including legacy players that are not migrated yet.
+     * Legacy players are streamed first, so a player migrated during the scan is still seen in the players.
+     */
+    void forEachSkinReference(Consumer<SkinIdentifier> consumer) throws StorageException;
+
+    /**
+     * Streams the keys of all stored player, URL and legacy skins and URL indexes. Custom skins are never streamed.
+     */
+    void forEachCollectableSkin(Consumer<StoredSkinKey> consumer) throws StorageException;
 
     Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException;
 
     void setCachedUUID(String playerName, MojangCacheData mojangCacheData);
 
+    /**
+     * Bulk variant of {@link #getPlayerData(UUID)}, players without data are left out of the map.
+     */
+    default Map<UUID, PlayerData> getPlayerDataBatch(Collection<UUID> uuids) throws StorageException {
+        Map<UUID, PlayerData> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            Optional<PlayerData> data = getPlayerData(uuid);
+            if (data.isPresent()) {
+                result.put(uuid, data.get());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Bulk variant of {@link #setPlayerData(UUID, PlayerData)}.
+     */
+    default void setPlayerDataBatch(Map<UUID, PlayerData> data) {
+        for (Map.Entry<UUID, PlayerData> entry : data.entrySet()) {
+            setPlayerData(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Bulk variant of {@link #getPlayerSkinData(UUID)}, players without a stored skin are left out of the map.
+     */
+    default Map<UUID, PlayerSkinData> getPlayerSkinDataBatch(Collection<UUID> uuids) throws StorageException {
+        Map<UUID, PlayerSkinData> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            Optional<PlayerSkinData> data = getPlayerSkinData(uuid);
+            if (data.isPresent()) {
+                result.put(uuid, data.get());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Bulk variant of {@link #getCachedUUID(String)}.
+     * The map is keyed by the names exactly as they were passed in, names without a cache entry are left out.
+     */
+    default Map<String, MojangCacheData> getCachedUUIDBatch(Collection<String> playerNames) throws StorageException {
+        Map<String, MojangCacheData> result = new HashMap<>();
+        for (String playerName : playerNames) {
+            Optional<MojangCacheData> data = getCachedUUID(playerName);
+            if (data.isPresent()) {
+                result.put(playerName, data.get());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Bulk variant of {@link #setCachedUUID(String, MojangCacheData)}.
+     */
+    default void setCachedUUIDBatch(Map<String, MojangCacheData> data) {
+        for (Map.Entry<String, MojangCacheData> entry : data.entrySet()) {
+            setCachedUUID(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Moves the legacy entry of a player to the new format.
+     * Data the player already has in the new format is newer and wins, the legacy entry is only removed then.
+     */
     default void migrateLegacyPlayer(String playerName, UUID uuid) throws StorageException {
         Optional<LegacyPlayerData> legacyPlayerData = getLegacyPlayerData(playerName);
         if (legacyPlayerData.isEmpty()) {
             return;
         }
 
+        if (getPlayerData(uuid).isEmpty()) {
+            setPlayerData(uuid, toMigratedPlayerData(uuid, legacyPlayerData.get()));
+        }
+
+        removeLegacyPlayerData(playerName);
+    }
+
+    /**
+     * Migrates legacy players whose UUID is already in the Mojang cache in one pass.
+     * Players that already have data in the new format keep it, like in {@link #migrateLegacyPlayer(String, UUID)}.
+     * Unknown players are left to {@link #migrateLegacyPlayer(String, UUID)} on their next login.
+     *
+     * @return Names of the migrated or already migrated players, their legacy entries can be removed
+     */
+    default Set<String> migrateLegacyPlayers(Collection<LegacyPlayerData> legacyPlayers) throws StorageException {
+        Map<String, MojangCacheData> cachedUUIDs = getCachedUUIDBatch(legacyPlayers.stream()
+                .map(LegacyPlayerData::getPlayerName)
+                .toList());
+
+        Map<UUID, LegacyPlayerData> knownPlayers = new HashMap<>();
+        for (LegacyPlayerData legacyPlayer : legacyPlayers) {
+            MojangCacheData cacheData = cachedUUIDs.get(legacyPlayer.getPlayerName());
+            if (cacheData != null) {
+                cacheData.getUniqueId().ifPresent(uuid -> knownPlayers.putIfAbsent(uuid, legacyPlayer));
+            }
+        }
+
+        Set<UUID> existingPlayers = getPlayerDataBatch(knownPlayers.keySet()).keySet();
+        Map<UUID, PlayerData> migratedData = new HashMap<>();
+        Set<String> migratedNames = new HashSet<>();
+        for (Map.Entry<UUID, LegacyPlayerData> entry : knownPlayers.entrySet()) {
+            migratedNames.add(entry.getValue().getPlayerName());
+            if (!existingPlayers.contains(entry.getKey())) {
+                migratedData.put(entry.getKey(), toMigratedPlayerData(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        setPlayerDataBatch(migratedData);
+        return migratedNames;
+    }
+
+    private PlayerData toMigratedPlayerData(UUID uuid, LegacyPlayerData legacyPlayerData) throws StorageException {
         // Handle migrated or new custom skins
-        Optional<CustomSkinData> customSkinData = getCustomSkinData(legacyPlayerData.get().getSkinName());
-        PlayerData playerData;
+        Optional<CustomSkinData> customSkinData = getCustomSkinData(legacyPlayerData.getSkinName());
         if (customSkinData.isPresent()) {
-            playerData = PlayerData.of(uuid, SkinIdentifier.ofCustom(customSkinData.get().getSkinName()));
+            return PlayerData.of(uuid, SkinIdentifier.ofCustom(customSkinData.get().getSkinName()));
         } else {
-            playerData = PlayerData.of(uuid, SkinIdentifier.of(legacyPlayerData.get().getSkinName(), null, SkinType.LEGACY));
+            return PlayerData.of(uuid, SkinIdentifier.of(legacyPlayerData.getSkinName(), null, SkinType.LEGACY));
         }
-
-        setPlayerData(uuid, playerData);
-
-        removeLegacyPlayerData(playerName);
     }
 
     default boolean isLegacyCustomSkinTimestamp(long timestamp) {
@@ -20,59 +20,91 @@ package net.skinsrestorer.shared.storage.adapter.file;
 import ch.jalu.configme.SettingsManager;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import net.skinsrestorer.api.property.SkinIdentifier;
 import net.skinsrestorer.api.property.SkinProperty;
 import net.skinsrestorer.api.property.SkinType;
 import net.skinsrestorer.api.property.SkinVariant;
 import net.skinsrestorer.shared.config.GUIConfig;
-import net.skinsrestorer.shared.gui.SharedGUI;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
 import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.GUISkinIndex;
 import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
-import net.skinsrestorer.shared.storage.adapter.file.model.cache.MojangCacheFile;
 import net.skinsrestorer.shared.storage.adapter.file.model.player.LegacyPlayerFile;
-import net.skinsrestorer.shared.storage.adapter.file.model.player.PlayerFile;
-import net.skinsrestorer.shared.storage.adapter.file.model.skin.*;
+import net.skinsrestorer.shared.storage.adapter.file.model.skin.LegacySkinFile;
 import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
 import net.skinsrestorer.shared.storage.model.player.LegacyPlayerData;
 import net.skinsrestorer.shared.storage.model.player.PlayerData;
 import net.skinsrestorer.shared.storage.model.skin.*;
 import net.skinsrestorer.shared.utils.SRHelpers;
+import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.UserDefinedFileAttributeView;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class FileAdapter implements StorageAdapter {
     private static final String LAST_KNOW_NAME_ATTRIBUTE = "sr_last_known_name";
     private static final Pattern UUID_REGEX = Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
-    private static final Random RANDOM = new Random();
+    private static final int PURGE_PROGRESS_INTERVAL = 1000;
+    private static final int BATCH_CHUNK_SIZE = 500;
+    // Power of two, so a stripe is picked with a mask
+    private static final int LOCK_STRIPES = 256;
     private final Path skinsFolder;
     private final Path playersFolder;
-    private final Path cacheFolder;
     private final Path legacyFolder;
+    private final ShardedFolder shardedSkins;
+    private final ShardedFolder shardedPlayers;
+    private final ShardedFolder shardedCache;
+    private final FileTextureStore textures;
     private final SettingsManager settings;
     private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
     private final SRLogger logger;
+    private final GUISkinIndex guiIndex = new GUISkinIndex();
+    // Serialises writes of the same record, reads need no lock since files are only ever replaced atomically
+    private final Lock[] recordLocks = new Lock[LOCK_STRIPES];
+    // Checked once on startup, so logins do not have to look for legacy files
+    private volatile boolean legacyPlayersPresent;
+    private volatile boolean legacySkinsPresent;
 
     @Inject
     public FileAdapter(SRPlugin plugin, SettingsManager settings, SRLogger logger) {
         Path dataFolder = plugin.getDataFolder();
         this.skinsFolder = dataFolder.resolve("skins");
         this.playersFolder = dataFolder.resolve("players");
-        this.cacheFolder = dataFolder.resolve("cache");
         this.legacyFolder = dataFolder.resolve("legacy");
+        this.shardedSkins = new ShardedFolder(skinsFolder, "*.{playerskin,customskin,urlskin,urlindex}");
+        // Player files named after a player instead of a UUID are legacy files, those stay where they are
+        this.shardedPlayers = new ShardedFolder(playersFolder, "????????-????-????-????-????????????.player");
+        this.shardedCache = new ShardedFolder(dataFolder.resolve("cache"), "*.mojangcache");
+        this.textures = new FileTextureStore(dataFolder.resolve("textures"));
         this.settings = settings;
         this.logger = logger;
+        for (int i = 0; i < recordLocks.length; i++) {
+            recordLocks[i] = new ReentrantLock();
+        }
         try {
             migrate(dataFolder);
         } catch (IOException e) {
@@ -81,37 +113,223 @@ public class FileAdapter implements StorageAdapter {
         init();
     }
 
-    private static String hashSHA256(String input) {
+    @Override
+    public void init() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash);
-        } catch (NoSuchAlgorithmException e) {
+            shardedSkins.init();
+            shardedPlayers.init();
+            shardedCache.init();
+            textures.init();
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
+
+        buildGUIIndex();
+
+        migrateLegacyPlayersInBulk();
+
+        legacyPlayersPresent = hasLegacyFiles(legacyFolder.resolve("players"));
+        legacySkinsPresent = hasLegacyFiles(legacyFolder.resolve("skins"));
+
+        startBackgroundMigration();
+    }
+
+    /**
+     * Moves files of the old flat layout into their shards and moves inline textures into the texture store without blocking startup.
+     * Until a file is moved, looking it up moves it right away, and records with inline textures can be read as they are.
+     */
+    private void startBackgroundMigration() {
+        List<ShardedFolder> pending = Stream.of(shardedSkins, shardedPlayers, shardedCache)
+                .filter(ShardedFolder::isMigrationPending)
+                .toList();
+        boolean texturesPending = !textures.isMigrated();
+        if (pending.isEmpty() && !texturesPending) {
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            for (ShardedFolder folder : pending) {
+                logger.info(String.format("Moving the files of %s into the sharded layout...", folder.getRoot().getFileName()));
+                try {
+                    int moved = folder.migrateFlatFiles(logger);
+                    logger.info(String.format("Moved %d files of %s into the sharded layout", moved, folder.getRoot().getFileName()));
+                } catch (IOException e) {
+                    logger.warning("Failed to move the files of " + folder.getRoot().getFileName() + " into the sharded layout, retrying on the next startup", e);
+                }
+            }
+
+            if (texturesPending) {
+                migrateTextures();
+            }
+        }, "SkinsRestorer-File-Migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void migrateTextures() {
+        List<Path> files;
+        try {
+            files = shardedSkins.list("*.{playerskin,customskin,urlskin}");
+        } catch (IOException e) {
+            logger.warning("Failed to list skin files for the texture store, retrying on the next startup", e);
+            return;
+        }
+
+        logger.info("Moving skin textures into the texture store...");
+        AtomicInteger converted = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        files.parallelStream().forEach(listedFile -> {
+            String fileName = listedFile.getFileName().toString();
+            String name = fileName.substring(0, fileName.lastIndexOf("."));
+            try {
+                boolean moved;
+                if (fileName.endsWith(".playerskin")) {
+                    moved = moveTextureToStore(resolvePlayerSkinFile(UUID.fromString(name)), FileRecordCodec.PLAYER_SKIN,
+                            PlayerSkinData::getProperty, PlayerSkinData::getLastKnownName);
+                } else if (fileName.endsWith(".customskin")) {
+                    moved = moveTextureToStore(resolveCustomSkinFile(name), FileRecordCodec.CUSTOM_SKIN,
+                            CustomSkinData::getProperty, data -> null);
+                } else {
+                    // URL skin files are named after a hash, there is no key to resolve them by
+                    moved = moveTextureToStore(listedFile, FileRecordCodec.URL_SKIN,
+                            URLSkinData::getProperty, data -> null);
+                }
+
+                if (moved) {
+                    converted.incrementAndGet();
+                }
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                logger.debug("Failed to move the texture of " + fileName + " into the texture store", e);
+            }
+        });
+
+        if (failed.get() > 0) {
+            logger.warning(String.format("Failed to move the textures of %d skin files into the texture store, retrying on the next startup", failed.get()));
+            return;
+        }
+
+        try {
+            textures.markMigrated();
+        } catch (IOException e) {
+            logger.warning("Failed to mark the texture store as migrated", e);
+        }
+        logger.info(String.format("Moved the textures of %d skin files into the texture store", converted.get()));
     }
 
-    private static String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder(2 * hash.length);
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
+    private <T> boolean moveTextureToStore(Path file, FileRecordCodec<T> codec,
+                                           Function<T, SkinProperty> property, Function<T, String> lastKnownName) throws IOException {
+        Lock lock = lockFor(file);
+        lock.lock();
+        try {
+            byte[] data;
+            try {
+                data = Files.readAllBytes(file);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+
+            if (codec.readTextureHash(data) != null) {
+                return false;
             }
-            hexString.append(hex);
+
+            T value = codec.read(data);
+            replaceSkinRecord(file, codec, value, property.apply(value), lastKnownName.apply(value));
+            return true;
+        } finally {
+            lock.unlock();
         }
-        return hexString.toString();
     }
 
-    @Override
-    public void init() {
+    private void buildGUIIndex() {
+        List<Path> files;
         try {
-            Files.createDirectories(skinsFolder);
-            Files.createDirectories(playersFolder);
-            Files.createDirectories(cacheFolder);
+            files = shardedSkins.list("*.{playerskin,customskin}");
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            logger.warning("Failed to list skin files for the GUI", e);
+            return;
         }
+
+        guiIndex.clear();
+        files.parallelStream().forEach(path -> {
+            String fileName = path.getFileName().toString();
+            int lastDotIndex = fileName.lastIndexOf(".");
+            String name = fileName.substring(0, lastDotIndex);
+
+            if (fileName.endsWith(".playerskin")) {
+                guiIndex.putPlayerSkin(name, getLastKnownName(path).orElse(null));
+            } else {
+                guiIndex.putCustomSkin(name);
+            }
+        });
+
+        logger.debug(String.format("Indexed %d GUI skins", guiIndex.size()));
+    }
+
+    private void migrateLegacyPlayersInBulk() {
+        Path legacyPlayersFolder = legacyFolder.resolve("players");
+        if (!Files.isDirectory(legacyPlayersFolder)) {
+            return;
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacyPlayersFolder, "*.legacyplayer")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            logger.warning("Failed to list legacy player files", e);
+            return;
+        }
+
+        int migrated = 0;
+        for (int i = 0; i < files.size(); i += BATCH_CHUNK_SIZE) {
+            Map<String, Path> chunkFiles = new HashMap<>();
+            List<LegacyPlayerData> chunk = new ArrayList<>();
+            for (Path file : files.subList(i, Math.min(files.size(), i + BATCH_CHUNK_SIZE))) {
+                try {
+                    LegacyPlayerData legacyPlayerData = gson.fromJson(Files.readString(file), LegacyPlayerFile.class).toLegacyPlayerData();
+                    chunk.add(legacyPlayerData);
+                    chunkFiles.put(legacyPlayerData.getPlayerName(), file);
+                } catch (Exception e) {
+                    logger.warning("Failed to read legacy player file: " + file.getFileName(), e);
+                }
+            }
+
+            try {
+                for (String migratedName : migrateLegacyPlayers(chunk)) {
+                    Files.deleteIfExists(chunkFiles.get(migratedName));
+                    migrated++;
+                }
+            } catch (StorageException | IOException e) {
+                logger.warning("Failed to migrate legacy player files", e);
+            }
+        }
+
+        if (migrated > 0) {
+            logger.info(String.format("Migrated %d legacy players with a known UUID, the others are migrated on their next login", migrated));
+        }
+    }
+
+    private boolean hasLegacyFiles(Path folder) {
+        if (!Files.isDirectory(folder)) {
+            return false;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            if (stream.iterator().hasNext()) {
+                return true;
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to check legacy folder " + folder.getFileName(), e);
+            return true;
+        }
+
+        // Nothing left to migrate, removing the folder keeps later startups from looking again
+        try {
+            Files.deleteIfExists(folder);
+        } catch (IOException e) {
+            logger.debug(e);
+        }
+        return false;
     }
 
     private void migrate(Path dataFolder) throws IOException {
@@ -224,20 +442,12 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public Optional<PlayerData> getPlayerData(UUID uuid) throws StorageException {
-        Path playerFile = resolvePlayerFile(uuid);
-
-        if (!Files.exists(playerFile)) {
-            return Optional.empty();
-        }
-
-        try {
-            String json = Files.readString(playerFile);
-            PlayerFile file = gson.fromJson(json, PlayerFile.class);
+        return readRecord(resolvePlayerFile(uuid), FileRecordCodec.PLAYER);
+    }
 
-            return Optional.of(file.toPlayerData());
-        } catch (Exception e) {
-            throw new StorageException(e);
-        }
+    @Override
+    public Map<UUID, PlayerData> getPlayerDataBatch(Collection<UUID> uuids) throws StorageException {
+        return readParallel(uuids, this::getPlayerData);
     }
 
     @Override
@@ -245,9 +455,7 @@ public class FileAdapter implements StorageAdapter {
         Path playerFile = resolvePlayerFile(uuid);
 
         try {
-            PlayerFile file = PlayerFile.fromPlayerData(data);
-
-            Files.writeString(playerFile, gson.toJson(file));
+            writeRecord(playerFile, FileRecordCodec.PLAYER, data, null, null);
         } catch (IOException e) {
             logger.warning("Failed to save player data for " + uuid, e);
         }
@@ -255,21 +463,12 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public Optional<PlayerSkinData> getPlayerSkinData(UUID uuid) throws StorageException {
-        Path skinFile = resolvePlayerSkinFile(uuid);
-
-        if (!Files.exists(skinFile)) {
-            return Optional.empty();
-        }
-
-        try {
-            String json = Files.readString(skinFile);
-
-            PlayerSkinFile file = gson.fromJson(json, PlayerSkinFile.class);
+        return readSkinRecord(resolvePlayerSkinFile(uuid), FileRecordCodec.PLAYER_SKIN);
+    }
 
-            return Optional.of(file.toPlayerSkinData());
-        } catch (Exception e) {
-            throw new StorageException(e);
-        }
+    @Override
+    public Map<UUID, PlayerSkinData> getPlayerSkinDataBatch(Collection<UUID> uuids) throws StorageException {
+        return readParallel(uuids, this::getPlayerSkinData);
     }
 
     @Override
@@ -277,7 +476,7 @@ public class FileAdapter implements StorageAdapter {
         Path skinFile = resolvePlayerSkinFile(uuid);
 
         try {
-            Files.deleteIfExists(skinFile);
+            deleteSkinRecord(skinFile, FileRecordCodec.PLAYER_SKIN, () -> guiIndex.removePlayerSkin(uuid.toString()));
         } catch (IOException e) {
             logger.warning("Failed to remove player skin data for " + uuid, e);
         }
@@ -288,12 +487,8 @@ public class FileAdapter implements StorageAdapter {
         Path skinFile = resolvePlayerSkinFile(uuid);
 
         try {
-            PlayerSkinFile file = PlayerSkinFile.fromPlayerSkinData(skinData);
-
-            Files.writeString(skinFile, gson.toJson(file));
-
-            UserDefinedFileAttributeView view = Files.getFileAttributeView(skinFile, UserDefinedFileAttributeView.class);
-            view.write(LAST_KNOW_NAME_ATTRIBUTE, StandardCharsets.UTF_8.encode(skinData.getLastKnownName()));
+            writeSkinRecord(skinFile, FileRecordCodec.PLAYER_SKIN, skinData, skinData.getProperty(), skinData.getLastKnownName(),
+                    () -> guiIndex.putPlayerSkin(uuid.toString(), skinData.getLastKnownName()));
         } catch (IOException e) {
             logger.warning("Failed to save player skin data for " + uuid, e);
         }
@@ -301,21 +496,7 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public Optional<URLSkinData> getURLSkinData(String url, SkinVariant skinVariant) throws StorageException {
-        Path skinFile = resolveURLSkinFile(url, skinVariant);
-
-        if (!Files.exists(skinFile)) {
-            return Optional.empty();
-        }
-
-        try {
-            String json = Files.readString(skinFile);
-
-            URLSkinFile file = gson.fromJson(json, URLSkinFile.class);
-
-            return Optional.of(file.toURLSkinData());
-        } catch (Exception e) {
-            throw new StorageException(e);
-        }
+        return readSkinRecord(resolveURLSkinFile(url, skinVariant), FileRecordCodec.URL_SKIN);
     }
 
     @Override
@@ -323,7 +504,7 @@ public class FileAdapter implements StorageAdapter {
         Path skinFile = resolveURLSkinFile(url, skinVariant);
 
         try {
-            Files.deleteIfExists(skinFile);
+            deleteSkinRecord(skinFile, FileRecordCodec.URL_SKIN, null);
         } catch (IOException e) {
             logger.warning("Failed to remove URL skin data for " + url, e);
         }
@@ -334,9 +515,7 @@ public class FileAdapter implements StorageAdapter {
         Path skinFile = resolveURLSkinFile(url, skinData.getSkinVariant());
 
         try {
-            URLSkinFile file = URLSkinFile.fromURLSkinData(skinData);
-
-            Files.writeString(skinFile, gson.toJson(file));
+            writeSkinRecord(skinFile, FileRecordCodec.URL_SKIN, skinData, skinData.getProperty(), null, null);
         } catch (IOException e) {
             logger.warning("Failed to save URL skin data for " + url, e);
         }
@@ -344,21 +523,7 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public Optional<URLIndexData> getURLSkinIndex(String url) throws StorageException {
-        Path skinFile = resolveURLSkinIndexFile(url);
-
-        if (!Files.exists(skinFile)) {
-            return Optional.empty();
-        }
-
-        try {
-            String json = Files.readString(skinFile);
-
-            URLIndexFile file = gson.fromJson(json, URLIndexFile.class);
-
-            return Optional.of(file.toURLIndexData());
-        } catch (Exception e) {
-            throw new StorageException(e);
-        }
+        return readRecord(resolveURLSkinIndexFile(url), FileRecordCodec.URL_INDEX);
     }
 
     @Override
@@ -366,7 +531,7 @@ public class FileAdapter implements StorageAdapter {
         Path skinFile = resolveURLSkinIndexFile(url);
 
         try {
-            Files.deleteIfExists(skinFile);
+            deleteRecord(skinFile, null);
         } catch (IOException e) {
             logger.warning("Failed to remove URL skin index for " + url, e);
         }
@@ -377,9 +542,7 @@ public class FileAdapter implements StorageAdapter {
         Path skinFile = resolveURLSkinIndexFile(url);
 
         try {
-            URLIndexFile file = URLIndexFile.fromURLIndexData(skinData);
-
-            Files.writeString(skinFile, gson.toJson(file));
+            writeRecord(skinFile, FileRecordCodec.URL_INDEX, skinData, null, null);
         } catch (IOException e) {
             logger.warning("Failed to save URL skin index for " + url, e);
         }
@@ -388,21 +551,7 @@ public class FileAdapter implements StorageAdapter {
     @Override
     public Optional<CustomSkinData> getCustomSkinData(String skinName) throws StorageException {
         skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
-        Path skinFile = resolveCustomSkinFile(skinName);
-
-        if (!Files.exists(skinFile)) {
-            return Optional.empty();
-        }
-
-        try {
-            String json = Files.readString(skinFile);
-
-            CustomSkinFile file = gson.fromJson(json, CustomSkinFile.class);
-
-            return Optional.of(file.toCustomSkinData());
-        } catch (Exception e) {
-            throw new StorageException(e);
-        }
+        return readSkinRecord(resolveCustomSkinFile(skinName), FileRecordCodec.CUSTOM_SKIN);
     }
 
     @Override
@@ -410,8 +559,9 @@ public class FileAdapter implements StorageAdapter {
         skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
         Path skinFile = resolveCustomSkinFile(skinName);
 
+        String indexName = skinName;
         try {
-            Files.deleteIfExists(skinFile);
+            deleteSkinRecord(skinFile, FileRecordCodec.CUSTOM_SKIN, () -> guiIndex.removeCustomSkin(indexName));
         } catch (IOException e) {
             logger.warning("Failed to remove custom skin data for " + skinName, e);
         }
@@ -423,9 +573,8 @@ public class FileAdapter implements StorageAdapter {
         Path skinFile = resolveCustomSkinFile(skinName);
 
         try {
-            CustomSkinFile file = CustomSkinFile.fromCustomSkinData(skinData);
-
-            Files.writeString(skinFile, gson.toJson(file));
+            String indexName = skinName;
+            writeSkinRecord(skinFile, FileRecordCodec.CUSTOM_SKIN, skinData, skinData.getProperty(), null, () -> guiIndex.putCustomSkin(indexName));
         } catch (IOException e) {
             logger.warning("Failed to save custom skin data for " + skinName, e);
         }
@@ -433,6 +582,10 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public Optional<LegacySkinData> getLegacySkinData(String skinName) throws StorageException {
+        if (!legacySkinsPresent) {
+            return Optional.empty();
+        }
+
         skinName = sanitizeLegacySkinName(skinName);
         Path skinFile = resolveLegacySkinFile(skinName);
 
@@ -453,6 +606,10 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public void removeLegacySkinData(String skinName) {
+        if (!legacySkinsPresent) {
+            return;
+        }
+
         skinName = sanitizeLegacySkinName(skinName);
         Path skinFile = resolveLegacySkinFile(skinName);
 
@@ -465,6 +622,10 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public Optional<LegacyPlayerData> getLegacyPlayerData(String playerName) throws StorageException {
+        if (!legacyPlayersPresent) {
+            return Optional.empty();
+        }
+
         playerName = sanitizeLegacyPlayerName(playerName);
         Path legacyFile = resolveLegacyPlayerFile(playerName);
 
@@ -485,6 +646,10 @@ public class FileAdapter implements StorageAdapter {
 
     @Override
     public void removeLegacyPlayerData(String playerName) {
+        if (!legacyPlayersPresent) {
+            return;
+        }
+
         playerName = sanitizeLegacyPlayerName(playerName);
         Path legacyFile = resolveLegacyPlayerFile(playerName);
 
@@ -496,306 +661,487 @@ public class FileAdapter implements StorageAdapter {
     }
 
     @Override
-    public Map<String, String> getStoredGUISkins(int offset) {
-        Map<String, String> list = new LinkedHashMap<>();
+    public GUISkinPage getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor) {
+        boolean customEnabled = settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED);
+        boolean customOnly = customEnabled && settings.getProperty(GUIConfig.CUSTOM_GUI_ONLY);
+        Set<String> customSkins = settings.getProperty(GUIConfig.CUSTOM_GUI_SKINS)
+                .stream()
+                .map(s -> s.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
 
-        Map<String, GUIFileData> files = getGUIFilesSorted(offset);
+        // Only allow specific custom skins if enabled
+        return guiIndex.getPage(offset, cursor, !customOnly, customEnabled,
+                entry -> !customOnly || customSkins.contains(entry.fileName().toLowerCase(Locale.ROOT)),
+                this::loadGUIEntry);
+    }
 
-        for (Map.Entry<String, GUIFileData> entry : files.entrySet()) {
-            GUIFileData data = entry.getValue();
-            String fileName = data.fileName();
-            try {
-                Optional<SkinProperty> skinProperty;
-                SkinType skinType = data.skinType();
-                if (skinType == SkinType.PLAYER) {
-                    skinProperty = getPlayerSkinData(UUID.fromString(fileName))
-                            .map(PlayerSkinData::getProperty);
-                } else if (skinType == SkinType.CUSTOM) {
-                    skinProperty = getCustomSkinData(fileName)
-                            .map(CustomSkinData::getProperty);
-                } else {
-                    throw new IllegalStateException("Unknown skin type: " + skinType);
-                }
+    @Override
+    public Map<String, String> getStoredRandomSkins(int limit) {
+        boolean customEnabled = settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED);
 
-                skinProperty.ifPresent(property -> list.put(entry.getKey(), property.getValue()));
-            } catch (StorageException e) {
-                logger.warning("Failed to load skin data for " + fileName, e);
-            }
+        Map<String, String> list = new LinkedHashMap<>();
+        // Sampling happens in memory, only the picked skins are read from disk
+        for (GUISkinIndex.Entry entry : guiIndex.sample(limit, customEnabled)) {
+            loadGUIEntry(entry).ifPresent(value -> list.put(entry.name(), value));
         }
 
         return list;
     }
 
-    @Override
-    public Map<String, String> getStoredRandomSkins(int limit) {
-        Map<String, String> list = new LinkedHashMap<>();
+    private Optional<String> loadGUIEntry(GUISkinIndex.Entry entry) {
+        try {
+            Optional<SkinProperty> skinProperty;
+            if (entry.skinType() == SkinType.PLAYER) {
+                skinProperty = getPlayerSkinData(UUID.fromString(entry.fileName()))
+                        .map(PlayerSkinData::getProperty);
+            } else {
+                skinProperty = getCustomSkinData(entry.fileName())
+                        .map(CustomSkinData::getProperty);
+            }
+
+            return skinProperty.map(SkinProperty::getValue);
+        } catch (StorageException e) {
+            logger.warning("Failed to load skin data for " + entry.fileName(), e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<String> getLastKnownName(Path path) {
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+            if (!view.list().contains(LAST_KNOW_NAME_ATTRIBUTE)) {
+                return Optional.empty();
+            }
 
-        Map<String, GUIFileData> files = getRandomFiles(limit);
+            ByteBuffer buffer = ByteBuffer.allocate(view.size(LAST_KNOW_NAME_ATTRIBUTE));
+            view.read(LAST_KNOW_NAME_ATTRIBUTE, buffer);
+            buffer.flip();
+            return Optional.of(StandardCharsets.UTF_8.decode(buffer).toString());
+        } catch (IOException e) {
+            logger.warning("Failed to load last known name for " + path.getFileName(), e);
+            return Optional.empty();
+        }
+    }
 
-        for (Map.Entry<String, GUIFileData> entry : files.entrySet()) {
-            GUIFileData data = entry.getValue();
-            String fileName = data.fileName();
+    @Override
+    public int purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress) throws StorageException {
+        return purgePlayerSkins(progress, (file, timestamp) -> timestamp < targetPurgeTimestamp);
+    }
+
+    /**
+     * The last access of a player skin is the modification time of its file, every save of the file counts as an access as well.
+     * Unlike extended attributes it is supported everywhere, and moving a file into its shard keeps it.
+     */
+    @Override
+    public void touchPlayerSkins(Map<UUID, Long> lastAccess) throws StorageException {
+        for (Map.Entry<UUID, Long> entry : lastAccess.entrySet()) {
+            Path file = resolvePlayerSkinFile(entry.getKey());
+            FileTime accessTime = FileTime.from(entry.getValue(), TimeUnit.SECONDS);
+            // Locked, so the time is not set on a file that is just being replaced
+            Lock lock = lockFor(file);
+            lock.lock();
             try {
-                Optional<SkinProperty> skinProperty;
-                SkinType skinType = data.skinType();
-                if (skinType == SkinType.PLAYER) {
-                    skinProperty = getPlayerSkinData(UUID.fromString(fileName))
-                            .map(PlayerSkinData::getProperty);
-                } else if (skinType == SkinType.CUSTOM) {
-                    skinProperty = getCustomSkinData(fileName)
-                            .map(CustomSkinData::getProperty);
-                } else {
-                    throw new IllegalStateException("Unknown skin type: " + skinType);
+                if (Files.getLastModifiedTime(file).compareTo(accessTime) < 0) {
+                    Files.setLastModifiedTime(file, accessTime);
                 }
-
-                skinProperty.ifPresent(property -> list.put(entry.getKey(), property.getValue()));
-            } catch (StorageException e) {
-                logger.warning("Failed to load skin data for " + fileName, e);
+            } catch (NoSuchFileException ignored) {
+                // Removed since it was used
+            } catch (IOException e) {
+                throw new StorageException(e);
+            } finally {
+                lock.unlock();
             }
         }
-
-        return list;
     }
 
-    private Map<String, GUIFileData> getGUIFilesSorted(int offset) {
-        boolean customEnabled = settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED);
-        boolean customOnly = settings.getProperty(GUIConfig.CUSTOM_GUI_ONLY);
-        List<String> customSkins = settings.getProperty(GUIConfig.CUSTOM_GUI_SKINS)
-                .stream()
-                .map(s -> s.toLowerCase(Locale.ROOT))
-                .distinct() // No duplicates
-                .toList();
+    @Override
+    public int purgeUnusedPlayerSkins(long targetLastAccess, IntConsumer progress) throws StorageException {
+        return purgePlayerSkins(progress, (file, timestamp) -> timestamp <= targetLastAccess
+                && Files.getLastModifiedTime(file).to(TimeUnit.SECONDS) <= targetLastAccess);
+    }
 
-        Map<String, GUIFileData> files = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        try (Stream<Path> stream = Files.walk(skinsFolder, 1)) {
-            int skinIndex = 0;
-            for (Path path : (Iterable<Path>) stream::iterator) {
-                if (Files.isDirectory(path)) {
-                    continue;
-                }
+    private int purgePlayerSkins(IntConsumer progress, PurgeFilter filter) throws StorageException {
+        List<Path> files;
+        try {
+            files = shardedSkins.list("*.playerskin");
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
 
-                String fileName = path.getFileName().toString();
-                int lastDotIndex = fileName.lastIndexOf(".");
-                if (lastDotIndex == -1) {
-                    continue;
+        AtomicInteger scanned = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        files.parallelStream().forEach(listedFile -> {
+            String fileName = listedFile.getFileName().toString();
+            try {
+                // Resolve again, the file may have been moved into its shard since it was listed
+                String uuid = fileName.substring(0, fileName.lastIndexOf("."));
+                Path file = resolvePlayerSkinFile(UUID.fromString(uuid));
+                // Locked, so a skin saved again after the timestamp was read is not deleted
+                Lock lock = lockFor(file);
+                lock.lock();
+                try {
+                    // Only the fixed-width header is decoded, the textures are never looked at
+                    byte[] data = Files.readAllBytes(file);
+                    long timestamp = FileRecordCodec.readPlayerSkinTimestamp(data);
+
+                    if (timestamp != 0L && filter.test(file, timestamp)) {
+                        byte[] textureHash = FileRecordCodec.PLAYER_SKIN.readTextureHash(data);
+                        if (Files.deleteIfExists(file)) {
+                            guiIndex.removePlayerSkin(uuid);
+                            removed.incrementAndGet();
+
+                            if (textureHash != null) {
+                                textures.release(textureHash);
+                            }
+                        }
+                    }
+                } finally {
+                    lock.unlock();
                 }
+            } catch (Exception e) {
+                // One broken file should not keep the others from being purged
+                failed.incrementAndGet();
+                logger.debug("Failed to check " + fileName + " for purging", e);
+            }
 
-                String extension = fileName.substring(lastDotIndex + 1);
-                String name = fileName.substring(0, lastDotIndex);
-
-                boolean isPlayerSkin = extension.equals("playerskin");
-                boolean isCustomSkin = extension.equals("customskin");
+            if (scanned.incrementAndGet() % PURGE_PROGRESS_INTERVAL == 0) {
+                progress.accept(removed.get());
+            }
+        });
 
-                // Only allow player skins and custom skins
-                if (!isPlayerSkin && !isCustomSkin) {
-                    continue;
-                }
+        if (failed.get() > 0) {
+            logger.warning(String.format("Skipped %d unreadable skin files while purging, enable debug mode for details", failed.get()));
+        }
 
-                // No player skins if custom skins only
-                if (isPlayerSkin && customEnabled && customOnly) {
-                    continue;
-                }
+        progress.accept(removed.get());
+        return removed.get();
+    }
 
-                // Do not allow custom skins if not enabled
-                if (isCustomSkin && !customEnabled) {
-                    continue;
+    @Override
+    public void forEachSkinReference(Consumer<SkinIdentifier> consumer) throws StorageException {
+        try {
+            Path legacyPlayersFolder = legacyFolder.resolve("players");
+            if (legacyPlayersPresent && Files.isDirectory(legacyPlayersFolder)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacyPlayersFolder, "*.legacyplayer")) {
+                    for (Path file : stream) {
+                        try {
+                            LegacyPlayerData legacyPlayerData = gson.fromJson(Files.readString(file), LegacyPlayerFile.class).toLegacyPlayerData();
+                            consumer.accept(SkinIdentifier.of(legacyPlayerData.getSkinName(), null, SkinType.LEGACY));
+                        } catch (NoSuchFileException e) {
+                            // Migrated since it was listed, the player file is scanned below
+                        }
+                    }
                 }
+            }
 
-                // Only allow specific custom skins if enabled
-                if (customEnabled && customOnly && !customSkins.contains(name.toLowerCase(Locale.ROOT))) {
-                    continue;
-                }
+            List<UUID> uuids = new ArrayList<>();
+            for (Path file : shardedPlayers.list("????????-????-????-????-????????????.player")) {
+                String fileName = file.getFileName().toString();
+                uuids.add(UUID.fromString(fileName.substring(0, fileName.lastIndexOf("."))));
+            }
 
-                // We offset only valid skin files
-                if (skinIndex < offset) {
-                    skinIndex++;
-                    continue;
+            for (int i = 0; i < uuids.size(); i += BATCH_CHUNK_SIZE) {
+                for (PlayerData data : getPlayerDataBatch(uuids.subList(i, Math.min(uuids.size(), i + BATCH_CHUNK_SIZE))).values()) {
+                    if (data.getSkinIdentifier() != null) {
+                        consumer.accept(data.getSkinIdentifier());
+                    }
                 }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new StorageException(e);
+        }
+    }
 
-                GUIFileData data = new GUIFileData(name, path, isPlayerSkin ? SkinType.PLAYER : SkinType.CUSTOM);
-                if (isPlayerSkin) {
-                    getLastKnownName(path)
-                            .ifPresent(lastKnownName -> files.put(lastKnownName, data));
-                } else {
-                    files.put(name, data);
-                }
+    @Override
+    public void forEachCollectableSkin(Consumer<StoredSkinKey> consumer) throws StorageException {
+        List<Path> files;
+        try {
+            files = new ArrayList<>(shardedSkins.list("*.{playerskin,urlskin,urlindex}"));
 
-                // We got max skins now, stop
-                if (skinIndex++ >= offset + SharedGUI.HEAD_COUNT_PER_PAGE) {
-                    break;
+            Path legacySkinsFolder = legacyFolder.resolve("skins");
+            if (legacySkinsPresent && Files.isDirectory(legacySkinsFolder)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacySkinsFolder, "*.legacyskin")) {
+                    stream.forEach(files::add);
                 }
             }
         } catch (IOException e) {
-            logger.warning("Failed to load GUI files", e);
+            throw new StorageException(e);
         }
 
-        return files;
+        for (int i = 0; i < files.size(); i += BATCH_CHUNK_SIZE) {
+            // Every file has to be opened for its key, reading them in parallel hides most of the latency
+            List<StoredSkinKey> keys = files.subList(i, Math.min(files.size(), i + BATCH_CHUNK_SIZE)).parallelStream()
+                    .map(this::readCollectableSkin)
+                    .flatMap(Optional::stream)
+                    .toList();
+            keys.forEach(consumer);
+        }
     }
 
-    private Map<String, GUIFileData> getRandomFiles(int limit) {
-        boolean customEnabled = settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED);
-
-        Map<String, GUIFileData> files = new LinkedHashMap<>();
-        try (Stream<Path> fileStream = Files.walk(skinsFolder, 1)) {
-            long fileCount = fileStream.count(); // sadly, the only way to count files is through iteration
-            limit = (int) Math.min(limit, fileCount);
-            long[] indexes = getRandomNumbers(limit, fileCount);
-            Stack<Long> skips = new Stack<>();
-            for (int i = 1; i < indexes.length; i++) {
-                skips.push(indexes[i] - indexes[i - 1]);
+    private Optional<StoredSkinKey> readCollectableSkin(Path listedFile) {
+        String fileName = listedFile.getFileName().toString();
+        int lastDotIndex = fileName.lastIndexOf(".");
+        String name = fileName.substring(0, lastDotIndex);
+        try {
+            if (fileName.endsWith(".legacyskin")) {
+                return Optional.of(StoredSkinKey.legacySkin(name));
             }
-            try (Stream<Path> stream = Files.walk(skinsFolder, 1)) {
-                int skinIndex = 0;
-                int filesSkipped = 0;
-                for (Path path : (Iterable<Path>) stream::iterator) {
-                    if (skips.peek() > filesSkipped++) { // skip enough files to reach next random file
-                        continue;
-                    }
-                    if (Files.isDirectory(path)) {
-                        continue;
-                    }
-
-                    String fileName = path.getFileName().toString();
-                    int lastDotIndex = fileName.lastIndexOf(".");
-                    if (lastDotIndex == -1) {
-                        continue;
-                    }
-
-                    String extension = fileName.substring(lastDotIndex + 1);
-                    String name = fileName.substring(0, lastDotIndex);
 
-                    boolean isPlayerSkin = extension.equals("playerskin");
-                    boolean isCustomSkin = extension.equals("customskin");
-
-                    // Only allow player skins and custom skins
-                    if (!isPlayerSkin && !isCustomSkin) {
-                        continue;
-                    }
+            // Resolve again, the file may have been moved into its shard since it was listed
+            byte[] data = Files.readAllBytes(shardedSkins.resolve(fileName));
+            if (fileName.endsWith(".playerskin")) {
+                return Optional.of(StoredSkinKey.playerSkin(UUID.fromString(name), FileRecordCodec.readPlayerSkinTimestamp(data)));
+            } else if (fileName.endsWith(".urlskin")) {
+                // URL skin files are named after a hash, so the URL has to be read from the record
+                URLSkinData skinData = FileRecordCodec.URL_SKIN.readWithoutTexture(data);
+                return Optional.of(StoredSkinKey.urlSkin(skinData.getUrl(), skinData.getSkinVariant()));
+            } else {
+                return Optional.of(StoredSkinKey.urlIndex(FileRecordCodec.URL_INDEX.read(data).getUrl()));
+            }
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | IllegalArgumentException e) {
+            // A broken file is left alone rather than deleted without knowing what it is
+            logger.debug("Failed to read skin file " + fileName + " for garbage collection", e);
+            return Optional.empty();
+        }
+    }
 
-                    // Do not allow custom skins if not enabled
-                    if (isCustomSkin && !customEnabled) {
-                        continue;
-                    }
+    @Override
+    public Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException {
+        return readRecord(resolveCacheFile(playerName), FileRecordCodec.CACHE);
+    }
 
-                    // completed current skipping phase
-                    skips.pop();
+    @Override
+    public Map<String, MojangCacheData> getCachedUUIDBatch(Collection<String> playerNames) throws StorageException {
+        return readParallel(playerNames, this::getCachedUUID);
+    }
 
-                    GUIFileData data = new GUIFileData(name, path, isPlayerSkin ? SkinType.PLAYER : SkinType.CUSTOM);
-                    if (isPlayerSkin) {
-                        getLastKnownName(path)
-                                .ifPresent(lastKnownName -> files.put(lastKnownName, data));
-                    } else {
-                        files.put(name, data);
-                    }
+    @Override
+    public void setCachedUUID(String playerName, MojangCacheData mojangCacheData) {
+        Path cacheFile = resolveCacheFile(playerName);
 
-                    // We got max skins now, stop
-                    if (skinIndex++ >= limit) {
-                        break;
-                    }
-                }
-            }
+        try {
+            writeRecord(cacheFile, FileRecordCodec.CACHE, mojangCacheData, null, null);
         } catch (IOException e) {
-            logger.warning("Failed to load GUI files", e);
+            logger.warning("Failed to save cached UUID for " + playerName, e);
         }
-
-        return files;
     }
 
-    private long[] getRandomNumbers(int amount, long max) {
-        amount = (int) Math.min(amount, max);
-        long[] numbers = new long[amount];
-        for (int i = 0; i < amount; i++) {
-            numbers[i] = RANDOM.nextLong(max);
+    /**
+     * Every entry is its own file, so reading them in parallel hides most of the per-file latency.
+     */
+    private static <T> Optional<T> readRecord(Path file, FileRecordCodec<T> codec) throws StorageException {
+        try {
+            // Reading straight away saves asking the file system whether the file exists first
+            return Optional.of(codec.read(Files.readAllBytes(file)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new StorageException(e);
         }
-        Arrays.sort(numbers);
-        for (int i = 1; i < numbers.length; i++) {
-            if (numbers[i] <= numbers[i - 1]) {
-                numbers[i] = numbers[i - 1] + 1;
+    }
+
+    /**
+     * Reads a skin record together with the texture it references.
+     */
+    private <T> Optional<T> readSkinRecord(Path file, FileRecordCodec<T> codec) throws StorageException {
+        try {
+            try {
+                return Optional.of(codec.read(Files.readAllBytes(file), textures::load));
+            } catch (NoSuchFileException e) {
+                // Either there is no record, or it was replaced and its old texture released between reading the two files
+                return Optional.of(codec.read(Files.readAllBytes(file), textures::load));
             }
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new StorageException(e);
         }
-        for (int i = numbers.length - 2; i >= 0; i--) {
-            if (numbers[i] >= numbers[i + 1]) {
-                numbers[i] = numbers[i + 1] - 1;
+    }
+
+    /**
+     * Writes a record in the binary format, which also replaces a JSON file of an older version.
+     *
+     * @param lastKnownName Stored as an extended attribute of the file, see {@link #replaceFile(Path, byte[], String)}
+     * @param onWritten     Runs while the record is still locked, to update in-memory state in the same order as the files
+     */
+    private <T> void writeRecord(Path file, FileRecordCodec<T> codec, T value,
+                                 @Nullable String lastKnownName, @Nullable Runnable onWritten) throws IOException {
+        byte[] data = codec.write(value);
+        Lock lock = lockFor(file);
+        lock.lock();
+        try {
+            replaceFile(file, data, lastKnownName);
+
+            if (onWritten != null) {
+                onWritten.run();
             }
+        } finally {
+            lock.unlock();
         }
-        return numbers;
     }
 
-    private Optional<String> getLastKnownName(Path path) {
+    /**
+     * Writes a skin record that references its texture in the texture store.
+     *
+     * @param onWritten Runs while the record is still locked, to update in-memory state in the same order as the files
+     */
+    private <T> void writeSkinRecord(Path file, FileRecordCodec<T> codec, T value, SkinProperty property,
+                                     @Nullable String lastKnownName, @Nullable Runnable onWritten) throws IOException {
+        Lock lock = lockFor(file);
+        lock.lock();
         try {
-            UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
-            if (!view.list().contains(LAST_KNOW_NAME_ATTRIBUTE)) {
-                return Optional.empty();
-            }
+            replaceSkinRecord(file, codec, value, property, lastKnownName);
 
-            ByteBuffer buffer = ByteBuffer.allocate(view.size(LAST_KNOW_NAME_ATTRIBUTE));
-            view.read(LAST_KNOW_NAME_ATTRIBUTE, buffer);
-            buffer.flip();
-            return Optional.of(StandardCharsets.UTF_8.decode(buffer).toString());
-        } catch (IOException e) {
-            logger.warning("Failed to load last known name for " + path.getFileName(), e);
-            return Optional.empty();
+            if (onWritten != null) {
+                onWritten.run();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    @Override
-    public void purgeStoredOldSkins(long targetPurgeTimestamp) throws StorageException {
-        List<Path> files = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(skinsFolder, "*.playerskin")) {
-            stream.forEach(files::add);
+    /**
+     * Replaces a skin record and moves its reference from the old to the new texture. The record has to be locked.
+     * The new texture is referenced before the record is written and the old one released after,
+     * so a crash in between only leaves a texture with one reference too many, never a record without its texture.
+     */
+    private <T> void replaceSkinRecord(Path file, FileRecordCodec<T> codec, T value, SkinProperty property,
+                                       @Nullable String lastKnownName) throws IOException {
+        byte[] oldTextureHash = readStoredTextureHash(file, codec);
+        byte[] textureHash = FileTextureStore.hash(property);
+        boolean sameTexture = Arrays.equals(textureHash, oldTextureHash);
+
+        if (!sameTexture) {
+            textures.acquire(textureHash, property);
+        }
+
+        try {
+            replaceFile(file, codec.write(value, textureHash), lastKnownName);
         } catch (IOException e) {
-            throw new StorageException(e);
+            if (!sameTexture) {
+                textures.release(textureHash);
+            }
+            throw e;
         }
 
-        for (Path file : files) {
-            try {
-                String json = Files.readString(file);
+        if (oldTextureHash != null && !sameTexture) {
+            textures.release(oldTextureHash);
+        }
+    }
 
-                PlayerSkinFile skinFile = gson.fromJson(json, PlayerSkinFile.class);
+    /**
+     * @param onDeleted Runs while the record is still locked, to update in-memory state in the same order as the files
+     */
+    private void deleteRecord(Path file, @Nullable Runnable onDeleted) throws IOException {
+        Lock lock = lockFor(file);
+        lock.lock();
+        try {
+            Files.deleteIfExists(file);
 
-                if (skinFile.getTimestamp() != 0L && skinFile.getTimestamp() < targetPurgeTimestamp) {
-                    Files.deleteIfExists(file);
-                }
-            } catch (Exception e) {
-                throw new StorageException(e);
+            if (onDeleted != null) {
+                onDeleted.run();
             }
+        } finally {
+            lock.unlock();
         }
     }
 
-    @Override
-    public Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException {
-        Path cacheFile = resolveCacheFile(playerName);
+    /**
+     * Deletes a skin record and releases the texture it referenced.
+     *
+     * @param onDeleted Runs while the record is still locked, to update in-memory state in the same order as the files
+     */
+    private <T> void deleteSkinRecord(Path file, FileRecordCodec<T> codec, @Nullable Runnable onDeleted) throws IOException {
+        Lock lock = lockFor(file);
+        lock.lock();
+        try {
+            byte[] textureHash = readStoredTextureHash(file, codec);
+            if (Files.deleteIfExists(file) && textureHash != null) {
+                textures.release(textureHash);
+            }
 
-        if (!Files.exists(cacheFile)) {
-            return Optional.empty();
+            if (onDeleted != null) {
+                onDeleted.run();
+            }
+        } finally {
+            lock.unlock();
         }
+    }
 
+    /**
+     * @return The texture hash the stored record references, or null if there is no such record or it holds its texture inline
+     */
+    private <T> byte[] readStoredTextureHash(Path file, FileRecordCodec<T> codec) {
         try {
-            String json = Files.readString(cacheFile);
+            return codec.readTextureHash(Files.readAllBytes(file));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // A broken record is replaced anyway, at worst its texture keeps one reference too many
+            logger.debug("Failed to read the texture reference of " + file.getFileName(), e);
+            return null;
+        }
+    }
 
-            MojangCacheFile file = gson.fromJson(json, MojangCacheFile.class);
+    /**
+     * Writes a file to a temporary file first and then moves it over the old one, so readers never see a partially written file.
+     * Callers have to hold the lock of the file, so the temporary file name can not collide.
+     *
+     * @param lastKnownName Stored as an extended attribute before the move, so it is replaced together with the file
+     */
+    static void replaceFile(Path file, byte[] data, @Nullable String lastKnownName) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(tempFile, data);
 
-            return Optional.of(file.toCacheData());
-        } catch (Exception e) {
-            throw new StorageException(e);
+            if (lastKnownName != null) {
+                UserDefinedFileAttributeView view = Files.getFileAttributeView(tempFile, UserDefinedFileAttributeView.class);
+                if (view != null) {
+                    view.write(LAST_KNOW_NAME_ATTRIBUTE, StandardCharsets.UTF_8.encode(lastKnownName));
+                }
+            }
+
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
     }
 
-    @Override
-    public void setCachedUUID(String playerName, MojangCacheData mojangCacheData) {
-        Path cacheFile = resolveCacheFile(playerName);
+    /**
+     * Picks the lock of a record by its file name, which stays the same while the file is moved into its shard.
+     */
+    private Lock lockFor(Path file) {
+        int hash = file.getFileName().toString().hashCode();
+        return recordLocks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
 
+    private <K, V> Map<K, V> readParallel(Collection<K> keys, EntryReader<K, V> reader) throws StorageException {
+        Map<K, V> result = new ConcurrentHashMap<>();
         try {
-            MojangCacheFile file = MojangCacheFile.fromMojangCacheData(mojangCacheData);
-
-            Files.writeString(cacheFile, gson.toJson(file));
-        } catch (IOException e) {
-            logger.warning("Failed to save cached UUID for " + playerName, e);
+            keys.parallelStream().distinct().forEach(key -> {
+                try {
+                    reader.read(key).ifPresent(value -> result.put(key, value));
+                } catch (StorageException e) {
+                    throw new BatchReadException(e);
+                }
+            });
+        } catch (BatchReadException e) {
+            throw e.getCause();
         }
+
+        return result;
     }
 
     private Path resolveCustomSkinFile(String skinName) {
-        return skinsFolder.resolve(skinName + ".customskin");
+        return shardedSkins.resolve(skinName + ".customskin");
     }
 
     private Path resolveLegacySkinFile(String skinName) {
@@ -803,19 +1149,19 @@ public class FileAdapter implements StorageAdapter {
     }
 
     private Path resolveURLSkinFile(String url, SkinVariant skinVariant) {
-        return skinsFolder.resolve(hashSHA256(url) + "_" + skinVariant.name() + ".urlskin");
+        return shardedSkins.resolve(SRHelpers.hashSha256Hex(url) + "_" + skinVariant.name() + ".urlskin");
     }
 
     private Path resolveURLSkinIndexFile(String url) {
-        return skinsFolder.resolve(hashSHA256(url) + ".urlindex");
+        return shardedSkins.resolve(SRHelpers.hashSha256Hex(url) + ".urlindex");
     }
 
     private Path resolvePlayerSkinFile(UUID uuid) {
-        return skinsFolder.resolve(uuid + ".playerskin");
+        return shardedSkins.resolve(uuid + ".playerskin");
     }
 
     private Path resolvePlayerFile(UUID uuid) {
-        return playersFolder.resolve(uuid + ".player");
+        return shardedPlayers.resolve(uuid + ".player");
     }
 
     private Path resolveLegacyPlayerFile(String name) {
@@ -823,7 +1169,7 @@ public class FileAdapter implements StorageAdapter {
     }
 
     private Path resolveCacheFile(String name) {
-        return cacheFolder.resolve(name + ".mojangcache");
+        return shardedCache.resolve(name + ".mojangcache");
     }
 
     private String sanitizeLegacyPlayerName(String playerName) {
@@ -838,6 +1184,22 @@ public class FileAdapter implements StorageAdapter {
         return skinName.toLowerCase();
     }
 
-    private record GUIFileData(String fileName, Path path, SkinType skinType) {
+    private interface PurgeFilter {
+        boolean test(Path file, long timestamp) throws IOException;
+    }
+
+    private interface EntryReader<K, V> {
+        Optional<V> read(K key) throws StorageException;
+    }
+
+    private static class BatchReadException extends RuntimeException {
+        private BatchReadException(StorageException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized StorageException getCause() {
+            return (StorageException) super.getCause();
+        }
     }
 }
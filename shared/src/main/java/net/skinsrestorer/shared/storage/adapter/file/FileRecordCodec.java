@@ -0,0 +1,584 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.file;
+
+import com.google.gson.Gson;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.storage.adapter.file.model.cache.MojangCacheFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.player.PlayerFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.skin.CustomSkinFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.skin.PlayerSkinFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.skin.URLIndexFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.skin.URLSkinFile;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLColumns;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.CustomSkinData;
+import net.skinsrestorer.shared.storage.model.skin.PlayerSkinData;
+import net.skinsrestorer.shared.storage.model.skin.URLIndexData;
+import net.skinsrestorer.shared.storage.model.skin.URLSkinData;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Binary format of the records the {@link FileAdapter} stores, read and written by hand without reflection.
+ * <p>
+ * A record starts with a magic number, the format version and the record type,
+ * followed by a length-prefixed header of fixed-width fields and a body of length-prefixed strings and textures.
+ * Textures are stored as their decoded base64 bytes. Readers skip header bytes they do not know,
+ * so later versions can append fixed-width fields without breaking older readers.
+ * Since format 2 skin records may hold a reference to a texture of the {@link FileTextureStore} instead of the texture itself,
+ * such records can only be read together with the store.
+ * Files without the magic number are JSON written by older versions, they are still read and replaced on their next update.
+ *
+ * @param <T> Stored model type
+ */
+public final class FileRecordCodec<T> {
+    public static final FileRecordCodec<PlayerData> PLAYER = new FileRecordCodec<>(1,
+            PlayerFile.class, PlayerFile::toPlayerData, FileRecordCodec::writePlayer, FileRecordCodec::readPlayer);
+    public static final FileRecordCodec<PlayerSkinData> PLAYER_SKIN = new FileRecordCodec<>(2,
+            PlayerSkinFile.class, PlayerSkinFile::toPlayerSkinData, FileRecordCodec::writePlayerSkin, FileRecordCodec::readPlayerSkin);
+    public static final FileRecordCodec<URLSkinData> URL_SKIN = new FileRecordCodec<>(3,
+            URLSkinFile.class, URLSkinFile::toURLSkinData, FileRecordCodec::writeURLSkin, FileRecordCodec::readURLSkin);
+    public static final FileRecordCodec<URLIndexData> URL_INDEX = new FileRecordCodec<>(4,
+            URLIndexFile.class, URLIndexFile::toURLIndexData, FileRecordCodec::writeURLIndex, FileRecordCodec::readURLIndex);
+    public static final FileRecordCodec<CustomSkinData> CUSTOM_SKIN = new FileRecordCodec<>(5,
+            CustomSkinFile.class, CustomSkinFile::toCustomSkinData, FileRecordCodec::writeCustomSkin, FileRecordCodec::readCustomSkin);
+    public static final FileRecordCodec<MojangCacheData> CACHE = new FileRecordCodec<>(6,
+            MojangCacheFile.class, MojangCacheFile::toCacheData, FileRecordCodec::writeCache, FileRecordCodec::readCache);
+    public static final int TEXTURE_HASH_SIZE = 32;
+    // A zero byte can not start a JSON document, so both formats can share a file extension
+    private static final byte[] MAGIC = {0, 'S', 'R', 'B'};
+    private static final int VERSION = 2;
+    private static final int TEXTURE_TYPE = 7;
+    // Skin records of format 1 always hold their texture inline, without a property kind byte
+    private static final int FIRST_TEXTURE_REF_VERSION = 2;
+    private static final int PREAMBLE_SIZE = MAGIC.length + 4;
+    private static final int UUID_SIZE = 16;
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final int NO_CODE = 0xFF;
+    private static final byte TEXT_PAYLOAD = 0;
+    private static final byte BASE64_PAYLOAD = 1;
+    private static final byte INLINE_PROPERTY = 0;
+    private static final byte TEXTURE_REF_PROPERTY = 1;
+    // Enum codes are fixed here instead of using ordinals, so reordering an enum never changes stored data
+    private static final SkinType[] SKIN_TYPES = {SkinType.PLAYER, SkinType.URL, SkinType.CUSTOM, SkinType.LEGACY};
+    private static final SkinVariant[] SKIN_VARIANTS = {SkinVariant.CLASSIC, SkinVariant.SLIM};
+    private static final Gson GSON = new Gson();
+    private final int type;
+    private final Function<String, T> jsonReader;
+    private final BiFunction<T, byte[], byte[]> writer;
+    private final RecordDecoder<T> reader;
+
+    private <F> FileRecordCodec(int type, Class<F> jsonType, Function<F, T> fromJson, BiFunction<T, byte[], byte[]> writer, RecordDecoder<T> reader) {
+        this.type = type;
+        this.jsonReader = json -> fromJson.apply(GSON.fromJson(json, jsonType));
+        this.writer = writer;
+        this.reader = reader;
+    }
+
+    public static boolean isBinary(byte[] data) {
+        if (data.length < MAGIC.length) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads a record in either the binary or the old JSON format.
+     * Fails for a skin record that references a texture, those have to be read with {@link #read(byte[], TextureLoader)}.
+     */
+    public T read(byte[] data) throws IOException {
+        return read(data, null);
+    }
+
+    /**
+     * Reads a record in either the binary or the old JSON format, loading a referenced texture through the given loader.
+     */
+    public T read(byte[] data, @Nullable TextureLoader textures) throws IOException {
+        if (!isBinary(data)) {
+            try {
+                return jsonReader.apply(new String(data, StandardCharsets.UTF_8));
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid JSON record", e);
+            }
+        }
+
+        try {
+            return reader.read(new RecordReader(data, type, textures));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt record", e);
+        }
+    }
+
+    /**
+     * Reads a record without loading the texture it references, the property of a skin record is left empty.
+     */
+    public T readWithoutTexture(byte[] data) throws IOException {
+        return read(data, textureHash -> SkinProperty.of("", ""));
+    }
+
+    /**
+     * Reads the hash of the texture a skin record references, without loading the texture.
+     *
+     * @return The hash, or null if the record holds its texture inline or has no texture at all
+     */
+    public byte[] readTextureHash(byte[] data) throws IOException {
+        if (!isBinary(data)) {
+            return null;
+        }
+
+        byte[][] hash = new byte[1][];
+        read(data, textureHash -> {
+            hash[0] = textureHash;
+            return SkinProperty.of("", "");
+        });
+        return hash[0];
+    }
+
+    /**
+     * Writes a record in the current binary format, with the texture of a skin record inline.
+     */
+    public byte[] write(T value) {
+        return writer.apply(value, null);
+    }
+
+    /**
+     * Writes a record in the current binary format.
+     *
+     * @param textureHash If not null, a skin record references this texture of the {@link FileTextureStore} instead of holding it inline
+     */
+    public byte[] write(T value, byte[] textureHash) {
+        return writer.apply(value, textureHash);
+    }
+
+    private static byte[] writePlayer(PlayerData data, byte[] ignored) {
+        SkinIdentifier identifier = data.getSkinIdentifier();
+        byte[] identifierName = identifier == null ? null : utf8(identifier.getIdentifier());
+
+        RecordWriter out = new RecordWriter(PLAYER.type, UUID_SIZE + 2, stringSize(identifierName));
+        out.uuid(data.getUniqueId());
+        out.code(identifier == null ? NO_CODE : indexOf(SKIN_TYPES, identifier.getSkinType()));
+        out.code(identifier == null || identifier.getSkinVariant() == null ? NO_CODE : indexOf(SKIN_VARIANTS, identifier.getSkinVariant()));
+        out.string(identifierName);
+        return out.finish();
+    }
+
+    private static PlayerData readPlayer(RecordReader in) {
+        UUID uuid = in.uuid();
+        SkinType skinType = in.code(SKIN_TYPES);
+        SkinVariant skinVariant = in.code(SKIN_VARIANTS);
+        in.body();
+        String identifier = in.string();
+
+        return PlayerData.of(uuid, identifier == null || skinType == null ? null : SkinIdentifier.of(identifier, skinVariant, skinType));
+    }
+
+    private static byte[] writePlayerSkin(PlayerSkinData data, byte[] textureHash) {
+        byte[] lastKnownName = utf8(data.getLastKnownName());
+        PropertyBody property = PropertyBody.of(data.getProperty(), textureHash);
+
+        RecordWriter out = new RecordWriter(PLAYER_SKIN.type, UUID_SIZE + Long.BYTES,
+                stringSize(lastKnownName) + property.size());
+        out.uuid(data.getUniqueId());
+        out.buffer.putLong(data.getTimestamp());
+        out.string(lastKnownName);
+        out.property(property);
+        return out.finish();
+    }
+
+    private static PlayerSkinData readPlayerSkin(RecordReader in) throws IOException {
+        UUID uuid = in.uuid();
+        long timestamp = in.buffer.getLong();
+        in.body();
+        String lastKnownName = in.string();
+        SkinProperty property = in.property();
+
+        return PlayerSkinData.of(uuid, lastKnownName, property, timestamp);
+    }
+
+    /**
+     * Reads only the timestamp of a player skin record, without decoding its textures.
+     */
+    public static long readPlayerSkinTimestamp(byte[] data) throws IOException {
+        if (!isBinary(data)) {
+            return PLAYER_SKIN.read(data).getTimestamp();
+        }
+
+        try {
+            RecordReader in = new RecordReader(data, PLAYER_SKIN.type, null);
+            in.uuid();
+            return in.buffer.getLong();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt record", e);
+        }
+    }
+
+    private static byte[] writeURLSkin(URLSkinData data, byte[] textureHash) {
+        byte[] url = utf8(data.getUrl());
+        byte[] mineSkinId = utf8(data.getMineSkinId());
+        PropertyBody property = PropertyBody.of(data.getProperty(), textureHash);
+
+        RecordWriter out = new RecordWriter(URL_SKIN.type, 1,
+                stringSize(url) + stringSize(mineSkinId) + property.size());
+        out.code(data.getSkinVariant() == null ? NO_CODE : indexOf(SKIN_VARIANTS, data.getSkinVariant()));
+        out.string(url);
+        out.string(mineSkinId);
+        out.property(property);
+        return out.finish();
+    }
+
+    private static URLSkinData readURLSkin(RecordReader in) throws IOException {
+        SkinVariant skinVariant = in.code(SKIN_VARIANTS);
+        in.body();
+        String url = in.string();
+        String mineSkinId = in.string();
+        SkinProperty property = in.property();
+
+        return URLSkinData.of(url, mineSkinId, property, skinVariant);
+    }
+
+    private static byte[] writeURLIndex(URLIndexData data, byte[] ignored) {
+        byte[] url = utf8(data.getUrl());
+
+        RecordWriter out = new RecordWriter(URL_INDEX.type, 1, stringSize(url));
+        out.code(data.getSkinVariant() == null ? NO_CODE : indexOf(SKIN_VARIANTS, data.getSkinVariant()));
+        out.string(url);
+        return out.finish();
+    }
+
+    private static URLIndexData readURLIndex(RecordReader in) {
+        SkinVariant skinVariant = in.code(SKIN_VARIANTS);
+        in.body();
+
+        return URLIndexData.of(in.string(), skinVariant);
+    }
+
+    private static byte[] writeCustomSkin(CustomSkinData data, byte[] textureHash) {
+        byte[] skinName = utf8(data.getSkinName());
+        PropertyBody property = PropertyBody.of(data.getProperty(), textureHash);
+
+        RecordWriter out = new RecordWriter(CUSTOM_SKIN.type, 0, stringSize(skinName) + property.size());
+        out.string(skinName);
+        out.property(property);
+        return out.finish();
+    }
+
+    private static CustomSkinData readCustomSkin(RecordReader in) throws IOException {
+        in.body();
+        String skinName = in.string();
+        SkinProperty property = in.property();
+
+        return CustomSkinData.of(skinName, property);
+    }
+
+    private static byte[] writeCache(MojangCacheData data, byte[] ignored) {
+        UUID uuid = data.getUniqueId().orElse(null);
+
+        RecordWriter out = new RecordWriter(CACHE.type, 1 + UUID_SIZE + Long.BYTES, 0);
+        out.buffer.put((byte) (uuid == null ? 0 : 1));
+        out.uuid(uuid == null ? new UUID(0, 0) : uuid);
+        out.buffer.putLong(data.getTimestamp());
+        return out.finish();
+    }
+
+    private static MojangCacheData readCache(RecordReader in) {
+        boolean hasUUID = in.buffer.get() != 0;
+        UUID uuid = in.uuid();
+        long timestamp = in.buffer.getLong();
+
+        return MojangCacheData.of(hasUUID ? uuid : null, timestamp);
+    }
+
+    /**
+     * Writes a texture of the {@link FileTextureStore} together with the number of records referencing it.
+     */
+    static byte[] writeTexture(int refCount, SkinProperty property) {
+        PropertyBody body = PropertyBody.of(property, null);
+
+        RecordWriter out = new RecordWriter(TEXTURE_TYPE, Integer.BYTES, body.size());
+        out.buffer.putInt(refCount);
+        out.property(body);
+        return out.finish();
+    }
+
+    static SkinProperty readTexture(byte[] data) throws IOException {
+        try {
+            RecordReader in = new RecordReader(data, TEXTURE_TYPE, null);
+            in.body();
+            return in.property();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt texture", e);
+        }
+    }
+
+    static int readTextureRefCount(byte[] data) throws IOException {
+        try {
+            return new RecordReader(data, TEXTURE_TYPE, null).buffer.getInt();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt texture", e);
+        }
+    }
+
+    /**
+     * Copies a texture with another reference count, without decoding the texture itself.
+     */
+    static byte[] withTextureRefCount(byte[] data, int refCount) throws IOException {
+        readTextureRefCount(data);
+        byte[] copy = data.clone();
+        ByteBuffer.wrap(copy).putInt(PREAMBLE_SIZE, refCount);
+        return copy;
+    }
+
+    private static byte[] utf8(@Nullable String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] value) {
+        return Short.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static <E> int indexOf(E[] values, E value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("No record code for " + value);
+    }
+
+    @FunctionalInterface
+    private interface RecordDecoder<T> {
+        T read(RecordReader in) throws IOException;
+    }
+
+    /**
+     * Loads a texture a skin record references by its hash.
+     */
+    @FunctionalInterface
+    public interface TextureLoader {
+        SkinProperty load(byte[] textureHash) throws IOException;
+    }
+
+    /**
+     * The texture of a skin record, either inline or as a reference into the {@link FileTextureStore}.
+     */
+    private record PropertyBody(byte[] textureHash, Payload value, Payload signature) {
+        private static PropertyBody of(SkinProperty property, byte[] textureHash) {
+            if (textureHash != null) {
+                if (textureHash.length != TEXTURE_HASH_SIZE) {
+                    throw new IllegalArgumentException("Invalid texture hash length " + textureHash.length);
+                }
+
+                return new PropertyBody(textureHash, null, null);
+            }
+
+            return new PropertyBody(null, Payload.of(property.getValue()), Payload.of(property.getSignature()));
+        }
+
+        private int size() {
+            return 1 + (textureHash != null ? TEXTURE_HASH_SIZE : value.size() + signature.size());
+        }
+    }
+
+    /**
+     * A texture value or signature, stored decoded if it is base64 that encodes back to the exact same string.
+     */
+    private record Payload(byte kind, byte[] bytes) {
+        private static Payload of(String value) {
+            return MySQLColumns.decodeCanonicalPayload(value)
+                    .map(decoded -> new Payload(BASE64_PAYLOAD, decoded))
+                    .orElseGet(() -> new Payload(TEXT_PAYLOAD, value.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private int size() {
+            return 1 + Integer.BYTES + bytes.length;
+        }
+    }
+
+    private static final class RecordWriter {
+        private final byte[] data;
+        private final ByteBuffer buffer;
+
+        private RecordWriter(int type, int headerSize, int bodySize) {
+            // Sized exactly, so the array can be written out as is
+            this.data = new byte[PREAMBLE_SIZE + headerSize + bodySize];
+            this.buffer = ByteBuffer.wrap(data);
+            buffer.put(MAGIC);
+            buffer.put((byte) VERSION);
+            buffer.put((byte) type);
+            buffer.putShort((short) headerSize);
+        }
+
+        private void uuid(UUID uuid) {
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+        }
+
+        private void code(int code) {
+            buffer.put((byte) code);
+        }
+
+        private void string(byte[] value) {
+            if (value == null) {
+                buffer.putShort((short) NULL_LENGTH);
+                return;
+            }
+
+            if (value.length >= NULL_LENGTH) {
+                throw new IllegalArgumentException("String too long for a record: " + value.length + " bytes");
+            }
+
+            buffer.putShort((short) value.length);
+            buffer.put(value);
+        }
+
+        private void payload(Payload payload) {
+            buffer.put(payload.kind());
+            buffer.putInt(payload.bytes().length);
+            buffer.put(payload.bytes());
+        }
+
+        private void property(PropertyBody property) {
+            if (property.textureHash() != null) {
+                buffer.put(TEXTURE_REF_PROPERTY);
+                buffer.put(property.textureHash());
+            } else {
+                buffer.put(INLINE_PROPERTY);
+                payload(property.value());
+                payload(property.signature());
+            }
+        }
+
+        private byte[] finish() {
+            if (buffer.hasRemaining()) {
+                throw new IllegalStateException("Record size was miscalculated");
+            }
+
+            return data;
+        }
+    }
+
+    private static final class RecordReader {
+        private final ByteBuffer buffer;
+        private final int version;
+        private final int bodyStart;
+        private final TextureLoader textures;
+
+        private RecordReader(byte[] data, int expectedType, @Nullable TextureLoader textures) {
+            this.buffer = ByteBuffer.wrap(data);
+            this.textures = textures;
+            buffer.position(MAGIC.length);
+            this.version = Byte.toUnsignedInt(buffer.get());
+            if (version > VERSION) {
+                throw new IllegalArgumentException("Record was written by a newer version (format " + version + ")");
+            }
+
+            int type = Byte.toUnsignedInt(buffer.get());
+            if (type != expectedType) {
+                throw new IllegalArgumentException("Expected record type " + expectedType + " but found " + type);
+            }
+
+            int headerSize = Short.toUnsignedInt(buffer.getShort());
+            this.bodyStart = PREAMBLE_SIZE + headerSize;
+        }
+
+        private UUID uuid() {
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+
+        private <E> E code(E[] values) {
+            int code = Byte.toUnsignedInt(buffer.get());
+            if (code == NO_CODE) {
+                return null;
+            }
+
+            if (code >= values.length) {
+                throw new IllegalArgumentException("Unknown record code " + code);
+            }
+
+            return values[code];
+        }
+
+        /**
+         * Skips the rest of the header, it may hold fields of a newer version.
+         */
+        private void body() {
+            buffer.position(bodyStart);
+        }
+
+        private String string() {
+            int length = Short.toUnsignedInt(buffer.getShort());
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid string length " + length);
+            }
+
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        private String payload() {
+            byte kind = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid payload length " + length);
+            }
+
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return kind == BASE64_PAYLOAD ? MySQLColumns.encodePayload(bytes) : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private SkinProperty property() throws IOException {
+            if (version < FIRST_TEXTURE_REF_VERSION || buffer.get() == INLINE_PROPERTY) {
+                return SkinProperty.of(payload(), payload());
+            }
+
+            byte[] textureHash = new byte[TEXTURE_HASH_SIZE];
+            buffer.get(textureHash);
+            if (textures == null) {
+                throw new IOException("Record references a texture, but was read without the texture store");
+            }
+
+            return textures.load(textureHash);
+        }
+    }
+}
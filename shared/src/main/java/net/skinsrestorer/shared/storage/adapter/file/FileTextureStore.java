@@ -0,0 +1,138 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.file;
+
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.shared.utils.SRHelpers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Content-addressed store of the textures the skin records of the {@link FileAdapter} reference.
+ * Records with the same texture share one file, named after the hash of the texture.
+ * Every texture file counts the records referencing it and is deleted once the last of them is gone.
+ * <p>
+ * Writers lock the skin record before the texture and never the other way around, so the two can not deadlock.
+ */
+public class FileTextureStore {
+    private static final String EXTENSION = ".texture";
+    private static final String MIGRATION_MARKER = ".migrated";
+    // Power of two, so a stripe is picked with a mask
+    private static final int LOCK_STRIPES = 256;
+    private final Path root;
+    private final ShardedFolder folder;
+    private final Lock[] textureLocks = new Lock[LOCK_STRIPES];
+
+    public FileTextureStore(Path root) {
+        this.root = root;
+        this.folder = new ShardedFolder(root, "*" + EXTENSION);
+        for (int i = 0; i < textureLocks.length; i++) {
+            textureLocks[i] = new ReentrantLock();
+        }
+    }
+
+    public static byte[] hash(SkinProperty property) {
+        return SRHelpers.hashSha256(property.getValue(), property.getSignature());
+    }
+
+    public void init() throws IOException {
+        folder.init();
+    }
+
+    /**
+     * @throws NoSuchFileException If the texture is not stored, e.g. because its last reference was just released
+     */
+    public SkinProperty load(byte[] hash) throws IOException {
+        return FileRecordCodec.readTexture(Files.readAllBytes(resolve(hash)));
+    }
+
+    /**
+     * Adds a reference to a texture, storing the texture if nothing referenced it yet.
+     */
+    public void acquire(byte[] hash, SkinProperty property) throws IOException {
+        Path file = resolve(hash);
+        Lock lock = lockFor(hash);
+        lock.lock();
+        try {
+            byte[] data;
+            try {
+                byte[] stored = Files.readAllBytes(file);
+                data = FileRecordCodec.withTextureRefCount(stored, FileRecordCodec.readTextureRefCount(stored) + 1);
+            } catch (NoSuchFileException e) {
+                data = FileRecordCodec.writeTexture(1, property);
+            }
+
+            FileAdapter.replaceFile(file, data, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a reference to a texture, deleting the texture once nothing references it anymore.
+     */
+    public void release(byte[] hash) throws IOException {
+        Path file = resolve(hash);
+        Lock lock = lockFor(hash);
+        lock.lock();
+        try {
+            byte[] stored;
+            try {
+                stored = Files.readAllBytes(file);
+            } catch (NoSuchFileException e) {
+                return;
+            }
+
+            int refCount = FileRecordCodec.readTextureRefCount(stored) - 1;
+            if (refCount <= 0) {
+                Files.deleteIfExists(file);
+            } else {
+                FileAdapter.replaceFile(file, FileRecordCodec.withTextureRefCount(stored, refCount), null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether all skin records have been converted to reference their textures.
+     */
+    public boolean isMigrated() {
+        return Files.exists(root.resolve(MIGRATION_MARKER));
+    }
+
+    public void markMigrated() throws IOException {
+        Files.createDirectories(root);
+        Files.write(root.resolve(MIGRATION_MARKER), new byte[0]);
+    }
+
+    private Path resolve(byte[] hash) {
+        return folder.resolve(HexFormat.of().formatHex(hash) + EXTENSION);
+    }
+
+    private Lock lockFor(byte[] hash) {
+        // The hash is already uniformly distributed, its first byte picks a stripe
+        return textureLocks[Byte.toUnsignedInt(hash[0]) & (LOCK_STRIPES - 1)];
+    }
+}
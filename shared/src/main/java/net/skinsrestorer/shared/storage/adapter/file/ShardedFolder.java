@@ -0,0 +1,187 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.file;
+
+import net.skinsrestorer.shared.log.SRLogger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A data folder that fans its files out into two levels of hash-prefixed subfolders, e.g. {@code skins/ab/cd/<uuid>.playerskin}.
+ * This keeps directories small when millions of records are stored.
+ * Files of the old flat layout are moved into their shard in the background,
+ * or on first access through {@link #resolve(String)}, so the folder stays usable while it is migrated.
+ */
+class ShardedFolder {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MIGRATION_LOG_INTERVAL = 100_000;
+    private final Path root;
+    private final String flatGlob;
+    // Only while this is set do lookups have to check for a file of the flat layout
+    private volatile boolean flatFilesPresent;
+
+    /**
+     * @param flatGlob Glob of the record files that may still be stored in the flat layout
+     */
+    ShardedFolder(Path root, String flatGlob) {
+        this.root = root;
+        this.flatGlob = flatGlob;
+    }
+
+    private static String shardOf(String fileName) {
+        // String#hashCode is stable across JVMs, the mixing spreads similar names over all shards
+        int hash = fileName.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        return new String(new char[]{
+                HEX[(hash >>> 28) & 0xf], HEX[(hash >>> 24) & 0xf], '/',
+                HEX[(hash >>> 20) & 0xf], HEX[(hash >>> 16) & 0xf]
+        });
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public void init() throws IOException {
+        Files.createDirectories(root);
+        flatFilesPresent = hasFlatFiles();
+    }
+
+    public boolean isMigrationPending() {
+        return flatFilesPresent;
+    }
+
+    /**
+     * Resolves the sharded location of a record. Parent folders are not created, writers have to do that.
+     */
+    public Path resolve(String fileName) {
+        Path shardedFile = root.resolve(shardOf(fileName)).resolve(fileName);
+        if (flatFilesPresent && !Files.exists(shardedFile)) {
+            Path flatFile = root.resolve(fileName);
+            if (Files.exists(flatFile)) {
+                try {
+                    moveToShard(flatFile, shardedFile);
+                } catch (IOException e) {
+                    // Keep using the flat file until the migration can move it
+                    return flatFile;
+                }
+            }
+        }
+
+        return shardedFile;
+    }
+
+    /**
+     * Lists the record files matching the glob, in both the sharded and any remaining flat layout.
+     */
+    public List<Path> list(String glob) throws IOException {
+        PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(root, 3)) {
+            stream.filter(path -> matcher.matches(path.getFileName()))
+                    .filter(Files::isRegularFile)
+                    .forEach(files::add);
+        }
+
+        return files;
+    }
+
+    /**
+     * Moves every file of the flat layout into its shard.
+     *
+     * @return The number of moved files
+     */
+    public int migrateFlatFiles(SRLogger logger) throws IOException {
+        int moved = 0;
+        // Entries can be missed while the folder changes underneath the listing, so list until it is empty
+        while (flatFilesPresent) {
+            int movedInPass = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, flatGlob)) {
+                for (Path flatFile : stream) {
+                    if (!Files.isRegularFile(flatFile)) {
+                        continue;
+                    }
+
+                    String fileName = flatFile.getFileName().toString();
+                    if (moveToShard(flatFile, root.resolve(shardOf(fileName)).resolve(fileName))) {
+                        movedInPass++;
+                        if ((moved + movedInPass) % MIGRATION_LOG_INTERVAL == 0) {
+                            logger.info(String.format("Moved %d files of %s into the sharded layout...", moved + movedInPass, root.getFileName()));
+                        }
+                    }
+                }
+            }
+
+            moved += movedInPass;
+            flatFilesPresent = hasFlatFiles();
+            if (movedInPass == 0 && flatFilesPresent) {
+                throw new IOException("Could not move the remaining files of " + root.getFileName() + " into the sharded layout");
+            }
+        }
+
+        return moved;
+    }
+
+    private boolean hasFlatFiles() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, flatGlob)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Whether this call moved the file, false if it was already moved or replaced by a newer sharded file
+     */
+    private boolean moveToShard(Path flatFile, Path shardedFile) throws IOException {
+        try {
+            Files.createDirectories(shardedFile.getParent());
+            try {
+                // Unlike a move, a link never replaces a sharded file that was written in the meantime
+                Files.createLink(shardedFile, flatFile);
+            } catch (FileAlreadyExistsException | NoSuchFileException e) {
+                throw e;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // Not every file system supports hard links
+                Files.move(flatFile, shardedFile);
+            }
+
+            Files.deleteIfExists(flatFile);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // The sharded file is newer, so the flat one is stale
+            Files.deleteIfExists(flatFile);
+            return false;
+        } catch (NoSuchFileException e) {
+            return false; // Already moved by another thread
+        }
+    }
+}
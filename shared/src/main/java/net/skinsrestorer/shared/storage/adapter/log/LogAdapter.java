@@ -0,0 +1,713 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.log;
+
+import ch.jalu.configme.SettingsManager;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.config.GUIConfig;
+import net.skinsrestorer.shared.config.StorageConfig;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.GUISkinIndex;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.file.FileRecordCodec;
+import net.skinsrestorer.shared.storage.adapter.file.FileTextureStore;
+import net.skinsrestorer.shared.storage.adapter.file.model.cache.MojangCacheFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.player.LegacyPlayerFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.player.PlayerFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.skin.*;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.LegacyPlayerData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.*;
+import net.skinsrestorer.shared.utils.SRHelpers;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores every record in a {@link LogStore}, as the same JSON the {@link net.skinsrestorer.shared.storage.adapter.file.FileAdapter} writes.
+ * Keys are the file names of the file adapter in the form {@code <extension>:<name>}, which makes importing its files a plain copy.
+ */
+public class LogAdapter implements StorageAdapter {
+    private static final String PLAYER = "player:";
+    private static final String PLAYER_SKIN = "playerskin:";
+    private static final String URL_SKIN = "urlskin:";
+    private static final String URL_INDEX = "urlindex:";
+    private static final String CUSTOM_SKIN = "customskin:";
+    private static final String LEGACY_SKIN = "legacyskin:";
+    private static final String LEGACY_PLAYER = "legacyplayer:";
+    private static final String CACHE = "mojangcache:";
+    // Last access of a player skin as an 8 byte epoch second, kept apart so touching a skin does not rewrite its record
+    private static final String LAST_ACCESS = "lastaccess:";
+    // Written once the files of the file adapter are imported
+    private static final String MIGRATED_KEY = "meta:file-migration";
+    private static final List<String> FILE_FOLDERS = List.of("skins", "players", "cache", "legacy/skins", "legacy/players");
+    private static final int BATCH_CHUNK_SIZE = 1000;
+    private static final int PURGE_PROGRESS_INTERVAL = 1000;
+    private static final int COMPACTION_INTERVAL_SECONDS = 60;
+    private static final double COMPACTION_MIN_LIVE_RATIO = 0.5;
+    private final Path dataFolder;
+    // Skin files of the file adapter may reference their textures in its texture store
+    private final FileTextureStore fileTextures;
+    private final SettingsManager settings;
+    private final SRLogger logger;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private final GUISkinIndex guiIndex = new GUISkinIndex();
+    private LogStore store;
+    private LogFsyncPolicy fsyncPolicy;
+    private ScheduledExecutorService executor;
+
+    @Inject
+    public LogAdapter(SRPlugin plugin, SettingsManager settings, SRLogger logger) {
+        this.dataFolder = plugin.getDataFolder();
+        this.fileTextures = new FileTextureStore(dataFolder.resolve("textures"));
+        this.settings = settings;
+        this.logger = logger;
+    }
+
+    @Override
+    public synchronized void init() {
+        // Called again on reload, the settings may have changed
+        close();
+
+        fsyncPolicy = settings.getProperty(StorageConfig.LOG_FSYNC);
+        long segmentSize = Math.max(1, Math.min(1024, settings.getProperty(StorageConfig.LOG_SEGMENT_SIZE))) * 1024L * 1024L;
+        store = new LogStore(dataFolder.resolve("log"), segmentSize, logger);
+        try {
+            store.open();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (!store.contains(MIGRATED_KEY)) {
+            migrateFiles();
+        }
+
+        buildGUIIndex();
+        migrateLegacyPlayersInBulk();
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SkinsRestorer-Log-Storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncPolicy == LogFsyncPolicy.INTERVAL) {
+            int interval = Math.max(10, settings.getProperty(StorageConfig.LOG_FSYNC_INTERVAL));
+            executor.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        executor.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL_SECONDS, COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        LogStore.Stats stats = store.getStats();
+        logger.debug(String.format("Loaded %d records from %d storage log segments (%d of %d bytes live)",
+                stats.keys(), stats.segments(), stats.liveBytes(), stats.size()));
+    }
+
+    /**
+     * Syncs and closes the log, a later {@link #init()} opens it again.
+     */
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warning("Storage log compaction did not finish in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close the storage log", e);
+            }
+            store = null;
+        }
+    }
+
+    private void sync() {
+        try {
+            store.sync();
+        } catch (IOException e) {
+            logger.warning("Failed to sync the storage log", e);
+        }
+    }
+
+    /**
+     * Rewrites segments that mostly hold overwritten or removed records.
+     */
+    public void compact() {
+        try {
+            int compacted = store.compact(COMPACTION_MIN_LIVE_RATIO);
+            if (compacted > 0) {
+                logger.debug(String.format("Compacted %d storage log segments", compacted));
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to compact the storage log", e);
+        }
+    }
+
+    /**
+     * Copies the records of the file adapter, they are left in place as a backup.
+     */
+    private void migrateFiles() {
+        List<Path> files = new ArrayList<>();
+        for (String folder : FILE_FOLDERS) {
+            Path path = dataFolder.resolve(folder);
+            if (!Files.isDirectory(path)) {
+                continue;
+            }
+
+            // Covers both the flat and the sharded layout
+            try (Stream<Path> stream = Files.walk(path, 3)) {
+                stream.filter(Files::isRegularFile).forEach(files::add);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (!files.isEmpty()) {
+            logger.info(String.format("Copying %d files into the storage log...", files.size()));
+        }
+
+        int migrated = 0;
+        for (int i = 0; i < files.size(); i += BATCH_CHUNK_SIZE) {
+            Map<String, byte[]> chunk = new LinkedHashMap<>();
+            for (Path file : files.subList(i, Math.min(files.size(), i + BATCH_CHUNK_SIZE))) {
+                String fileName = file.getFileName().toString();
+                int lastDotIndex = fileName.lastIndexOf(".");
+                if (lastDotIndex == -1) {
+                    continue;
+                }
+
+                String key = fileName.substring(lastDotIndex + 1) + ":" + fileName.substring(0, lastDotIndex);
+                if (!isKnownKey(key)) {
+                    continue;
+                }
+
+                try {
+                    chunk.put(key, toJsonRecord(key, Files.readAllBytes(file)));
+                } catch (IOException e) {
+                    logger.warning("Failed to copy " + fileName + " into the storage log", e);
+                }
+            }
+
+            try {
+                store.write(chunk, LogFsyncPolicy.NEVER);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            migrated += chunk.size();
+        }
+
+        try {
+            store.put(MIGRATED_KEY, new byte[0], LogFsyncPolicy.ALWAYS);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (migrated > 0) {
+            logger.info(String.format("Copied %d records into the storage log, the old files can be deleted", migrated));
+        }
+    }
+
+    /**
+     * Converts files in the binary format of the file adapter back to the JSON this log stores.
+     */
+    private byte[] toJsonRecord(String key, byte[] data) throws IOException {
+        if (!FileRecordCodec.isBinary(data)) {
+            return data;
+        }
+
+        Object file;
+        if (key.startsWith(PLAYER)) {
+            file = PlayerFile.fromPlayerData(FileRecordCodec.PLAYER.read(data));
+        } else if (key.startsWith(PLAYER_SKIN)) {
+            file = PlayerSkinFile.fromPlayerSkinData(FileRecordCodec.PLAYER_SKIN.read(data, fileTextures::load));
+        } else if (key.startsWith(URL_SKIN)) {
+            file = URLSkinFile.fromURLSkinData(FileRecordCodec.URL_SKIN.read(data, fileTextures::load));
+        } else if (key.startsWith(URL_INDEX)) {
+            file = URLIndexFile.fromURLIndexData(FileRecordCodec.URL_INDEX.read(data));
+        } else if (key.startsWith(CUSTOM_SKIN)) {
+            file = CustomSkinFile.fromCustomSkinData(FileRecordCodec.CUSTOM_SKIN.read(data, fileTextures::load));
+        } else if (key.startsWith(CACHE)) {
+            file = MojangCacheFile.fromMojangCacheData(FileRecordCodec.CACHE.read(data));
+        } else {
+            throw new IOException("No binary format for " + key);
+        }
+
+        return gson.toJson(file).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isKnownKey(String key) {
+        return Stream.of(PLAYER, PLAYER_SKIN, URL_SKIN, URL_INDEX, CUSTOM_SKIN, LEGACY_SKIN, LEGACY_PLAYER, CACHE)
+                .anyMatch(key::startsWith);
+    }
+
+    private void buildGUIIndex() {
+        guiIndex.clear();
+
+        List<String> playerSkinKeys = new ArrayList<>();
+        store.forEachKey(PLAYER_SKIN, playerSkinKeys::add);
+        playerSkinKeys.parallelStream().forEach(key -> {
+            try {
+                read(key, PlayerSkinFile.class).ifPresent(file ->
+                        guiIndex.putPlayerSkin(key.substring(PLAYER_SKIN.length()), file.getLastKnownName()));
+            } catch (StorageException e) {
+                logger.warning("Failed to load player skin " + key + " for the GUI", e);
+            }
+        });
+
+        store.forEachKey(CUSTOM_SKIN, key -> guiIndex.putCustomSkin(key.substring(CUSTOM_SKIN.length())));
+
+        logger.debug(String.format("Indexed %d GUI skins", guiIndex.size()));
+    }
+
+    private void migrateLegacyPlayersInBulk() {
+        List<String> keys = new ArrayList<>();
+        store.forEachKey(LEGACY_PLAYER, keys::add);
+
+        int migrated = 0;
+        for (int i = 0; i < keys.size(); i += BATCH_CHUNK_SIZE) {
+            List<LegacyPlayerData> chunk = new ArrayList<>();
+            for (String key : keys.subList(i, Math.min(keys.size(), i + BATCH_CHUNK_SIZE))) {
+                try {
+                    read(key, LegacyPlayerFile.class).ifPresent(file -> chunk.add(file.toLegacyPlayerData()));
+                } catch (StorageException e) {
+                    logger.warning("Failed to read legacy player " + key, e);
+                }
+            }
+
+            try {
+                Map<String, byte[]> removals = new HashMap<>();
+                for (String migratedName : migrateLegacyPlayers(chunk)) {
+                    removals.put(LEGACY_PLAYER + sanitizeLegacyName(migratedName), null);
+                }
+                store.write(removals, fsyncPolicy);
+                migrated += removals.size();
+            } catch (StorageException | IOException e) {
+                logger.warning("Failed to migrate legacy players", e);
+            }
+        }
+
+        if (migrated > 0) {
+            logger.info(String.format("Migrated %d legacy players with a known UUID, the others are migrated on their next login", migrated));
+        }
+    }
+
+    private <T> Optional<T> read(String key, Class<T> type) throws StorageException {
+        try {
+            Optional<byte[]> value = store.get(key);
+            if (value.isEmpty()) {
+                return Optional.empty();
+            }
+
+            return Optional.of(gson.fromJson(new String(value.get(), StandardCharsets.UTF_8), type));
+        } catch (Exception e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private void write(String key, Object file) throws IOException {
+        store.put(key, gson.toJson(file).getBytes(StandardCharsets.UTF_8), fsyncPolicy);
+    }
+
+    @Override
+    public Optional<PlayerData> getPlayerData(UUID uuid) throws StorageException {
+        return read(PLAYER + uuid, PlayerFile.class).map(PlayerFile::toPlayerData);
+    }
+
+    @Override
+    public void setPlayerData(UUID uuid, PlayerData data) {
+        try {
+            write(PLAYER + uuid, PlayerFile.fromPlayerData(data));
+        } catch (IOException e) {
+            logger.warning("Failed to save player data for " + uuid, e);
+        }
+    }
+
+    @Override
+    public void setPlayerDataBatch(Map<UUID, PlayerData> data) {
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        for (Map.Entry<UUID, PlayerData> entry : data.entrySet()) {
+            values.put(PLAYER + entry.getKey(), gson.toJson(PlayerFile.fromPlayerData(entry.getValue())).getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            store.write(values, fsyncPolicy);
+        } catch (IOException e) {
+            logger.warning("Failed to save player data for " + data.size() + " players", e);
+        }
+    }
+
+    @Override
+    public Optional<PlayerSkinData> getPlayerSkinData(UUID uuid) throws StorageException {
+        return read(PLAYER_SKIN + uuid, PlayerSkinFile.class).map(PlayerSkinFile::toPlayerSkinData);
+    }
+
+    @Override
+    public void removePlayerSkinData(UUID uuid) {
+        try {
+            Map<String, byte[]> removals = new HashMap<>();
+            removals.put(PLAYER_SKIN + uuid, null);
+            removals.put(LAST_ACCESS + uuid, null);
+            store.write(removals, fsyncPolicy);
+            guiIndex.removePlayerSkin(uuid.toString());
+        } catch (IOException e) {
+            logger.warning("Failed to remove player skin data for " + uuid, e);
+        }
+    }
+
+    @Override
+    public void setPlayerSkinData(UUID uuid, PlayerSkinData skinData) {
+        try {
+            write(PLAYER_SKIN + uuid, PlayerSkinFile.fromPlayerSkinData(skinData));
+            guiIndex.putPlayerSkin(uuid.toString(), skinData.getLastKnownName());
+        } catch (IOException e) {
+            logger.warning("Failed to save player skin data for " + uuid, e);
+        }
+    }
+
+    @Override
+    public Optional<URLSkinData> getURLSkinData(String url, SkinVariant skinVariant) throws StorageException {
+        return read(urlSkinKey(url, skinVariant), URLSkinFile.class).map(URLSkinFile::toURLSkinData);
+    }
+
+    @Override
+    public void removeURLSkinData(String url, SkinVariant skinVariant) {
+        try {
+            store.remove(urlSkinKey(url, skinVariant), fsyncPolicy);
+        } catch (IOException e) {
+            logger.warning("Failed to remove URL skin data for " + url, e);
+        }
+    }
+
+    @Override
+    public void setURLSkinData(String url, URLSkinData skinData) {
+        try {
+            write(urlSkinKey(url, skinData.getSkinVariant()), URLSkinFile.fromURLSkinData(skinData));
+        } catch (IOException e) {
+            logger.warning("Failed to save URL skin data for " + url, e);
+        }
+    }
+
+    @Override
+    public Optional<URLIndexData> getURLSkinIndex(String url) throws StorageException {
+        return read(URL_INDEX + SRHelpers.hashSha256Hex(url), URLIndexFile.class).map(URLIndexFile::toURLIndexData);
+    }
+
+    @Override
+    public void removeURLSkinIndex(String url) {
+        try {
+            store.remove(URL_INDEX + SRHelpers.hashSha256Hex(url), fsyncPolicy);
+        } catch (IOException e) {
+            logger.warning("Failed to remove URL skin index for " + url, e);
+        }
+    }
+
+    @Override
+    public void setURLSkinIndex(String url, URLIndexData skinData) {
+        try {
+            write(URL_INDEX + SRHelpers.hashSha256Hex(url), URLIndexFile.fromURLIndexData(skinData));
+        } catch (IOException e) {
+            logger.warning("Failed to save URL skin index for " + url, e);
+        }
+    }
+
+    @Override
+    public Optional<CustomSkinData> getCustomSkinData(String skinName) throws StorageException {
+        skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
+        return read(CUSTOM_SKIN + skinName, CustomSkinFile.class).map(CustomSkinFile::toCustomSkinData);
+    }
+
+    @Override
+    public void removeCustomSkinData(String skinName) {
+        skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
+        try {
+            store.remove(CUSTOM_SKIN + skinName, fsyncPolicy);
+            guiIndex.removeCustomSkin(skinName);
+        } catch (IOException e) {
+            logger.warning("Failed to remove custom skin data for " + skinName, e);
+        }
+    }
+
+    @Override
+    public void setCustomSkinData(String skinName, CustomSkinData skinData) {
+        skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
+        try {
+            write(CUSTOM_SKIN + skinName, CustomSkinFile.fromCustomSkinData(skinData));
+            guiIndex.putCustomSkin(skinName);
+        } catch (IOException e) {
+            logger.warning("Failed to save custom skin data for " + skinName, e);
+        }
+    }
+
+    @Override
+    public Optional<LegacySkinData> getLegacySkinData(String skinName) throws StorageException {
+        return read(LEGACY_SKIN + sanitizeLegacyName(skinName), LegacySkinFile.class).map(LegacySkinFile::toLegacySkinData);
+    }
+
+    @Override
+    public void removeLegacySkinData(String skinName) {
+        try {
+            store.remove(LEGACY_SKIN + sanitizeLegacyName(skinName), fsyncPolicy);
+        } catch (IOException e) {
+            logger.warning("Failed to remove legacy skin data for " + skinName, e);
+        }
+    }
+
+    @Override
+    public Optional<LegacyPlayerData> getLegacyPlayerData(String playerName) throws StorageException {
+        return read(LEGACY_PLAYER + sanitizeLegacyName(playerName), LegacyPlayerFile.class).map(LegacyPlayerFile::toLegacyPlayerData);
+    }
+
+    @Override
+    public void removeLegacyPlayerData(String playerName) {
+        try {
+            store.remove(LEGACY_PLAYER + sanitizeLegacyName(playerName), fsyncPolicy);
+        } catch (IOException e) {
+            logger.warning("Failed to remove legacy player data for " + playerName, e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getStoredRandomSkins(int limit) {
+        boolean customEnabled = settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED);
+
+        Map<String, String> list = new LinkedHashMap<>();
+        for (GUISkinIndex.Entry entry : guiIndex.sample(limit, customEnabled)) {
+            loadGUIEntry(entry).ifPresent(value -> list.put(entry.name(), value));
+        }
+
+        return list;
+    }
+
+    @Override
+    public GUISkinPage getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor) {
+        boolean customEnabled = settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED);
+        boolean customOnly = customEnabled && settings.getProperty(GUIConfig.CUSTOM_GUI_ONLY);
+        Set<String> customSkins = settings.getProperty(GUIConfig.CUSTOM_GUI_SKINS)
+                .stream()
+                .map(s -> s.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+
+        // Only allow specific custom skins if enabled
+        return guiIndex.getPage(offset, cursor, !customOnly, customEnabled,
+                entry -> !customOnly || customSkins.contains(entry.fileName().toLowerCase(Locale.ROOT)),
+                this::loadGUIEntry);
+    }
+
+    private Optional<String> loadGUIEntry(GUISkinIndex.Entry entry) {
+        try {
+            Optional<SkinProperty> skinProperty;
+            if (entry.skinType() == SkinType.PLAYER) {
+                skinProperty = getPlayerSkinData(UUID.fromString(entry.fileName()))
+                        .map(PlayerSkinData::getProperty);
+            } else {
+                skinProperty = getCustomSkinData(entry.fileName())
+                        .map(CustomSkinData::getProperty);
+            }
+
+            return skinProperty.map(SkinProperty::getValue);
+        } catch (StorageException e) {
+            logger.warning("Failed to load skin data for " + entry.fileName(), e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public int purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress) throws StorageException {
+        return purgePlayerSkins(progress, (uuid, timestamp) -> timestamp < targetPurgeTimestamp);
+    }
+
+    @Override
+    public void touchPlayerSkins(Map<UUID, Long> lastAccess) throws StorageException {
+        Map<String, byte[]> values = new HashMap<>();
+        for (Map.Entry<UUID, Long> entry : lastAccess.entrySet()) {
+            if (store.contains(PLAYER_SKIN + entry.getKey()) && readLastAccess(entry.getKey().toString()) < entry.getValue()) {
+                values.put(LAST_ACCESS + entry.getKey(), ByteBuffer.allocate(Long.BYTES).putLong(entry.getValue()).array());
+            }
+        }
+
+        try {
+            // Losing the latest accesses on a crash only keeps a skin a bit shorter, so they are never synced right away
+            store.write(values, LogFsyncPolicy.NEVER);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public int purgeUnusedPlayerSkins(long targetLastAccess, IntConsumer progress) throws StorageException {
+        // A skin saved again counts as used, so the timestamp bounds the last access as well
+        return purgePlayerSkins(progress, (uuid, timestamp) -> timestamp <= targetLastAccess && readLastAccess(uuid) <= targetLastAccess);
+    }
+
+    private long readLastAccess(String uuid) throws StorageException {
+        try {
+            return store.get(LAST_ACCESS + uuid).map(value -> ByteBuffer.wrap(value).getLong()).orElse(0L);
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private int purgePlayerSkins(IntConsumer progress, PurgeFilter filter) throws StorageException {
+        List<String> keys = new ArrayList<>();
+        store.forEachKey(PLAYER_SKIN, keys::add);
+
+        int removed = 0;
+        for (int i = 0; i < keys.size(); i += PURGE_PROGRESS_INTERVAL) {
+            Map<String, byte[]> removals = new HashMap<>();
+            for (String key : keys.subList(i, Math.min(keys.size(), i + PURGE_PROGRESS_INTERVAL))) {
+                Optional<PlayerSkinFile> file = read(key, PlayerSkinFile.class);
+                String uuid = key.substring(PLAYER_SKIN.length());
+                if (file.isPresent() && file.get().getTimestamp() != 0L && filter.test(uuid, file.get().getTimestamp())) {
+                    removals.put(key, null);
+                    removals.put(LAST_ACCESS + uuid, null);
+                }
+            }
+
+            try {
+                store.write(removals, fsyncPolicy);
+            } catch (IOException e) {
+                throw new StorageException(e);
+            }
+
+            int purged = 0;
+            for (String key : removals.keySet()) {
+                if (key.startsWith(PLAYER_SKIN)) {
+                    guiIndex.removePlayerSkin(key.substring(PLAYER_SKIN.length()));
+                    purged++;
+                }
+            }
+            removed += purged;
+            progress.accept(removed);
+        }
+
+        progress.accept(removed);
+        return removed;
+    }
+
+    @Override
+    public void forEachSkinReference(Consumer<SkinIdentifier> consumer) throws StorageException {
+        List<String> legacyKeys = new ArrayList<>();
+        store.forEachKey(LEGACY_PLAYER, legacyKeys::add);
+        for (String key : legacyKeys) {
+            read(key, LegacyPlayerFile.class).ifPresent(file ->
+                    consumer.accept(SkinIdentifier.of(file.toLegacyPlayerData().getSkinName(), null, SkinType.LEGACY)));
+        }
+
+        List<String> keys = new ArrayList<>();
+        store.forEachKey(PLAYER, keys::add);
+        for (String key : keys) {
+            Optional<PlayerData> data = read(key, PlayerFile.class).map(PlayerFile::toPlayerData);
+            if (data.isPresent() && data.get().getSkinIdentifier() != null) {
+                consumer.accept(data.get().getSkinIdentifier());
+            }
+        }
+    }
+
+    @Override
+    public void forEachCollectableSkin(Consumer<StoredSkinKey> consumer) throws StorageException {
+        List<String> keys = new ArrayList<>();
+        store.forEachKey(PLAYER_SKIN, keys::add);
+        store.forEachKey(URL_SKIN, keys::add);
+        store.forEachKey(URL_INDEX, keys::add);
+        store.forEachKey(LEGACY_SKIN, keys::add);
+
+        for (String key : keys) {
+            if (key.startsWith(PLAYER_SKIN)) {
+                read(key, PlayerSkinFile.class).ifPresent(file -> consumer.accept(StoredSkinKey.playerSkin(
+                        UUID.fromString(key.substring(PLAYER_SKIN.length())), file.getTimestamp())));
+            } else if (key.startsWith(URL_SKIN)) {
+                read(key, URLSkinFile.class).map(URLSkinFile::toURLSkinData).ifPresent(data ->
+                        consumer.accept(StoredSkinKey.urlSkin(data.getUrl(), data.getSkinVariant())));
+            } else if (key.startsWith(URL_INDEX)) {
+                read(key, URLIndexFile.class).map(URLIndexFile::toURLIndexData).ifPresent(data ->
+                        consumer.accept(StoredSkinKey.urlIndex(data.getUrl())));
+            } else {
+                consumer.accept(StoredSkinKey.legacySkin(key.substring(LEGACY_SKIN.length())));
+            }
+        }
+    }
+
+    @Override
+    public Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException {
+        return read(CACHE + playerName, MojangCacheFile.class).map(MojangCacheFile::toCacheData);
+    }
+
+    @Override
+    public void setCachedUUID(String playerName, MojangCacheData mojangCacheData) {
+        try {
+            write(CACHE + playerName, MojangCacheFile.fromMojangCacheData(mojangCacheData));
+        } catch (IOException e) {
+            logger.warning("Failed to save cached UUID for " + playerName, e);
+        }
+    }
+
+    @Override
+    public void setCachedUUIDBatch(Map<String, MojangCacheData> data) {
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        for (Map.Entry<String, MojangCacheData> entry : data.entrySet()) {
+            values.put(CACHE + entry.getKey(), gson.toJson(MojangCacheFile.fromMojangCacheData(entry.getValue())).getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            store.write(values, fsyncPolicy);
+        } catch (IOException e) {
+            logger.warning("Failed to save cached UUIDs of " + data.size() + " players", e);
+        }
+    }
+
+    private static String urlSkinKey(String url, SkinVariant skinVariant) {
+        return URL_SKIN + SRHelpers.hashSha256Hex(url) + "_" + skinVariant.name();
+    }
+
+    private static String sanitizeLegacyName(String name) {
+        // Legacy file names used #toLowerCase() without a locale, the keys copied from them have to match
+        return name.toLowerCase();
+    }
+
+    private interface PurgeFilter {
+        boolean test(String uuid, long timestamp) throws StorageException;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.log;
+
+/**
+ * When appended records are forced from the OS cache to disk.
+ */
+public enum LogFsyncPolicy {
+    /**
+     * Sync after every write, nothing is lost on a power failure but writes are slow.
+     */
+    ALWAYS,
+    /**
+     * Sync in the background at a fixed interval, a power failure loses at most the last interval.
+     */
+    INTERVAL,
+    /**
+     * Leave syncing to the OS.
+     */
+    NEVER
+}
@@ -0,0 +1,598 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.log;
+
+import net.skinsrestorer.shared.log.SRLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key value store split into segment files, with a hash index of every live key in memory.
+ * <p>
+ * Records are never changed in place, a write appends a new version and a removal appends a tombstone.
+ * Full segments are sealed and memory-mapped for reading, {@link #compact(double)} copies their remaining live records
+ * to the end of the log and deletes them. A torn record at the end of the log is cut off when the store is opened.
+ * The active segment is read through its own channel, so an interrupted reader can not close the channel the writer uses.
+ * <p>
+ * Record layout: {@code int length, int crc32, byte type, short keyLength, key, value},
+ * where the length and checksum cover everything after the checksum.
+ */
+class LogStore {
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final int LENGTH_SIZE = Integer.BYTES;
+    private static final int HEADER_SIZE = LENGTH_SIZE + Integer.BYTES + Byte.BYTES + Short.BYTES;
+    private final Path folder;
+    private final long maxSegmentSize;
+    private final SRLogger logger;
+    private final Map<String, Pointer> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    // Compacted segments whose files could not be deleted yet and would be replayed on the next start
+    private final NavigableSet<Integer> undeletedSegments = new ConcurrentSkipListSet<>();
+    private final Object writeLock = new Object();
+    private Segment activeSegment;
+    private boolean dirty;
+
+    LogStore(Path folder, long maxSegmentSize, SRLogger logger) {
+        this.folder = folder;
+        this.maxSegmentSize = maxSegmentSize;
+        this.logger = logger;
+    }
+
+    private static Path segmentFile(Path folder, int id) {
+        return folder.resolve(String.format("%08d%s", id, SEGMENT_EXTENSION));
+    }
+
+    /**
+     * Replays all segments to rebuild the index.
+     */
+    public void open() throws IOException {
+        Files.createDirectories(folder);
+
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + SEGMENT_EXTENSION)) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                try {
+                    ids.add(Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    logger.warning("Ignoring unknown file in the storage log: " + fileName);
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        synchronized (writeLock) {
+            for (int i = 0; i < ids.size(); i++) {
+                boolean last = i == ids.size() - 1;
+                Segment segment = replay(ids.get(i), last);
+                segments.put(segment.id, segment);
+                if (last && segment.size < maxSegmentSize) {
+                    activeSegment = segment;
+                }
+            }
+
+            if (activeSegment == null) {
+                createActiveSegment();
+            }
+        }
+    }
+
+    private Segment replay(int id, boolean last) throws IOException {
+        Path file = segmentFile(folder, id);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Storage log segment " + file.getFileName() + " is too large");
+        }
+
+        // Read into the heap instead of mapping, a mapped file cannot be truncated on every system
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        Segment segment = new Segment(id, file);
+
+        int offset = 0;
+        while (offset < fileSize) {
+            Record record = readRecord(buffer, offset);
+            if (record == null) {
+                logger.warning(String.format("Storage log segment %s is damaged at byte %d, dropping %d bytes from there",
+                        file.getFileName(), offset, fileSize - offset));
+                break;
+            }
+
+            Pointer pointer = new Pointer(id, offset, record.length());
+            if (record.type() == TYPE_PUT) {
+                replace(record.key(), pointer, segment);
+            } else {
+                replace(record.key(), null, segment);
+            }
+
+            segment.size += record.length();
+            offset += record.length();
+        }
+
+        if (offset < fileSize) {
+            // Usually a write that was cut off by a crash, later records cannot be trusted either
+            channel.truncate(offset);
+        }
+
+        if (last && segment.size < maxSegmentSize) {
+            segment.channel = channel;
+            segment.readChannel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(segment.size);
+        } else {
+            segment.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+            channel.close();
+        }
+
+        return segment;
+    }
+
+    /**
+     * @return The record at the offset, or null if it is incomplete or does not match its checksum
+     */
+    private static Record readRecord(ByteBuffer buffer, int offset) {
+        if (buffer.limit() - offset < HEADER_SIZE) {
+            return null;
+        }
+
+        int bodyLength = buffer.getInt(offset);
+        int length = LENGTH_SIZE + bodyLength;
+        if (bodyLength < HEADER_SIZE - LENGTH_SIZE || buffer.limit() - offset < length) {
+            return null;
+        }
+
+        int checksumSize = Integer.BYTES;
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset + LENGTH_SIZE + checksumSize).limit(offset + length);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(offset + LENGTH_SIZE)) {
+            return null;
+        }
+
+        byte type = body.get();
+        int keyLength = Short.toUnsignedInt(body.getShort());
+        if (type != TYPE_PUT && type != TYPE_DELETE || keyLength > body.remaining()) {
+            return null;
+        }
+
+        byte[] key = new byte[keyLength];
+        body.get(key);
+        return new Record(type, new String(key, StandardCharsets.UTF_8), length, body.position() - offset);
+    }
+
+    public Optional<byte[]> get(String key) throws IOException {
+        Pointer pointer = index.get(key);
+        while (pointer != null) {
+            byte[] value = read(pointer);
+            if (value != null) {
+                return Optional.of(value);
+            }
+
+            // The segment was sealed or compacted while reading, look up where the record is now
+            Pointer previous = pointer;
+            pointer = index.get(key);
+            if (previous.equals(pointer) && !segments.containsKey(pointer.segmentId())) {
+                throw new IOException("Storage log segment " + pointer.segmentId() + " is missing");
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return The value, or null if the segment was sealed or removed in the meantime
+     */
+    private byte[] read(Pointer pointer) throws IOException {
+        Segment segment = segments.get(pointer.segmentId());
+        if (segment == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(pointer.length());
+        MappedByteBuffer mapped = segment.mapped;
+        if (mapped != null) {
+            buffer.put(0, mapped, Math.toIntExact(pointer.offset()), pointer.length());
+        } else {
+            FileChannel channel = segment.readChannel;
+            if (channel != null && !channel.isOpen()) {
+                channel = reopenReadChannel(segment);
+            }
+
+            if (channel == null) {
+                return null;
+            }
+
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, pointer.offset() + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of storage log segment " + segment.file.getFileName());
+                    }
+                }
+            } catch (ClosedByInterruptException e) {
+                // Only the read channel is closed by the interrupt, the next read opens a new one
+                throw e;
+            } catch (ClosedChannelException e) {
+                // Sealed, or the read channel was closed by another reader being interrupted
+                return null;
+            }
+        }
+
+        ByteBuffer body = buffer.position(LENGTH_SIZE + Integer.BYTES + Byte.BYTES);
+        int keyLength = Short.toUnsignedInt(body.getShort());
+        byte[] value = new byte[pointer.length() - HEADER_SIZE - keyLength];
+        body.position(HEADER_SIZE + keyLength).get(value);
+        return value;
+    }
+
+    /**
+     * @return A new read channel for the active segment, or null if the segment was sealed in the meantime
+     */
+    private static FileChannel reopenReadChannel(Segment segment) throws IOException {
+        synchronized (segment) {
+            FileChannel channel = segment.readChannel;
+            if (channel != null && !channel.isOpen()) {
+                channel = FileChannel.open(segment.file, StandardOpenOption.READ);
+                segment.readChannel = channel;
+            }
+
+            return channel;
+        }
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * @param action Called with every live key starting with the prefix, values have to be read with {@link #get(String)}
+     */
+    public void forEachKey(String prefix, Consumer<String> action) {
+        for (String key : index.keySet()) {
+            if (key.startsWith(prefix)) {
+                action.accept(key);
+            }
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Appends all records under one lock, so a batch only pays for a single sync.
+     *
+     * @param values Values by key, a null value removes the key
+     */
+    public void write(Map<String, byte[]> values, LogFsyncPolicy fsyncPolicy) throws IOException {
+        synchronized (writeLock) {
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                if (entry.getValue() == null) {
+                    if (index.containsKey(entry.getKey())) {
+                        append(TYPE_DELETE, entry.getKey(), new byte[0]);
+                        replace(entry.getKey(), null, activeSegment);
+                    }
+                } else {
+                    Pointer pointer = append(TYPE_PUT, entry.getKey(), entry.getValue());
+                    replace(entry.getKey(), pointer, activeSegment);
+                }
+            }
+
+            if (fsyncPolicy == LogFsyncPolicy.ALWAYS) {
+                activeSegment.channel.force(false);
+            } else {
+                dirty = true;
+            }
+        }
+    }
+
+    public void put(String key, byte[] value, LogFsyncPolicy fsyncPolicy) throws IOException {
+        write(Collections.singletonMap(key, value), fsyncPolicy);
+    }
+
+    public void remove(String key, LogFsyncPolicy fsyncPolicy) throws IOException {
+        write(Collections.singletonMap(key, null), fsyncPolicy);
+    }
+
+    /**
+     * Flushes appended records to disk if any were written since the last sync.
+     */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            if (dirty && activeSegment != null) {
+                activeSegment.channel.force(false);
+                dirty = false;
+            }
+        }
+    }
+
+    /**
+     * Points the key to its new version and keeps the live byte count of the segments up to date.
+     */
+    private void replace(String key, Pointer pointer, Segment segment) {
+        Pointer previous = pointer == null ? index.remove(key) : index.put(key, pointer);
+        if (pointer != null) {
+            segment.liveBytes.addAndGet(pointer.length());
+        }
+
+        if (previous != null) {
+            Segment previousSegment = segments.get(previous.segmentId());
+            if (previousSegment == null && previous.segmentId() == segment.id) {
+                previousSegment = segment; // Still replaying this segment
+            }
+
+            if (previousSegment != null) {
+                previousSegment.liveBytes.addAndGet(-previous.length());
+            }
+        }
+    }
+
+    private Pointer append(byte type, String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IOException("Storage log key is too long: " + key);
+        }
+
+        int length = HEADER_SIZE + keyBytes.length + value.length;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(length - LENGTH_SIZE);
+        buffer.putInt(0); // Checksum placeholder
+        buffer.put(type);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), LENGTH_SIZE + Integer.BYTES, length - LENGTH_SIZE - Integer.BYTES);
+        buffer.putInt(LENGTH_SIZE, (int) crc.getValue());
+        buffer.flip();
+
+        if (activeSegment.size > 0 && activeSegment.size + length > maxSegmentSize) {
+            sealActiveSegment();
+            createActiveSegment();
+        }
+
+        Segment segment = activeSegment;
+        long offset = segment.size;
+        try {
+            while (buffer.hasRemaining()) {
+                segment.channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // A partly written record would shift every later record away from its offset in the index
+            try {
+                truncateActiveSegment(segment);
+            } catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        }
+        segment.size += length;
+
+        return new Pointer(segment.id, offset, length);
+    }
+
+    /**
+     * Cuts the active segment back to its last complete record, reopening the channel if the failed write closed it.
+     */
+    private static void truncateActiveSegment(Segment segment) throws IOException {
+        FileChannel channel = segment.channel;
+        if (!channel.isOpen()) {
+            channel = FileChannel.open(segment.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment.channel = channel;
+        }
+
+        channel.truncate(segment.size);
+        channel.position(segment.size);
+    }
+
+    private void createActiveSegment() throws IOException {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment segment = new Segment(id, segmentFile(folder, id));
+        segment.channel = FileChannel.open(segment.file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.readChannel = FileChannel.open(segment.file, StandardOpenOption.READ);
+        segments.put(id, segment);
+        activeSegment = segment;
+    }
+
+    private void sealActiveSegment() throws IOException {
+        Segment segment = activeSegment;
+        FileChannel channel = segment.channel;
+        channel.force(false);
+        segment.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        segment.channel = null;
+        channel.close();
+        closeReadChannel(segment);
+        dirty = false;
+    }
+
+    private static void closeReadChannel(Segment segment) throws IOException {
+        synchronized (segment) {
+            FileChannel readChannel = segment.readChannel;
+            segment.readChannel = null;
+            if (readChannel != null) {
+                readChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Rewrites sealed segments whose share of live records fell below the threshold.
+     *
+     * @param minLiveRatio Segments with less live data than this share of their size are compacted
+     * @return The number of compacted segments
+     */
+    public int compact(double minLiveRatio) throws IOException {
+        deleteUndeletedSegments();
+
+        int compacted = 0;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment.mapped == null || segment.liveBytes.get() >= segment.size * minLiveRatio) {
+                continue;
+            }
+
+            compactSegment(segment);
+            compacted++;
+        }
+
+        if (compacted > 0) {
+            sync();
+        }
+
+        return compacted;
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        MappedByteBuffer buffer = segment.mapped;
+        // Tombstones can only go once no older segment file is left that would be replayed on the next start
+        boolean oldest = segments.firstKey() == segment.id && undeletedSegments.headSet(segment.id).isEmpty();
+
+        int offset = 0;
+        while (offset < segment.size) {
+            Record record = readRecord(buffer, offset);
+            if (record == null) {
+                throw new IOException("Storage log segment " + segment.file.getFileName() + " is damaged at byte " + offset);
+            }
+
+            Pointer pointer = new Pointer(segment.id, offset, record.length());
+            synchronized (writeLock) {
+                if (record.type() == TYPE_PUT) {
+                    // Only the latest version of a key is copied, newer writes win
+                    if (pointer.equals(index.get(record.key()))) {
+                        byte[] value = new byte[record.length() - record.valueOffset()];
+                        buffer.get(offset + record.valueOffset(), value);
+                        replace(record.key(), append(TYPE_PUT, record.key(), value), activeSegment);
+                    }
+                } else if (!oldest && !index.containsKey(record.key())) {
+                    // Older segments may still hold a value this tombstone hides
+                    append(TYPE_DELETE, record.key(), new byte[0]);
+                }
+            }
+
+            offset += record.length();
+        }
+
+        synchronized (writeLock) {
+            // The copies have to be on disk before the originals are gone
+            activeSegment.channel.force(false);
+            segments.remove(segment.id);
+        }
+
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            // Some systems do not delete mapped files. Until it is gone, newer segments have to keep the tombstones
+            // of keys removed since, or replaying this file on the next start would bring those keys back.
+            logger.debug("Failed to delete compacted storage log segment " + segment.file.getFileName(), e);
+            undeletedSegments.add(segment.id);
+        }
+    }
+
+    /**
+     * Retries deleting the files of compacted segments, which may work once their mapping was released.
+     */
+    private void deleteUndeletedSegments() {
+        for (int id : undeletedSegments) {
+            try {
+                Files.deleteIfExists(segmentFile(folder, id));
+                undeletedSegments.remove(id);
+            } catch (IOException e) {
+                logger.debug("Still failed to delete compacted storage log segment " + id, e);
+            }
+        }
+    }
+
+    /**
+     * @return Sizes of all segments and the share of live data in them
+     */
+    public Stats getStats() {
+        long size = 0;
+        long liveBytes = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.size;
+            liveBytes += segment.liveBytes.get();
+        }
+
+        return new Stats(segments.size(), index.size(), size, liveBytes);
+    }
+
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (activeSegment != null && activeSegment.channel != null) {
+                activeSegment.channel.force(false);
+                activeSegment.channel.close();
+                closeReadChannel(activeSegment);
+            }
+
+            activeSegment = null;
+            dirty = false;
+            segments.clear();
+            undeletedSegments.clear();
+            index.clear();
+        }
+    }
+
+    record Pointer(int segmentId, long offset, int length) {
+    }
+
+    private record Record(byte type, String key, int length, int valueOffset) {
+    }
+
+    record Stats(int segments, int keys, long size, long liveBytes) {
+    }
+
+    private static class Segment {
+        private final int id;
+        private final Path file;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private volatile FileChannel channel;
+        private volatile FileChannel readChannel;
+        private volatile MappedByteBuffer mapped;
+        private long size;
+
+        private Segment(int id, Path file) {
+            this.id = id;
+            this.file = file;
+        }
+    }
+}
@@ -26,82 +26,94 @@ import net.skinsrestorer.api.property.SkinType;
 import net.skinsrestorer.api.property.SkinVariant;
 import net.skinsrestorer.shared.config.DatabaseConfig;
 import net.skinsrestorer.shared.config.GUIConfig;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
 import net.skinsrestorer.shared.gui.SharedGUI;
 import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.plugin.SRPlugin;
 import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLStatements.Operation;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLStatements.Table;
 import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
 import net.skinsrestorer.shared.storage.model.player.LegacyPlayerData;
 import net.skinsrestorer.shared.storage.model.player.PlayerData;
 import net.skinsrestorer.shared.storage.model.skin.*;
+import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class MySQLAdapter implements StorageAdapter {
+    private static final int MIGRATION_FETCH_SIZE = 500;
+    private static final int SCAN_FETCH_SIZE = 1000;
+    // Keeps IN (...) lists well below the placeholder and packet limits
+    private static final int BATCH_CHUNK_SIZE = 500;
+    private static final int RANDOM_SAMPLE_ATTEMPTS = 5;
+    // Caps the probes of a sampling round, so sparse ids can not turn into huge IN lists
+    private static final int MAX_SAMPLE_PROBES = 2000;
+    private static final int TABLE_NOT_FOUND_ERROR = 1146;
+    // Long enough for another server to finish migrating large tables
+    private static final int MIGRATION_LOCK_TIMEOUT_SECONDS = 600;
+    private static final List<Table> SCHEMA_TABLES = List.of(Table.CACHE, Table.PLAYERS, Table.PLAYER_SKINS, Table.URL_SKINS, Table.URL_INDEX, Table.CUSTOM_SKINS, Table.TEXTURES);
     private final MySQLProvider mysql;
+    private final MySQLWriteQueue writeQueue;
     private final SettingsManager settings;
     private final SRLogger logger;
     private final SRPlugin plugin;
+    private volatile MySQLStatements statements;
+    // Checked once on startup, so logins do not have to ask MySQL whether the legacy tables exist
+    private volatile boolean legacyPlayersPresent;
+    private volatile boolean legacySkinsPresent;
 
     @Override
     public void init() {
-        mysql.execute("CREATE TABLE IF NOT EXISTS `" + resolveCacheTable() + "` ("
-                + "`name` VARCHAR(16) NOT NULL,"
-                + "`uuid` VARCHAR(36),"
-                + "`timestamp` BIGINT(20) NOT NULL,"
-                + "PRIMARY KEY (`name`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+        statements = MySQLStatements.forPrefix(settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX));
 
-        mysql.execute("CREATE TABLE IF NOT EXISTS `" + resolvePlayerTable() + "` ("
-                + "`uuid` VARCHAR(36) NOT NULL,"
-                + "`skin_identifier` VARCHAR(2083),"
-                + "`skin_variant` VARCHAR(20),"
-                + "`skin_type` VARCHAR(20),"
-                + "PRIMARY KEY (`uuid`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
-
-        mysql.execute("CREATE TABLE IF NOT EXISTS `" + resolvePlayerSkinTable() + "` ("
-                + "`uuid` VARCHAR(36) NOT NULL,"
-                + "`last_known_name` VARCHAR(16),"
-                + "`value` TEXT NOT NULL,"
-                + "`signature` TEXT NOT NULL,"
-                + "`timestamp` BIGINT(20) NOT NULL,"
-                + "PRIMARY KEY (`uuid`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
-
-        mysql.execute("CREATE TABLE IF NOT EXISTS `" + resolveURLSkinTable() + "` ("
-                + "`url` VARCHAR(266) NOT NULL," // Max chatbox command length
-                + "`mine_skin_id` VARCHAR(36),"
-                + "`value` TEXT NOT NULL,"
-                + "`signature` TEXT NOT NULL,"
-                + "`skin_variant` VARCHAR(20),"
-                + "PRIMARY KEY (`url`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
-
-        mysql.execute("CREATE TABLE IF NOT EXISTS `" + resolveURLSkinIndexTable() + "` ("
-                + "`url` VARCHAR(266) NOT NULL," // Max chatbox command length
-                + "`skin_variant` VARCHAR(20),"
-                + "PRIMARY KEY (`url`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
-
-        mysql.execute("CREATE TABLE IF NOT EXISTS `" + resolveCustomSkinTable() + "` ("
-                + "`name` VARCHAR(36) NOT NULL,"
-                + "`value` TEXT NOT NULL,"
-                + "`signature` TEXT NOT NULL,"
-                + "PRIMARY KEY (`name`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+        for (Table table : SCHEMA_TABLES) {
+            mysql.execute(createTableStatement(table, statements.table(table), false));
+        }
 
-        try {
-            // v14
+        // Only one server sharing the database migrates, the others wait and then find the tables up to date
+        try (MySQLProvider.NamedLock ignored = mysql.lock("skinsrestorer_migration_" + statements.table(Table.PLAYERS), MIGRATION_LOCK_TIMEOUT_SECONDS)) {
+            // v15
+            migrateV15();
+
+            // v16
+            migrateV16();
+
+            // v17, goes after v16 because it converts the v16 tables
+            migrateV17();
+
+            migrateLastAccess();
+
+            // v14, goes last because it imports into the v16 tables
             migrateLegacyPlayerTable();
             migrateLegacySkinTable();
 
-            // v15
-            migrateV15();
-        } catch (IOException e) {
+            migrateLegacyPlayersInBulk();
+        } catch (IOException | SQLException e) {
             logger.severe("Failed to migrate tables", e);
         }
+
+        legacyPlayersPresent = hasLegacyRows(resolveLegacyPlayerTable());
+        legacySkinsPresent = hasLegacyRows(resolveLegacySkinTable());
+
+        if (settings.getProperty(DatabaseConfig.MYSQL_WRITE_BEHIND_ENABLED)) {
+            writeQueue.start();
+        } else {
+            writeQueue.shutdown();
+        }
     }
 
     private void migrateV15() {
@@ -111,6 +123,334 @@ public class MySQLAdapter implements StorageAdapter {
         }
     }
 
+    private void migrateV16() throws IOException {
+        migrateTableV16(Table.CACHE, "uuid", List.of("name", "uuid", "timestamp"), crs -> new Object[]{
+                crs.getString("name"),
+                MySQLColumns.toBinary(parseUUID(crs.getString("uuid"))),
+                crs.getLong("timestamp")
+        });
+        migrateTableV16(Table.PLAYERS, "uuid", List.of("uuid", "skin_identifier", "skin_type", "skin_variant"), crs -> new Object[]{
+                MySQLColumns.toBinary(UUID.fromString(crs.getString("uuid"))),
+                crs.getString("skin_identifier"),
+                MySQLColumns.toCode(parseEnum(SkinType.class, crs.getString("skin_type"))),
+                MySQLColumns.toCode(parseEnum(SkinVariant.class, crs.getString("skin_variant")))
+        });
+        migrateTableV16(Table.PLAYER_SKINS, "uuid", List.of("uuid", "last_known_name", "value", "signature", "timestamp"), crs -> new Object[]{
+                MySQLColumns.toBinary(UUID.fromString(crs.getString("uuid"))),
+                crs.getString("last_known_name"),
+                canonicalPayload(crs.getString("value")),
+                canonicalPayload(crs.getString("signature")),
+                crs.getLong("timestamp")
+        });
+        migrateTableV16(Table.URL_SKINS, "skin_variant", List.of("url", "skin_variant", "mine_skin_id", "value", "signature"), crs -> {
+            SkinVariant variant = parseEnum(SkinVariant.class, crs.getString("skin_variant"));
+            if (variant == null) {
+                return null; // Could never be looked up
+            }
+
+            return new Object[]{
+                    crs.getString("url"),
+                    MySQLColumns.toCode(variant),
+                    crs.getString("mine_skin_id"),
+                    canonicalPayload(crs.getString("value")),
+                    canonicalPayload(crs.getString("signature"))
+            };
+        });
+        migrateTableV16(Table.URL_INDEX, "skin_variant", List.of("url", "skin_variant"), crs -> {
+            SkinVariant variant = parseEnum(SkinVariant.class, crs.getString("skin_variant"));
+            if (variant == null) {
+                return null;
+            }
+
+            return new Object[]{crs.getString("url"), MySQLColumns.toCode(variant)};
+        });
+        migrateTableV16(Table.CUSTOM_SKINS, "value", List.of("name", "value", "signature"), crs -> new Object[]{
+                crs.getString("name"),
+                canonicalPayload(crs.getString("value")),
+                canonicalPayload(crs.getString("signature"))
+        });
+    }
+
+    /**
+     * Only exact base64 may be stored as bytes, anything else could not be written back unchanged.
+     */
+    private static byte[] canonicalPayload(String payload) {
+        return MySQLColumns.decodeCanonicalPayload(payload)
+                .orElseThrow(() -> new IllegalArgumentException("Texture payload is not canonical base64: " + payload));
+    }
+
+    /**
+     * Copies a pre-v16 table into a table with the current schema in small batches and swaps it in.
+     * The old table stays readable until the atomic rename, so the copy never locks it for long.
+     * Rows that cannot be converted are copied into a {@code _rejected} table, and if any row did not make it
+     * into the new table the old one is kept as {@code _v15} instead of being dropped.
+     *
+     * @param textColumn a column the old schema stored as text and v16 does not
+     */
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private void migrateTableV16(Table table, String textColumn, List<String> columns, RowMapper<Object[]> converter) throws IOException {
+        String name = statements.table(table);
+        if (!isTextColumn(name, textColumn)) {
+            return;
+        }
+
+        logger.info("Migrating table " + name + " to compact v16 format...");
+        String newName = name + "_v16";
+        String oldName = name + "_v15";
+        String rejectedName = name + "_rejected";
+
+        // Leftover of an interrupted migration
+        mysql.execute("DROP TABLE IF EXISTS `" + newName + "`");
+        // Still with inline textures, v17 moves them into the textures table afterwards
+        mysql.execute(createTableStatement(table, newName, true));
+
+        String insert = "INSERT IGNORE INTO `" + newName + "` (`" + String.join("`, `", columns) + "`) VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        List<Object[]> rows = new ArrayList<>();
+        List<Object[]> rejectedRows = new ArrayList<>();
+        int[] counts = new int[2];
+        int collided;
+        try {
+            mysql.forEachRow("SELECT * FROM `" + name + "`", MIGRATION_FETCH_SIZE, crs -> {
+                Object[] row;
+                try {
+                    row = converter.map(crs);
+                } catch (IllegalArgumentException e) {
+                    logger.debug(e);
+                    row = null;
+                }
+
+                if (row == null) {
+                    rejectedRows.add(copyRow(crs));
+                    counts[1]++;
+                    if (rejectedRows.size() >= BATCH_CHUNK_SIZE) {
+                        insertRejectedRows(name, rejectedName, rejectedRows);
+                    }
+                    return;
+                }
+
+                rows.add(row);
+                counts[0]++;
+                if (rows.size() >= BATCH_CHUNK_SIZE) {
+                    mysql.executeBatch(Map.of(insert, rows));
+                    rows.clear();
+                }
+            });
+
+            if (!rows.isEmpty()) {
+                mysql.executeBatch(Map.of(insert, rows));
+            }
+            if (!rejectedRows.isEmpty()) {
+                insertRejectedRows(name, rejectedName, rejectedRows);
+            }
+
+            // INSERT IGNORE drops rows whose converted keys collide, they are missing from the count
+            int stored = mysql.queryFirst("SELECT COUNT(*) FROM `" + newName + "`", crs -> crs.getInt(1)).orElse(0);
+            collided = counts[0] - stored;
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+
+        try {
+            mysql.update("RENAME TABLE `" + name + "` TO `" + oldName + "`, `" + newName + "` TO `" + name + "`");
+        } catch (SQLException e) {
+            throw new IOException("Failed to swap in the migrated table " + name + ", it was left unchanged", e);
+        }
+
+        if (counts[1] > 0 || collided > 0) {
+            logger.warning(String.format("Skipped %d rows of %s with invalid data and %d rows with duplicate keys,"
+                    + " the old table was kept as %s and the invalid rows were copied to %s", counts[1], name, collided, oldName, rejectedName));
+        } else {
+            mysql.execute("DROP TABLE `" + oldName + "`");
+        }
+        logger.info(String.format("Migrated %d rows of %s!", counts[0] - collided, name));
+    }
+
+    private static Object[] copyRow(ResultSet crs) throws SQLException {
+        Object[] row = new Object[crs.getMetaData().getColumnCount()];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = crs.getObject(i + 1);
+        }
+
+        return row;
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private void insertRejectedRows(String name, String rejectedName, List<Object[]> rejectedRows) throws SQLException {
+        // Same columns as the old table, IGNORE skips rows already copied by an interrupted migration
+        mysql.update("CREATE TABLE IF NOT EXISTS `" + rejectedName + "` LIKE `" + name + "`");
+        String insert = "INSERT IGNORE INTO `" + rejectedName + "` VALUES ("
+                + String.join(", ", Collections.nCopies(rejectedRows.get(0).length, "?")) + ")";
+        mysql.executeBatch(Map.of(insert, rejectedRows));
+        rejectedRows.clear();
+    }
+
+    private void migrateV17() throws IOException {
+        boolean migrated = migrateTableV17(Table.PLAYER_SKINS, List.of("uuid", "last_known_name", "timestamp"));
+        migrated |= migrateTableV17(Table.URL_SKINS, List.of("url", "skin_variant", "mine_skin_id"));
+        migrated |= migrateTableV17(Table.CUSTOM_SKINS, List.of("name"));
+
+        if (migrated) {
+            // Counted once all references exist, which also corrects textures left behind by an interrupted migration
+            String textures = resolveTextureTable();
+            StringJoiner references = new StringJoiner(" + ");
+            for (Table table : List.of(Table.PLAYER_SKINS, Table.URL_SKINS, Table.CUSTOM_SKINS)) {
+                references.add("(SELECT COUNT(*) FROM `" + statements.table(table) + "` WHERE `texture_hash` = `" + textures + "`.`hash`)");
+            }
+            mysql.execute("UPDATE `" + textures + "` SET `ref_count` = " + references);
+            mysql.execute("DELETE FROM `" + textures + "` WHERE `ref_count` <= 0");
+        }
+    }
+
+    private void migrateLastAccess() {
+        // Existing rows keep 0, until a skin is used again its timestamp counts as its last access
+        if (!columnExists(resolvePlayerSkinTable(), "last_access")) {
+            mysql.execute("ALTER TABLE `" + resolvePlayerSkinTable() + "` ADD COLUMN `last_access` BIGINT(20) NOT NULL DEFAULT 0,"
+                    + " ADD INDEX `idx_last_access` (`last_access`)");
+        }
+    }
+
+    /**
+     * Copies a v16 table with inline textures into a table that references the textures table, and swaps it in.
+     * Identical textures are stored only once, their reference counts are set after all tables are copied.
+     *
+     * @param columns the columns to copy besides the texture
+     * @return whether the table was migrated
+     */
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private boolean migrateTableV17(Table table, List<String> columns) throws IOException {
+        String name = statements.table(table);
+        if (!columnExists(name, "value")) {
+            return false;
+        }
+
+        logger.info("Moving the textures of table " + name + " into the shared textures table...");
+        String newName = name + "_v17";
+        String oldName = name + "_v16";
+
+        // Leftover of an interrupted migration
+        mysql.execute("DROP TABLE IF EXISTS `" + newName + "`");
+        mysql.execute(createTableStatement(table, newName, false));
+
+        String insertTexture = "INSERT IGNORE INTO `" + resolveTextureTable() + "` (`hash`, `value`, `signature`, `ref_count`) VALUES (?, ?, ?, 0)";
+        String insertRow = "INSERT IGNORE INTO `" + newName + "` (`" + String.join("`, `", columns) + "`, `texture_hash`) VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size() + 1, "?")) + ")";
+        List<Object[]> textureRows = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        int[] migrated = new int[1];
+        try {
+            mysql.forEachRow("SELECT * FROM `" + name + "`", MIGRATION_FETCH_SIZE, crs -> {
+                byte[] value = crs.getBytes("value");
+                byte[] signature = crs.getBytes("signature");
+                byte[] textureHash = MySQLColumns.textureHash(value, signature);
+                textureRows.add(new Object[]{textureHash, value, signature});
+
+                Object[] row = new Object[columns.size() + 1];
+                for (int i = 0; i < columns.size(); i++) {
+                    row[i] = crs.getObject(columns.get(i));
+                }
+                row[columns.size()] = textureHash;
+                rows.add(row);
+
+                migrated[0]++;
+                if (rows.size() >= BATCH_CHUNK_SIZE) {
+                    insertTextureChunk(insertTexture, textureRows, insertRow, rows);
+                }
+            });
+
+            if (!rows.isEmpty()) {
+                insertTextureChunk(insertTexture, textureRows, insertRow, rows);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+
+        try {
+            mysql.update("RENAME TABLE `" + name + "` TO `" + oldName + "`, `" + newName + "` TO `" + name + "`");
+        } catch (SQLException e) {
+            throw new IOException("Failed to swap in the migrated table " + name + ", it was left unchanged", e);
+        }
+        mysql.execute("DROP TABLE `" + oldName + "`");
+
+        logger.info(String.format("Moved the textures of %d rows of %s!", migrated[0], name));
+        return true;
+    }
+
+    private void insertTextureChunk(String insertTexture, List<Object[]> textureRows, String insertRow, List<Object[]> rows) throws SQLException {
+        // LinkedHashMap keeps the textures ahead of the rows referencing them
+        Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+        batches.put(insertTexture, textureRows);
+        batches.put(insertRow, rows);
+        mysql.executeBatch(batches);
+
+        textureRows.clear();
+        rows.clear();
+    }
+
+    private static String createTableStatement(Table table, String name, boolean inlineTextures) {
+        // Before v17 every skin row held its own copy of the texture
+        String textureColumns = inlineTextures ?
+                "`value` BLOB NOT NULL,"
+                        + "`signature` VARBINARY(1024) NOT NULL," :
+                "`texture_hash` BINARY(32) NOT NULL,";
+        String textureIndex = inlineTextures ? "" : ",INDEX `idx_texture_hash` (`texture_hash`)";
+        String columns = switch (table) {
+            case CACHE -> "`name` VARCHAR(16) NOT NULL,"
+                    + "`uuid` BINARY(16),"
+                    + "`timestamp` BIGINT(20) NOT NULL,"
+                    + "PRIMARY KEY (`name`)";
+            case PLAYERS -> "`uuid` BINARY(16) NOT NULL,"
+                    + "`skin_identifier` VARCHAR(2083),"
+                    + "`skin_variant` TINYINT,"
+                    + "`skin_type` TINYINT,"
+                    + "PRIMARY KEY (`uuid`)";
+            case PLAYER_SKINS -> "`uuid` BINARY(16) NOT NULL,"
+                    + "`last_known_name` VARCHAR(16),"
+                    + textureColumns
+                    + "`timestamp` BIGINT(20) NOT NULL,"
+                    + "`last_access` BIGINT(20) NOT NULL DEFAULT 0,"
+                    + "`sample_id` BIGINT NOT NULL AUTO_INCREMENT," // Dense range for random sampling
+                    + "PRIMARY KEY (`uuid`),"
+                    + "UNIQUE INDEX `idx_sample_id` (`sample_id`),"
+                    + "INDEX `idx_last_known_name` (`last_known_name`),"
+                    + "INDEX `idx_timestamp` (`timestamp`),"
+                    + "INDEX `idx_last_access` (`last_access`)"
+                    + textureIndex;
+            case URL_SKINS -> "`url` VARCHAR(266) NOT NULL," // Max chatbox command length
+                    + "`skin_variant` TINYINT NOT NULL,"
+                    + "`mine_skin_id` VARCHAR(36),"
+                    + textureColumns
+                    + "PRIMARY KEY (`url`, `skin_variant`)"
+                    + textureIndex;
+            case URL_INDEX -> "`url` VARCHAR(266) NOT NULL," // Max chatbox command length
+                    + "`skin_variant` TINYINT NOT NULL,"
+                    + "PRIMARY KEY (`url`)";
+            case CUSTOM_SKINS -> "`name` VARCHAR(36) NOT NULL,"
+                    + textureColumns
+                    + "`sample_id` BIGINT NOT NULL AUTO_INCREMENT,"
+                    + "PRIMARY KEY (`name`),"
+                    + "UNIQUE INDEX `idx_sample_id` (`sample_id`)"
+                    + textureIndex;
+            case TEXTURES -> "`hash` BINARY(32) NOT NULL,"
+                    + "`value` BLOB NOT NULL,"
+                    + "`signature` VARBINARY(1024) NOT NULL,"
+                    + "`ref_count` INT NOT NULL,"
+                    + "PRIMARY KEY (`hash`),"
+                    + "INDEX `idx_ref_count` (`ref_count`)";
+            default -> throw new IllegalArgumentException("Table " + table + " is not part of the schema");
+        };
+
+        return "CREATE TABLE IF NOT EXISTS `" + name + "` (" + columns + ") ENGINE=InnoDB DEFAULT CHARSET=utf8";
+    }
+
+    private static UUID parseUUID(@Nullable String uuid) {
+        return uuid == null ? null : UUID.fromString(uuid);
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> enumClass, @Nullable String value) {
+        return value == null ? null : Enum.valueOf(enumClass, value);
+    }
+
     private void migrateLegacyPlayerTable() throws IOException {
         Optional<String> legacyPlayerTable = getLegacyPlayerTableFile();
         if (legacyPlayerTable.isEmpty()) {
@@ -129,14 +469,13 @@ public class MySQLAdapter implements StorageAdapter {
                 + "`skin_name` varchar(19) NOT NULL,"
                 + "PRIMARY KEY (`name`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
 
-        try (ResultSet crs = mysql.query("SELECT * FROM " + legacyPlayerTable.get())) {
-            while (crs.next()) {
+        try {
+            mysql.forEachRow("SELECT * FROM " + legacyPlayerTable.get(), MIGRATION_FETCH_SIZE, crs -> {
                 String name = crs.getString("Nick");
                 String skin = crs.getString("Skin");
 
-                mysql.execute("INSERT INTO " + resolveLegacyPlayerTable() + " (name, skin_name) VALUES (?, ?)",
-                        name, skin);
-            }
+                mysql.execute(statements.get(Operation.INSERT_LEGACY_PLAYER), name, skin);
+            });
         } catch (SQLException e) {
             logger.severe("Failed to migrate legacy player table", e);
         }
@@ -166,8 +505,8 @@ public class MySQLAdapter implements StorageAdapter {
                 + "`signature` text NOT NULL,"
                 + "PRIMARY KEY (`name`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
 
-        try (ResultSet crs = mysql.query("SELECT * FROM " + legacySkinTable.get())) {
-            while (crs.next()) {
+        try {
+            mysql.forEachRow("SELECT * FROM " + legacySkinTable.get(), MIGRATION_FETCH_SIZE, crs -> {
                 String name = crs.getString("Nick");
                 String value = crs.getString("Value");
                 String signature = crs.getString("Signature");
@@ -177,10 +516,9 @@ public class MySQLAdapter implements StorageAdapter {
                 if (timestampString == null || isLegacyCustomSkinTimestamp(Long.parseLong(timestampString))) {
                     setCustomSkinData(name, CustomSkinData.of(name, SkinProperty.of(value, signature)));
                 } else {
-                    mysql.execute("INSERT INTO " + resolveLegacySkinTable() + " (name, value, signature) VALUES (?, ?, ?)",
-                            name, value, signature);
+                    mysql.execute(statements.get(Operation.INSERT_LEGACY_SKIN), name, value, signature);
                 }
-            }
+            });
         } catch (SQLException e) {
             throw new IOException(e);
         }
@@ -191,9 +529,62 @@ public class MySQLAdapter implements StorageAdapter {
         logger.info("Skin migration complete!");
     }
 
+    private void migrateLegacyPlayersInBulk() throws IOException {
+        if (!tableExists(resolveLegacyPlayerTable())) {
+            return;
+        }
+
+        int migrated = 0;
+        String lastName = "";
+        try {
+            while (true) {
+                List<LegacyPlayerData> chunk = mysql.query("SELECT * FROM `" + resolveLegacyPlayerTable() + "` WHERE `name` > ? ORDER BY `name` LIMIT " + BATCH_CHUNK_SIZE,
+                        crs -> LegacyPlayerData.of(crs.getString("name"), crs.getString("skin_name")), lastName);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                lastName = chunk.get(chunk.size() - 1).getPlayerName();
+
+                Set<String> migratedNames = migrateLegacyPlayers(chunk);
+                if (!migratedNames.isEmpty()) {
+                    mysql.executeBatch(Map.of(statements.get(Operation.DELETE_LEGACY_PLAYER), migratedNames.stream()
+                            .map(name -> new Object[]{name})
+                            .toList()));
+                    migrated += migratedNames.size();
+                }
+            }
+        } catch (SQLException | StorageException e) {
+            throw new IOException(e);
+        }
+
+        if (migrated > 0) {
+            logger.info(String.format("Migrated %d legacy players with a known UUID, the others are migrated on their next login", migrated));
+        }
+    }
+
+    private boolean hasLegacyRows(String table) {
+        if (!tableExists(table)) {
+            return false;
+        }
+
+        try {
+            if (mysql.queryFirst("SELECT 1 FROM `" + table + "` LIMIT 1", crs -> true).isPresent()) {
+                return true;
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to check legacy table " + table, e);
+            return true;
+        }
+
+        // Nothing left to migrate, dropping the table keeps later startups from looking again
+        mysql.execute("DROP TABLE `" + table + "`");
+        return false;
+    }
+
     private boolean tableExists(String table) {
-        try (ResultSet rs = mysql.query("SHOW TABLES LIKE '" + table + "'")) {
-            return rs.next();
+        try {
+            return mysql.queryFirst("SHOW TABLES LIKE '" + table + "'", crs -> true).isPresent();
         } catch (SQLException e) {
             logger.severe("Failed to check if table exists", e);
             return false;
@@ -201,104 +592,316 @@ public class MySQLAdapter implements StorageAdapter {
     }
 
     private boolean columnExists(String table, String column) {
-        try (ResultSet rs = mysql.query("SHOW COLUMNS FROM `" + table + "` LIKE '" + column + "'")) {
-            return rs.next();
+        try {
+            return mysql.queryFirst("SHOW COLUMNS FROM `" + table + "` LIKE '" + column + "'", crs -> true).isPresent();
         } catch (SQLException e) {
             logger.severe("Failed to check if column exists", e);
             return false;
         }
     }
 
+    private boolean isTextColumn(String table, String column) {
+        try {
+            return mysql.queryFirst("SHOW COLUMNS FROM `" + table + "` LIKE '" + column + "'", crs -> {
+                String type = crs.getString("Type").toLowerCase(Locale.ROOT);
+                return type.startsWith("varchar") || type.endsWith("text");
+            }).orElse(false);
+        } catch (SQLException e) {
+            logger.severe("Failed to check column type", e);
+            return false;
+        }
+    }
+
     @Override
     public Optional<PlayerData> getPlayerData(UUID uuid) throws StorageException {
-        try (ResultSet crs = mysql.query("SELECT * FROM " + resolvePlayerTable() + " WHERE uuid=?", uuid.toString())) {
-            if (!crs.next()) {
-                return Optional.empty();
-            }
+        Optional<PlayerData> pendingData = writeQueue.getPending(resolvePlayerTable(), uuid, PlayerData.class);
+        if (pendingData.isPresent()) {
+            return pendingData;
+        }
 
-            String skinIdentifier = crs.getString("skin_identifier");
-            String skinType = crs.getString("skin_type");
-            String skinVariant = crs.getString("skin_variant");
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_PLAYER), MySQLAdapter::mapPlayerData, MySQLColumns.toBinary(uuid));
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
 
-            SkinIdentifier identifier = skinIdentifier != null && skinType != null ?
-                    SkinIdentifier.of(skinIdentifier,
-                            skinVariant == null ? null : SkinVariant.valueOf(skinVariant), SkinType.valueOf(skinType)) : null;
+    @Override
+    public Map<UUID, PlayerData> getPlayerDataBatch(Collection<UUID> uuids) throws StorageException {
+        Map<UUID, PlayerData> result = new HashMap<>();
+        List<byte[]> missing = new ArrayList<>();
+        for (UUID uuid : new LinkedHashSet<>(uuids)) {
+            Optional<PlayerData> pendingData = writeQueue.getPending(resolvePlayerTable(), uuid, PlayerData.class);
+            if (pendingData.isPresent()) {
+                result.put(uuid, pendingData.get());
+            } else {
+                missing.add(MySQLColumns.toBinary(uuid));
+            }
+        }
 
-            return Optional.of(PlayerData.of(uuid, identifier));
+        try {
+            for (List<byte[]> chunk : partition(missing)) {
+                mysql.forEachRow(statements.get(Operation.SELECT_PLAYERS, chunk.size()), 0, crs -> {
+                    PlayerData data = mapPlayerData(crs);
+                    result.put(data.getUniqueId(), data);
+                }, chunk.toArray());
+            }
         } catch (SQLException e) {
             throw new StorageException(e);
         }
+
+        return result;
     }
 
     @Override
     public void setPlayerData(UUID uuid, PlayerData data) {
+        write(resolvePlayerTable(), uuid, PlayerData.of(uuid, data.getSkinIdentifier()),
+                statements.get(Operation.UPSERT_PLAYER),
+                playerDataParameters(uuid, data));
+    }
+
+    @Override
+    public void setPlayerDataBatch(Map<UUID, PlayerData> data) {
+        if (writeQueue.isEnabled()) {
+            // The queue already coalesces and batches on its own
+            StorageAdapter.super.setPlayerDataBatch(data);
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(data.size());
+        for (Map.Entry<UUID, PlayerData> entry : data.entrySet()) {
+            rows.add(playerDataParameters(entry.getKey(), entry.getValue()));
+        }
+
+        try {
+            mysql.executeBatch(Map.of(statements.get(Operation.UPSERT_PLAYER), rows));
+        } catch (SQLException e) {
+            logger.warning("Failed to save player data of " + data.size() + " players", e);
+        }
+    }
+
+    private static Object[] playerDataParameters(UUID uuid, PlayerData data) {
         boolean hasSkin = data.getSkinIdentifier() != null;
         SkinIdentifier identifier = data.getSkinIdentifier();
         String skinIdentifierString = hasSkin ? identifier.getIdentifier() : null;
-        String skinType = hasSkin ? identifier.getSkinType().name() : null;
+        Integer skinType = hasSkin ? MySQLColumns.toCode(identifier.getSkinType()) : null;
 
         // Variant is only present on url skins
-        String skinVariant = hasSkin && identifier.getSkinVariant() != null ? identifier.getSkinVariant().name() : null;
-        mysql.execute("INSERT INTO " + resolvePlayerTable() + " (uuid, skin_identifier, skin_type, skin_variant) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE skin_identifier=?, skin_type=?, skin_variant=?",
-                uuid.toString(),
+        Integer skinVariant = hasSkin ? MySQLColumns.toCode(identifier.getSkinVariant()) : null;
+        return new Object[]{
+                MySQLColumns.toBinary(uuid),
                 skinIdentifierString,
                 skinType,
                 skinVariant,
                 skinIdentifierString,
                 skinType,
-                skinVariant);
+                skinVariant
+        };
+    }
+
+    private static PlayerData mapPlayerData(ResultSet crs) throws SQLException {
+        UUID uuid = MySQLColumns.toUUID(crs.getBytes("uuid"));
+        String skinIdentifier = crs.getString("skin_identifier");
+        SkinType skinType = MySQLColumns.readSkinType(crs, "skin_type");
+        SkinVariant skinVariant = MySQLColumns.readSkinVariant(crs, "skin_variant");
+
+        SkinIdentifier identifier = skinIdentifier != null && skinType != null ?
+                SkinIdentifier.of(skinIdentifier, skinVariant, skinType) : null;
+
+        return PlayerData.of(uuid, identifier);
     }
 
     @Override
     public Optional<PlayerSkinData> getPlayerSkinData(UUID uuid) throws StorageException {
-        try (ResultSet crs = mysql.query("SELECT * FROM " + resolvePlayerSkinTable() + " WHERE uuid=?", uuid.toString())) {
-            if (!crs.next()) {
-                return Optional.empty();
-            }
+        Optional<PlayerSkinData> pendingData = writeQueue.getPending(resolvePlayerSkinTable(), uuid, PlayerSkinData.class);
+        if (pendingData.isPresent()) {
+            return pendingData;
+        }
+
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_PLAYER_SKIN), MySQLAdapter::mapPlayerSkinData, MySQLColumns.toBinary(uuid));
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
 
-            String lastKnownName = crs.getString("last_known_name");
-            String value = crs.getString("value");
-            String signature = crs.getString("signature");
-            long timestamp = crs.getLong("timestamp");
+    @Override
+    public Map<UUID, PlayerSkinData> getPlayerSkinDataBatch(Collection<UUID> uuids) throws StorageException {
+        Map<UUID, PlayerSkinData> result = new HashMap<>();
+        List<byte[]> missing = new ArrayList<>();
+        for (UUID uuid : new LinkedHashSet<>(uuids)) {
+            Optional<PlayerSkinData> pendingData = writeQueue.getPending(resolvePlayerSkinTable(), uuid, PlayerSkinData.class);
+            if (pendingData.isPresent()) {
+                result.put(uuid, pendingData.get());
+            } else {
+                missing.add(MySQLColumns.toBinary(uuid));
+            }
+        }
 
-            return Optional.of(PlayerSkinData.of(uuid, lastKnownName, SkinProperty.of(value, signature), timestamp));
+        try {
+            for (List<byte[]> chunk : partition(missing)) {
+                mysql.forEachRow(statements.get(Operation.SELECT_PLAYER_SKINS, chunk.size()), 0, crs -> {
+                    PlayerSkinData data = mapPlayerSkinData(crs);
+                    result.put(data.getUniqueId(), data);
+                }, chunk.toArray());
+            }
         } catch (SQLException e) {
             throw new StorageException(e);
         }
+
+        return result;
+    }
+
+    private static PlayerSkinData mapPlayerSkinData(ResultSet crs) throws SQLException {
+        UUID uuid = MySQLColumns.toUUID(crs.getBytes("uuid"));
+        String lastKnownName = crs.getString("last_known_name");
+        String value = MySQLColumns.encodePayload(crs.getBytes("value"));
+        String signature = MySQLColumns.encodePayload(crs.getBytes("signature"));
+        long timestamp = crs.getLong("timestamp");
+
+        return PlayerSkinData.of(uuid, lastKnownName, SkinProperty.of(value, signature), timestamp);
     }
 
     @Override
     public void removePlayerSkinData(UUID uuid) {
-        mysql.execute("DELETE FROM " + resolvePlayerSkinTable() + " WHERE uuid=?", uuid.toString());
+        writeQueue.discard(resolvePlayerSkinTable(), uuid);
+        deleteSkin("player skin data for " + uuid, Operation.LOCK_PLAYER_SKIN_TEXTURE, Operation.DELETE_PLAYER_SKIN,
+                MySQLColumns.toBinary(uuid));
     }
 
+    /**
+     * Player skins go through the write queue, the texture reference is moved inside the transaction of the flush.
+     */
     @Override
     public void setPlayerSkinData(UUID uuid, PlayerSkinData skinData) {
-        mysql.execute("INSERT INTO " + resolvePlayerSkinTable() + " (uuid, last_known_name, value, signature, timestamp) VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE last_known_name=?, value=?, signature=?, timestamp=?",
-                uuid.toString(),
-                skinData.getLastKnownName(),
-                skinData.getProperty().getValue(),
-                skinData.getProperty().getSignature(),
-                skinData.getTimestamp(),
-                skinData.getLastKnownName(),
-                skinData.getProperty().getValue(),
-                skinData.getProperty().getSignature(),
-                skinData.getTimestamp());
+        String description = "player skin data for " + uuid;
+        byte[] binaryUUID = MySQLColumns.toBinary(uuid);
+        Optional<MySQLProvider.TransactionCallback<Void>> write = skinWrite(description, Operation.LOCK_PLAYER_SKIN_TEXTURE, new Object[]{binaryUUID},
+                skinData.getProperty(), Operation.UPDATE_PLAYER_SKIN, Operation.INSERT_PLAYER_SKIN, textureHash -> new Object[]{
+                        skinData.getLastKnownName(),
+                        textureHash,
+                        skinData.getTimestamp(),
+                        binaryUUID
+                });
+        if (write.isEmpty()) {
+            return;
+        }
+
+        if (writeQueue.isEnabled()) {
+            writeQueue.enqueue(resolvePlayerSkinTable(), uuid, PlayerSkinData.of(uuid, skinData.getLastKnownName(),
+                    skinData.getProperty(), skinData.getTimestamp()), write.get());
+        } else {
+            runSkinWrite(description, write.get());
+        }
     }
 
-    @Override
-    public Optional<URLSkinData> getURLSkinData(String url, SkinVariant skinVariant) throws StorageException {
-        try (ResultSet crs = mysql.query("SELECT * FROM " + resolveURLSkinTable() + " WHERE url=? AND skin_variant=?", url, skinVariant.name())) {
-            if (!crs.next()) {
-                return Optional.empty();
+    /**
+     * Saves a skin row and moves its reference from the old to the new texture in one transaction.
+     */
+    private void saveSkin(String description, Operation lockTexture, Object[] key, SkinProperty property,
+                          Operation update, Operation insert, Function<byte[], Object[]> parameters) {
+        skinWrite(description, lockTexture, key, property, update, insert, parameters)
+                .ifPresent(write -> runSkinWrite(description, write));
+    }
+
+    private void runSkinWrite(String description, MySQLProvider.TransactionCallback<Void> write) {
+        try {
+            mysql.transaction(write);
+        } catch (SQLException e) {
+            logger.warning("Failed to save " + description, e);
+        }
+    }
+
+    /**
+     * Builds the statements that save a skin row and move its reference from the old to the new texture.
+     *
+     * @param lockTexture Selects the texture hash of the stored row and locks the row
+     * @param update      Updates the stored row, with the key columns last
+     * @param insert      Inserts a new row, taking the same parameters as the update
+     * @param parameters  Parameters of the update or insert for the new texture hash
+     * @return Nothing if the skin can not be stored
+     */
+    private Optional<MySQLProvider.TransactionCallback<Void>> skinWrite(String description, Operation lockTexture, Object[] key, SkinProperty property,
+                                                                      Operation update, Operation insert, Function<byte[], Object[]> parameters) {
+        Optional<byte[]> decodedValue = MySQLColumns.decodeCanonicalPayload(property.getValue());
+        Optional<byte[]> decodedSignature = MySQLColumns.decodeCanonicalPayload(property.getSignature());
+        if (decodedValue.isEmpty() || decodedSignature.isEmpty()) {
+            // Binary columns can not tell text apart from decoded bytes, and re-encoding would break the signature
+            logger.warning("Not saving " + description + ", its texture value or signature is not canonical base64");
+            return Optional.empty();
+        }
+
+        byte[] value = decodedValue.get();
+        byte[] signature = decodedSignature.get();
+        byte[] textureHash = MySQLColumns.textureHash(value, signature);
+        return Optional.of(transaction -> {
+            byte[] oldTextureHash = transaction.queryFirst(statements.get(lockTexture), crs -> crs.getBytes("texture_hash"), key).orElse(null);
+            boolean sameTexture = Arrays.equals(textureHash, oldTextureHash);
+
+            if (!sameTexture) {
+                transaction.update(statements.get(Operation.ACQUIRE_TEXTURE), textureHash, value, signature);
+            }
+
+            // The locked row decides, an upsert would use up a sample id on every update
+            transaction.update(statements.get(oldTextureHash != null ? update : insert), parameters.apply(textureHash));
+
+            if (oldTextureHash != null && !sameTexture) {
+                releaseTextures(transaction, List.of(oldTextureHash));
             }
+            return null;
+        });
+    }
+
+    /**
+     * Deletes a skin row and releases its texture in one transaction.
+     *
+     * @param lockTexture Selects the texture hash of the stored row and locks the row
+     */
+    private void deleteSkin(String description, Operation lockTexture, Operation delete, Object... key) {
+        try {
+            mysql.transaction(transaction -> {
+                Optional<byte[]> textureHash = transaction.queryFirst(statements.get(lockTexture), crs -> crs.getBytes("texture_hash"), key);
+                if (textureHash.isPresent() && transaction.update(statements.get(delete), key) > 0) {
+                    releaseTextures(transaction, List.of(textureHash.get()));
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            logger.warning("Failed to remove " + description, e);
+        }
+    }
+
+    /**
+     * Drops one reference per hash and deletes the textures nothing references anymore.
+     */
+    private void releaseTextures(MySQLProvider.Transaction transaction, List<byte[]> textureHashes) throws SQLException {
+        // Sorted, so concurrent transactions lock the texture rows in the same order
+        Map<ByteBuffer, Integer> references = new TreeMap<>();
+        for (byte[] textureHash : textureHashes) {
+            references.merge(ByteBuffer.wrap(textureHash), 1, Integer::sum);
+        }
 
-            String mineSkinId = crs.getString("mine_skin_id");
-            String value = crs.getString("value");
-            String signature = crs.getString("signature");
-            SkinVariant variant = SkinVariant.valueOf(crs.getString("skin_variant"));
+        List<Object[]> releases = new ArrayList<>(references.size());
+        List<Object[]> deletions = new ArrayList<>(references.size());
+        for (Map.Entry<ByteBuffer, Integer> entry : references.entrySet()) {
+            releases.add(new Object[]{entry.getValue(), entry.getKey().array()});
+            deletions.add(new Object[]{entry.getKey().array()});
+        }
+
+        transaction.executeBatch(statements.get(Operation.RELEASE_TEXTURE), releases);
+        transaction.executeBatch(statements.get(Operation.DELETE_UNUSED_TEXTURE), deletions);
+    }
+
+    @Override
+    public Optional<URLSkinData> getURLSkinData(String url, SkinVariant skinVariant) throws StorageException {
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_URL_SKIN), crs -> {
+                String mineSkinId = crs.getString("mine_skin_id");
+                String value = MySQLColumns.encodePayload(crs.getBytes("value"));
+                String signature = MySQLColumns.encodePayload(crs.getBytes("signature"));
 
-            return Optional.of(URLSkinData.of(url, mineSkinId, SkinProperty.of(value, signature), variant));
+                return URLSkinData.of(url, mineSkinId, SkinProperty.of(value, signature), skinVariant);
+            }, url, MySQLColumns.toCode(skinVariant));
         } catch (SQLException e) {
             throw new StorageException(e);
         }
@@ -306,33 +909,30 @@ public class MySQLAdapter implements StorageAdapter {
 
     @Override
     public void removeURLSkinData(String url, SkinVariant skinVariant) {
-        mysql.execute("DELETE FROM " + resolveURLSkinTable() + " WHERE url=? AND skin_variant=?", url, skinVariant.name());
+        deleteSkin("URL skin data for " + url, Operation.LOCK_URL_SKIN_TEXTURE, Operation.DELETE_URL_SKIN,
+                url, MySQLColumns.toCode(skinVariant));
     }
 
     @Override
     public void setURLSkinData(String url, URLSkinData skinData) {
-        mysql.execute("INSERT INTO " + resolveURLSkinTable() + " (url, mine_skin_id, value, signature, skin_variant) VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE mine_skin_id=?, value=?, signature=?, skin_variant=?",
-                url,
-                skinData.getMineSkinId(),
-                skinData.getProperty().getValue(),
-                skinData.getProperty().getSignature(),
-                skinData.getSkinVariant().name(),
-                skinData.getMineSkinId(),
-                skinData.getProperty().getValue(),
-                skinData.getProperty().getSignature(),
-                skinData.getSkinVariant().name());
+        Integer skinVariant = MySQLColumns.toCode(skinData.getSkinVariant());
+        saveSkin("URL skin data for " + url, Operation.LOCK_URL_SKIN_TEXTURE, new Object[]{url, skinVariant},
+                skinData.getProperty(), Operation.UPDATE_URL_SKIN, Operation.INSERT_URL_SKIN, textureHash -> new Object[]{
+                        skinData.getMineSkinId(),
+                        textureHash,
+                        url,
+                        skinVariant
+                });
     }
 
     @Override
     public Optional<URLIndexData> getURLSkinIndex(String url) throws StorageException {
-        try (ResultSet crs = mysql.query("SELECT * FROM " + resolveURLSkinIndexTable() + " WHERE url=?", url)) {
-            if (!crs.next()) {
-                return Optional.empty();
-            }
-
-            SkinVariant variant = SkinVariant.valueOf(crs.getString("skin_variant"));
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_URL_INDEX), crs -> {
+                SkinVariant variant = MySQLColumns.readSkinVariant(crs, "skin_variant");
 
-            return Optional.of(URLIndexData.of(url, variant));
+                return URLIndexData.of(url, variant);
+            }, url);
         } catch (SQLException e) {
             throw new StorageException(e);
         }
@@ -340,29 +940,27 @@ public class MySQLAdapter implements StorageAdapter {
 
     @Override
     public void removeURLSkinIndex(String url) {
-        mysql.execute("DELETE FROM " + resolveURLSkinIndexTable() + " WHERE url=?", url);
+        mysql.execute(statements.get(Operation.DELETE_URL_INDEX), url);
     }
 
     @Override
     public void setURLSkinIndex(String url, URLIndexData skinData) {
-        mysql.execute("INSERT INTO " + resolveURLSkinIndexTable() + " (url, skin_variant) VALUES (?, ?) ON DUPLICATE KEY UPDATE skin_variant=?",
+        mysql.execute(statements.get(Operation.UPSERT_URL_INDEX),
                 url,
-                skinData.getSkinVariant().name(),
-                skinData.getSkinVariant().name());
+                MySQLColumns.toCode(skinData.getSkinVariant()),
+                MySQLColumns.toCode(skinData.getSkinVariant()));
     }
 
     @Override
     public Optional<CustomSkinData> getCustomSkinData(String skinName) throws StorageException {
-        skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
-        try (ResultSet crs = mysql.query("SELECT * FROM " + resolveCustomSkinTable() + " WHERE name=?", skinName)) {
-            if (!crs.next()) {
-                return Optional.empty();
-            }
-
-            String value = crs.getString("value");
-            String signature = crs.getString("signature");
+        String sanitizedName = CustomSkinData.sanitizeCustomSkinName(skinName);
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_CUSTOM_SKIN), crs -> {
+                String value = MySQLColumns.encodePayload(crs.getBytes("value"));
+                String signature = MySQLColumns.encodePayload(crs.getBytes("signature"));
 
-            return Optional.of(CustomSkinData.of(skinName, SkinProperty.of(value, signature)));
+                return CustomSkinData.of(sanitizedName, SkinProperty.of(value, signature));
+            }, sanitizedName);
         } catch (SQLException e) {
             throw new StorageException(e);
         }
@@ -371,180 +969,481 @@ public class MySQLAdapter implements StorageAdapter {
     @Override
     public void removeCustomSkinData(String skinName) {
         skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
-        mysql.execute("DELETE FROM " + resolveCustomSkinTable() + " WHERE name=?", skinName);
+        deleteSkin("custom skin data for " + skinName, Operation.LOCK_CUSTOM_SKIN_TEXTURE, Operation.DELETE_CUSTOM_SKIN, skinName);
     }
 
     @Override
     public void setCustomSkinData(String skinName, CustomSkinData skinData) {
-        skinName = CustomSkinData.sanitizeCustomSkinName(skinName);
-        mysql.execute("INSERT INTO " + resolveCustomSkinTable() + " (name, value, signature) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE value=?, signature=?",
-                skinName,
-                skinData.getProperty().getValue(),
-                skinData.getProperty().getSignature(),
-                skinData.getProperty().getValue(),
-                skinData.getProperty().getSignature());
+        String sanitizedName = CustomSkinData.sanitizeCustomSkinName(skinName);
+        saveSkin("custom skin data for " + sanitizedName, Operation.LOCK_CUSTOM_SKIN_TEXTURE, new Object[]{sanitizedName},
+                skinData.getProperty(), Operation.UPDATE_CUSTOM_SKIN, Operation.INSERT_CUSTOM_SKIN, textureHash -> new Object[]{
+                        textureHash,
+                        sanitizedName
+                });
     }
 
     @Override
     public Optional<LegacySkinData> getLegacySkinData(String skinName) throws StorageException {
-        if (tableExists(resolveLegacySkinTable())) {
-            try (ResultSet crs = mysql.query("SELECT * FROM " + resolveLegacySkinTable() + " WHERE name=?", skinName)) {
-                if (!crs.next()) {
-                    return Optional.empty();
-                }
+        if (!legacySkinsPresent) {
+            return Optional.empty();
+        }
 
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_LEGACY_SKIN), crs -> {
                 String value = crs.getString("value");
                 String signature = crs.getString("signature");
 
-                return Optional.of(LegacySkinData.of(skinName, SkinProperty.of(value, signature)));
-            } catch (SQLException e) {
-                throw new StorageException(e);
+                return LegacySkinData.of(skinName, SkinProperty.of(value, signature));
+            }, skinName);
+        } catch (SQLException e) {
+            if (e.getErrorCode() == TABLE_NOT_FOUND_ERROR) {
+                // Another server finished the migration and dropped the table
+                legacySkinsPresent = false;
+                return Optional.empty();
             }
-        } else {
-            return Optional.empty();
+
+            throw new StorageException(e);
         }
     }
 
     @Override
     public void removeLegacySkinData(String skinName) {
-        if (tableExists(resolveLegacySkinTable())) {
-            mysql.execute("DELETE FROM " + resolveLegacySkinTable() + " WHERE name=?", skinName);
+        if (legacySkinsPresent) {
+            mysql.execute(statements.get(Operation.DELETE_LEGACY_SKIN), skinName);
         }
     }
 
     @Override
     public Optional<LegacyPlayerData> getLegacyPlayerData(String playerName) throws StorageException {
-        if (tableExists(resolveLegacyPlayerTable())) {
-            try (ResultSet crs = mysql.query("SELECT * FROM " + resolveLegacyPlayerTable() + " WHERE name=?", playerName)) {
-                if (!crs.next()) {
-                    return Optional.empty();
-                }
+        if (!legacyPlayersPresent) {
+            return Optional.empty();
+        }
 
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_LEGACY_PLAYER), crs -> {
                 String skinName = crs.getString("skin_name");
 
-                return Optional.of(LegacyPlayerData.of(playerName, skinName));
-            } catch (SQLException e) {
-                throw new StorageException(e);
+                return LegacyPlayerData.of(playerName, skinName);
+            }, playerName);
+        } catch (SQLException e) {
+            if (e.getErrorCode() == TABLE_NOT_FOUND_ERROR) {
+                legacyPlayersPresent = false;
+                return Optional.empty();
             }
-        } else {
-            return Optional.empty();
+
+            throw new StorageException(e);
         }
     }
 
     @Override
     public void removeLegacyPlayerData(String playerName) {
-        if (tableExists(resolveLegacyPlayerTable())) {
-            mysql.execute("DELETE FROM " + resolveLegacyPlayerTable() + " WHERE name=?", playerName);
+        if (legacyPlayersPresent) {
+            mysql.execute(statements.get(Operation.DELETE_LEGACY_PLAYER), playerName);
         }
     }
 
     @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
     @Override
     public Map<String, String> getStoredRandomSkins(int limit) {
-        StringBuilder query = new StringBuilder("SELECT * FROM (");
-        query.append("SELECT 'player' as type, `last_known_name` as name, `value`, `signature`")
-                .append(" FROM ")
-                .append(resolvePlayerSkinTable());
-
+        List<SampleRange> ranges = new ArrayList<>();
+        getSampleRange(resolvePlayerSkinTable(), "last_known_name").ifPresent(ranges::add);
         if (settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)) {
-            query.append(" UNION ALL ");
+            getSampleRange(resolveCustomSkinTable(), "name").ifPresent(ranges::add);
+        }
 
-            query.append("SELECT 'custom' as type, `name`, `value`, `signature`")
-                    .append(" FROM ")
-                    .append(resolveCustomSkinTable());
+        Map<String, String> skins = new LinkedHashMap<>();
+        long totalSize = ranges.stream().mapToLong(SampleRange::size).sum();
+        if (totalSize == 0 || limit <= 0) {
+            return skins;
+        }
 
+        // Small tables are cheaper to read whole than to probe repeatedly
+        if (countSampleRows(ranges, limit) <= limit) {
+            for (SampleRange range : ranges) {
+                querySkins("SELECT `" + range.nameColumn() + "` AS name, `value` FROM " + joinTextures(range.table())
+                        + " WHERE `" + range.nameColumn() + "` IS NOT NULL", skins);
+            }
+
+            return skins;
         }
 
-        query.append(") AS skins ORDER BY RAND() LIMIT ").append(limit);
+        // Rejection sampling: a probe draws an id from the combined id ranges and only hits the row with exactly that id,
+        // so every row is equally likely however sparse the ids are. Missed probes are drawn again in the next round.
+        long probes = 0;
+        long hits = 0;
+        for (int attempt = 0; attempt < RANDOM_SAMPLE_ATTEMPTS && skins.size() < limit; attempt++) {
+            int missing = limit - skins.size();
+            double hitRate = probes == 0 ? 0.5 : Math.max((double) hits / probes, 1.0 / MAX_SAMPLE_PROBES);
+            int roundProbes = (int) Math.min(MAX_SAMPLE_PROBES, Math.ceil(2 * missing / hitRate));
+
+            Map<SampleRange, Set<Long>> picks = new LinkedHashMap<>();
+            for (int i = 0; i < roundProbes; i++) {
+                long pick = ThreadLocalRandom.current().nextLong(totalSize);
+                for (SampleRange range : ranges) {
+                    if (pick < range.size()) {
+                        picks.computeIfAbsent(range, k -> new HashSet<>()).add(range.minId() + pick);
+                        break;
+                    }
 
-        Map<String, String> skins = new LinkedHashMap<>();
-        try (ResultSet crs = mysql.query(query.toString())) {
-            while (crs.next()) {
-                String name = crs.getString("name");
-                String value = crs.getString("value");
-                String signature = crs.getString("signature");
+                    pick -= range.size();
+                }
+            }
+
+            List<Map.Entry<String, String>> roundHits = new ArrayList<>();
+            for (Map.Entry<SampleRange, Set<Long>> entry : picks.entrySet()) {
+                SampleRange range = entry.getKey();
+                for (List<Long> chunk : partition(new ArrayList<>(entry.getValue()))) {
+                    // Exact matches on the unique sample id index
+                    querySampleHits("SELECT `" + range.nameColumn() + "` AS name, `value` FROM " + joinTextures(range.table())
+                            + " WHERE `sample_id` IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")"
+                            + " AND `" + range.nameColumn() + "` IS NOT NULL", roundHits, chunk.toArray());
+                }
+            }
+
+            probes += roundProbes;
+            hits += roundHits.size();
 
-                skins.put(name, SkinProperty.of(value, signature).getValue());
+            // The rows come back in id order, shuffling keeps a round with more hits than needed from favouring low ids
+            Collections.shuffle(roundHits);
+            for (Map.Entry<String, String> hit : roundHits) {
+                if (skins.size() >= limit) {
+                    break;
+                }
+
+                skins.putIfAbsent(hit.getKey(), hit.getValue());
             }
+        }
+
+        return skins;
+    }
+
+    /**
+     * Counts the rows that can be sampled, but stops counting once there are more than the limit.
+     */
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private long countSampleRows(List<SampleRange> ranges, int limit) {
+        long count = 0;
+        for (SampleRange range : ranges) {
+            try {
+                count += mysql.queryFirst("SELECT COUNT(*) AS count FROM (SELECT 1 FROM `" + range.table() + "`"
+                        + " WHERE `" + range.nameColumn() + "` IS NOT NULL LIMIT " + (limit + 1) + ") AS sample_rows", crs -> crs.getLong("count")).orElse(0L);
+            } catch (SQLException e) {
+                logger.warning("Failed to count the rows of " + range.table(), e);
+                return Long.MAX_VALUE;
+            }
+        }
+
+        return count;
+    }
+
+    private Optional<SampleRange> getSampleRange(String table, String nameColumn) {
+        try {
+            // MIN/MAX on an indexed column are answered from the index without reading any rows
+            return mysql.queryFirst("SELECT MIN(`sample_id`) AS min_id, MAX(`sample_id`) AS max_id FROM `" + table + "`", crs -> {
+                long minId = crs.getLong("min_id");
+                if (crs.wasNull()) {
+                    return null;
+                }
+
+                return new SampleRange(table, nameColumn, minId, crs.getLong("max_id"));
+            });
+        } catch (SQLException e) {
+            logger.warning("Failed to get sample range of " + table, e);
+            return Optional.empty();
+        }
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private void querySampleHits(String query, List<Map.Entry<String, String>> hits, Object... vars) {
+        try {
+            mysql.forEachRow(query, 0, crs -> hits.add(Map.entry(crs.getString("name"), MySQLColumns.encodePayload(crs.getBytes("value")))), vars);
+        } catch (SQLException e) {
+            logger.warning("Failed to get stored skins", e);
+        }
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private void querySkins(String query, Map<String, String> skins, Object... vars) {
+        try {
+            mysql.forEachRow(query, 0, crs -> skins.putIfAbsent(crs.getString("name"), MySQLColumns.encodePayload(crs.getBytes("value"))), vars);
         } catch (SQLException e) {
             logger.warning("Failed to get stored skins", e);
         }
-        return skins;
     }
 
     @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
     @Override
-    public Map<String, String> getStoredGUISkins(int offset) {
+    public GUISkinPage getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor) {
+        // Without a cursor, only the first page can be read by key
+        boolean keyset = cursor != null || offset == 0;
+        int branchLimit = keyset ? SharedGUI.HEAD_COUNT_PER_PAGE : offset + SharedGUI.HEAD_COUNT_PER_PAGE;
+        List<Object> parameters = new ArrayList<>();
+
+        // Every branch is read in index order and cut off early,
+        // so MySQL never has to materialise the skipped pages or their texture columns
         StringBuilder query = new StringBuilder("SELECT * FROM (");
-        query.append("SELECT 'player' as type, `last_known_name` as name, `value`, `signature`")
-                .append(" FROM ")
-                .append(resolvePlayerSkinTable());
+        // Players can share a last known name, their uuid tells them apart and is part of the name index as the primary key
+        query.append("(SELECT 'player' AS type, `last_known_name` AS name, `uuid`, `value`")
+                .append(" FROM ").append(joinTextures(resolvePlayerSkinTable()))
+                .append(" WHERE `last_known_name` IS NOT NULL");
+        appendKeysetCondition(query, parameters, "last_known_name", "uuid", SkinType.PLAYER, cursor);
+        query.append(" ORDER BY `last_known_name`, `uuid` LIMIT ").append(branchLimit).append(")");
 
         if (settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)) {
             query.append(" UNION ALL ");
 
-            query.append("SELECT 'custom' as type, `name`, `value`, `signature`")
-                    .append(" FROM ")
-                    .append(resolveCustomSkinTable());
+            query.append("(SELECT 'custom' AS type, `name`, NULL AS `uuid`, `value`")
+                    .append(" FROM ").append(joinTextures(resolveCustomSkinTable()))
+                    .append(" WHERE 1=1");
+            appendKeysetCondition(query, parameters, "name", null, SkinType.CUSTOM, cursor);
 
             if (settings.getProperty(GUIConfig.CUSTOM_GUI_ONLY)) {
                 List<String> customSkins = settings.getProperty(GUIConfig.CUSTOM_GUI_SKINS);
                 if (!customSkins.isEmpty()) {
-                    query.append(" WHERE `name` IN (");
-                    List<String> sanitizedSkins = new ArrayList<>();
+                    query.append(" AND `name` IN (")
+                            .append(String.join(", ", Collections.nCopies(customSkins.size(), "?")))
+                            .append(")");
                     for (String customSkin : customSkins) {
-                        sanitizedSkins.add("'" + CustomSkinData.sanitizeCustomSkinName(customSkin) + "'");
+                        parameters.add(CustomSkinData.sanitizeCustomSkinName(customSkin));
                     }
-
-                    query.append(String.join(", ", sanitizedSkins));
-                    query.append(")");
                 }
             }
+
+            query.append(" ORDER BY `name` LIMIT ").append(branchLimit).append(")");
         }
 
-        query.append(") AS skins LIMIT ").append(offset).append(", ").append(SharedGUI.HEAD_COUNT_PER_PAGE);
+        query.append(") AS skins ORDER BY `name`, `type`, `uuid` LIMIT ");
+        if (!keyset) {
+            query.append(offset).append(", ");
+        }
+        query.append(SharedGUI.HEAD_COUNT_PER_PAGE);
 
         Map<String, String> skins = new LinkedHashMap<>();
-        try (ResultSet crs = mysql.query(query.toString())) {
-            while (crs.next()) {
+        GUISkinCursor[] last = new GUISkinCursor[1];
+        int[] rows = new int[1];
+        try {
+            mysql.forEachRow(query.toString(), 0, crs -> {
                 String name = crs.getString("name");
-                String value = crs.getString("value");
-                String signature = crs.getString("signature");
+                skins.put(name, MySQLColumns.encodePayload(crs.getBytes("value")));
+                SkinType type = SkinType.valueOf(crs.getString("type").toUpperCase(Locale.ROOT));
+                last[0] = new GUISkinCursor(name, type, type == SkinType.PLAYER ? MySQLColumns.toUUID(crs.getBytes("uuid")).toString() : name);
+                rows[0]++;
+            }, parameters.toArray());
+        } catch (SQLException e) {
+            logger.warning("Failed to get stored skins", e);
+        }
+
+        // A short page is the last one
+        return new GUISkinPage(skins, rows[0] == SharedGUI.HEAD_COUNT_PER_PAGE ? last[0] : null);
+    }
+
+    /**
+     * Restricts a GUI branch to rows sorting after the cursor.
+     * Each branch has a constant type, so the (name, type, key) comparison becomes a range on the indexed name column.
+     *
+     * @param keyColumn Column telling apart rows with the same name, or null if names are unique
+     */
+    private static void appendKeysetCondition(StringBuilder query, List<Object> parameters, String column, @Nullable String keyColumn,
+                                              SkinType branchType, @Nullable GUISkinCursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+
+        // Rows with the same name as the cursor still follow it if their type sorts after the cursor's type,
+        // or if they have the same type and a key after the cursor's
+        int typeOrder = branchType.name().toLowerCase(Locale.ROOT).compareTo(cursor.typeName());
+        if (typeOrder > 0) {
+            query.append(" AND `").append(column).append("` >= ?");
+            parameters.add(cursor.name());
+        } else if (typeOrder == 0 && keyColumn != null) {
+            query.append(" AND `").append(column).append("` >= ? AND (`").append(column).append("` > ? OR `").append(keyColumn).append("` > ?)");
+            parameters.add(cursor.name());
+            parameters.add(cursor.name());
+            parameters.add(MySQLColumns.toBinary(UUID.fromString(cursor.key())));
+        } else {
+            query.append(" AND `").append(column).append("` > ?");
+            parameters.add(cursor.name());
+        }
+    }
+
+    /**
+     * Joins a skin table with the textures its rows reference. Column names are unique across both tables, so they need no qualifier.
+     */
+    private String joinTextures(String table) {
+        return "`" + table + "` JOIN `" + resolveTextureTable() + "` ON `hash` = `texture_hash`";
+    }
 
-                skins.put(name, SkinProperty.of(value, signature).getValue());
+    @Override
+    public int purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress) throws StorageException {
+        return purgePlayerSkins(Operation.LOCK_PURGEABLE_PLAYER_SKINS, progress, targetPurgeTimestamp);
+    }
+
+    @Override
+    public void touchPlayerSkins(Map<UUID, Long> lastAccess) throws StorageException {
+        // Skins still in the queue have no row to touch yet
+        writeQueue.flush();
+
+        List<Object[]> rows = new ArrayList<>(lastAccess.size());
+        for (Map.Entry<UUID, Long> entry : lastAccess.entrySet()) {
+            rows.add(new Object[]{entry.getValue(), MySQLColumns.toBinary(entry.getKey()), entry.getValue()});
+        }
+
+        try {
+            // Chunked, so the row locks of one flush do not stall logins saving their skins
+            for (List<Object[]> chunk : partition(rows)) {
+                mysql.executeBatch(Map.of(statements.get(Operation.TOUCH_PLAYER_SKIN), chunk));
             }
         } catch (SQLException e) {
-            logger.warning("Failed to get stored skins", e);
+            throw new StorageException(e);
         }
-        return skins;
     }
 
     @Override
-    public void purgeStoredOldSkins(long targetPurgeTimestamp) {
-        mysql.execute("DELETE FROM " + resolvePlayerSkinTable() + " WHERE timestamp NOT LIKE 0 AND timestamp<=?", targetPurgeTimestamp);
+    public int purgeUnusedPlayerSkins(long targetLastAccess, IntConsumer progress) throws StorageException {
+        return purgePlayerSkins(Operation.LOCK_UNUSED_PLAYER_SKINS, progress, targetLastAccess, targetLastAccess);
+    }
+
+    private int purgePlayerSkins(Operation lockPurgeable, IntConsumer progress, Object... vars) throws StorageException {
+        // Queued skins would otherwise be written back right after being purged
+        writeQueue.flush();
+
+        int removed = 0;
+        try {
+            int deleted;
+            do {
+                // Every chunk is its own transaction on an index, so logins can keep writing skins in between
+                deleted = mysql.transaction(transaction -> {
+                    List<PurgedSkin> purged = transaction.query(statements.get(lockPurgeable),
+                            crs -> new PurgedSkin(crs.getBytes("uuid"), crs.getBytes("texture_hash")), vars);
+
+                    transaction.executeBatch(statements.get(Operation.DELETE_PLAYER_SKIN), purged.stream()
+                            .map(skin -> new Object[]{skin.uuid()})
+                            .toList());
+                    releaseTextures(transaction, purged.stream().map(PurgedSkin::textureHash).toList());
+                    return purged.size();
+                });
+                removed += deleted;
+                progress.accept(removed);
+            } while (deleted >= MySQLStatements.PURGE_CHUNK_SIZE);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void forEachSkinReference(Consumer<SkinIdentifier> consumer) throws StorageException {
+        // Player writes still waiting in the write-behind queue would be missed otherwise
+        writeQueue.flush();
+
+        try {
+            if (legacyPlayersPresent) {
+                forEachLegacyRow(statements.get(Operation.SELECT_LEGACY_SKIN_REFERENCES), crs ->
+                        consumer.accept(SkinIdentifier.of(crs.getString("skin_name"), null, SkinType.LEGACY)));
+            }
+
+            mysql.forEachRow(statements.get(Operation.SELECT_SKIN_REFERENCES), SCAN_FETCH_SIZE, crs -> {
+                SkinIdentifier identifier = mapPlayerData(crs).getSkinIdentifier();
+                if (identifier != null) {
+                    consumer.accept(identifier);
+                }
+            });
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
     }
 
     @Override
-    public Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException {
-        try (ResultSet crs = mysql.query("SELECT * FROM " + resolveCacheTable() + " WHERE name=?", playerName)) {
-            if (!crs.next()) {
-                return Optional.empty();
+    public void forEachCollectableSkin(Consumer<StoredSkinKey> consumer) throws StorageException {
+        writeQueue.flush();
+
+        try {
+            mysql.forEachRow(statements.get(Operation.SELECT_PLAYER_SKIN_KEYS), SCAN_FETCH_SIZE, crs ->
+                    consumer.accept(StoredSkinKey.playerSkin(MySQLColumns.toUUID(crs.getBytes("uuid")), crs.getLong("timestamp"))));
+            mysql.forEachRow(statements.get(Operation.SELECT_URL_SKIN_KEYS), SCAN_FETCH_SIZE, crs ->
+                    consumer.accept(StoredSkinKey.urlSkin(crs.getString("url"), MySQLColumns.readSkinVariant(crs, "skin_variant"))));
+            mysql.forEachRow(statements.get(Operation.SELECT_URL_INDEX_KEYS), SCAN_FETCH_SIZE, crs ->
+                    consumer.accept(StoredSkinKey.urlIndex(crs.getString("url"))));
+
+            if (legacySkinsPresent) {
+                forEachLegacyRow(statements.get(Operation.SELECT_LEGACY_SKIN_KEYS), crs ->
+                        consumer.accept(StoredSkinKey.legacySkin(crs.getString("name"))));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private void forEachLegacyRow(String query, MySQLProvider.RowConsumer consumer) throws SQLException {
+        try {
+            mysql.forEachRow(query, SCAN_FETCH_SIZE, consumer);
+        } catch (SQLException e) {
+            // Another server finished the migration and dropped the table, so there is nothing left to scan
+            if (e.getErrorCode() != TABLE_NOT_FOUND_ERROR) {
+                throw e;
             }
+        }
+    }
+
+    @Override
+    public Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException {
+        Optional<MojangCacheData> pendingData = writeQueue.getPending(resolveCacheTable(), playerName.toLowerCase(Locale.ROOT), MojangCacheData.class);
+        if (pendingData.isPresent()) {
+            return pendingData;
+        }
+
+        try {
+            return mysql.queryFirst(statements.get(Operation.SELECT_CACHE), MySQLAdapter::mapCacheData, playerName);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
 
-            String uuidString = crs.getString("uuid");
-            UUID uuid = uuidString != null ? UUID.fromString(uuidString) : null;
-            long timestamp = crs.getLong("timestamp");
+    @Override
+    public Map<String, MojangCacheData> getCachedUUIDBatch(Collection<String> playerNames) throws StorageException {
+        Map<String, MojangCacheData> result = new HashMap<>();
+        // The name column is case-insensitive, so rows are matched back to the requested spelling
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (String playerName : playerNames) {
+            String key = playerName.toLowerCase(Locale.ROOT);
+            Optional<MojangCacheData> pendingData = writeQueue.getPending(resolveCacheTable(), key, MojangCacheData.class);
+            if (pendingData.isPresent()) {
+                result.put(playerName, pendingData.get());
+            } else {
+                missing.putIfAbsent(key, playerName);
+            }
+        }
 
-            return Optional.of(MojangCacheData.of(uuid, timestamp));
+        try {
+            for (List<String> chunk : partition(new ArrayList<>(missing.values()))) {
+                mysql.forEachRow(statements.get(Operation.SELECT_CACHES, chunk.size()), 0, crs -> {
+                    String requestedName = missing.get(crs.getString("name").toLowerCase(Locale.ROOT));
+                    if (requestedName != null) {
+                        result.put(requestedName, mapCacheData(crs));
+                    }
+                }, chunk.toArray());
+            }
         } catch (SQLException e) {
             throw new StorageException(e);
         }
+
+        return result;
+    }
+
+    private static MojangCacheData mapCacheData(ResultSet crs) throws SQLException {
+        UUID uuid = MySQLColumns.toUUID(crs.getBytes("uuid"));
+        long timestamp = crs.getLong("timestamp");
+
+        return MojangCacheData.of(uuid, timestamp);
     }
 
     @Override
     public void setCachedUUID(String playerName, MojangCacheData mojangCacheData) {
-        String uuid = mojangCacheData.getUniqueId().map(UUID::toString).orElse(null);
-        mysql.execute("INSERT INTO " + resolveCacheTable() + " (name, uuid, timestamp) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE uuid=?, timestamp=?",
+        byte[] uuid = MySQLColumns.toBinary(mojangCacheData.getUniqueId().orElse(null));
+        // Names are case-insensitive in the cache table, so the queue key is as well
+        write(resolveCacheTable(), playerName.toLowerCase(Locale.ROOT), mojangCacheData,
+                statements.get(Operation.UPSERT_CACHE),
                 playerName,
                 uuid,
                 mojangCacheData.getTimestamp(),
@@ -552,36 +1451,79 @@ public class MySQLAdapter implements StorageAdapter {
                 mojangCacheData.getTimestamp());
     }
 
+    @Override
+    public void setCachedUUIDBatch(Map<String, MojangCacheData> data) {
+        if (writeQueue.isEnabled()) {
+            // The queue already coalesces and batches on its own
+            StorageAdapter.super.setCachedUUIDBatch(data);
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(data.size());
+        for (Map.Entry<String, MojangCacheData> entry : data.entrySet()) {
+            byte[] uuid = MySQLColumns.toBinary(entry.getValue().getUniqueId().orElse(null));
+            long timestamp = entry.getValue().getTimestamp();
+            rows.add(new Object[]{entry.getKey(), uuid, timestamp, uuid, timestamp});
+        }
+
+        try {
+            mysql.executeBatch(Map.of(statements.get(Operation.UPSERT_CACHE), rows));
+        } catch (SQLException e) {
+            logger.warning("Failed to save cached UUIDs of " + data.size() + " players", e);
+        }
+    }
+
+    private void write(String table, Object key, Object value, String query, Object... vars) {
+        if (writeQueue.isEnabled()) {
+            writeQueue.enqueue(table, key, value, query, vars);
+        } else {
+            mysql.execute(query, vars);
+        }
+    }
+
+    private static <T> List<List<T>> partition(List<T> list) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += BATCH_CHUNK_SIZE) {
+            chunks.add(list.subList(i, Math.min(list.size(), i + BATCH_CHUNK_SIZE)));
+        }
+
+        return chunks;
+    }
+
     private String resolveCustomSkinTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "custom_skins";
+        return statements.table(Table.CUSTOM_SKINS);
     }
 
     private String resolveURLSkinTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "url_skins";
+        return statements.table(Table.URL_SKINS);
     }
 
     private String resolveURLSkinIndexTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "url_index";
+        return statements.table(Table.URL_INDEX);
     }
 
     private String resolvePlayerSkinTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "player_skins";
+        return statements.table(Table.PLAYER_SKINS);
     }
 
     private String resolvePlayerTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "players";
+        return statements.table(Table.PLAYERS);
+    }
+
+    private String resolveTextureTable() {
+        return statements.table(Table.TEXTURES);
     }
 
     private String resolveCacheTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "cache";
+        return statements.table(Table.CACHE);
     }
 
     private String resolveLegacyPlayerTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "legacy_players";
+        return statements.table(Table.LEGACY_PLAYERS);
     }
 
     private String resolveLegacySkinTable() {
-        return settings.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX) + "legacy_skins";
+        return statements.table(Table.LEGACY_SKINS);
     }
 
     private Optional<String> getLegacyPlayerTableFile() {
@@ -617,4 +1559,13 @@ public class MySQLAdapter implements StorageAdapter {
     private Path getLegacySkinTableFilePath() {
         return plugin.getDataFolder().resolve("legacy_skin_table.txt");
     }
+
+    private record PurgedSkin(byte[] uuid, byte[] textureHash) {
+    }
+
+    private record SampleRange(String table, String nameColumn, long minId, long maxId) {
+        private long size() {
+            return maxId - minId + 1;
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.mysql;
+
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.api.property.SkinVariant;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Converts model values to and from the compact column types of the v16 schema.
+ * Enum codes are fixed here instead of using ordinals, so reordering an enum never changes stored data.
+ */
+public class MySQLColumns {
+    private static final SkinType[] SKIN_TYPES = {SkinType.PLAYER, SkinType.URL, SkinType.CUSTOM, SkinType.LEGACY};
+    private static final SkinVariant[] SKIN_VARIANTS = {SkinVariant.CLASSIC, SkinVariant.SLIM};
+
+    private MySQLColumns() {
+    }
+
+    public static byte[] toBinary(@Nullable UUID uuid) {
+        if (uuid == null) {
+            return null;
+        }
+
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID toUUID(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Texture values and signatures are base64, storing the decoded bytes saves a quarter of their size.
+     * Decodes a texture value or signature, unless the base64 would not encode back to the exact same string.
+     * Missing padding or stray bits are accepted by the decoder but lost on the way back, and signatures have to stay exact.
+     *
+     * @return the decoded bytes, or empty if the payload has to be kept as text
+     */
+    public static Optional<byte[]> decodeCanonicalPayload(String payload) {
+        try {
+            byte[] decoded = Base64.getDecoder().decode(payload);
+            if (Base64.getEncoder().encodeToString(decoded).equals(payload)) {
+                return Optional.of(decoded);
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        return Optional.empty();
+    }
+
+    public static String encodePayload(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * Content address of a texture in the textures table, the length prefix keeps value and signature apart.
+     */
+    public static byte[] textureHash(byte[] value, byte[] signature) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(ByteBuffer.allocate(Integer.BYTES).putInt(value.length).array());
+            md.update(value);
+            md.update(signature);
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to get SHA-256 hash algorithm", e);
+        }
+    }
+
+    public static Integer toCode(@Nullable SkinType skinType) {
+        return skinType == null ? null : indexOf(SKIN_TYPES, skinType);
+    }
+
+    public static Integer toCode(@Nullable SkinVariant skinVariant) {
+        return skinVariant == null ? null : indexOf(SKIN_VARIANTS, skinVariant);
+    }
+
+    public static SkinType readSkinType(ResultSet resultSet, String column) throws SQLException {
+        int code = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : SKIN_TYPES[code];
+    }
+
+    public static SkinVariant readSkinVariant(ResultSet resultSet, String column) throws SQLException {
+        int code = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : SKIN_VARIANTS[code];
+    }
+
+    private static <T> int indexOf(T[] values, T value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("No column code for " + value);
+    }
+}
@@ -32,9 +32,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class MySQLProvider {
+    private static final int DEADLOCK_ERROR = 1213;
+    private static final String SERIALIZATION_FAILURE_STATE = "40001";
+    private static final int TRANSACTION_ATTEMPTS = 3;
     private final SRLogger logger;
     private final SettingsManager settings;
     private Pool pool;
@@ -46,11 +53,15 @@ public class MySQLProvider {
         String database = settings.getProperty(DatabaseConfig.MYSQL_DATABASE);
         int port = settings.getProperty(DatabaseConfig.MYSQL_PORT);
         int maxPoolSize = settings.getProperty(DatabaseConfig.MYSQL_MAX_POOL_SIZE);
+        boolean serverPreparedStatements = settings.getProperty(DatabaseConfig.MYSQL_SERVER_PREPARED_STATEMENTS);
         String options = settings.getProperty(DatabaseConfig.MYSQL_CONNECTION_OPTIONS);
 
+        // Custom connection options come last, so they can override our defaults
         Configuration configuration = Configuration.parse("jdbc:mysql://" + host + ":" + port + "/" + database +
                 "?permitMysqlScheme" +
                 "&maxPoolSize=" + maxPoolSize +
+                "&useServerPrepStmts=" + serverPreparedStatements +
+                "&cachePrepStmts=true" +
                 "&" + options);
 
         pool = Pools.retrievePool(configuration.clone(username, password));
@@ -76,12 +87,231 @@ public class MySQLProvider {
         }
     }
 
-    public ResultSet query(@Language("sql") final String query, final Object... vars) throws SQLException {
+    /**
+     * Runs a data-changing statement and reports failures to the caller instead of logging them.
+     *
+     * @return Amount of affected rows
+     */
+    public int update(@Language("sql") final String query, final Object... vars) throws SQLException {
         try (Connection connection = pool.getPoolConnection().getConnection()) {
             try (PreparedStatement ps = connection.prepareStatement(query)) {
                 fillPreparedStatement(ps, vars);
 
-                return ps.executeQuery();
+                return ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Runs a query and maps every row while the connection is still open.
+     */
+    public <T> List<T> query(@Language("sql") final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+        List<T> results = new ArrayList<>();
+        forEachRow(query, 0, resultSet -> results.add(mapper.map(resultSet)), vars);
+        return results;
+    }
+
+    /**
+     * Runs a query and maps only the first row, if there is one.
+     */
+    public <T> Optional<T> queryFirst(@Language("sql") final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+        try (Connection connection = pool.getPoolConnection().getConnection()) {
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                fillPreparedStatement(ps, vars);
+                ps.setMaxRows(1);
+
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    return resultSet.next() ? Optional.ofNullable(mapper.map(resultSet)) : Optional.empty();
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the rows of a query to the consumer.
+     * A fetch size above zero makes the driver fetch rows in chunks instead of buffering the whole result,
+     * which should be used for large table scans.
+     */
+    public void forEachRow(@Language("sql") final String query, final int fetchSize, final RowConsumer consumer, final Object... vars) throws SQLException {
+        try (Connection connection = pool.getPoolConnection().getConnection()) {
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                fillPreparedStatement(ps, vars);
+                if (fetchSize > 0) {
+                    ps.setFetchSize(fetchSize);
+                }
+
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    while (resultSet.next()) {
+                        consumer.accept(resultSet);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes all statements as JDBC batches inside a single transaction.
+     *
+     * @param batches SQL statements mapped to the parameter rows to execute them with
+     */
+    public void executeBatch(Map<String, List<Object[]>> batches) throws SQLException {
+        try (Connection connection = pool.getPoolConnection().getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<Object[]>> entry : batches.entrySet()) {
+                    try (PreparedStatement ps = connection.prepareStatement(entry.getKey())) {
+                        for (Object[] vars : entry.getValue()) {
+                            fillPreparedStatement(ps, vars);
+                            ps.addBatch();
+                        }
+
+                        ps.executeBatch();
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Runs the callback in a single transaction on one connection.
+     * InnoDB rolls back one side of a deadlock, that side is retried a few times before the error is passed on.
+     */
+    public <T> T transaction(TransactionCallback<T> callback) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try (Connection connection = pool.getPoolConnection().getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    T result = callback.run(new Transaction(connection));
+                    connection.commit();
+                    return result;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    if (attempt >= TRANSACTION_ATTEMPTS || !isDeadlock(e)) {
+                        throw e;
+                    }
+
+                    logger.debug("Retrying MySQL transaction after a deadlock", e);
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a named lock, MySQL ties it to the connection, so the connection is held until the lock is closed.
+     * Other servers sharing the database wait here until the holder is done.
+     *
+     * @throws SQLException if the lock was not granted within the timeout
+     */
+    public NamedLock lock(final String lockName, final int timeoutSeconds) throws SQLException {
+        Connection connection = pool.getPoolConnection().getConnection();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            fillPreparedStatement(ps, lockName, timeoutSeconds);
+
+            try (ResultSet resultSet = ps.executeQuery()) {
+                // 0 on timeout and NULL on error, which getInt also reads as 0
+                if (!resultSet.next() || resultSet.getInt(1) != 1) {
+                    throw new SQLException("Timed out after " + timeoutSeconds + " seconds waiting for lock " + lockName);
+                }
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+
+        return new NamedLock(connection, lockName);
+    }
+
+    private static boolean isDeadlock(SQLException e) {
+        return e.getErrorCode() == DEADLOCK_ERROR || SERIALIZATION_FAILURE_STATE.equals(e.getSQLState());
+    }
+
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(ResultSet resultSet) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T run(Transaction transaction) throws SQLException;
+    }
+
+    /**
+     * Statements of a transaction, all run on the same connection.
+     */
+    @RequiredArgsConstructor
+    public class Transaction {
+        private final Connection connection;
+
+        /**
+         * @return Amount of affected rows
+         */
+        public int update(@Language("sql") final String query, final Object... vars) throws SQLException {
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                fillPreparedStatement(ps, vars);
+
+                return ps.executeUpdate();
+            }
+        }
+
+        public <T> List<T> query(@Language("sql") final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                fillPreparedStatement(ps, vars);
+
+                List<T> results = new ArrayList<>();
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    while (resultSet.next()) {
+                        results.add(mapper.map(resultSet));
+                    }
+                }
+
+                return results;
+            }
+        }
+
+        public <T> Optional<T> queryFirst(@Language("sql") final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+            List<T> results = query(query, mapper, vars);
+            return results.isEmpty() ? Optional.empty() : Optional.ofNullable(results.get(0));
+        }
+
+        public void executeBatch(@Language("sql") final String query, final List<Object[]> rows) throws SQLException {
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement(query)) {
+                for (Object[] vars : rows) {
+                    fillPreparedStatement(ps, vars);
+                    ps.addBatch();
+                }
+
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * A lock taken with {@link #lock(String, int)}, closing it releases the lock and returns the connection.
+     */
+    @RequiredArgsConstructor
+    public class NamedLock implements AutoCloseable {
+        private final Connection connection;
+        private final String lockName;
+
+        @Override
+        public void close() throws SQLException {
+            try (connection; PreparedStatement ps = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                fillPreparedStatement(ps, lockName);
+
+                ps.execute();
             }
         }
     }
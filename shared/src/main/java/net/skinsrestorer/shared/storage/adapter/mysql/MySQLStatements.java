@@ -0,0 +1,138 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.mysql;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * All SQL statements used by {@link MySQLAdapter}, built once per table prefix.
+ */
+public class MySQLStatements {
+    public static final int PURGE_CHUNK_SIZE = 1000;
+    @Getter
+    private final String prefix;
+    private final Map<Table, String> tables = new EnumMap<>(Table.class);
+    private final Map<Operation, String> statements = new EnumMap<>(Operation.class);
+
+    private MySQLStatements(String prefix) {
+        this.prefix = prefix;
+
+        for (Table table : Table.values()) {
+            tables.put(table, prefix + table.getName());
+        }
+
+        for (Operation operation : Operation.values()) {
+            statements.put(operation, operation.getTemplate()
+                    .replace("{table}", "`" + tables.get(operation.getTable()) + "`")
+                    .replace("{textures}", "`" + tables.get(Table.TEXTURES) + "`"));
+        }
+    }
+
+    public static MySQLStatements forPrefix(String prefix) {
+        return new MySQLStatements(prefix);
+    }
+
+    public String table(Table table) {
+        return tables.get(table);
+    }
+
+    public String get(Operation operation) {
+        return statements.get(operation);
+    }
+
+    /**
+     * Fills the {@code {params}} placeholder of a bulk statement with the given amount of parameters.
+     */
+    public String get(Operation operation, int parameterCount) {
+        return get(operation).replace("{params}", String.join(", ", Collections.nCopies(parameterCount, "?")));
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Table {
+        CACHE("cache"),
+        PLAYERS("players"),
+        PLAYER_SKINS("player_skins"),
+        URL_SKINS("url_skins"),
+        URL_INDEX("url_index"),
+        CUSTOM_SKINS("custom_skins"),
+        TEXTURES("textures"),
+        LEGACY_PLAYERS("legacy_players"),
+        LEGACY_SKINS("legacy_skins");
+
+        private final String name;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Operation {
+        SELECT_PLAYER(Table.PLAYERS, "SELECT * FROM {table} WHERE uuid=?"),
+        SELECT_PLAYERS(Table.PLAYERS, "SELECT * FROM {table} WHERE uuid IN ({params})"),
+        SELECT_SKIN_REFERENCES(Table.PLAYERS, "SELECT * FROM {table} WHERE skin_identifier IS NOT NULL"),
+        UPSERT_PLAYER(Table.PLAYERS, "INSERT INTO {table} (uuid, skin_identifier, skin_type, skin_variant) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE skin_identifier=?, skin_type=?, skin_variant=?"),
+        SELECT_PLAYER_SKIN(Table.PLAYER_SKINS, "SELECT uuid, last_known_name, timestamp, value, signature FROM {table} JOIN {textures} ON hash=texture_hash WHERE uuid=?"),
+        SELECT_PLAYER_SKINS(Table.PLAYER_SKINS, "SELECT uuid, last_known_name, timestamp, value, signature FROM {table} JOIN {textures} ON hash=texture_hash WHERE uuid IN ({params})"),
+        LOCK_PLAYER_SKIN_TEXTURE(Table.PLAYER_SKINS, "SELECT texture_hash FROM {table} WHERE uuid=? FOR UPDATE"),
+        // Skin rows are updated or inserted instead of upserted, as every upsert would use up an AUTO_INCREMENT sample id
+        UPDATE_PLAYER_SKIN(Table.PLAYER_SKINS, "UPDATE {table} SET last_known_name=?, texture_hash=?, timestamp=? WHERE uuid=?"),
+        INSERT_PLAYER_SKIN(Table.PLAYER_SKINS, "INSERT INTO {table} (last_known_name, texture_hash, timestamp, uuid) VALUES (?, ?, ?, ?)"),
+        DELETE_PLAYER_SKIN(Table.PLAYER_SKINS, "DELETE FROM {table} WHERE uuid=?"),
+        SELECT_PLAYER_SKIN_KEYS(Table.PLAYER_SKINS, "SELECT uuid, timestamp FROM {table}"),
+        LOCK_PURGEABLE_PLAYER_SKINS(Table.PLAYER_SKINS, "SELECT uuid, texture_hash FROM {table} WHERE timestamp<=? AND timestamp<>0 ORDER BY timestamp LIMIT " + PURGE_CHUNK_SIZE + " FOR UPDATE"),
+        // A skin saved again counts as used, so the timestamp bounds the last access as well
+        LOCK_UNUSED_PLAYER_SKINS(Table.PLAYER_SKINS, "SELECT uuid, texture_hash FROM {table} WHERE last_access<=? AND timestamp<=? AND timestamp<>0 ORDER BY last_access LIMIT " + PURGE_CHUNK_SIZE + " FOR UPDATE"),
+        TOUCH_PLAYER_SKIN(Table.PLAYER_SKINS, "UPDATE {table} SET last_access=? WHERE uuid=? AND last_access<?"),
+        SELECT_URL_SKIN(Table.URL_SKINS, "SELECT mine_skin_id, value, signature FROM {table} JOIN {textures} ON hash=texture_hash WHERE url=? AND skin_variant=?"),
+        LOCK_URL_SKIN_TEXTURE(Table.URL_SKINS, "SELECT texture_hash FROM {table} WHERE url=? AND skin_variant=? FOR UPDATE"),
+        SELECT_URL_SKIN_KEYS(Table.URL_SKINS, "SELECT url, skin_variant FROM {table}"),
+        UPDATE_URL_SKIN(Table.URL_SKINS, "UPDATE {table} SET mine_skin_id=?, texture_hash=? WHERE url=? AND skin_variant=?"),
+        INSERT_URL_SKIN(Table.URL_SKINS, "INSERT INTO {table} (mine_skin_id, texture_hash, url, skin_variant) VALUES (?, ?, ?, ?)"),
+        DELETE_URL_SKIN(Table.URL_SKINS, "DELETE FROM {table} WHERE url=? AND skin_variant=?"),
+        SELECT_URL_INDEX(Table.URL_INDEX, "SELECT * FROM {table} WHERE url=?"),
+        SELECT_URL_INDEX_KEYS(Table.URL_INDEX, "SELECT url FROM {table}"),
+        UPSERT_URL_INDEX(Table.URL_INDEX, "INSERT INTO {table} (url, skin_variant) VALUES (?, ?) ON DUPLICATE KEY UPDATE skin_variant=?"),
+        DELETE_URL_INDEX(Table.URL_INDEX, "DELETE FROM {table} WHERE url=?"),
+        SELECT_CUSTOM_SKIN(Table.CUSTOM_SKINS, "SELECT value, signature FROM {table} JOIN {textures} ON hash=texture_hash WHERE name=?"),
+        LOCK_CUSTOM_SKIN_TEXTURE(Table.CUSTOM_SKINS, "SELECT texture_hash FROM {table} WHERE name=? FOR UPDATE"),
+        UPDATE_CUSTOM_SKIN(Table.CUSTOM_SKINS, "UPDATE {table} SET texture_hash=? WHERE name=?"),
+        INSERT_CUSTOM_SKIN(Table.CUSTOM_SKINS, "INSERT INTO {table} (texture_hash, name) VALUES (?, ?)"),
+        DELETE_CUSTOM_SKIN(Table.CUSTOM_SKINS, "DELETE FROM {table} WHERE name=?"),
+        ACQUIRE_TEXTURE(Table.TEXTURES, "INSERT INTO {table} (hash, value, signature, ref_count) VALUES (?, ?, ?, 1) ON DUPLICATE KEY UPDATE ref_count=ref_count+1"),
+        RELEASE_TEXTURE(Table.TEXTURES, "UPDATE {table} SET ref_count=ref_count-? WHERE hash=?"),
+        DELETE_UNUSED_TEXTURE(Table.TEXTURES, "DELETE FROM {table} WHERE hash=? AND ref_count<=0"),
+        SELECT_LEGACY_SKIN(Table.LEGACY_SKINS, "SELECT * FROM {table} WHERE name=?"),
+        SELECT_LEGACY_SKIN_KEYS(Table.LEGACY_SKINS, "SELECT name FROM {table}"),
+        INSERT_LEGACY_SKIN(Table.LEGACY_SKINS, "INSERT INTO {table} (name, value, signature) VALUES (?, ?, ?)"),
+        DELETE_LEGACY_SKIN(Table.LEGACY_SKINS, "DELETE FROM {table} WHERE name=?"),
+        SELECT_LEGACY_PLAYER(Table.LEGACY_PLAYERS, "SELECT * FROM {table} WHERE name=?"),
+        SELECT_LEGACY_SKIN_REFERENCES(Table.LEGACY_PLAYERS, "SELECT skin_name FROM {table}"),
+        INSERT_LEGACY_PLAYER(Table.LEGACY_PLAYERS, "INSERT INTO {table} (name, skin_name) VALUES (?, ?)"),
+        DELETE_LEGACY_PLAYER(Table.LEGACY_PLAYERS, "DELETE FROM {table} WHERE name=?"),
+        SELECT_CACHE(Table.CACHE, "SELECT * FROM {table} WHERE name=?"),
+        SELECT_CACHES(Table.CACHE, "SELECT * FROM {table} WHERE name IN ({params})"),
+        UPSERT_CACHE(Table.CACHE, "INSERT INTO {table} (name, uuid, timestamp) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE uuid=?, timestamp=?");
+
+        private final Table table;
+        private final String template;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.mysql;
+
+import ch.jalu.configme.SettingsManager;
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.shared.config.DatabaseConfig;
+import net.skinsrestorer.shared.log.SRLogger;
+import org.intellij.lang.annotations.Language;
+
+import javax.inject.Inject;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind queue for MySQL upserts.
+ * Writes for the same key are coalesced and flushed as JDBC batches in one transaction,
+ * either every flush interval or once the max batch size is reached.
+ * Writes that need more than one statement, like moving a texture reference, run as callbacks in that same transaction.
+ * If a batch fails its rows are retried one by one, so a single bad row can not hold back the others.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class MySQLWriteQueue {
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final String CONNECTION_ERROR_STATE_PREFIX = "08";
+    private final MySQLProvider mysql;
+    private final SettingsManager settings;
+    private final SRLogger logger;
+    private final Map<WriteKey, PendingWrite> pending = new LinkedHashMap<>();
+    private final Map<WriteKey, PendingWrite> inFlight = new HashMap<>();
+    // In-flight writes discarded during the flush, a failed flush must not queue them again
+    private final Set<WriteKey> discarded = new HashSet<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder coalescedWrites = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private ScheduledExecutorService executor;
+    private int maxBatchSize;
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        int flushInterval = Math.max(1, settings.getProperty(DatabaseConfig.MYSQL_WRITE_BEHIND_FLUSH_INTERVAL));
+        maxBatchSize = Math.max(1, settings.getProperty(DatabaseConfig.MYSQL_WRITE_BEHIND_MAX_BATCH_SIZE));
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SkinsRestorer-MySQL-WriteBehind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Stops the flusher and writes everything that is still queued.
+     */
+    public void shutdown() {
+        ScheduledExecutorService oldExecutor;
+        synchronized (this) {
+            oldExecutor = executor;
+            executor = null;
+        }
+
+        if (oldExecutor == null) {
+            return;
+        }
+
+        oldExecutor.shutdown();
+        try {
+            if (!oldExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for the MySQL write queue to finish flushing");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+    }
+
+    public void enqueue(String table, Object key, Object value, @Language("sql") String query, Object... vars) {
+        enqueue(new WriteKey(table, key), new PendingWrite(query, vars, null, value, 0));
+    }
+
+    /**
+     * Queues a write that needs more than one statement, it runs inside the transaction of the flush.
+     */
+    public void enqueue(String table, Object key, Object value, MySQLProvider.TransactionCallback<?> callback) {
+        enqueue(new WriteKey(table, key), new PendingWrite(null, null, callback, value, 0));
+    }
+
+    private void enqueue(WriteKey writeKey, PendingWrite write) {
+        int size;
+        synchronized (pending) {
+            if (pending.remove(writeKey) != null) {
+                coalescedWrites.increment();
+            }
+
+            pending.put(writeKey, write);
+            size = pending.size();
+        }
+
+        if (size >= maxBatchSize && flushRequested.compareAndSet(false, true)) {
+            ScheduledExecutorService current;
+            synchronized (this) {
+                current = executor;
+            }
+
+            if (current != null) {
+                current.execute(this::flush);
+            } else {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a write that was not committed yet, so reads see their own writes.
+     */
+    public <T> Optional<T> getPending(String table, Object key, Class<T> type) {
+        WriteKey writeKey = new WriteKey(table, key);
+        synchronized (pending) {
+            PendingWrite write = pending.get(writeKey);
+            if (write == null) {
+                write = inFlight.get(writeKey);
+            }
+
+            return write == null ? Optional.empty() : Optional.of(type.cast(write.value()));
+        }
+    }
+
+    /**
+     * Drops a queued write, for example because the row is about to be deleted.
+     * Waits for a running flush so the delete can not be overtaken by it.
+     */
+    public void discard(String table, Object key) {
+        WriteKey writeKey = new WriteKey(table, key);
+        boolean flushing;
+        synchronized (pending) {
+            pending.remove(writeKey);
+            flushing = inFlight.containsKey(writeKey);
+            if (flushing) {
+                discarded.add(writeKey);
+            }
+        }
+
+        if (flushing) {
+            flushLock.lock();
+            flushLock.unlock();
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+
+            Map<WriteKey, PendingWrite> drained;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+
+                drained = new LinkedHashMap<>(pending);
+                pending.clear();
+                inFlight.putAll(drained);
+            }
+
+            Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+            List<MySQLProvider.TransactionCallback<?>> callbacks = new ArrayList<>();
+            for (PendingWrite write : drained.values()) {
+                if (write.callback() != null) {
+                    callbacks.add(write.callback());
+                } else {
+                    batches.computeIfAbsent(write.query(), k -> new ArrayList<>()).add(write.vars());
+                }
+            }
+
+            long start = System.nanoTime();
+            try {
+                mysql.transaction(transaction -> {
+                    for (Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+                        transaction.executeBatch(batch.getKey(), batch.getValue());
+                    }
+
+                    for (MySQLProvider.TransactionCallback<?> callback : callbacks) {
+                        callback.run(transaction);
+                    }
+                    return null;
+                });
+                flushedRows.add(drained.size());
+            } catch (SQLException e) {
+                failedFlushes.increment();
+                if (isConnectionError(e)) {
+                    logger.warning("Failed to flush %d queued MySQL writes, retrying later".formatted(drained.size()), e);
+                    requeue(drained);
+                } else {
+                    logger.warning("Failed to flush %d queued MySQL writes, retrying them one by one".formatted(drained.size()), e);
+                    flushIndividually(drained);
+                }
+            } finally {
+                synchronized (pending) {
+                    inFlight.clear();
+                    discarded.clear();
+                }
+            }
+
+            long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastFlushMillis = took;
+            maxFlushMillis = Math.max(maxFlushMillis, took);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Finds the rows that made the batch fail, the others are written right away.
+     * A row that keeps failing is dropped after a few flushes instead of blocking the queue forever.
+     */
+    private void flushIndividually(Map<WriteKey, PendingWrite> drained) {
+        Iterator<Map.Entry<WriteKey, PendingWrite>> iterator = drained.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<WriteKey, PendingWrite> entry = iterator.next();
+            PendingWrite write = entry.getValue();
+            try {
+                if (write.callback() != null) {
+                    mysql.transaction(write.callback());
+                } else {
+                    mysql.update(write.query(), write.vars());
+                }
+                flushedRows.increment();
+                iterator.remove();
+            } catch (SQLException e) {
+                if (isConnectionError(e)) {
+                    // Everything not written yet waits for the connection to come back
+                    requeue(drained);
+                    return;
+                }
+
+                iterator.remove();
+                int attempts = write.attempts() + 1;
+                if (attempts >= MAX_WRITE_ATTEMPTS) {
+                    logger.severe("Dropping queued MySQL write for key %s in table %s after %d failed attempts"
+                            .formatted(entry.getKey().key(), entry.getKey().table(), attempts), e);
+                } else {
+                    requeue(Map.of(entry.getKey(), new PendingWrite(write.query(), write.vars(), write.callback(), write.value(), attempts)));
+                }
+            }
+        }
+    }
+
+    private void requeue(Map<WriteKey, PendingWrite> writes) {
+        // Retry later, but never overwrite a newer write for the same key or bring back a discarded one
+        synchronized (pending) {
+            writes.forEach((key, write) -> {
+                if (!discarded.contains(key)) {
+                    pending.putIfAbsent(key, write);
+                }
+            });
+        }
+    }
+
+    private static boolean isConnectionError(SQLException e) {
+        return e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                || (e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_ERROR_STATE_PREFIX));
+    }
+
+    public QueueStats getStats() {
+        int depth;
+        synchronized (pending) {
+            depth = pending.size();
+        }
+
+        return new QueueStats(depth, flushedRows.sum(), coalescedWrites.sum(), failedFlushes.sum(), lastFlushMillis, maxFlushMillis);
+    }
+
+    public record QueueStats(int depth, long flushedRows, long coalescedWrites, long failedFlushes,
+                             long lastFlushMillis, long maxFlushMillis) {
+    }
+
+    private record WriteKey(String table, Object key) {
+    }
+
+    /**
+     * Either a single statement with its parameters, or a callback for writes that need more statements, the other fields are null.
+     */
+    private record PendingWrite(String query, Object[] vars, MySQLProvider.TransactionCallback<?> callback, Object value, int attempts) {
+    }
+}
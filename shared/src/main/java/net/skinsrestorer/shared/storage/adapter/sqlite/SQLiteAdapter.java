@@ -0,0 +1,939 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.sqlite;
+
+import ch.jalu.configme.SettingsManager;
+import com.google.gson.Gson;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.config.GUIConfig;
+import net.skinsrestorer.shared.config.StorageConfig;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
+import net.skinsrestorer.shared.gui.GUISkinPage;
+import net.skinsrestorer.shared.gui.SharedGUI;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.file.FileRecordCodec;
+import net.skinsrestorer.shared.storage.adapter.file.FileTextureStore;
+import net.skinsrestorer.shared.storage.adapter.file.model.player.LegacyPlayerFile;
+import net.skinsrestorer.shared.storage.adapter.file.model.skin.LegacySkinFile;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLColumns;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.LegacyPlayerData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.*;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Stores everything in an embedded SQLite database with the same tables and column encoding as
+ * {@link net.skinsrestorer.shared.storage.adapter.mysql.MySQLAdapter}.
+ * The GUI, random skin and purge queries are answered from indexes the same way as well.
+ */
+public class SQLiteAdapter implements StorageAdapter {
+    public static final String DATABASE_FILE = "skinsrestorer.db";
+    // Stored in PRAGMA user_version once the files of the file adapter are imported
+    private static final int FILES_IMPORTED_VERSION = 1;
+    private static final List<String> FILE_FOLDERS = List.of("skins", "players", "cache", "legacy/skins", "legacy/players");
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final int BATCH_CHUNK_SIZE = 500;
+    private static final int PURGE_CHUNK_SIZE = 1000;
+    private static final int RANDOM_SAMPLE_ATTEMPTS = 3;
+    // Names sort and compare case-insensitively, like the default MySQL collation and the GUI of the file adapter
+    private static final List<String> SCHEMA = List.of(
+            "CREATE TABLE IF NOT EXISTS cache (name TEXT NOT NULL COLLATE NOCASE PRIMARY KEY, uuid BLOB, timestamp INTEGER NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS players (uuid BLOB NOT NULL PRIMARY KEY, skin_identifier TEXT, skin_variant INTEGER, skin_type INTEGER) WITHOUT ROWID",
+            // sample_id aliases the rowid, which the random skin sampling seeks on
+            "CREATE TABLE IF NOT EXISTS player_skins (sample_id INTEGER PRIMARY KEY, uuid BLOB NOT NULL UNIQUE, last_known_name TEXT COLLATE NOCASE, value BLOB NOT NULL, signature BLOB NOT NULL, timestamp INTEGER NOT NULL, last_access INTEGER NOT NULL DEFAULT 0)",
+            "CREATE INDEX IF NOT EXISTS idx_player_skins_last_known_name ON player_skins (last_known_name)",
+            "CREATE INDEX IF NOT EXISTS idx_player_skins_timestamp ON player_skins (timestamp)",
+            "CREATE TABLE IF NOT EXISTS url_skins (url TEXT NOT NULL, skin_variant INTEGER NOT NULL, mine_skin_id TEXT, value BLOB NOT NULL, signature BLOB NOT NULL, PRIMARY KEY (url, skin_variant)) WITHOUT ROWID",
+            "CREATE TABLE IF NOT EXISTS url_index (url TEXT NOT NULL PRIMARY KEY, skin_variant INTEGER) WITHOUT ROWID",
+            "CREATE TABLE IF NOT EXISTS custom_skins (sample_id INTEGER PRIMARY KEY, name TEXT NOT NULL COLLATE NOCASE UNIQUE, value BLOB NOT NULL, signature BLOB NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS legacy_skins (name TEXT NOT NULL COLLATE NOCASE PRIMARY KEY, value TEXT NOT NULL, signature TEXT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS legacy_players (name TEXT NOT NULL COLLATE NOCASE PRIMARY KEY, skin_name TEXT NOT NULL)"
+    );
+    @Language("sql")
+    private static final String UPSERT_PLAYER = "INSERT INTO players (uuid, skin_identifier, skin_type, skin_variant) VALUES (?, ?, ?, ?)"
+            + " ON CONFLICT (uuid) DO UPDATE SET skin_identifier=excluded.skin_identifier, skin_type=excluded.skin_type, skin_variant=excluded.skin_variant";
+    @Language("sql")
+    private static final String UPSERT_PLAYER_SKIN = "INSERT INTO player_skins (uuid, last_known_name, value, signature, timestamp) VALUES (?, ?, ?, ?, ?)"
+            + " ON CONFLICT (uuid) DO UPDATE SET last_known_name=excluded.last_known_name, value=excluded.value, signature=excluded.signature, timestamp=excluded.timestamp";
+    @Language("sql")
+    private static final String UPSERT_URL_SKIN = "INSERT INTO url_skins (url, skin_variant, mine_skin_id, value, signature) VALUES (?, ?, ?, ?, ?)"
+            + " ON CONFLICT (url, skin_variant) DO UPDATE SET mine_skin_id=excluded.mine_skin_id, value=excluded.value, signature=excluded.signature";
+    @Language("sql")
+    private static final String UPSERT_URL_INDEX = "INSERT INTO url_index (url, skin_variant) VALUES (?, ?)"
+            + " ON CONFLICT (url) DO UPDATE SET skin_variant=excluded.skin_variant";
+    @Language("sql")
+    private static final String UPSERT_CUSTOM_SKIN = "INSERT INTO custom_skins (name, value, signature) VALUES (?, ?, ?)"
+            + " ON CONFLICT (name) DO UPDATE SET value=excluded.value, signature=excluded.signature";
+    @Language("sql")
+    private static final String UPSERT_LEGACY_SKIN = "INSERT OR REPLACE INTO legacy_skins (name, value, signature) VALUES (?, ?, ?)";
+    @Language("sql")
+    private static final String UPSERT_LEGACY_PLAYER = "INSERT OR REPLACE INTO legacy_players (name, skin_name) VALUES (?, ?)";
+    @Language("sql")
+    private static final String UPSERT_CACHE = "INSERT INTO cache (name, uuid, timestamp) VALUES (?, ?, ?)"
+            + " ON CONFLICT (name) DO UPDATE SET uuid=excluded.uuid, timestamp=excluded.timestamp";
+    // The sub-select walks the timestamp index, so every chunk only touches the rows it deletes
+    @Language("sql")
+    private static final String PURGE_PLAYER_SKINS = "DELETE FROM player_skins WHERE sample_id IN (SELECT sample_id FROM player_skins"
+            + " WHERE timestamp<=? AND timestamp<>0 ORDER BY timestamp LIMIT " + PURGE_CHUNK_SIZE + ")";
+    // A skin saved again counts as used, so the timestamp bounds the last access as well
+    @Language("sql")
+    private static final String PURGE_UNUSED_PLAYER_SKINS = "DELETE FROM player_skins WHERE sample_id IN (SELECT sample_id FROM player_skins"
+            + " WHERE last_access<=? AND timestamp<=? AND timestamp<>0 ORDER BY last_access LIMIT " + PURGE_CHUNK_SIZE + ")";
+    @Language("sql")
+    private static final String TOUCH_PLAYER_SKIN = "UPDATE player_skins SET last_access=? WHERE uuid=? AND last_access<?";
+    private final SQLiteProvider sqlite;
+    private final SettingsManager settings;
+    private final SRLogger logger;
+    private final Path dataFolder;
+    // Skin files of the file adapter may reference their textures in its texture store
+    private final FileTextureStore fileTextures;
+    private final Gson gson = new Gson();
+    // Checked once on startup, so logins do not have to query the legacy tables
+    private volatile boolean legacyPlayersPresent;
+    private volatile boolean legacySkinsPresent;
+
+    @Inject
+    public SQLiteAdapter(SQLiteProvider sqlite, SettingsManager settings, SRLogger logger, SRPlugin plugin) {
+        this.sqlite = sqlite;
+        this.settings = settings;
+        this.logger = logger;
+        this.dataFolder = plugin.getDataFolder();
+        this.fileTextures = new FileTextureStore(dataFolder.resolve("textures"));
+    }
+
+    @Override
+    public void init() {
+        int readers = Math.max(1, settings.getProperty(StorageConfig.SQLITE_READER_POOL_SIZE));
+        try {
+            sqlite.open(dataFolder.resolve(DATABASE_FILE), readers);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (String statement : SCHEMA) {
+            sqlite.execute(statement);
+        }
+
+        migrateLastAccess();
+
+        try {
+            if (getUserVersion() < FILES_IMPORTED_VERSION) {
+                importFiles();
+                sqlite.execute("PRAGMA user_version = " + FILES_IMPORTED_VERSION);
+            }
+        } catch (SQLException | IOException e) {
+            logger.severe("Failed to import the files of the file storage", e);
+        }
+
+        if (hasRows("legacy_players")) {
+            migrateLegacyPlayersInBulk();
+        }
+
+        legacyPlayersPresent = hasRows("legacy_players");
+        legacySkinsPresent = hasRows("legacy_skins");
+    }
+
+    private void migrateLastAccess() {
+        try {
+            // Existing rows keep 0, until a skin is used again its timestamp counts as its last access
+            boolean present = sqlite.queryFirst("SELECT 1 FROM pragma_table_info('player_skins') WHERE name='last_access'", crs -> true).isPresent();
+            if (!present) {
+                sqlite.execute("ALTER TABLE player_skins ADD COLUMN last_access INTEGER NOT NULL DEFAULT 0");
+            }
+        } catch (SQLException e) {
+            logger.severe("Failed to add the last access column", e);
+        }
+
+        sqlite.execute("CREATE INDEX IF NOT EXISTS idx_player_skins_last_access ON player_skins (last_access)");
+    }
+
+    /**
+     * Closes all connections, a later {@link #init()} opens them again.
+     */
+    public void close() {
+        sqlite.close();
+    }
+
+    private int getUserVersion() throws SQLException {
+        return sqlite.queryFirst("PRAGMA user_version", crs -> crs.getInt(1)).orElse(0);
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private boolean hasRows(String table) {
+        try {
+            return sqlite.queryFirst("SELECT 1 FROM " + table + " LIMIT 1", crs -> true).isPresent();
+        } catch (SQLException e) {
+            logger.severe("Failed to check " + table + " for rows", e);
+            return false;
+        }
+    }
+
+    /**
+     * Copies the records of the file adapter, they are left in place as a backup.
+     */
+    private void importFiles() throws IOException, SQLException {
+        List<Path> files = new ArrayList<>();
+        for (String folder : FILE_FOLDERS) {
+            Path path = dataFolder.resolve(folder);
+            if (!Files.isDirectory(path)) {
+                continue;
+            }
+
+            // Covers both the flat and the sharded layout
+            try (Stream<Path> stream = Files.walk(path, 3)) {
+                stream.filter(Files::isRegularFile).forEach(files::add);
+            }
+        }
+
+        if (files.isEmpty()) {
+            return;
+        }
+
+        logger.info(String.format("Importing %d files into the SQLite database...", files.size()));
+
+        int imported = 0;
+        for (int i = 0; i < files.size(); i += IMPORT_CHUNK_SIZE) {
+            Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+            for (Path file : files.subList(i, Math.min(files.size(), i + IMPORT_CHUNK_SIZE))) {
+                try {
+                    if (importFile(file, batches)) {
+                        imported++;
+                    }
+                } catch (Exception e) {
+                    logger.warning("Failed to import " + file.getFileName() + " into the SQLite database", e);
+                }
+            }
+
+            sqlite.executeBatch(batches);
+        }
+
+        logger.info(String.format("Imported %d records into the SQLite database, the old files can be deleted", imported));
+    }
+
+    private boolean importFile(Path file, Map<String, List<Object[]>> batches) throws IOException {
+        String fileName = file.getFileName().toString();
+        int lastDotIndex = fileName.lastIndexOf(".");
+        if (lastDotIndex == -1) {
+            return false;
+        }
+
+        byte[] content = Files.readAllBytes(file);
+        String query;
+        Object[] row;
+        switch (fileName.substring(lastDotIndex + 1)) {
+            case "player" -> {
+                PlayerData data = FileRecordCodec.PLAYER.read(content);
+                query = UPSERT_PLAYER;
+                row = playerDataParameters(data.getUniqueId(), data);
+            }
+            case "playerskin" -> {
+                PlayerSkinData data = FileRecordCodec.PLAYER_SKIN.read(content, fileTextures::load);
+                query = UPSERT_PLAYER_SKIN;
+                row = playerSkinDataParameters(data.getUniqueId(), data);
+            }
+            case "urlskin" -> {
+                URLSkinData data = FileRecordCodec.URL_SKIN.read(content, fileTextures::load);
+                query = UPSERT_URL_SKIN;
+                row = urlSkinDataParameters(data.getUrl(), data);
+            }
+            case "urlindex" -> {
+                URLIndexData data = FileRecordCodec.URL_INDEX.read(content);
+                query = UPSERT_URL_INDEX;
+                row = new Object[]{data.getUrl(), MySQLColumns.toCode(data.getSkinVariant())};
+            }
+            case "customskin" -> {
+                CustomSkinData data = FileRecordCodec.CUSTOM_SKIN.read(content, fileTextures::load);
+                query = UPSERT_CUSTOM_SKIN;
+                row = customSkinDataParameters(data.getSkinName(), data);
+            }
+            case "legacyskin" -> {
+                LegacySkinData data = gson.fromJson(new String(content, StandardCharsets.UTF_8), LegacySkinFile.class).toLegacySkinData();
+                query = UPSERT_LEGACY_SKIN;
+                row = new Object[]{data.getSkinName(), data.getProperty().getValue(), data.getProperty().getSignature()};
+            }
+            case "legacyplayer" -> {
+                LegacyPlayerData data = gson.fromJson(new String(content, StandardCharsets.UTF_8), LegacyPlayerFile.class).toLegacyPlayerData();
+                query = UPSERT_LEGACY_PLAYER;
+                row = new Object[]{data.getPlayerName(), data.getSkinName()};
+            }
+            case "mojangcache" -> {
+                MojangCacheData data = FileRecordCodec.CACHE.read(content);
+                query = UPSERT_CACHE;
+                row = cacheDataParameters(fileName.substring(0, lastDotIndex), data);
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        batches.computeIfAbsent(query, k -> new ArrayList<>()).add(row);
+        return true;
+    }
+
+    private void migrateLegacyPlayersInBulk() {
+        try {
+            List<LegacyPlayerData> legacyPlayers = sqlite.query("SELECT * FROM legacy_players",
+                    crs -> LegacyPlayerData.of(crs.getString("name"), crs.getString("skin_name")));
+
+            List<Object[]> removals = new ArrayList<>();
+            for (String migratedName : migrateLegacyPlayers(legacyPlayers)) {
+                removals.add(new Object[]{migratedName});
+            }
+            sqlite.executeBatch(Map.of("DELETE FROM legacy_players WHERE name=?", removals));
+
+            if (!removals.isEmpty()) {
+                logger.info(String.format("Migrated %d legacy players with a known UUID, the others are migrated on their next login", removals.size()));
+            }
+        } catch (SQLException | StorageException e) {
+            logger.warning("Failed to migrate legacy players", e);
+        }
+    }
+
+    @Override
+    public Optional<PlayerData> getPlayerData(UUID uuid) throws StorageException {
+        try {
+            return sqlite.queryFirst("SELECT * FROM players WHERE uuid=?", SQLiteAdapter::mapPlayerData, MySQLColumns.toBinary(uuid));
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public Map<UUID, PlayerData> getPlayerDataBatch(Collection<UUID> uuids) throws StorageException {
+        Map<UUID, PlayerData> result = new HashMap<>();
+        try {
+            for (List<byte[]> chunk : partition(toBinary(uuids))) {
+                sqlite.forEachRow("SELECT * FROM players WHERE uuid IN (" + placeholders(chunk.size()) + ")", crs -> {
+                    PlayerData data = mapPlayerData(crs);
+                    result.put(data.getUniqueId(), data);
+                }, chunk.toArray());
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setPlayerData(UUID uuid, PlayerData data) {
+        sqlite.execute(UPSERT_PLAYER, playerDataParameters(uuid, data));
+    }
+
+    @Override
+    public void setPlayerDataBatch(Map<UUID, PlayerData> data) {
+        List<Object[]> rows = new ArrayList<>(data.size());
+        for (Map.Entry<UUID, PlayerData> entry : data.entrySet()) {
+            rows.add(playerDataParameters(entry.getKey(), entry.getValue()));
+        }
+
+        try {
+            sqlite.executeBatch(Map.of(UPSERT_PLAYER, rows));
+        } catch (SQLException e) {
+            logger.warning("Failed to save player data of " + data.size() + " players", e);
+        }
+    }
+
+    private static Object[] playerDataParameters(UUID uuid, PlayerData data) {
+        SkinIdentifier identifier = data.getSkinIdentifier();
+        boolean hasSkin = identifier != null;
+
+        // Variant is only present on url skins
+        return new Object[]{
+                MySQLColumns.toBinary(uuid),
+                hasSkin ? identifier.getIdentifier() : null,
+                hasSkin ? MySQLColumns.toCode(identifier.getSkinType()) : null,
+                hasSkin ? MySQLColumns.toCode(identifier.getSkinVariant()) : null
+        };
+    }
+
+    private static PlayerData mapPlayerData(ResultSet crs) throws SQLException {
+        UUID uuid = MySQLColumns.toUUID(crs.getBytes("uuid"));
+        String skinIdentifier = crs.getString("skin_identifier");
+        SkinType skinType = MySQLColumns.readSkinType(crs, "skin_type");
+        SkinVariant skinVariant = MySQLColumns.readSkinVariant(crs, "skin_variant");
+
+        SkinIdentifier identifier = skinIdentifier != null && skinType != null ?
+                SkinIdentifier.of(skinIdentifier, skinVariant, skinType) : null;
+
+        return PlayerData.of(uuid, identifier);
+    }
+
+    @Override
+    public Optional<PlayerSkinData> getPlayerSkinData(UUID uuid) throws StorageException {
+        try {
+            return sqlite.queryFirst("SELECT * FROM player_skins WHERE uuid=?", SQLiteAdapter::mapPlayerSkinData, MySQLColumns.toBinary(uuid));
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public Map<UUID, PlayerSkinData> getPlayerSkinDataBatch(Collection<UUID> uuids) throws StorageException {
+        Map<UUID, PlayerSkinData> result = new HashMap<>();
+        try {
+            for (List<byte[]> chunk : partition(toBinary(uuids))) {
+                sqlite.forEachRow("SELECT * FROM player_skins WHERE uuid IN (" + placeholders(chunk.size()) + ")", crs -> {
+                    PlayerSkinData data = mapPlayerSkinData(crs);
+                    result.put(data.getUniqueId(), data);
+                }, chunk.toArray());
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+
+        return result;
+    }
+
+    private static PlayerSkinData mapPlayerSkinData(ResultSet crs) throws SQLException {
+        UUID uuid = MySQLColumns.toUUID(crs.getBytes("uuid"));
+        String lastKnownName = crs.getString("last_known_name");
+        String value = readPayload(crs, "value");
+        String signature = readPayload(crs, "signature");
+        long timestamp = crs.getLong("timestamp");
+
+        return PlayerSkinData.of(uuid, lastKnownName, SkinProperty.of(value, signature), timestamp);
+    }
+
+    /**
+     * Canonical base64 is stored decoded as a blob. Anything else is kept as text,
+     * the column has no type of its own, so reading tells both apart.
+     */
+    private static Object payloadParameter(String payload) {
+        return MySQLColumns.decodeCanonicalPayload(payload).<Object>map(bytes -> bytes).orElse(payload);
+    }
+
+    private static String readPayload(ResultSet crs, String column) throws SQLException {
+        Object payload = crs.getObject(column);
+        return payload instanceof byte[] bytes ? MySQLColumns.encodePayload(bytes) : (String) payload;
+    }
+
+    private static Object[] playerSkinDataParameters(UUID uuid, PlayerSkinData skinData) {
+        return new Object[]{
+                MySQLColumns.toBinary(uuid),
+                skinData.getLastKnownName(),
+                payloadParameter(skinData.getProperty().getValue()),
+                payloadParameter(skinData.getProperty().getSignature()),
+                skinData.getTimestamp()
+        };
+    }
+
+    @Override
+    public void removePlayerSkinData(UUID uuid) {
+        sqlite.execute("DELETE FROM player_skins WHERE uuid=?", MySQLColumns.toBinary(uuid));
+    }
+
+    @Override
+    public void setPlayerSkinData(UUID uuid, PlayerSkinData skinData) {
+        sqlite.execute(UPSERT_PLAYER_SKIN, playerSkinDataParameters(uuid, skinData));
+    }
+
+    @Override
+    public Optional<URLSkinData> getURLSkinData(String url, SkinVariant skinVariant) throws StorageException {
+        try {
+            return sqlite.queryFirst("SELECT * FROM url_skins WHERE url=? AND skin_variant=?", crs -> {
+                String mineSkinId = crs.getString("mine_skin_id");
+                String value = readPayload(crs, "value");
+                String signature = readPayload(crs, "signature");
+
+                return URLSkinData.of(url, mineSkinId, SkinProperty.of(value, signature), skinVariant);
+            }, url, MySQLColumns.toCode(skinVariant));
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void removeURLSkinData(String url, SkinVariant skinVariant) {
+        sqlite.execute("DELETE FROM url_skins WHERE url=? AND skin_variant=?", url, MySQLColumns.toCode(skinVariant));
+    }
+
+    @Override
+    public void setURLSkinData(String url, URLSkinData skinData) {
+        sqlite.execute(UPSERT_URL_SKIN, urlSkinDataParameters(url, skinData));
+    }
+
+    private static Object[] urlSkinDataParameters(String url, URLSkinData skinData) {
+        return new Object[]{
+                url,
+                MySQLColumns.toCode(skinData.getSkinVariant()),
+                skinData.getMineSkinId(),
+                payloadParameter(skinData.getProperty().getValue()),
+                payloadParameter(skinData.getProperty().getSignature())
+        };
+    }
+
+    @Override
+    public Optional<URLIndexData> getURLSkinIndex(String url) throws StorageException {
+        try {
+            return sqlite.queryFirst("SELECT * FROM url_index WHERE url=?", crs -> {
+                SkinVariant variant = MySQLColumns.readSkinVariant(crs, "skin_variant");
+
+                return URLIndexData.of(url, variant);
+            }, url);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void removeURLSkinIndex(String url) {
+        sqlite.execute("DELETE FROM url_index WHERE url=?", url);
+    }
+
+    @Override
+    public void setURLSkinIndex(String url, URLIndexData skinData) {
+        sqlite.execute(UPSERT_URL_INDEX, url, MySQLColumns.toCode(skinData.getSkinVariant()));
+    }
+
+    @Override
+    public Optional<CustomSkinData> getCustomSkinData(String skinName) throws StorageException {
+        String sanitizedName = CustomSkinData.sanitizeCustomSkinName(skinName);
+        try {
+            return sqlite.queryFirst("SELECT * FROM custom_skins WHERE name=?", crs -> {
+                String value = readPayload(crs, "value");
+                String signature = readPayload(crs, "signature");
+
+                return CustomSkinData.of(sanitizedName, SkinProperty.of(value, signature));
+            }, sanitizedName);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void removeCustomSkinData(String skinName) {
+        sqlite.execute("DELETE FROM custom_skins WHERE name=?", CustomSkinData.sanitizeCustomSkinName(skinName));
+    }
+
+    @Override
+    public void setCustomSkinData(String skinName, CustomSkinData skinData) {
+        sqlite.execute(UPSERT_CUSTOM_SKIN, customSkinDataParameters(skinName, skinData));
+    }
+
+    private static Object[] customSkinDataParameters(String skinName, CustomSkinData skinData) {
+        return new Object[]{
+                CustomSkinData.sanitizeCustomSkinName(skinName),
+                payloadParameter(skinData.getProperty().getValue()),
+                payloadParameter(skinData.getProperty().getSignature())
+        };
+    }
+
+    @Override
+    public Optional<LegacySkinData> getLegacySkinData(String skinName) throws StorageException {
+        if (!legacySkinsPresent) {
+            return Optional.empty();
+        }
+
+        try {
+            return sqlite.queryFirst("SELECT * FROM legacy_skins WHERE name=?", crs -> {
+                String value = crs.getString("value");
+                String signature = crs.getString("signature");
+
+                return LegacySkinData.of(skinName, SkinProperty.of(value, signature));
+            }, skinName);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void removeLegacySkinData(String skinName) {
+        if (legacySkinsPresent) {
+            sqlite.execute("DELETE FROM legacy_skins WHERE name=?", skinName);
+        }
+    }
+
+    @Override
+    public Optional<LegacyPlayerData> getLegacyPlayerData(String playerName) throws StorageException {
+        if (!legacyPlayersPresent) {
+            return Optional.empty();
+        }
+
+        try {
+            return sqlite.queryFirst("SELECT * FROM legacy_players WHERE name=?", crs -> {
+                String skinName = crs.getString("skin_name");
+
+                return LegacyPlayerData.of(playerName, skinName);
+            }, playerName);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void removeLegacyPlayerData(String playerName) {
+        if (legacyPlayersPresent) {
+            sqlite.execute("DELETE FROM legacy_players WHERE name=?", playerName);
+        }
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    @Override
+    public Map<String, String> getStoredRandomSkins(int limit) {
+        List<SampleRange> ranges = new ArrayList<>();
+        getSampleRange("player_skins", "last_known_name").ifPresent(ranges::add);
+        if (settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)) {
+            getSampleRange("custom_skins", "name").ifPresent(ranges::add);
+        }
+
+        Map<String, String> skins = new LinkedHashMap<>();
+        long totalSize = ranges.stream().mapToLong(SampleRange::size).sum();
+        if (totalSize == 0 || limit <= 0) {
+            return skins;
+        }
+
+        // Small tables are cheaper to read whole than to probe repeatedly
+        if (totalSize <= limit) {
+            for (SampleRange range : ranges) {
+                querySkins("SELECT " + range.nameColumn() + " AS name, value FROM " + range.table()
+                        + " WHERE " + range.nameColumn() + " IS NOT NULL", skins);
+            }
+
+            return skins;
+        }
+
+        // Gaps and duplicate picks can leave a round short, so retry a few times for the missing rows
+        for (int attempt = 0; attempt < RANDOM_SAMPLE_ATTEMPTS && skins.size() < limit; attempt++) {
+            for (int i = skins.size(); i < limit; i++) {
+                long pick = ThreadLocalRandom.current().nextLong(totalSize);
+                for (SampleRange range : ranges) {
+                    if (pick < range.size()) {
+                        // Each probe is a single seek on the rowid, without a round trip to a server it needs no batching
+                        querySkins("SELECT " + range.nameColumn() + " AS name, value FROM " + range.table()
+                                + " WHERE sample_id >= ? AND " + range.nameColumn() + " IS NOT NULL"
+                                + " ORDER BY sample_id LIMIT 1", skins, range.minId() + pick);
+                        break;
+                    }
+
+                    pick -= range.size();
+                }
+            }
+        }
+
+        return skins;
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private Optional<SampleRange> getSampleRange(String table, String nameColumn) {
+        try {
+            // MIN/MAX of the rowid are read from the ends of the table b-tree
+            return sqlite.queryFirst("SELECT MIN(sample_id) AS min_id, MAX(sample_id) AS max_id FROM " + table, crs -> {
+                long minId = crs.getLong("min_id");
+                if (crs.wasNull()) {
+                    return null;
+                }
+
+                return new SampleRange(table, nameColumn, minId, crs.getLong("max_id"));
+            });
+        } catch (SQLException e) {
+            logger.warning("Failed to get sample range of " + table, e);
+            return Optional.empty();
+        }
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    private void querySkins(String query, Map<String, String> skins, Object... vars) {
+        try {
+            sqlite.forEachRow(query, crs -> skins.putIfAbsent(crs.getString("name"), readPayload(crs, "value")), vars);
+        } catch (SQLException e) {
+            logger.warning("Failed to get stored skins", e);
+        }
+    }
+
+    @SuppressFBWarnings(justification = "SQL injection is not possible here", value = {"SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING"})
+    @Override
+    public GUISkinPage getStoredGUISkins(int offset, @Nullable GUISkinCursor cursor) {
+        // Without a cursor, only the first page can be read by key
+        boolean keyset = cursor != null || offset == 0;
+        int branchLimit = keyset ? SharedGUI.HEAD_COUNT_PER_PAGE : offset + SharedGUI.HEAD_COUNT_PER_PAGE;
+        List<Object> parameters = new ArrayList<>();
+
+        // Every branch is read in name index order and cut off early, SQLite needs the sub-selects to apply a LIMIT per branch
+        StringBuilder query = new StringBuilder("SELECT * FROM (");
+        query.append("SELECT * FROM (SELECT 'player' AS type, last_known_name AS name, uuid, value")
+                .append(" FROM player_skins WHERE last_known_name IS NOT NULL");
+        appendKeysetCondition(query, parameters, "last_known_name", "uuid", SkinType.PLAYER, cursor);
+        query.append(" ORDER BY last_known_name, uuid LIMIT ").append(branchLimit).append(")");
+
+        if (settings.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)) {
+            query.append(" UNION ALL ");
+
+            query.append("SELECT * FROM (SELECT 'custom' AS type, name, NULL AS uuid, value FROM custom_skins WHERE 1=1");
+            appendKeysetCondition(query, parameters, "name", null, SkinType.CUSTOM, cursor);
+
+            if (settings.getProperty(GUIConfig.CUSTOM_GUI_ONLY)) {
+                List<String> customSkins = settings.getProperty(GUIConfig.CUSTOM_GUI_SKINS);
+                if (!customSkins.isEmpty()) {
+                    query.append(" AND name IN (").append(placeholders(customSkins.size())).append(")");
+                    for (String customSkin : customSkins) {
+                        parameters.add(CustomSkinData.sanitizeCustomSkinName(customSkin));
+                    }
+                }
+            }
+
+            query.append(" ORDER BY name LIMIT ").append(branchLimit).append(")");
+        }
+
+        query.append(") ORDER BY name COLLATE NOCASE, type, uuid LIMIT ").append(SharedGUI.HEAD_COUNT_PER_PAGE);
+        if (!keyset) {
+            query.append(" OFFSET ").append(offset);
+        }
+
+        Map<String, String> skins = new LinkedHashMap<>();
+        GUISkinCursor[] last = new GUISkinCursor[1];
+        int[] rows = new int[1];
+        try {
+            sqlite.forEachRow(query.toString(), crs -> {
+                String name = crs.getString("name");
+                skins.put(name, readPayload(crs, "value"));
+                SkinType type = SkinType.valueOf(crs.getString("type").toUpperCase(Locale.ROOT));
+                last[0] = new GUISkinCursor(name, type, type == SkinType.PLAYER ? MySQLColumns.toUUID(crs.getBytes("uuid")).toString() : name);
+                rows[0]++;
+            }, parameters.toArray());
+        } catch (SQLException e) {
+            logger.warning("Failed to get stored skins", e);
+        }
+
+        // A short page is the last one
+        return new GUISkinPage(skins, rows[0] == SharedGUI.HEAD_COUNT_PER_PAGE ? last[0] : null);
+    }
+
+    /**
+     * Restricts a GUI branch to rows sorting after the cursor, see the MySQL adapter for how the type is folded in.
+     */
+    private static void appendKeysetCondition(StringBuilder query, List<Object> parameters, String column, @Nullable String keyColumn,
+                                              SkinType branchType, @Nullable GUISkinCursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+
+        int typeOrder = branchType.name().toLowerCase(Locale.ROOT).compareTo(cursor.typeName());
+        if (typeOrder > 0) {
+            query.append(" AND ").append(column).append(" >= ?");
+            parameters.add(cursor.name());
+        } else if (typeOrder == 0 && keyColumn != null) {
+            query.append(" AND ").append(column).append(" >= ? AND (").append(column).append(" > ? OR ").append(keyColumn).append(" > ?)");
+            parameters.add(cursor.name());
+            parameters.add(cursor.name());
+            parameters.add(MySQLColumns.toBinary(UUID.fromString(cursor.key())));
+        } else {
+            query.append(" AND ").append(column).append(" > ?");
+            parameters.add(cursor.name());
+        }
+    }
+
+    @Override
+    public int purgeStoredOldSkins(long targetPurgeTimestamp, IntConsumer progress) throws StorageException {
+        return purgePlayerSkins(PURGE_PLAYER_SKINS, progress, targetPurgeTimestamp);
+    }
+
+    @Override
+    public void touchPlayerSkins(Map<UUID, Long> lastAccess) throws StorageException {
+        List<Object[]> rows = new ArrayList<>(lastAccess.size());
+        for (Map.Entry<UUID, Long> entry : lastAccess.entrySet()) {
+            rows.add(new Object[]{entry.getValue(), MySQLColumns.toBinary(entry.getKey()), entry.getValue()});
+        }
+
+        try {
+            sqlite.executeBatch(Map.of(TOUCH_PLAYER_SKIN, rows));
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public int purgeUnusedPlayerSkins(long targetLastAccess, IntConsumer progress) throws StorageException {
+        return purgePlayerSkins(PURGE_UNUSED_PLAYER_SKINS, progress, targetLastAccess, targetLastAccess);
+    }
+
+    private int purgePlayerSkins(@Language("sql") String purgeQuery, IntConsumer progress, Object... vars) throws StorageException {
+        int removed = 0;
+        try {
+            int deleted;
+            do {
+                // Every chunk is its own transaction, so logins can keep writing skins in between
+                deleted = sqlite.update(purgeQuery, vars);
+                removed += deleted;
+                progress.accept(removed);
+            } while (deleted >= PURGE_CHUNK_SIZE);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void forEachSkinReference(Consumer<SkinIdentifier> consumer) throws StorageException {
+        try {
+            if (legacyPlayersPresent) {
+                sqlite.forEachRow("SELECT skin_name FROM legacy_players", crs ->
+                        consumer.accept(SkinIdentifier.of(crs.getString("skin_name"), null, SkinType.LEGACY)));
+            }
+
+            sqlite.forEachRow("SELECT * FROM players WHERE skin_identifier IS NOT NULL", crs -> {
+                SkinIdentifier identifier = mapPlayerData(crs).getSkinIdentifier();
+                if (identifier != null) {
+                    consumer.accept(identifier);
+                }
+            });
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public void forEachCollectableSkin(Consumer<StoredSkinKey> consumer) throws StorageException {
+        try {
+            sqlite.forEachRow("SELECT uuid, timestamp FROM player_skins", crs ->
+                    consumer.accept(StoredSkinKey.playerSkin(MySQLColumns.toUUID(crs.getBytes("uuid")), crs.getLong("timestamp"))));
+            sqlite.forEachRow("SELECT url, skin_variant FROM url_skins", crs ->
+                    consumer.accept(StoredSkinKey.urlSkin(crs.getString("url"), MySQLColumns.readSkinVariant(crs, "skin_variant"))));
+            sqlite.forEachRow("SELECT url FROM url_index", crs ->
+                    consumer.accept(StoredSkinKey.urlIndex(crs.getString("url"))));
+
+            if (legacySkinsPresent) {
+                sqlite.forEachRow("SELECT name FROM legacy_skins", crs ->
+                        consumer.accept(StoredSkinKey.legacySkin(crs.getString("name"))));
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public Optional<MojangCacheData> getCachedUUID(String playerName) throws StorageException {
+        try {
+            return sqlite.queryFirst("SELECT * FROM cache WHERE name=?", SQLiteAdapter::mapCacheData, playerName);
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    @Override
+    public Map<String, MojangCacheData> getCachedUUIDBatch(Collection<String> playerNames) throws StorageException {
+        Map<String, MojangCacheData> result = new HashMap<>();
+        // The name column is case-insensitive, so rows are matched back to the requested spelling
+        Map<String, String> requested = new LinkedHashMap<>();
+        for (String playerName : playerNames) {
+            requested.putIfAbsent(playerName.toLowerCase(Locale.ROOT), playerName);
+        }
+
+        try {
+            for (List<String> chunk : partition(new ArrayList<>(requested.values()))) {
+                sqlite.forEachRow("SELECT * FROM cache WHERE name IN (" + placeholders(chunk.size()) + ")", crs -> {
+                    String requestedName = requested.get(crs.getString("name").toLowerCase(Locale.ROOT));
+                    if (requestedName != null) {
+                        result.put(requestedName, mapCacheData(crs));
+                    }
+                }, chunk.toArray());
+            }
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+
+        // Other spellings of the same name share the row
+        for (String playerName : playerNames) {
+            MojangCacheData data = result.get(requested.get(playerName.toLowerCase(Locale.ROOT)));
+            if (data != null) {
+                result.put(playerName, data);
+            }
+        }
+
+        return result;
+    }
+
+    private static MojangCacheData mapCacheData(ResultSet crs) throws SQLException {
+        UUID uuid = MySQLColumns.toUUID(crs.getBytes("uuid"));
+        long timestamp = crs.getLong("timestamp");
+
+        return MojangCacheData.of(uuid, timestamp);
+    }
+
+    private static Object[] cacheDataParameters(String playerName, MojangCacheData mojangCacheData) {
+        return new Object[]{
+                playerName,
+                MySQLColumns.toBinary(mojangCacheData.getUniqueId().orElse(null)),
+                mojangCacheData.getTimestamp()
+        };
+    }
+
+    @Override
+    public void setCachedUUID(String playerName, MojangCacheData mojangCacheData) {
+        sqlite.execute(UPSERT_CACHE, cacheDataParameters(playerName, mojangCacheData));
+    }
+
+    @Override
+    public void setCachedUUIDBatch(Map<String, MojangCacheData> data) {
+        List<Object[]> rows = new ArrayList<>(data.size());
+        for (Map.Entry<String, MojangCacheData> entry : data.entrySet()) {
+            rows.add(cacheDataParameters(entry.getKey(), entry.getValue()));
+        }
+
+        try {
+            sqlite.executeBatch(Map.of(UPSERT_CACHE, rows));
+        } catch (SQLException e) {
+            logger.warning("Failed to save cached UUIDs of " + data.size() + " players", e);
+        }
+    }
+
+    private static List<byte[]> toBinary(Collection<UUID> uuids) {
+        return new LinkedHashSet<>(uuids).stream().map(MySQLColumns::toBinary).toList();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static <T> List<List<T>> partition(List<T> list) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += BATCH_CHUNK_SIZE) {
+            chunks.add(list.subList(i, Math.min(list.size(), i + BATCH_CHUNK_SIZE)));
+        }
+
+        return chunks;
+    }
+
+    private record SampleRange(String table, String nameColumn, long minId, long maxId) {
+        private long size() {
+            return maxId - minId + 1;
+        }
+    }
+}
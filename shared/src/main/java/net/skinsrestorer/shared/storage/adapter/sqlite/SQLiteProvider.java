@@ -0,0 +1,260 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.adapter.sqlite;
+
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLProvider;
+import net.skinsrestorer.shared.storage.adapter.mysql.RowMapper;
+import org.intellij.lang.annotations.Language;
+import org.sqlite.SQLiteConfig;
+
+import javax.inject.Inject;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connections to an embedded SQLite database in WAL mode.
+ * SQLite only allows one writer at a time, so all writes share a single connection behind a lock
+ * instead of failing with busy errors, while reads use a pool of query-only connections that never block on the writer.
+ */
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class SQLiteProvider {
+    private static final int BUSY_TIMEOUT_MILLIS = 10_000;
+    private final SRLogger logger;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Connection writer;
+    private volatile BlockingQueue<Connection> readers;
+
+    public synchronized void open(Path databaseFile, int readerCount) throws SQLException {
+        close();
+
+        String url = "jdbc:sqlite:" + databaseFile.toAbsolutePath();
+
+        // The writer switches the database to WAL, which is persistent, so readers do not have to
+        SQLiteConfig writerConfig = new SQLiteConfig();
+        writerConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // Durable on every checkpoint, a power failure can only lose the latest commits
+        writerConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        writerConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        writer = writerConfig.createConnection(url);
+
+        readers = new ArrayBlockingQueue<>(readerCount);
+        for (int i = 0; i < readerCount; i++) {
+            SQLiteConfig readerConfig = new SQLiteConfig();
+            readerConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+            Connection reader = readerConfig.createConnection(url);
+            try (Statement statement = reader.createStatement()) {
+                statement.execute("PRAGMA query_only = true");
+            }
+
+            readers.add(reader);
+        }
+    }
+
+    public synchronized void close() {
+        if (readers != null) {
+            for (Connection reader : readers) {
+                closeQuietly(reader);
+            }
+            readers = null;
+        }
+
+        if (writer != null) {
+            writeLock.lock();
+            try {
+                // Checkpoints the WAL back into the database file
+                closeQuietly(writer);
+                writer = null;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warning("Failed to close SQLite connection", e);
+        }
+    }
+
+    /**
+     * Runs a data-changing statement and logs failures, like {@link MySQLProvider#execute(String, Object...)}.
+     */
+    public void execute(@Language("sql") final String query, final Object... vars) {
+        try {
+            update(query, vars);
+        } catch (SQLException e) {
+            logger.warning("SQLite error: " + e.getMessage(), e);
+
+            if (SRPlugin.isUnitTest()) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * Runs a data-changing statement on the writer and reports failures to the caller instead of logging them.
+     *
+     * @return Amount of affected rows
+     */
+    public int update(@Language("sql") final String query, final Object... vars) throws SQLException {
+        writeLock.lock();
+        try {
+            try (PreparedStatement ps = getWriter().prepareStatement(query)) {
+                fillPreparedStatement(ps, vars);
+
+                return ps.executeUpdate();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a query and maps every row while the connection is still open.
+     */
+    public <T> List<T> query(@Language("sql") final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+        List<T> results = new ArrayList<>();
+        forEachRow(query, resultSet -> results.add(mapper.map(resultSet)), vars);
+        return results;
+    }
+
+    /**
+     * Runs a query and maps only the first row, if there is one.
+     */
+    public <T> Optional<T> queryFirst(@Language("sql") final String query, final RowMapper<T> mapper, final Object... vars) throws SQLException {
+        BlockingQueue<Connection> pool = getReaders();
+        Connection connection = borrow(pool);
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            fillPreparedStatement(ps, vars);
+            ps.setMaxRows(1);
+
+            try (ResultSet resultSet = ps.executeQuery()) {
+                return resultSet.next() ? Optional.ofNullable(mapper.map(resultSet)) : Optional.empty();
+            }
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    /**
+     * Streams the rows of a query to the consumer, SQLite steps through the result without buffering it.
+     */
+    public void forEachRow(@Language("sql") final String query, final MySQLProvider.RowConsumer consumer, final Object... vars) throws SQLException {
+        BlockingQueue<Connection> pool = getReaders();
+        Connection connection = borrow(pool);
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            fillPreparedStatement(ps, vars);
+
+            try (ResultSet resultSet = ps.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(resultSet);
+                }
+            }
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    /**
+     * Executes all statements as JDBC batches inside a single transaction on the writer.
+     *
+     * @param batches SQL statements mapped to the parameter rows to execute them with
+     */
+    public void executeBatch(Map<String, List<Object[]>> batches) throws SQLException {
+        writeLock.lock();
+        try {
+            Connection connection = getWriter();
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<Object[]>> entry : batches.entrySet()) {
+                    try (PreparedStatement ps = connection.prepareStatement(entry.getKey())) {
+                        for (Object[] vars : entry.getValue()) {
+                            fillPreparedStatement(ps, vars);
+                            ps.addBatch();
+                        }
+
+                        ps.executeBatch();
+                    }
+                }
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private BlockingQueue<Connection> getReaders() throws SQLException {
+        BlockingQueue<Connection> pool = readers;
+        if (pool == null) {
+            throw new SQLException("SQLite database is closed");
+        }
+
+        return pool;
+    }
+
+    private Connection getWriter() throws SQLException {
+        if (writer == null) {
+            throw new SQLException("SQLite database is closed");
+        }
+
+        return writer;
+    }
+
+    private static Connection borrow(BlockingQueue<Connection> pool) throws SQLException {
+        try {
+            return pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a SQLite connection", e);
+        }
+    }
+
+    private void fillPreparedStatement(PreparedStatement ps, Object... vars) throws SQLException {
+        int i = 0;
+        for (Object obj : vars) {
+            i++;
+            try {
+                ps.setObject(i, obj);
+            } catch (SQLException e) {
+                throw new SQLException("Error while setting prepared statement variable #" + i + " (" + obj + "): " + e.getMessage());
+            }
+        }
+    }
+}
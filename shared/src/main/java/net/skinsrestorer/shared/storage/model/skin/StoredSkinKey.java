@@ -0,0 +1,72 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.storage.model.skin;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import net.skinsrestorer.api.property.SkinVariant;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Key of a stored skin that is deleted once no player uses it any more.
+ * Custom skins are never collected, so there is no key for them.
+ */
+@Data
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class StoredSkinKey {
+    private final Type type;
+    /**
+     * UUID of a player skin, URL of a URL skin or index, or name of a legacy skin.
+     */
+    private final String name;
+    /**
+     * Only set for URL skins.
+     */
+    @Nullable
+    private final SkinVariant skinVariant;
+    /**
+     * When a player skin was fetched in seconds, 0 for the other types.
+     */
+    private final long timestamp;
+
+    public static StoredSkinKey playerSkin(UUID uuid, long timestamp) {
+        return new StoredSkinKey(Type.PLAYER_SKIN, uuid.toString(), null, timestamp);
+    }
+
+    public static StoredSkinKey urlSkin(String url, SkinVariant skinVariant) {
+        return new StoredSkinKey(Type.URL_SKIN, url, skinVariant, 0);
+    }
+
+    public static StoredSkinKey urlIndex(String url) {
+        return new StoredSkinKey(Type.URL_INDEX, url, null, 0);
+    }
+
+    public static StoredSkinKey legacySkin(String skinName) {
+        return new StoredSkinKey(Type.LEGACY_SKIN, skinName, null, 0);
+    }
+
+    public enum Type {
+        PLAYER_SKIN,
+        URL_SKIN,
+        URL_INDEX,
+        LEGACY_SKIN
+    }
+}
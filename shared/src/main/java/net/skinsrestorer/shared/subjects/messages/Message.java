@@ -46,6 +46,7 @@ public enum Message {
     HELP_SR_SET_SKIN_ALL,
     HELP_SR_APPLY_SKIN_ALL,
     HELP_SR_PURGE_OLD_DATA,
+    HELP_SR_COLLECT_GARBAGE,
     HELP_SR_DUMP,
     SUCCESS_GENERIC(Message.PREFIX_FORMAT),
     SUCCESS_SKIN_CHANGE(Message.SUCCESS_GENERIC),
@@ -93,8 +94,16 @@ public enum Message {
     ADMINCOMMAND_SETSKINALL_SUCCESS(Message.PREFIX_FORMAT),
     ADMINCOMMAND_APPLYSKINALL_PLAYER_ERROR(Message.PREFIX_FORMAT),
     ADMINCOMMAND_APPLYSKINALL_SUCCESS(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_PURGEOLDDATA_STARTED(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_PURGEOLDDATA_PROGRESS(Message.PREFIX_FORMAT),
     ADMINCOMMAND_PURGEOLDDATA_SUCCESS(Message.PREFIX_FORMAT),
     ADMINCOMMAND_PURGEOLDDATA_ERROR(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_COLLECTGARBAGE_STARTED(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_COLLECTGARBAGE_RUNNING(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_COLLECTGARBAGE_PROGRESS(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_COLLECTGARBAGE_SUCCESS(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_COLLECTGARBAGE_DRYRUN(Message.PREFIX_FORMAT),
+    ADMINCOMMAND_COLLECTGARBAGE_ERROR(Message.PREFIX_FORMAT),
     ADMINCOMMAND_DUMP_UPLOADING(Message.PREFIX_FORMAT),
     ADMINCOMMAND_DUMP_SUCCESS(Message.PREFIX_FORMAT),
     ADMINCOMMAND_DUMP_ERROR(Message.PREFIX_FORMAT),
@@ -132,6 +141,7 @@ public enum Message {
     PERMISSION_ADMINCOMMAND_CREATECUSTOM,
     PERMISSION_ADMINCOMMAND_APPLYSKINALL,
     PERMISSION_ADMINCOMMAND_PURGEOLDDATA,
+    PERMISSION_ADMINCOMMAND_COLLECTGARBAGE,
     PERMISSION_ADMINCOMMAND_DUMP,
     PERMISSION_BYPASSCOOLDOWN,
     PERMISSION_BYPASSDISABLED,
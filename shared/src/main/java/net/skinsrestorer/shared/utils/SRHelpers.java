@@ -25,6 +25,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -54,6 +55,34 @@ public class SRHelpers {
         }
     }
 
+    public static String hashSha256Hex(String str) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(str.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to get SHA-256 hash algorithm", e);
+        }
+    }
+
+    /**
+     * Hashes the parts with a zero byte between them, so moving characters from one part to the next changes the hash.
+     */
+    public static byte[] hashSha256(String... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    md.update((byte) 0);
+                }
+                md.update(parts[i].getBytes(StandardCharsets.UTF_8));
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to get SHA-256 hash algorithm", e);
+        }
+    }
+
     public static byte[] md5(byte[] input) {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
@@ -0,0 +1,90 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.shared.utils;
+
+import net.skinsrestorer.api.exception.DataRequestException;
+import net.skinsrestorer.shared.exception.DataRequestExceptionShared;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets concurrent callers with the same key share one in-flight call instead of each making their own.
+ * Only calls that overlap are shared, a call made after the previous one finished runs again.
+ *
+ * @param <K> Key of a call, has to be normalised by the caller, e.g. lowercased player names
+ * @param <V> Result of a call
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder collapsed = new LongAdder();
+
+    public V execute(K key, Call<V> call) throws DataRequestException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsed.increment();
+            return await(existing);
+        }
+
+        try {
+            V result = call.call();
+            future.complete(result);
+            return result;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return Amount of calls that were served by another in-flight call
+     */
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    /**
+     * Waits for a call another thread makes, and rethrows its failure in the waiting thread.
+     */
+    public static <V> V await(CompletableFuture<V> future) throws DataRequestException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+
+            // Wrapped, so the stack trace shows the waiting caller as well
+            throw new DataRequestExceptionShared(cause);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws DataRequestException;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer;
+
+import ch.jalu.configme.SettingsManager;
+import net.skinsrestorer.api.exception.DataRequestException;
+import net.skinsrestorer.shared.config.APIConfig;
+import net.skinsrestorer.shared.connections.HedgedRequestExecutor;
+import net.skinsrestorer.shared.connections.ProviderCircuitBreakers;
+import net.skinsrestorer.shared.connections.ProviderStats;
+import net.skinsrestorer.shared.exception.DataRequestExceptionShared;
+import net.skinsrestorer.shared.log.SRLogger;
+import net.skinsrestorer.shared.utils.MetricsCounter;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HedgedRequestTest {
+    @Test
+    public void testRanking() {
+        ProviderStats stats = new ProviderStats();
+        for (int i = 0; i < 20; i++) {
+            stats.record(MetricsCounter.Service.ASHCON, 2_000, true);
+            stats.record(MetricsCounter.Service.MOJANG, 100, i % 2 == 0);
+            stats.record(MetricsCounter.Service.MINE_TOOLS, 400, true);
+        }
+
+        assertEquals(2_000, stats.getP95(MetricsCounter.Service.ASHCON));
+        assertEquals(0.5, stats.getErrorRate(MetricsCounter.Service.MOJANG));
+        assertEquals(List.of(MetricsCounter.Service.MOJANG, MetricsCounter.Service.MINE_TOOLS, MetricsCounter.Service.ASHCON),
+                stats.rank(List.of(MetricsCounter.Service.ASHCON, MetricsCounter.Service.MOJANG, MetricsCounter.Service.MINE_TOOLS)));
+    }
+
+    @Test
+    public void testSlowProviderIsHedged() throws DataRequestException {
+        ProviderStats stats = new ProviderStats();
+        for (int i = 0; i < 20; i++) {
+            stats.record(MetricsCounter.Service.ASHCON, 10, true);
+        }
+
+        HedgedRequestExecutor executor = new HedgedRequestExecutor(mock(SRLogger.class), stats, circuitBreakers(0, 30));
+        CountDownLatch release = new CountDownLatch(1);
+        Map<MetricsCounter.Service, HedgedRequestExecutor.ProviderCall<String>> calls = new LinkedHashMap<>();
+        calls.put(MetricsCounter.Service.ASHCON, () -> {
+            await(release);
+            return "ashcon";
+        });
+        calls.put(MetricsCounter.Service.MOJANG, () -> "mojang");
+
+        try {
+            assertEquals("mojang", executor.execute(calls));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testFailureFallsThrough() throws DataRequestException {
+        HedgedRequestExecutor executor = new HedgedRequestExecutor(mock(SRLogger.class), new ProviderStats(), circuitBreakers(0, 30));
+        Map<MetricsCounter.Service, HedgedRequestExecutor.ProviderCall<String>> calls = new LinkedHashMap<>();
+        calls.put(MetricsCounter.Service.ASHCON, () -> {
+            throw new DataRequestExceptionShared("ashcon");
+        });
+        calls.put(MetricsCounter.Service.MOJANG, () -> "mojang");
+
+        assertEquals("mojang", executor.execute(calls));
+
+        calls.put(MetricsCounter.Service.MOJANG, () -> {
+            throw new DataRequestExceptionShared("mojang");
+        });
+        assertThrows(DataRequestException.class, () -> executor.execute(calls));
+    }
+
+    @Test
+    public void testCircuitBreaker() {
+        ProviderCircuitBreakers breakers = circuitBreakers(2, 0);
+        MetricsCounter.Service service = MetricsCounter.Service.ASHCON;
+
+        breakers.recordFailure(service);
+        assertEquals(ProviderCircuitBreakers.State.CLOSED, breakers.getState(service));
+        breakers.recordFailure(service);
+        assertEquals(ProviderCircuitBreakers.State.OPEN, breakers.getState(service));
+
+        // The probe interval of 0 seconds has passed, so the next request probes
+        assertTrue(breakers.tryAcquire(service));
+        assertEquals(ProviderCircuitBreakers.State.HALF_OPEN, breakers.getState(service));
+        breakers.recordFailure(service);
+        assertEquals(ProviderCircuitBreakers.State.OPEN, breakers.getState(service));
+
+        assertTrue(breakers.tryAcquire(service));
+        breakers.recordSuccess(service);
+        assertEquals(ProviderCircuitBreakers.State.CLOSED, breakers.getState(service));
+        assertEquals(0, breakers.getConsecutiveFailures(service));
+    }
+
+    @Test
+    public void testOpenBreakerIsSkipped() throws DataRequestException {
+        ProviderCircuitBreakers breakers = circuitBreakers(1, 60);
+        breakers.recordFailure(MetricsCounter.Service.ASHCON);
+        assertFalse(breakers.tryAcquire(MetricsCounter.Service.ASHCON));
+
+        HedgedRequestExecutor executor = new HedgedRequestExecutor(mock(SRLogger.class), new ProviderStats(), breakers);
+        Map<MetricsCounter.Service, HedgedRequestExecutor.ProviderCall<String>> calls = new LinkedHashMap<>();
+        calls.put(MetricsCounter.Service.ASHCON, () -> "ashcon");
+        calls.put(MetricsCounter.Service.MOJANG, () -> "mojang");
+
+        assertEquals("mojang", executor.execute(calls));
+    }
+
+    private static ProviderCircuitBreakers circuitBreakers(int failureThreshold, int probeInterval) {
+        SettingsManager settings = mock(SettingsManager.class);
+        when(settings.getProperty(APIConfig.CIRCUIT_BREAKER_FAILURE_THRESHOLD)).thenReturn(failureThreshold);
+        when(settings.getProperty(APIConfig.CIRCUIT_BREAKER_PROBE_INTERVAL)).thenReturn(probeInterval);
+        return new ProviderCircuitBreakers(settings, mock(SRLogger.class));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
 import java.util.UUID;
 
 import static org.mockito.Mockito.when;
@@ -48,6 +49,7 @@ public class MineSkinTest {
 
         when(settings.getProperty(APIConfig.MINESKIN_API_KEY)).thenReturn("");
         when(settings.getProperty(AdvancedConfig.NO_CONNECTIONS)).thenReturn(false);
+        when(settings.getProperty(APIConfig.RATE_LIMIT_BUCKETS)).thenReturn(List.of());
 
         injector.register(SettingsManager.class, settings);
 
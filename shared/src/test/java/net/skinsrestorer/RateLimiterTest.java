@@ -0,0 +1,84 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer;
+
+import ch.jalu.configme.SettingsManager;
+import net.skinsrestorer.shared.config.APIConfig;
+import net.skinsrestorer.shared.connections.http.HostRateLimiter;
+import net.skinsrestorer.shared.connections.http.HttpResponse;
+import net.skinsrestorer.shared.connections.http.RequestPriority;
+import net.skinsrestorer.shared.log.SRLogger;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RateLimiterTest {
+    private static final URI EXAMPLE = URI.create("https://example.com/test");
+
+    @Test
+    public void testLoginIsServedFirst() throws Exception {
+        HostRateLimiter rateLimiter = rateLimiter(List.of("example.com=1/1"));
+        rateLimiter.acquire(EXAMPLE); // Takes the only token
+
+        List<RequestPriority> served = new CopyOnWriteArrayList<>();
+        Thread background = acquireIn(rateLimiter, RequestPriority.BACKGROUND, served);
+        Thread.sleep(100); // Let the background request queue up first
+        Thread login = acquireIn(rateLimiter, RequestPriority.LOGIN, served);
+
+        login.join(5_000);
+        background.join(5_000);
+        assertEquals(List.of(RequestPriority.LOGIN, RequestPriority.BACKGROUND), served);
+    }
+
+    @Test
+    public void testRetryAfterHoldsBackHost() throws Exception {
+        HostRateLimiter rateLimiter = rateLimiter(List.of());
+        rateLimiter.onResponse(EXAMPLE, new HttpResponse(429, "", Map.of("Retry-After", List.of("1"))));
+
+        long start = System.currentTimeMillis();
+        rateLimiter.acquire(EXAMPLE);
+        assertTrue(System.currentTimeMillis() - start >= 900);
+    }
+
+    private static Thread acquireIn(HostRateLimiter rateLimiter, RequestPriority priority, List<RequestPriority> served) {
+        Thread thread = new Thread(() -> {
+            try (RequestPriority.Scope ignored = priority.enter()) {
+                rateLimiter.acquire(EXAMPLE);
+                served.add(priority);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static HostRateLimiter rateLimiter(List<String> buckets) {
+        SettingsManager settings = mock(SettingsManager.class);
+        when(settings.getProperty(APIConfig.RATE_LIMIT_BUCKETS)).thenReturn(buckets);
+        return new HostRateLimiter(settings, mock(SRLogger.class));
+    }
+}
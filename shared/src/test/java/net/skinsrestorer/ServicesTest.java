@@ -19,6 +19,7 @@ package net.skinsrestorer;
 
 import ch.jalu.configme.SettingsManager;
 import ch.jalu.injector.Injector;
+import net.skinsrestorer.shared.config.APIConfig;
 import net.skinsrestorer.shared.config.AdvancedConfig;
 import net.skinsrestorer.shared.connections.ServiceCheckerService;
 import net.skinsrestorer.shared.plugin.SRPlatformAdapter;
@@ -30,6 +31,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.Mockito.when;
 
@@ -48,6 +51,8 @@ public class ServicesTest {
         injector.register(SRPlatformAdapter.class, srPlatformAdapter);
 
         when(settings.getProperty(AdvancedConfig.NO_CONNECTIONS)).thenReturn(false);
+        when(settings.getProperty(APIConfig.CIRCUIT_BREAKER_FAILURE_THRESHOLD)).thenReturn(0);
+        when(settings.getProperty(APIConfig.RATE_LIMIT_BUCKETS)).thenReturn(List.of());
 
         injector.register(SettingsManager.class, settings);
 
@@ -17,24 +17,29 @@
  */
 package net.skinsrestorer.adapter;
 
+import net.skinsrestorer.api.property.SkinIdentifier;
 import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.api.property.SkinType;
 import net.skinsrestorer.api.property.SkinVariant;
+import net.skinsrestorer.shared.gui.GUISkinCursor;
 import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
 import net.skinsrestorer.shared.storage.model.player.PlayerData;
 import net.skinsrestorer.shared.storage.model.skin.CustomSkinData;
 import net.skinsrestorer.shared.storage.model.skin.PlayerSkinData;
+import net.skinsrestorer.shared.storage.model.skin.StoredSkinKey;
+import net.skinsrestorer.shared.storage.model.skin.URLIndexData;
 import net.skinsrestorer.shared.storage.model.skin.URLSkinData;
 import org.junit.Assert;
 
 import java.nio.charset.StandardCharsets;
-import java.util.UUID;
+import java.util.*;
 
 public class AdapterHelper {
     private static final String DEFAULT_NAME = "Pistonmaster";
     private static final UUID DEFAULT_UUID = UUID.nameUUIDFromBytes(DEFAULT_NAME.getBytes(StandardCharsets.UTF_8));
 
-    public static void testAdapter(StorageAdapter adapter, boolean checkCustom) {
+    public static void testAdapter(StorageAdapter adapter, boolean checkCustom) throws StorageAdapter.StorageException {
         adapter.setCachedUUID("test", MojangCacheData.of(UUID.randomUUID(), -1));
         adapter.setPlayerData(UUID.randomUUID(), PlayerData.of(UUID.randomUUID(), null));
         adapter.setPlayerSkinData(DEFAULT_UUID, PlayerSkinData.of(DEFAULT_UUID, DEFAULT_NAME, SkinProperty.of("test", "test"), -1));
@@ -43,9 +48,122 @@ public class AdapterHelper {
 
         if (checkCustom) {
             // Check if offset works as well, we actually have two skins in the storage for GUI
-            Assert.assertEquals(1, adapter.getStoredGUISkins(1).size());
+            Assert.assertEquals(1, adapter.getStoredGUISkins(1, null).skins().size());
+            // The cursor of the previous page skips the offset
+            Assert.assertEquals(Set.of("test-skin"), adapter.getStoredGUISkins(0, new GUISkinCursor(DEFAULT_NAME, SkinType.PLAYER, DEFAULT_UUID.toString())).skins().keySet());
+
+            // A player sharing the name of the last skin on a page is not skipped
+            UUID otherUuid = UUID.randomUUID();
+            adapter.setPlayerSkinData(otherUuid, PlayerSkinData.of(otherUuid, DEFAULT_NAME, SkinProperty.of("test", "test"), -1));
+            String firstKey = DEFAULT_UUID.toString().compareTo(otherUuid.toString()) < 0 ? DEFAULT_UUID.toString() : otherUuid.toString();
+            Assert.assertEquals(Set.of(DEFAULT_NAME, "test-skin"), adapter.getStoredGUISkins(0, new GUISkinCursor(DEFAULT_NAME, SkinType.PLAYER, firstKey)).skins().keySet());
+            adapter.removePlayerSkinData(otherUuid);
         } else {
-            Assert.assertEquals(1, adapter.getStoredGUISkins(0).size());
+            Assert.assertEquals(1, adapter.getStoredGUISkins(0, null).skins().size());
+        }
+
+        testBatchLookups(adapter);
+        testGarbageCollectionScan(adapter);
+        testPurge(adapter);
+        testUnusedPurge(adapter);
+        testNonCanonicalPayload(adapter);
+    }
+
+    private static void testNonCanonicalPayload(StorageAdapter adapter) throws StorageAdapter.StorageException {
+        // Unpadded base64 and plain text must never fail a write, and if stored have to come back unchanged
+        SkinProperty property = SkinProperty.of("dGVzdA", "not base64!");
+        adapter.setCustomSkinData("non-canonical", CustomSkinData.of("non-canonical", property));
+        adapter.getCustomSkinData("non-canonical").ifPresent(data -> Assert.assertEquals(property, data.getProperty()));
+        adapter.removeCustomSkinData("non-canonical");
+    }
+
+    private static void testBatchLookups(StorageAdapter adapter) throws StorageAdapter.StorageException {
+        Map<UUID, PlayerData> players = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            UUID uuid = UUID.randomUUID();
+            players.put(uuid, PlayerData.of(uuid, SkinIdentifier.ofCustom("test-skin")));
         }
+        adapter.setPlayerDataBatch(players);
+
+        List<UUID> lookup = new ArrayList<>(players.keySet());
+        lookup.add(UUID.randomUUID());
+        Map<UUID, PlayerData> playerData = adapter.getPlayerDataBatch(lookup);
+        Assert.assertEquals(players.keySet(), playerData.keySet());
+        Assert.assertEquals(SkinIdentifier.ofCustom("test-skin"), playerData.values().iterator().next().getSkinIdentifier());
+
+        Map<UUID, PlayerSkinData> skinData = adapter.getPlayerSkinDataBatch(List.of(DEFAULT_UUID, UUID.randomUUID()));
+        Assert.assertEquals(Set.of(DEFAULT_UUID), skinData.keySet());
+
+        Map<String, MojangCacheData> cacheData = adapter.getCachedUUIDBatch(List.of("test", "unknown"));
+        Assert.assertEquals(Set.of("test"), cacheData.keySet());
+    }
+
+    private static void testGarbageCollectionScan(StorageAdapter adapter) throws StorageAdapter.StorageException {
+        UUID uuid = UUID.randomUUID();
+        String usedUrl = "https://used.com/" + uuid;
+        String unusedUrl = "https://unused.com/" + uuid;
+        adapter.setPlayerData(uuid, PlayerData.of(uuid, SkinIdentifier.ofURL(usedUrl, SkinVariant.SLIM)));
+        adapter.setURLSkinData(usedUrl, URLSkinData.of(usedUrl, "used", SkinProperty.of("test", "test"), SkinVariant.SLIM));
+        adapter.setURLSkinData(unusedUrl, URLSkinData.of(unusedUrl, "unused", SkinProperty.of("test", "test"), SkinVariant.CLASSIC));
+        adapter.setURLSkinIndex(unusedUrl, URLIndexData.of(unusedUrl, SkinVariant.CLASSIC));
+
+        Set<SkinIdentifier> references = new HashSet<>();
+        adapter.forEachSkinReference(references::add);
+        Assert.assertTrue(references.contains(SkinIdentifier.ofURL(usedUrl, SkinVariant.SLIM)));
+
+        Set<StoredSkinKey> skins = new HashSet<>();
+        adapter.forEachCollectableSkin(skins::add);
+        Assert.assertTrue(skins.contains(StoredSkinKey.urlSkin(usedUrl, SkinVariant.SLIM)));
+        Assert.assertTrue(skins.contains(StoredSkinKey.urlSkin(unusedUrl, SkinVariant.CLASSIC)));
+        Assert.assertTrue(skins.contains(StoredSkinKey.urlIndex(unusedUrl)));
+        Assert.assertTrue(skins.contains(StoredSkinKey.playerSkin(DEFAULT_UUID, -1)));
+        // Custom skins are never collected
+        Assert.assertTrue(skins.stream().noneMatch(key -> key.getName().equals("test-skin")));
+
+        adapter.removeURLSkinData(usedUrl, SkinVariant.SLIM);
+        adapter.removeURLSkinData(unusedUrl, SkinVariant.CLASSIC);
+        adapter.removeURLSkinIndex(unusedUrl);
+    }
+
+    private static void testPurge(StorageAdapter adapter) throws StorageAdapter.StorageException {
+        UUID oldSkin = UUID.randomUUID();
+        UUID keptSkin = UUID.randomUUID();
+        adapter.setPlayerSkinData(oldSkin, PlayerSkinData.of(oldSkin, "old", SkinProperty.of("test", "test"), 1));
+        adapter.setPlayerSkinData(keptSkin, PlayerSkinData.of(keptSkin, "kept", SkinProperty.of("test", "test"), 0));
+
+        List<Integer> progress = new ArrayList<>();
+        int removed = adapter.purgeStoredOldSkins(1000, progress::add);
+
+        Assert.assertTrue(removed >= 1);
+        Assert.assertFalse(progress.isEmpty());
+        Assert.assertTrue(adapter.getPlayerSkinData(oldSkin).isEmpty());
+        Assert.assertTrue(adapter.getPlayerSkinData(keptSkin).isPresent());
+
+        // Keep the GUI checks of the next run independent of this one
+        adapter.removePlayerSkinData(keptSkin);
+    }
+
+    private static void testUnusedPurge(StorageAdapter adapter) throws StorageAdapter.StorageException {
+        UUID usedSkin = UUID.randomUUID();
+        UUID unusedSkin = UUID.randomUUID();
+        UUID keptSkin = UUID.randomUUID();
+        adapter.setPlayerSkinData(usedSkin, PlayerSkinData.of(usedSkin, "used", SkinProperty.of("test", "test"), 1));
+        adapter.setPlayerSkinData(unusedSkin, PlayerSkinData.of(unusedSkin, "unused", SkinProperty.of("test", "test"), 1));
+        adapter.setPlayerSkinData(keptSkin, PlayerSkinData.of(keptSkin, "kept", SkinProperty.of("test", "test"), 0));
+
+        // Ahead of the purge target, so saving the skins just now does not count as their last use
+        long now = System.currentTimeMillis() / 1000;
+        adapter.touchPlayerSkins(Map.of(usedSkin, now + 86400, UUID.randomUUID(), now + 86400));
+
+        int removed = adapter.purgeUnusedPlayerSkins(now + 3600, progress -> {
+        });
+
+        Assert.assertTrue(removed >= 1);
+        Assert.assertTrue(adapter.getPlayerSkinData(unusedSkin).isEmpty());
+        Assert.assertTrue(adapter.getPlayerSkinData(usedSkin).isPresent());
+        Assert.assertTrue(adapter.getPlayerSkinData(keptSkin).isPresent());
+
+        adapter.removePlayerSkinData(usedSkin);
+        adapter.removePlayerSkinData(keptSkin);
     }
 }
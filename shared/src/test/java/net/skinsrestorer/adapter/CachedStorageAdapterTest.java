@@ -0,0 +1,95 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.adapter;
+
+import ch.jalu.configme.SettingsManager;
+import ch.jalu.injector.Injector;
+import net.skinsrestorer.SRExtension;
+import net.skinsrestorer.SettingsHelper;
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.shared.config.GUIConfig;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.CachedStorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.file.FileAdapter;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.PlayerSkinData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class, SRExtension.class})
+public class CachedStorageAdapterTest {
+    @TempDir
+    private Path tempDir;
+    @Mock
+    private SettingsManager settingsManager;
+
+    @BeforeEach
+    public void setup() {
+        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
+    }
+
+    @Test
+    public void testLoad(Injector injector) throws StorageAdapter.StorageException {
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        CachedStorageAdapter adapter = new CachedStorageAdapter(injector.getSingleton(FileAdapter.class), settingsManager);
+        adapter.init();
+
+        when(settingsManager.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)).thenReturn(false);
+
+        AdapterHelper.testAdapter(adapter, false);
+
+        UUID uuid = UUID.randomUUID();
+        assertTrue(adapter.getPlayerData(uuid).isEmpty());
+        assertTrue(adapter.getPlayerData(uuid).isEmpty());
+
+        adapter.setPlayerData(uuid, PlayerData.of(uuid, null));
+        PlayerData playerData = adapter.getPlayerData(uuid).orElseThrow();
+        playerData.setSkinIdentifier(null);
+        assertNotSame(playerData, adapter.getPlayerData(uuid).orElseThrow());
+
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "Test", SkinProperty.of("test", "test"), -1));
+        adapter.removePlayerSkinData(uuid);
+        assertTrue(adapter.getPlayerSkinData(uuid).isEmpty());
+
+        Map<String, CachedStorageAdapter.CacheStats> stats = adapter.getStats().stream()
+                .collect(Collectors.toMap(CachedStorageAdapter.CacheStats::region, Function.identity()));
+        // The batch lookups in AdapterHelper account for one miss and three hits on players and one hit on player_skins
+        assertEquals(2, stats.get("players").misses());
+        assertEquals(6, stats.get("players").hits());
+        assertEquals(2, stats.get("player_skins").hits());
+    }
+}
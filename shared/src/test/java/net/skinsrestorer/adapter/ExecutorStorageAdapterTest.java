@@ -0,0 +1,93 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.adapter;
+
+import ch.jalu.configme.SettingsManager;
+import ch.jalu.injector.Injector;
+import net.skinsrestorer.SRExtension;
+import net.skinsrestorer.SettingsHelper;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.ExecutorStorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.file.FileAdapter;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith({MockitoExtension.class, SRExtension.class})
+public class ExecutorStorageAdapterTest {
+    @TempDir
+    private Path tempDir;
+    @Mock
+    private SettingsManager settingsManager;
+
+    @Test
+    public void testRoundTrip(Injector injector) {
+        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        FileAdapter fileAdapter = injector.getSingleton(FileAdapter.class);
+        fileAdapter.init();
+
+        ExecutorStorageAdapter adapter = new ExecutorStorageAdapter(fileAdapter, 2);
+        try {
+            UUID uuid = UUID.randomUUID();
+            PlayerData data = PlayerData.of(uuid, SkinIdentifier.ofCustom("test"));
+
+            PlayerData stored = adapter.setPlayerData(uuid, data)
+                    .thenCompose(ignored -> adapter.getPlayerData(uuid))
+                    .join()
+                    .orElseThrow();
+            assertEquals(data, stored);
+            assertTrue(adapter.getPlayerSkinData(uuid).join().isEmpty());
+        } finally {
+            adapter.shutdown();
+        }
+    }
+
+    @Test
+    public void testStorageExceptionCompletesExceptionally() throws StorageAdapter.StorageException {
+        StorageAdapter failing = mock(StorageAdapter.class);
+        UUID uuid = UUID.randomUUID();
+        when(failing.getPlayerData(uuid)).thenThrow(new StorageAdapter.StorageException(new IllegalStateException()));
+
+        ExecutorStorageAdapter adapter = new ExecutorStorageAdapter(failing, 1);
+        try {
+            CompletionException exception = assertThrows(CompletionException.class, () -> adapter.getPlayerData(uuid).join());
+            assertInstanceOf(StorageAdapter.StorageException.class, exception.getCause());
+        } finally {
+            adapter.shutdown();
+        }
+
+        assertTrue(adapter.getPlayerData(uuid).isCompletedExceptionally());
+    }
+}
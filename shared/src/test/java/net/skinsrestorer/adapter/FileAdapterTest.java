@@ -21,17 +21,39 @@ import ch.jalu.configme.SettingsManager;
 import ch.jalu.injector.Injector;
 import net.skinsrestorer.SRExtension;
 import net.skinsrestorer.SettingsHelper;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.api.property.SkinVariant;
 import net.skinsrestorer.shared.config.GUIConfig;
 import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 import net.skinsrestorer.shared.storage.adapter.file.FileAdapter;
-import org.junit.jupiter.api.BeforeEach;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.CustomSkinData;
+import net.skinsrestorer.shared.storage.model.skin.PlayerSkinData;
+import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -43,13 +65,9 @@ public class FileAdapterTest {
     @Mock
     private SettingsManager settingsManager;
 
-    @BeforeEach
-    public void setup() {
-        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
-    }
-
     @Test
-    public void testLoad(Injector injector) {
+    public void testLoad(Injector injector) throws StorageAdapter.StorageException {
+        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
         injector.register(SettingsManager.class, settingsManager);
         SRPlugin plugin = mock(SRPlugin.class);
         when(plugin.getDataFolder()).thenReturn(tempDir);
@@ -65,5 +83,240 @@ public class FileAdapterTest {
         when(settingsManager.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)).thenReturn(true);
 
         AdapterHelper.testAdapter(adapter, true);
+
+        // One player skin and one custom skin are stored
+        Assert.assertEquals(2, adapter.getStoredRandomSkins(10).size());
+        Assert.assertEquals(1, adapter.getStoredRandomSkins(1).size());
+
+        when(settingsManager.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)).thenReturn(false);
+
+        Assert.assertEquals(Set.of("Pistonmaster"), adapter.getStoredRandomSkins(10).keySet());
+    }
+
+    @Test
+    public void testLegacyBulkMigration(Injector injector) throws StorageAdapter.StorageException, IOException {
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        FileAdapter adapter = injector.getSingleton(FileAdapter.class);
+
+        UUID knownUUID = UUID.randomUUID();
+        adapter.setCachedUUID("knownplayer", MojangCacheData.of(knownUUID, -1));
+
+        // Players that already have new data keep it
+        UUID existingUUID = UUID.randomUUID();
+        adapter.setCachedUUID("existingplayer", MojangCacheData.of(existingUUID, -1));
+        adapter.setPlayerData(existingUUID, PlayerData.of(existingUUID, SkinIdentifier.ofCustom("newskin")));
+        UUID returningUUID = UUID.randomUUID();
+        adapter.setPlayerData(returningUUID, PlayerData.of(returningUUID, SkinIdentifier.ofCustom("newskin")));
+
+        Path legacyPlayersFolder = Files.createDirectories(tempDir.resolve("legacy").resolve("players"));
+        Path knownFile = legacyPlayersFolder.resolve("knownplayer.legacyplayer");
+        Path unknownFile = legacyPlayersFolder.resolve("unknownplayer.legacyplayer");
+        Path existingFile = legacyPlayersFolder.resolve("existingplayer.legacyplayer");
+        Path returningFile = legacyPlayersFolder.resolve("returningplayer.legacyplayer");
+        Files.writeString(knownFile, "{\"playerName\":\"knownplayer\",\"skinName\":\"oldskin\",\"dataVersion\":1}");
+        Files.writeString(unknownFile, "{\"playerName\":\"unknownplayer\",\"skinName\":\"oldskin\",\"dataVersion\":1}");
+        Files.writeString(existingFile, "{\"playerName\":\"existingplayer\",\"skinName\":\"oldskin\",\"dataVersion\":1}");
+        Files.writeString(returningFile, "{\"playerName\":\"returningplayer\",\"skinName\":\"oldskin\",\"dataVersion\":1}");
+
+        adapter.init();
+
+        // Players with a cached UUID are migrated right away
+        Assert.assertFalse(Files.exists(knownFile));
+        Assert.assertEquals(SkinIdentifier.of("oldskin", null, SkinType.LEGACY),
+                adapter.getPlayerData(knownUUID).orElseThrow().getSkinIdentifier());
+        Assert.assertFalse(Files.exists(existingFile));
+        Assert.assertEquals(SkinIdentifier.ofCustom("newskin"), adapter.getPlayerData(existingUUID).orElseThrow().getSkinIdentifier());
+
+        // The rest still migrates on login
+        Assert.assertTrue(adapter.getLegacyPlayerData("unknownplayer").isPresent());
+        UUID unknownUUID = UUID.randomUUID();
+        adapter.migrateLegacyPlayer("unknownplayer", unknownUUID);
+        Assert.assertTrue(adapter.getPlayerData(unknownUUID).isPresent());
+        Assert.assertFalse(Files.exists(unknownFile));
+        adapter.migrateLegacyPlayer("returningplayer", returningUUID);
+        Assert.assertEquals(SkinIdentifier.ofCustom("newskin"), adapter.getPlayerData(returningUUID).orElseThrow().getSkinIdentifier());
+        Assert.assertFalse(Files.exists(returningFile));
+
+        // An empty legacy folder is removed, so the next start skips it
+        adapter.init();
+        Assert.assertFalse(Files.exists(legacyPlayersFolder));
+        Assert.assertTrue(adapter.getLegacyPlayerData("unknownplayer").isEmpty());
+    }
+
+    @Test
+    public void testShardedLayoutMigration(Injector injector) throws StorageAdapter.StorageException, IOException {
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        UUID flatUUID = UUID.randomUUID();
+        Path cacheFolder = Files.createDirectories(tempDir.resolve("cache"));
+        Path flatFile = cacheFolder.resolve("flatplayer.mojangcache");
+        Files.writeString(flatFile, "{\"uniqueId\":\"" + flatUUID + "\",\"timestamp\":-1,\"dataVersion\":1}");
+
+        FileAdapter adapter = injector.getSingleton(FileAdapter.class);
+
+        // Files of the flat layout stay readable while they are moved
+        Assert.assertEquals(Optional.of(flatUUID), adapter.getCachedUUID("flatplayer").orElseThrow().getUniqueId());
+
+        // Both files end up in a shard of the form cache/ab/cd/<name>.mojangcache
+        adapter.setCachedUUID("shardedplayer", MojangCacheData.of(null, -1));
+        try (Stream<Path> stream = Files.walk(cacheFolder)) {
+            List<Path> files = stream.filter(Files::isRegularFile)
+                    .filter(file -> cacheFolder.relativize(file).getNameCount() == 3)
+                    .toList();
+            Assert.assertEquals(2, files.size());
+        }
+    }
+
+    @Test
+    public void testBinaryRecords(Injector injector) throws StorageAdapter.StorageException, IOException {
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        UUID uuid = UUID.randomUUID();
+        String value = Base64.getEncoder().encodeToString("x".repeat(600).getBytes(StandardCharsets.UTF_8));
+        Path skinsFolder = Files.createDirectories(tempDir.resolve("skins"));
+        Path jsonFile = skinsFolder.resolve(uuid + ".playerskin");
+        Files.writeString(jsonFile, "{\"uniqueId\":\"" + uuid + "\",\"lastKnownName\":\"jsonplayer\",\"value\":\"" + value
+                + "\",\"signature\":\"" + value + "\",\"timestamp\":42,\"dataVersion\":1}");
+        long jsonSize = Files.size(jsonFile);
+
+        FileAdapter adapter = injector.getSingleton(FileAdapter.class);
+
+        // Files of older versions are still read as JSON
+        PlayerSkinData jsonData = adapter.getPlayerSkinData(uuid).orElseThrow();
+        Assert.assertEquals("jsonplayer", jsonData.getLastKnownName());
+        Assert.assertEquals(value, jsonData.getProperty().getValue());
+        Assert.assertEquals(42, jsonData.getTimestamp());
+
+        // An update replaces the file with the binary format, which only references its texture in the texture store
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "binaryplayer", SkinProperty.of(value, value), 43));
+        Path binaryFile;
+        try (Stream<Path> stream = Files.walk(skinsFolder)) {
+            binaryFile = stream.filter(file -> file.getFileName().toString().equals(uuid + ".playerskin")).findFirst().orElseThrow();
+        }
+        Assert.assertEquals(0, Files.readAllBytes(binaryFile)[0]);
+        Assert.assertTrue(Files.size(binaryFile) < jsonSize * 3 / 4);
+
+        PlayerSkinData binaryData = adapter.getPlayerSkinData(uuid).orElseThrow();
+        Assert.assertEquals("binaryplayer", binaryData.getLastKnownName());
+        Assert.assertEquals(value, binaryData.getProperty().getValue());
+        Assert.assertEquals(value, binaryData.getProperty().getSignature());
+        Assert.assertEquals(43, binaryData.getTimestamp());
+
+        // Strings that are not canonical base64 are kept as they are
+        adapter.setCustomSkinData("unpadded", CustomSkinData.of("unpadded", SkinProperty.of("dGVzdA", "not base64!")));
+        CustomSkinData customData = adapter.getCustomSkinData("unpadded").orElseThrow();
+        Assert.assertEquals("dGVzdA", customData.getProperty().getValue());
+        Assert.assertEquals("not base64!", customData.getProperty().getSignature());
+
+        adapter.setPlayerData(uuid, PlayerData.of(uuid, SkinIdentifier.ofURL("https://example.com/skin.png", SkinVariant.SLIM)));
+        Assert.assertEquals(SkinIdentifier.ofURL("https://example.com/skin.png", SkinVariant.SLIM),
+                adapter.getPlayerData(uuid).orElseThrow().getSkinIdentifier());
+        adapter.setCachedUUID("binaryplayer", MojangCacheData.of(null, 44));
+        Assert.assertEquals(Optional.empty(), adapter.getCachedUUID("binaryplayer").orElseThrow().getUniqueId());
+    }
+
+    @Test
+    public void testTextureStore(Injector injector) throws Exception {
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        // A record of an older version holds its texture inline and is moved into the store in the background
+        Path skinsFolder = Files.createDirectories(tempDir.resolve("skins"));
+        Files.writeString(skinsFolder.resolve("legacy.customskin"), "{\"skinName\":\"legacy\",\"value\":\"shared\",\"signature\":\"shared\",\"dataVersion\":1}");
+
+        FileAdapter adapter = injector.getSingleton(FileAdapter.class);
+        Path texturesFolder = tempDir.resolve("textures");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Files.exists(texturesFolder.resolve(".migrated"))) {
+            Assert.assertTrue("Texture migration did not finish", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, countTextures(texturesFolder));
+
+        // Records with the same texture share it
+        SkinProperty shared = SkinProperty.of("shared", "shared");
+        UUID uuid = UUID.randomUUID();
+        adapter.setCustomSkinData("first", CustomSkinData.of("first", shared));
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "player", shared, 1));
+        Assert.assertEquals(1, countTextures(texturesFolder));
+        Assert.assertEquals(shared, adapter.getCustomSkinData("legacy").orElseThrow().getProperty());
+
+        // A texture is kept while anything still references it
+        adapter.removeCustomSkinData("legacy");
+        adapter.removeCustomSkinData("first");
+        Assert.assertEquals(1, countTextures(texturesFolder));
+        Assert.assertEquals(shared, adapter.getPlayerSkinData(uuid).orElseThrow().getProperty());
+
+        // Saving a record with another texture releases the old one
+        SkinProperty updated = SkinProperty.of("updated", "updated");
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "player", updated, 1));
+        Assert.assertEquals(1, countTextures(texturesFolder));
+        Assert.assertEquals(updated, adapter.getPlayerSkinData(uuid).orElseThrow().getProperty());
+
+        // Purging frees the textures of the purged records
+        Assert.assertEquals(1, adapter.purgeStoredOldSkins(2, removed -> {
+        }));
+        Assert.assertEquals(0, countTextures(texturesFolder));
+    }
+
+    private static long countTextures(Path texturesFolder) throws IOException {
+        try (Stream<Path> stream = Files.walk(texturesFolder)) {
+            return stream.filter(file -> file.getFileName().toString().endsWith(".texture")).count();
+        }
+    }
+
+    @Test
+    public void testConcurrentWrites(Injector injector) throws Exception {
+        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        FileAdapter adapter = injector.getSingleton(FileAdapter.class);
+        UUID uuid = UUID.randomUUID();
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "writer0", SkinProperty.of("test", "test"), 0));
+
+        // Readers must only ever see complete files while writers replace the same record
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int writer = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        if (writer % 2 == 0) {
+                            adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "writer" + writer, SkinProperty.of("test", "test"), i));
+                        } else {
+                            Assert.assertTrue(adapter.getPlayerSkinData(uuid).isPresent());
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // The GUI index follows the file that won the last write
+        String lastKnownName = adapter.getPlayerSkinData(uuid).orElseThrow().getLastKnownName();
+        Assert.assertEquals(Set.of(lastKnownName), adapter.getStoredGUISkins(0, null).skins().keySet());
     }
 }
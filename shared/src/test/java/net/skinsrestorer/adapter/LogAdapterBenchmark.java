@@ -0,0 +1,104 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.adapter;
+
+import ch.jalu.configme.SettingsManager;
+import ch.jalu.injector.Injector;
+import net.skinsrestorer.SRExtension;
+import net.skinsrestorer.SettingsHelper;
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.file.FileAdapter;
+import net.skinsrestorer.shared.storage.adapter.log.LogAdapter;
+import net.skinsrestorer.shared.storage.model.skin.PlayerSkinData;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares writes and random reads of player skins between the file and the log storage.
+ * Run with {@code SR_BENCHMARK=true}, it is too slow for every build.
+ */
+@EnabledIfEnvironmentVariable(named = "SR_BENCHMARK", matches = "true")
+@ExtendWith({MockitoExtension.class, SRExtension.class})
+public class LogAdapterBenchmark {
+    private static final int RECORDS = 50_000;
+    private static final int READS = 200_000;
+
+    @Mock
+    private SettingsManager settingsManager;
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void benchmarkAdapters(Injector injector) throws StorageAdapter.StorageException {
+        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        List<UUID> players = Stream.generate(UUID::randomUUID).limit(RECORDS).toList();
+        String texture = "x".repeat(1_500); // Roughly the size of a real texture value
+
+        // Created first, so the log does not import the benchmark files of the file storage
+        LogAdapter logAdapter = injector.getSingleton(LogAdapter.class);
+        logAdapter.init();
+        FileAdapter fileAdapter = injector.getSingleton(FileAdapter.class);
+
+        double fileMillis = run("file", fileAdapter, players, texture);
+        double logMillis = run("log", logAdapter, players, texture);
+        logAdapter.close();
+
+        System.out.printf("log storage took %.1f%% of the file storage time%n", logMillis / fileMillis * 100);
+    }
+
+    private double run(String name, StorageAdapter adapter, List<UUID> players, String texture) throws StorageAdapter.StorageException {
+        long start = System.nanoTime();
+        for (int i = 0; i < players.size(); i++) {
+            UUID uuid = players.get(i);
+            adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "player" + i, SkinProperty.of(texture, "test"), i));
+        }
+        double writeMillis = (System.nanoTime() - start) / 1_000_000D;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            Assert.assertTrue(adapter.getPlayerSkinData(players.get(random.nextInt(players.size()))).isPresent());
+        }
+        double readMillis = (System.nanoTime() - start) / 1_000_000D;
+
+        System.out.printf("%s storage: %.3f ms per 1000 writes, %.3f ms per 1000 reads%n",
+                name, writeMillis / players.size() * 1000, readMillis / READS * 1000);
+        return writeMillis + readMillis;
+    }
+}
@@ -21,11 +21,18 @@ import ch.jalu.configme.SettingsManager;
 import ch.jalu.injector.Injector;
 import net.skinsrestorer.SRExtension;
 import net.skinsrestorer.SettingsHelper;
+import net.skinsrestorer.api.property.SkinProperty;
 import net.skinsrestorer.shared.config.DatabaseConfig;
 import net.skinsrestorer.shared.config.GUIConfig;
 import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
 import net.skinsrestorer.shared.storage.adapter.mysql.MySQLAdapter;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLColumns;
 import net.skinsrestorer.shared.storage.adapter.mysql.MySQLProvider;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLWriteQueue;
+import net.skinsrestorer.shared.storage.model.skin.CustomSkinData;
+import net.skinsrestorer.shared.storage.model.skin.PlayerSkinData;
+import org.junit.Assert;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -39,6 +46,9 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -75,7 +85,7 @@ public class MySQLAdapterTest {
     }
 
     @Test
-    public void testLoad(Injector injector) throws SQLException {
+    public void testLoad(Injector injector) throws SQLException, StorageAdapter.StorageException {
         injector.register(SettingsManager.class, settingsManager);
         SRPlugin plugin = mock(SRPlugin.class);
         when(plugin.getDataFolder()).thenReturn(tempDir);
@@ -94,5 +104,139 @@ public class MySQLAdapterTest {
         when(settingsManager.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)).thenReturn(true);
 
         AdapterHelper.testAdapter(adapter, true);
+
+        // One player skin and one custom skin are stored
+        Assert.assertEquals(2, adapter.getStoredRandomSkins(10).size());
+        Assert.assertEquals(1, adapter.getStoredRandomSkins(1).size());
+
+        when(settingsManager.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)).thenReturn(false);
+
+        Assert.assertEquals(Set.of("Pistonmaster"), adapter.getStoredRandomSkins(10).keySet());
+
+        // Saving a skin again keeps its sample id, the ids only stay dense if updates do not use up new ones
+        UUID uuid = UUID.randomUUID();
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "resaved", SkinProperty.of("test", "test"), -1));
+        long maxSampleId = getMaxSampleId(provider);
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "resaved", SkinProperty.of("dGVzdA==", "dGVzdA=="), 0));
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "resaved", SkinProperty.of("test", "test"), 1));
+        Assert.assertEquals(maxSampleId, getMaxSampleId(provider));
+        adapter.removePlayerSkinData(uuid);
+    }
+
+    private static long getMaxSampleId(MySQLProvider provider) throws SQLException {
+        return provider.queryFirst("SELECT MAX(sample_id) AS max_id FROM `sr_player_skins`", crs -> crs.getLong("max_id")).orElseThrow();
+    }
+
+    @Test
+    public void testWriteBehindPlayerSkins(Injector injector) throws SQLException, StorageAdapter.StorageException {
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX)).thenReturn("write_behind_test_");
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_WRITE_BEHIND_ENABLED)).thenReturn(true);
+        // Long enough that only the explicit flush writes the rows
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_WRITE_BEHIND_FLUSH_INTERVAL)).thenReturn(600_000);
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        MySQLProvider provider = injector.getSingleton(MySQLProvider.class);
+        provider.initPool();
+
+        MySQLAdapter adapter = injector.getSingleton(MySQLAdapter.class);
+        adapter.init();
+
+        UUID uuid = UUID.randomUUID();
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "queued", SkinProperty.of("test", "test"), 1));
+
+        // Read-your-writes while the skin is still queued
+        Assert.assertEquals("queued", adapter.getPlayerSkinData(uuid).orElseThrow().getLastKnownName());
+        Assert.assertEquals(Set.of(uuid), adapter.getPlayerSkinDataBatch(List.of(uuid)).keySet());
+        Assert.assertEquals(0, countRows(provider, "write_behind_test_player_skins"));
+
+        injector.getSingleton(MySQLWriteQueue.class).flush();
+        Assert.assertEquals(1, countRows(provider, "write_behind_test_player_skins"));
+        Assert.assertEquals(1, countRows(provider, "write_behind_test_textures"));
+
+        // A removal drops the queued write as well, so the row does not come back on the next flush
+        adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "queued", SkinProperty.of("dGVzdA==", "dGVzdA=="), 2));
+        adapter.removePlayerSkinData(uuid);
+        injector.getSingleton(MySQLWriteQueue.class).flush();
+        Assert.assertTrue(adapter.getPlayerSkinData(uuid).isEmpty());
+        Assert.assertEquals(0, countRows(provider, "write_behind_test_textures"));
+    }
+
+    private static long countRows(MySQLProvider provider, String table) throws SQLException {
+        return provider.queryFirst("SELECT COUNT(*) AS count FROM `" + table + "`", crs -> crs.getLong("count")).orElseThrow();
+    }
+
+    @Test
+    public void testTextureMigration(Injector injector) throws SQLException, StorageAdapter.StorageException {
+        // Own tables, so the data of the other tests in the shared container does not count
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX)).thenReturn("texture_test_");
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        MySQLProvider provider = injector.getSingleton(MySQLProvider.class);
+        provider.initPool();
+
+        // A v16 table holds a copy of the texture in every row
+        provider.update("CREATE TABLE `texture_test_custom_skins` (`name` VARCHAR(36) NOT NULL, `value` BLOB NOT NULL,"
+                + " `signature` VARBINARY(1024) NOT NULL, `sample_id` BIGINT NOT NULL AUTO_INCREMENT,"
+                + " PRIMARY KEY (`name`), UNIQUE INDEX `idx_sample_id` (`sample_id`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+        byte[] texture = MySQLColumns.decodeCanonicalPayload("dGVzdA==").orElseThrow();
+        provider.update("INSERT INTO `texture_test_custom_skins` (name, value, signature) VALUES (?, ?, ?), (?, ?, ?)",
+                "first", texture, texture, "second", texture, texture);
+
+        MySQLAdapter adapter = injector.getSingleton(MySQLAdapter.class);
+        adapter.init();
+
+        SkinProperty property = SkinProperty.of("dGVzdA==", "dGVzdA==");
+        Assert.assertEquals(property, adapter.getCustomSkinData("first").orElseThrow().getProperty());
+        Assert.assertEquals(List.of(2), getReferenceCounts(provider));
+
+        adapter.removeCustomSkinData("first");
+        Assert.assertEquals(List.of(1), getReferenceCounts(provider));
+
+        // Replacing the last reference frees the old texture
+        SkinProperty updated = SkinProperty.of("dXBkYXRlZA==", "dXBkYXRlZA==");
+        adapter.setCustomSkinData("second", CustomSkinData.of("second", updated));
+        Assert.assertEquals(List.of(1), getReferenceCounts(provider));
+        Assert.assertEquals(updated, adapter.getCustomSkinData("second").orElseThrow().getProperty());
+
+        adapter.removeCustomSkinData("second");
+        Assert.assertEquals(List.of(), getReferenceCounts(provider));
+    }
+
+    @Test
+    public void testRejectedRowsMigration(Injector injector) throws SQLException {
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX)).thenReturn("rejected_test_");
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        MySQLProvider provider = injector.getSingleton(MySQLProvider.class);
+        provider.initPool();
+
+        // A v15 table stores the textures as text
+        provider.update("CREATE TABLE `rejected_test_custom_skins` (`name` VARCHAR(36) NOT NULL, `value` TEXT NOT NULL,"
+                + " `signature` TEXT NOT NULL, PRIMARY KEY (`name`)) ENGINE=InnoDB DEFAULT CHARSET=utf8");
+        provider.update("INSERT INTO `rejected_test_custom_skins` (name, value, signature) VALUES (?, ?, ?), (?, ?, ?)",
+                "valid", "dGVzdA==", "dGVzdA==", "invalid", "not base64!", "dGVzdA");
+
+        MySQLAdapter adapter = injector.getSingleton(MySQLAdapter.class);
+        adapter.init();
+
+        Assert.assertTrue(adapter.getCustomSkinData("valid").isPresent());
+        Assert.assertTrue(adapter.getCustomSkinData("invalid").isEmpty());
+
+        // The row that could not be converted is neither lost nor is the old table dropped
+        Assert.assertEquals(List.of("not base64!"), provider.query("SELECT value FROM `rejected_test_custom_skins_rejected`", crs -> crs.getString("value")));
+        Assert.assertEquals(List.of(2), provider.query("SELECT COUNT(*) FROM `rejected_test_custom_skins_v15`", crs -> crs.getInt(1)));
+    }
+
+    private static List<Integer> getReferenceCounts(MySQLProvider provider) throws SQLException {
+        return provider.query("SELECT ref_count FROM `texture_test_textures`", crs -> crs.getInt("ref_count"));
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.adapter;
+
+import ch.jalu.configme.SettingsManager;
+import ch.jalu.injector.Injector;
+import net.skinsrestorer.SRExtension;
+import net.skinsrestorer.SettingsHelper;
+import net.skinsrestorer.shared.config.DatabaseConfig;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLAdapter;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLColumns;
+import net.skinsrestorer.shared.storage.adapter.mysql.MySQLProvider;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.testcontainers.containers.MariaDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures random skin sampling at growing table sizes.
+ * Run with {@code SR_BENCHMARK=true}, it is too slow for every build.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfEnvironmentVariable(named = "SR_BENCHMARK", matches = "true")
+@ExtendWith({MockitoExtension.class, SRExtension.class})
+public class MySQLRandomSkinsBenchmark {
+    private static final int[] TABLE_SIZES = {1_000, 10_000, 100_000};
+    private static final int SAMPLE_SIZE = 36;
+    private static final int ITERATIONS = 200;
+
+    @Container
+    private static final MariaDBContainer<?> mariaDBContainer = new MariaDBContainer<>("mariadb:latest")
+            .withDatabaseName(MySQLAdapterTest.DATABASE_NAME)
+            .withUsername(MySQLAdapterTest.USERNAME)
+            .withPassword(MySQLAdapterTest.PASSWORD);
+
+    @Mock
+    private SettingsManager settingsManager;
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void benchmarkRandomSkins(Injector injector) throws SQLException {
+        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_HOST)).thenReturn(mariaDBContainer.getHost());
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_PORT)).thenReturn(mariaDBContainer.getFirstMappedPort());
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_USERNAME)).thenReturn(mariaDBContainer.getUsername());
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_PASSWORD)).thenReturn(mariaDBContainer.getPassword());
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_DATABASE)).thenReturn(mariaDBContainer.getDatabaseName());
+        when(settingsManager.getProperty(DatabaseConfig.MYSQL_CONNECTION_OPTIONS)).thenReturn("sslMode=disable&serverTimezone=UTC");
+
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        MySQLProvider provider = injector.getSingleton(MySQLProvider.class);
+        provider.initPool();
+
+        MySQLAdapter adapter = injector.getSingleton(MySQLAdapter.class);
+        adapter.init();
+
+        String prefix = settingsManager.getProperty(DatabaseConfig.MYSQL_TABLE_PREFIX);
+        String table = prefix + "player_skins";
+        byte[] texture = new byte[1_500]; // Roughly the size of a real decoded texture value
+        byte[] signature = new byte[512];
+        byte[] textureHash = MySQLColumns.textureHash(texture, signature);
+        provider.update("INSERT INTO `" + prefix + "textures` (hash, value, signature, ref_count) VALUES (?, ?, ?, 0)", textureHash, texture, signature);
+
+        int stored = 0;
+        List<Double> averages = new ArrayList<>();
+        for (int tableSize : TABLE_SIZES) {
+            List<Object[]> rows = new ArrayList<>();
+            for (; stored < tableSize; stored++) {
+                rows.add(new Object[]{MySQLColumns.toBinary(UUID.randomUUID()), "player" + stored, textureHash, System.currentTimeMillis()});
+            }
+            provider.executeBatch(Map.of("INSERT INTO `" + table + "` (uuid, last_known_name, texture_hash, timestamp) VALUES (?, ?, ?, ?)", rows));
+
+            // Warm up the connection pool and buffer pool
+            for (int i = 0; i < 20; i++) {
+                adapter.getStoredRandomSkins(SAMPLE_SIZE);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                Assert.assertEquals(SAMPLE_SIZE, adapter.getStoredRandomSkins(SAMPLE_SIZE).size());
+            }
+            double average = (System.nanoTime() - start) / 1_000_000D / ITERATIONS;
+            averages.add(average);
+
+            System.out.printf("%d skins: %.3f ms per sample of %d%n", tableSize, average, SAMPLE_SIZE);
+        }
+
+        // ORDER BY RAND() grows linearly, i.e. about 100 times between the first and last size
+        double growth = averages.get(averages.size() - 1) / averages.get(0);
+        Assert.assertTrue("Sampling got " + growth + " times slower", growth < 5);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * SkinsRestorer
+ * Copyright (C) 2024  SkinsRestorer Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package net.skinsrestorer.adapter;
+
+import ch.jalu.configme.SettingsManager;
+import ch.jalu.injector.Injector;
+import net.skinsrestorer.SRExtension;
+import net.skinsrestorer.SettingsHelper;
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.shared.config.GUIConfig;
+import net.skinsrestorer.shared.plugin.SRPlugin;
+import net.skinsrestorer.shared.storage.adapter.StorageAdapter;
+import net.skinsrestorer.shared.storage.adapter.file.FileAdapter;
+import net.skinsrestorer.shared.storage.adapter.sqlite.SQLiteAdapter;
+import net.skinsrestorer.shared.storage.model.cache.MojangCacheData;
+import net.skinsrestorer.shared.storage.model.player.PlayerData;
+import net.skinsrestorer.shared.storage.model.skin.CustomSkinData;
+import net.skinsrestorer.shared.storage.model.skin.PlayerSkinData;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith({MockitoExtension.class, SRExtension.class})
+public class SQLiteAdapterTest {
+    @TempDir
+    private Path tempDir;
+    @Mock
+    private SettingsManager settingsManager;
+
+    @Test
+    public void testLoad(Injector injector) throws StorageAdapter.StorageException {
+        SQLiteAdapter adapter = createAdapter(injector);
+        adapter.init();
+
+        when(settingsManager.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)).thenReturn(false);
+
+        AdapterHelper.testAdapter(adapter, false);
+
+        when(settingsManager.getProperty(GUIConfig.CUSTOM_GUI_ENABLED)).thenReturn(true);
+
+        AdapterHelper.testAdapter(adapter, true);
+
+        // One player skin and one custom skin are stored
+        Assert.assertEquals(2, adapter.getStoredRandomSkins(10).size());
+        Assert.assertEquals(1, adapter.getStoredRandomSkins(1).size());
+
+        adapter.close();
+    }
+
+    @Test
+    public void testRandomSampling(Injector injector) {
+        SQLiteAdapter adapter = createAdapter(injector);
+        adapter.init();
+
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.randomUUID();
+            adapter.setPlayerSkinData(uuid, PlayerSkinData.of(uuid, "player" + i, SkinProperty.of("test", "test"), i));
+        }
+
+        // Probes by sample id instead of reading every row
+        Assert.assertEquals(10, adapter.getStoredRandomSkins(10).size());
+
+        adapter.close();
+    }
+
+    @Test
+    public void testFileMigration(Injector injector) throws StorageAdapter.StorageException {
+        SQLiteAdapter adapter = createAdapter(injector);
+
+        FileAdapter fileAdapter = injector.getSingleton(FileAdapter.class);
+        UUID uuid = UUID.randomUUID();
+        fileAdapter.setPlayerData(uuid, PlayerData.of(uuid, SkinIdentifier.ofCustom("test-skin")));
+        fileAdapter.setCustomSkinData("test-skin", CustomSkinData.of("test-skin", SkinProperty.of("test", "test")));
+        fileAdapter.setCachedUUID("test", MojangCacheData.of(uuid, -1));
+
+        adapter.init();
+
+        Assert.assertEquals(SkinIdentifier.ofCustom("test-skin"), adapter.getPlayerData(uuid).orElseThrow().getSkinIdentifier());
+        Assert.assertTrue(adapter.getCustomSkinData("test-skin").isPresent());
+        Assert.assertEquals(Optional.of(uuid), adapter.getCachedUUID("test").orElseThrow().getUniqueId());
+        Assert.assertEquals(Set.of("test-skin"), adapter.getStoredRandomSkins(10).keySet());
+
+        // Changes after the migration are not overwritten by the old files on the next start
+        adapter.removeCustomSkinData("test-skin");
+        adapter.init();
+        Assert.assertTrue(adapter.getCustomSkinData("test-skin").isEmpty());
+
+        adapter.close();
+    }
+
+    private SQLiteAdapter createAdapter(Injector injector) {
+        SettingsHelper.returnDefaultsForAllProperties(settingsManager);
+        injector.register(SettingsManager.class, settingsManager);
+        SRPlugin plugin = mock(SRPlugin.class);
+        when(plugin.getDataFolder()).thenReturn(tempDir);
+        injector.register(SRPlugin.class, plugin);
+
+        return injector.getSingleton(SQLiteAdapter.class);
+    }
+}
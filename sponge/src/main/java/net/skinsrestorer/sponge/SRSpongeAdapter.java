@@ -28,6 +28,7 @@ import net.skinsrestorer.shared.commands.library.SRRegisterPayload;
 import net.skinsrestorer.shared.gui.SharedGUI;
 import net.skinsrestorer.shared.info.Platform;
 import net.skinsrestorer.shared.info.PluginInfo;
+import net.skinsrestorer.shared.log.SRLogger;
 import net.skinsrestorer.shared.plugin.SRServerAdapter;
 import net.skinsrestorer.shared.subjects.SRCommandSender;
 import net.skinsrestorer.shared.subjects.SRPlayer;
@@ -136,10 +137,13 @@ public class SRSpongeAdapter implements SRServerAdapter<PluginContainer, Command
 
     @Override
     public void openServerGUI(SRPlayer player, int page) {
-        InventoryMenu inventory = injector.getSingleton(SharedGUI.class)
-                .createGUI(injector.getSingleton(SkinsGUI.class), injector.getSingleton(SharedGUI.ServerGUIActions.class), player, page);
-
-        runSyncToPlayer(player, () -> inventory.open(player.getAs(ServerPlayer.class)));
+        injector.getSingleton(SharedGUI.class)
+                .createGUI(injector.getSingleton(SkinsGUI.class), injector.getSingleton(SharedGUI.ServerGUIActions.class), player, page)
+                .thenAccept(inventory -> runSyncToPlayer(player, () -> inventory.open(player.getAs(ServerPlayer.class))))
+                .exceptionally(throwable -> {
+                    injector.getSingleton(SRLogger.class).warning("Failed to load GUI skins for " + player.getName(), throwable);
+                    return null;
+                });
     }
 
     @Override
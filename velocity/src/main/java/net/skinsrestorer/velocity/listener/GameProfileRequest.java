@@ -28,6 +28,8 @@ import net.skinsrestorer.velocity.SkinApplierVelocity;
 
 import javax.inject.Inject;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @RequiredArgsConstructor(onConstructor_ = @Inject)
 public class GameProfileRequest {
@@ -70,6 +72,11 @@ public class GameProfileRequest {
             public EventTask runAsync(Runnable runnable) {
                 return EventTask.async(runnable);
             }
+
+            @Override
+            public EventTask runAsyncFuture(Supplier<CompletableFuture<?>> task) {
+                return EventTask.resumeWhenComplete(task.get());
+            }
         };
     }
 }